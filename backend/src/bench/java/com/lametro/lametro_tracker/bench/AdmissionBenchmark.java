@@ -0,0 +1,99 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.lametro.lametro_tracker.config.AdmissionFilter;
+
+import jakarta.servlet.FilterChain;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Overload: 64 clients, each pausing a millisecond between requests, to a
+ * server that can work on 8 at once for a millisecond each. Without
+ * admission control every request waits its turn behind the others. With
+ * it the excess is shed straight away and the requests let through wait
+ * behind only a few. Compare the sampled percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class AdmissionBenchmark {
+
+    private static final PrintWriter DISCARD = new PrintWriter(Writer.nullWriter());
+    private static final long SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long THINK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Param({"false", "true"})
+    public boolean admission;
+
+    private AdmissionFilter filter;
+    private FilterChain server;
+
+    @Setup
+    public void setUp() {
+        filter = new AdmissionFilter(new SimpleMeterRegistry(), admission, 20, 4, 1000, 100);
+        Semaphore workers = new Semaphore(8, true);
+        server = (request, response) -> {
+            workers.acquireUninterruptibly();
+            try {
+                LockSupport.parkNanos(SERVICE_NANOS);
+            } finally {
+                workers.release();
+            }
+        };
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        MockHttpServletRequest request;
+        MockHttpServletResponse response;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            request = new MockHttpServletRequest("GET", "/api/vehicles");
+            response = new MockHttpServletResponse() {
+                @Override
+                public PrintWriter getWriter() {
+                    return DISCARD;
+                }
+            };
+        }
+
+        // Untimed pause between requests, so clients that were shed don't spin on the CPU the server needs.
+        @Setup(Level.Invocation)
+        public void think() {
+            LockSupport.parkNanos(THINK_NANOS);
+        }
+    }
+
+    @Benchmark
+    public int request(Client client) throws Exception {
+        client.response.reset();
+        filter.doFilter(client.request, client.response, server);
+        return client.response.getStatus();
+    }
+}
@@ -0,0 +1,154 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.Position;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import com.google.transit.realtime.GtfsRealtime.VehicleDescriptor;
+import com.google.transit.realtime.GtfsRealtime.VehiclePosition;
+import com.lametro.lametro_tracker.service.ArrivalPredictor;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.VehicleTracker;
+
+/**
+ * Deterministic GTFS-RT fixture feeds for the benchmarks.
+ *
+ * Trip, route and stop IDs come from the static GTFS in ../gtfs-data
+ * (override with -Dlametro.bench.gtfs-dir), so payload sizes and ID shapes
+ * match the real rail feeds. Each size is a number of active trips.
+ */
+public final class BenchFixtures {
+
+    // Active trips: a quiet night, a weekday peak, and well past anything real.
+    public static final Map<String, Integer> TRIPS_BY_SIZE = Map.of("small", 25, "medium", 150, "large", 1_000);
+
+    private static final long FEED_TIME = 1_700_000_000L;
+
+    private BenchFixtures() {}
+
+    /**
+     * A tracker over the same static GTFS, so ingestion includes snapping.
+     */
+    public static VehicleTracker vehicleTracker() {
+        return new VehicleTracker(new StaticGtfsService(gtfsDir().toString(), ""));
+    }
+
+    /**
+     * A predictor over the same static GTFS.
+     */
+    public static ArrivalPredictor arrivalPredictor() {
+        return new ArrivalPredictor(new StaticGtfsService(gtfsDir().toString(), ""), 300);
+    }
+
+    public static byte[] vehicleFeed(String size) {
+        List<String[]> trips = trips(TRIPS_BY_SIZE.get(size));
+        Map<String, List<String[]>> shapes = shapePoints();
+        Random random = new Random(size.hashCode());
+        FeedMessage.Builder feed = header();
+        for (int i = 0; i < trips.size(); i++) {
+            String[] trip = trips.get(i);
+            // Somewhere on the trip's shape, give or take GPS error of up to ~20 m.
+            List<String[]> points = shapes.get(trip[3]);
+            String[] point = points.get(random.nextInt(points.size()));
+            feed.addEntity(FeedEntity.newBuilder().setId(Integer.toString(i)).setVehicle(VehiclePosition.newBuilder()
+                .setVehicle(VehicleDescriptor.newBuilder().setId(Integer.toString(1000 + i)))
+                .setTrip(tripDescriptor(trip))
+                .setPosition(Position.newBuilder()
+                    .setLatitude(Float.parseFloat(point[1]) + (random.nextFloat() - 0.5f) * 0.0004f)
+                    .setLongitude(Float.parseFloat(point[2]) + (random.nextFloat() - 0.5f) * 0.0004f)
+                    .setBearing(random.nextInt(360)))
+                .setTimestamp(FEED_TIME - random.nextInt(30))));
+        }
+        return feed.build().toByteArray();
+    }
+
+    public static byte[] tripFeed(String size) {
+        List<String[]> trips = trips(TRIPS_BY_SIZE.get(size));
+        Map<String, List<String>> stopsByRoute = stopsByRoute();
+        Random random = new Random(size.hashCode());
+        FeedMessage.Builder feed = header();
+        for (int i = 0; i < trips.size(); i++) {
+            String[] trip = trips.get(i);
+            List<String> stops = stopsByRoute.getOrDefault(trip[0], stopsByRoute.get(""));
+            TripUpdate.Builder update = TripUpdate.newBuilder().setTrip(tripDescriptor(trip));
+            // Each trip has somewhere between a few and all of its remaining stops ahead of it.
+            int first = random.nextInt(stops.size());
+            long arrival = FEED_TIME + random.nextInt(600);
+            for (int s = first; s < stops.size(); s++) {
+                update.addStopTimeUpdate(TripUpdate.StopTimeUpdate.newBuilder()
+                    .setStopId(stops.get(s))
+                    .setArrival(TripUpdate.StopTimeEvent.newBuilder().setTime(arrival)));
+                arrival += 90 + random.nextInt(90);
+            }
+            feed.addEntity(FeedEntity.newBuilder().setId(Integer.toString(i)).setTripUpdate(update));
+        }
+        return feed.build().toByteArray();
+    }
+
+    private static FeedMessage.Builder header() {
+        return FeedMessage.newBuilder()
+            .setHeader(FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(FEED_TIME));
+    }
+
+    private static TripDescriptor.Builder tripDescriptor(String[] trip) {
+        return TripDescriptor.newBuilder().setRouteId(trip[0]).setTripId(trip[1]).setDirectionId(Integer.parseInt(trip[2]));
+    }
+
+    // route_id, trip_id, direction_id, shape_id of every nth trip, spread across all routes.
+    private static List<String[]> trips(int count) {
+        List<String[]> all = new ArrayList<>();
+        for (String[] row : read("trips.txt")) {
+            all.add(new String[] {row[0], row[2], row[4], row[6]});
+        }
+        List<String[]> picked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            picked.add(all.get((int) ((long) i * all.size() / count)));
+        }
+        return picked;
+    }
+
+    private static Map<String, List<String[]>> shapePoints() {
+        Map<String, List<String[]>> shapes = new HashMap<>();
+        for (String[] row : read("shapes.txt")) {
+            shapes.computeIfAbsent(row[0], key -> new ArrayList<>()).add(row);
+        }
+        return shapes;
+    }
+
+    // Platform stops keyed by the route whose ID they start with, plus "" for every platform.
+    private static Map<String, List<String>> stopsByRoute() {
+        Map<String, List<String>> stops = new HashMap<>();
+        for (String[] row : read("stops.txt")) {
+            if (row[7].equals("0")) {
+                stops.computeIfAbsent(row[0].substring(0, 3), key -> new ArrayList<>()).add(row[0]);
+                stops.computeIfAbsent("", key -> new ArrayList<>()).add(row[0]);
+            }
+        }
+        return stops;
+    }
+
+    private static List<String[]> read(String file) {
+        Path path = gtfsDir().resolve(file);
+        try {
+            return Files.readAllLines(path).stream().skip(1).map(line -> line.split(",", -1)).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Benchmarks need the static GTFS files in " + path.getParent(), e);
+        }
+    }
+
+    private static Path gtfsDir() {
+        return Path.of(System.getProperty("lametro.bench.gtfs-dir", "../gtfs-data"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lametro.lametro_tracker.model.ObservedArrival;
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.TrackPoint;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.ArrivalPredictor;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HistoryStore;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.SnapshotPublishedEvent;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Cost of recording history: what a refresh pays to hand a snapshot to the
+ * recorder, what the writer pays to append one in which every prediction
+ * moved, and the two queries over an hour of recorded refreshes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final String AGENCY = "lametro-rail";
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private TripUpdateSnapshot[] predictions;
+    private VehicleSnapshot vehicles;
+    private SnapshotPublishedEvent published;
+    private String vehicleId;
+    private List<String> stopIds;
+
+    private Path dir;
+    private HistoryStore history;
+    private long fetchedAt;
+
+    @Setup
+    public void setUp() {
+        ArrivalPredictor predictor = BenchFixtures.arrivalPredictor();
+        FeedClient feedClient = new FeedClient(new HttpFeedSource("bench", 1_000, 1_000), "", 0, 0, 1, 1_000, new SimpleMeterRegistry());
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        GtfsRtService service = new GtfsRtService(AGENCY, feedClient,
+            new SnapshotRenderer(JsonMapper.builder().build(), meters), BenchFixtures.vehicleTracker(), predictor,
+            event -> {}, Runnable::run, meters, "http://localhost/", "http://localhost/", 8);
+        vehicles = service.readVehiclePositions(BenchFixtures.vehicleFeed(size), 1, NOW);
+        TripUpdateSnapshot predicted = predictor.predict(service.readTripUpdates(BenchFixtures.tripFeed(size), 2, NOW),
+            vehicles, NOW);
+        // Alternates between two sets of predictions, so every row changes on every append.
+        List<StopTimeUpdate> later = new ArrayList<>();
+        for (StopTimeUpdate arrival : predicted.getEntities()) {
+            later.add(new StopTimeUpdate(arrival.getTripId(), arrival.getRouteId(), arrival.getDirectionId(),
+                arrival.getStopId(), arrival.getArrivalTime() + 30, arrival.getSource(), arrival.getObservedAt()));
+        }
+        predictions = new TripUpdateSnapshot[] {predicted, new TripUpdateSnapshot(later, NOW)};
+        published = new SnapshotPublishedEvent(AGENCY, predicted);
+        vehicleId = vehicles.getEntities().get(0).getVehicleId();
+        stopIds = List.of(predicted.getEntities().get(0).getStopId());
+    }
+
+    @Setup(Level.Iteration)
+    public void openStore() throws IOException {
+        dir = Files.createTempDirectory("history-bench");
+        history = new HistoryStore(dir.toString(), 60, 24, 30, new SimpleMeterRegistry());
+        fetchedAt = NOW;
+        // An hour of refreshes every 10 seconds to query.
+        for (int i = 0; i < 360; i++) {
+            record();
+            history.record(AGENCY, new VehicleSnapshot(moved(i), fetchedAt));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStore() throws IOException {
+        history.destroy();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void publish() {
+        // The writer skips the unchanged snapshot, so this is the refresh thread's share alone.
+        history.onSnapshotPublished(published);
+    }
+
+    @Benchmark
+    public long record() {
+        fetchedAt += 10_000;
+        history.record(AGENCY, predictions[(int) (fetchedAt / 10_000 % 2)]);
+        return fetchedAt;
+    }
+
+    @Benchmark
+    public List<TrackPoint> queryTrack() {
+        return history.track(AGENCY, vehicleId, NOW / 1000, NOW / 1000 + 3_600);
+    }
+
+    @Benchmark
+    public List<ObservedArrival> queryHeadways() {
+        return history.arrivals(AGENCY, stopIds, null, null, NOW / 1000, NOW / 1000 + 3_600);
+    }
+
+    private List<VehiclePosition> moved(int step) {
+        List<VehiclePosition> moved = new ArrayList<>();
+        for (VehiclePosition vehicle : vehicles.getEntities()) {
+            moved.add(new VehiclePosition(vehicle.getVehicleId(), vehicle.getRouteId(),
+                vehicle.getTripId(), vehicle.getDirectionId(), vehicle.getLatitude() + step * 1e-4,
+                vehicle.getLongitude(), vehicle.getBearing(), vehicle.getTimestamp() + step * 10));
+        }
+        return moved;
+    }
+}
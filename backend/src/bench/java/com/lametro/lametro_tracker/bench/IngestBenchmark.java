@@ -0,0 +1,75 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.FeedSnapshot;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Parse-and-map cost of one refresh: protobuf payload to snapshot, with and
+ * without pre-rendering the response bodies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private byte[] vehicleFeed;
+    private byte[] tripFeed;
+    private GtfsRtService service;
+    private SnapshotRenderer renderer;
+
+    @Setup
+    public void setUp() {
+        vehicleFeed = BenchFixtures.vehicleFeed(size);
+        tripFeed = BenchFixtures.tripFeed(size);
+        renderer = new SnapshotRenderer(JsonMapper.builder().build(), new SimpleMeterRegistry());
+        FeedClient feedClient = new FeedClient(new HttpFeedSource("bench", 1_000, 1_000), "", 0, 0, 1, 1_000, new SimpleMeterRegistry());
+        service = new GtfsRtService("lametro-rail", feedClient, renderer, BenchFixtures.vehicleTracker(),
+            BenchFixtures.arrivalPredictor(), event -> {}, Runnable::run, new SimpleMeterRegistry(),
+            "http://localhost/", "http://localhost/", 8);
+    }
+
+    @Benchmark
+    public FeedSnapshot<VehiclePosition> readVehiclePositions() {
+        return service.readVehiclePositions(vehicleFeed, 1, 0);
+    }
+
+    @Benchmark
+    public TripUpdateSnapshot readTripUpdates() {
+        return service.readTripUpdates(tripFeed, 1, 0);
+    }
+
+    @Benchmark
+    public TripUpdateSnapshot readAndPrepareTripUpdates() {
+        TripUpdateSnapshot snapshot = service.readTripUpdates(tripFeed, 1, 0);
+        renderer.prepare(snapshot);
+        return snapshot;
+    }
+}
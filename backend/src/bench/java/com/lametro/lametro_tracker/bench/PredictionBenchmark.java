@@ -0,0 +1,80 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lametro.lametro_tracker.service.ArrivalPredictor;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.JourneyIndex;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Cost of recomputing every arrival in the network, as each refresh does:
+ * from trip updates with delays propagated downstream, and from vehicle
+ * positions alone as on a cold start without trip updates, plus indexing
+ * the predictions for journey queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictionBenchmark {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private ArrivalPredictor predictor;
+    private TripUpdateSnapshot reported;
+    private VehicleSnapshot vehicles;
+    private TripUpdateSnapshot predicted;
+
+    @Setup
+    public void setUp() {
+        predictor = BenchFixtures.arrivalPredictor();
+        FeedClient feedClient = new FeedClient(new HttpFeedSource("bench", 1_000, 1_000), "", 0, 0, 1, 1_000, new SimpleMeterRegistry());
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        GtfsRtService service = new GtfsRtService("lametro-rail", feedClient,
+            new SnapshotRenderer(JsonMapper.builder().build(), meters), BenchFixtures.vehicleTracker(), predictor,
+            event -> {}, Runnable::run, meters, "http://localhost/", "http://localhost/", 8);
+        reported = service.readTripUpdates(BenchFixtures.tripFeed(size), 1, NOW);
+        vehicles = service.readVehiclePositions(BenchFixtures.vehicleFeed(size), 2, NOW);
+        predicted = predictor.predict(reported, vehicles, NOW);
+    }
+
+    @Benchmark
+    public TripUpdateSnapshot predictFromTripUpdates() {
+        return predictor.predict(reported, vehicles, NOW);
+    }
+
+    @Benchmark
+    public TripUpdateSnapshot predictFromVehicles() {
+        return predictor.predict(TripUpdateSnapshot.none(), vehicles, NOW);
+    }
+
+    @Benchmark
+    public JourneyIndex indexJourneys() {
+        return new JourneyIndex(predicted, predictor::stationOf);
+    }
+}
@@ -0,0 +1,146 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lametro.lametro_tracker.model.Journey;
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.JourneyIndex;
+import com.lametro.lametro_tracker.service.PreparedBody;
+import com.lametro.lametro_tracker.service.ProtobufEncoder;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * The work behind /api/trip-updates, /api/trip-details and /api/journeys:
+ * snapshot lookups, JSON serialization and compression on a cache miss, and the per-snapshot
+ * cache hit that most requests take.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private JsonMapper jsonMapper;
+    private SnapshotRenderer renderer;
+    private TripUpdateSnapshot snapshot;
+    private String routeId;
+    private int directionId;
+    private List<String> stopIds;
+    private String tripId;
+    private List<StopTimeUpdate> arrivals;
+    private TripUpdateSnapshot predicted;
+    private String journeyFrom;
+    private String journeyTo;
+    private String transferTo;
+
+    @Setup
+    public void setUp() {
+        jsonMapper = JsonMapper.builder().build();
+        renderer = new SnapshotRenderer(jsonMapper, new SimpleMeterRegistry());
+        FeedClient feedClient = new FeedClient(new HttpFeedSource("bench", 1_000, 1_000), "", 0, 0, 1, 1_000, new SimpleMeterRegistry());
+        GtfsRtService service = new GtfsRtService("lametro-rail", feedClient, renderer, BenchFixtures.vehicleTracker(),
+            BenchFixtures.arrivalPredictor(), event -> {}, Runnable::run, new SimpleMeterRegistry(),
+            "http://localhost/", "http://localhost/", 8);
+        snapshot = service.readTripUpdates(BenchFixtures.tripFeed(size), 1, 0);
+
+        // Query the busiest board, as a station page would.
+        StopTimeUpdate sample = snapshot.findArrivals(null, null, null, 1).get(0);
+        routeId = sample.getRouteId();
+        directionId = sample.getDirectionId();
+        stopIds = List.of(sample.getStopId());
+        tripId = sample.getTripId();
+        arrivals = snapshot.findArrivals(routeId, directionId, stopIds, SnapshotRenderer.ARRIVALS_LIMIT);
+        renderer.prepare(snapshot);
+
+        // From the sample trip's first stop to its last, and to a station reached only by changing trains.
+        predicted = BenchFixtures.arrivalPredictor().predict(snapshot, VehicleSnapshot.none(), 0);
+        List<StopTimeUpdate> trip = predicted.findTrip(tripId);
+        journeyFrom = trip.get(0).getStopId();
+        journeyTo = trip.get(trip.size() - 1).getStopId();
+        JourneyIndex journeys = predicted.getJourneys();
+        transferTo = predicted.getEntities().stream().map(StopTimeUpdate::getStopId).distinct()
+            .filter(stopId -> journeys.find(journeyFrom, stopId, 0, 1).stream().anyMatch(j -> j.getTransfers() > 0))
+            .findFirst().orElseThrow();
+    }
+
+    @Benchmark
+    public List<StopTimeUpdate> findStationArrivals() {
+        return snapshot.findArrivals(routeId, directionId, stopIds, SnapshotRenderer.ARRIVALS_LIMIT);
+    }
+
+    @Benchmark
+    public List<StopTimeUpdate> findRouteArrivals() {
+        return snapshot.findArrivals(routeId, null, null, SnapshotRenderer.ARRIVALS_LIMIT);
+    }
+
+    @Benchmark
+    public List<StopTimeUpdate> findTrip() {
+        return snapshot.findTrip(tripId);
+    }
+
+    @Benchmark
+    public List<Journey> findDirectJourneys() {
+        return predicted.getJourneys().find(journeyFrom, journeyTo, 0, 3);
+    }
+
+    @Benchmark
+    public List<Journey> findTransferJourneys() {
+        return predicted.getJourneys().find(journeyFrom, transferTo, 0, 3);
+    }
+
+    @Benchmark
+    public byte[] serializeArrivals() {
+        return jsonMapper.writeValueAsBytes(arrivals);
+    }
+
+    @Benchmark
+    public byte[] encodeArrivalsAsProtobuf() {
+        return ProtobufEncoder.arrivals(arrivals);
+    }
+
+    @Benchmark
+    public byte[] serializeAllArrivals() {
+        return jsonMapper.writeValueAsBytes(snapshot.getEntities());
+    }
+
+    @Benchmark
+    public byte[] encodeAllArrivalsAsProtobuf() {
+        return ProtobufEncoder.arrivals(snapshot.getEntities());
+    }
+
+    @Benchmark
+    public byte[] serializeAndCompressTrip() {
+        return PreparedBody.of(jsonMapper.writeValueAsBytes(snapshot.findTrip(tripId))).bytes(PreparedBody.GZIP);
+    }
+
+    @Benchmark
+    public PreparedBody cachedArrivals() {
+        return renderer.arrivals(snapshot, routeId, directionId, stopIds);
+    }
+}
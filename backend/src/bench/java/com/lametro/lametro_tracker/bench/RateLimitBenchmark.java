@@ -0,0 +1,85 @@
+package com.lametro.lametro_tracker.bench;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.lametro.lametro_tracker.config.RateLimitFilter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * RateLimitFilter.doFilter under contention, for one client and for many.
+ * The limits are far below the benchmark's request rate, so after the first
+ * moments this mostly measures the bookkeeping around a rejection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RateLimitBenchmark {
+
+    private static final PrintWriter DISCARD = new PrintWriter(Writer.nullWriter());
+
+    @Param({"1", "10000"})
+    public int clients;
+
+    private RateLimitFilter filter;
+    private String[] clientIps;
+
+    @Setup
+    public void setUp() {
+        filter = new RateLimitFilter(new SimpleMeterRegistry());
+        clientIps = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            clientIps[i] = "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        int next;
+        MockHttpServletRequest request;
+        MockHttpServletResponse response;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            request = new MockHttpServletRequest("GET", "/api/vehicles");
+            response = new MockHttpServletResponse() {
+                // Tomcat recycles its writer; the mock would allocate a fresh one per response.
+                @Override
+                public PrintWriter getWriter() {
+                    return DISCARD;
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public int doFilter(Client client) throws Exception {
+        client.request.setRemoteAddr(clientIps[client.next++ % clientIps.length]);
+        client.response.reset();
+        filter.doFilter(client.request, client.response, new MockFilterChain());
+        return client.response.getStatus();
+    }
+}
@@ -2,8 +2,10 @@ package com.lametro.lametro_tracker;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class LaMetroTrackerApplication {
 
 	public static void main(String[] args) {
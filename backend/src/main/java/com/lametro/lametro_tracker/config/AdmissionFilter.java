@@ -0,0 +1,86 @@
+package com.lametro.lametro_tracker.config;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds API requests with a 503 once this replica is running as many as
+ * its {@link ConcurrencyLimiter} allows, so that under overload the
+ * requests it does take are still answered quickly. Runs after
+ * {@link RateLimitFilter}, so clients over their own limit never take up
+ * a slot.
+ */
+@Component
+public class AdmissionFilter implements Filter {
+
+    private final boolean enabled;
+    private final ConcurrencyLimiter limiter;
+    private final Counter rejections;
+
+    public AdmissionFilter(
+        MeterRegistry meters,
+        @Value("${lametro.admission.enabled:true}") boolean enabled,
+        @Value("${lametro.admission.initial-limit:20}") int initialLimit,
+        @Value("${lametro.admission.min-limit:8}") int minLimit,
+        @Value("${lametro.admission.max-limit:1000}") int maxLimit,
+        @Value("${lametro.admission.window-ms:100}") long windowMillis
+    ) {
+        this.enabled = enabled;
+        this.limiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, TimeUnit.MILLISECONDS.toNanos(windowMillis));
+        this.rejections = Counter.builder("lametro.admission.rejected")
+            .description("API requests shed with a 503 at the concurrency limit")
+            .register(meters);
+        Gauge.builder("lametro.admission.limit", limiter, ConcurrencyLimiter::getLimit)
+            .description("API requests allowed to run at once")
+            .register(meters);
+        Gauge.builder("lametro.admission.inflight", limiter, ConcurrencyLimiter::getInflight)
+            .description("API requests running")
+            .register(meters);
+    }
+
+    public int getInflight() {
+        return limiter.getInflight();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        if (!enabled || !httpRequest.getRequestURI().startsWith("/api/")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (!limiter.tryAcquire()) {
+            rejections.increment();
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setStatus(503);
+            httpResponse.setHeader("Retry-After", "1");
+            httpResponse.getWriter().write("Server busy. Please try again shortly.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            long now = System.nanoTime();
+            // A stream returns here as soon as it opens, which says nothing about how busy the server is.
+            limiter.release(request.isAsyncStarted() ? -1 : now - start, now);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.lametro.lametro_tracker.config;
+
+import java.util.Arrays;
+
+/**
+ * Turns a client address into the 64-bit key its rate limit is tracked under.
+ *
+ * IPv6 addresses are cut to their /64 prefix, since that is the smallest
+ * block normally assigned to one subscriber and a single host can rotate
+ * freely through the rest. IPv4 addresses (including IPv4-mapped IPv6) map
+ * to themselves with bit 32 set, which no routable /64 produces. Anything
+ * unparseable is hashed. No key is ever 0.
+ */
+final class ClientKeys {
+
+    private ClientKeys() {}
+
+    static long of(String address) {
+        if (address == null || address.isEmpty()) {
+            return 1;
+        }
+        long key = address.indexOf(':') >= 0 ? ipv6(address) : ipv4(address, 0, address.length());
+        if (key == 0) {
+            key = hash(address);
+        }
+        return key;
+    }
+
+    // IPv4 dotted quad in address[from, to), or 0 if it isn't one.
+    private static long ipv4(String address, int from, int to) {
+        long ip = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? address.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return 0;
+                }
+            } else if (c == '.' && value >= 0) {
+                ip = (ip << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return 0;
+            }
+        }
+        return octets == 4 ? (1L << 32) | ip : 0;
+    }
+
+    // The /64 prefix of an IPv6 address, or 0 if it isn't one.
+    private static long ipv6(String address) {
+        int start = address.startsWith("[") ? 1 : 0;
+        int end = address.length();
+        int bracket = address.indexOf(']');
+        if (bracket >= 0) {
+            end = bracket;
+        }
+        int zone = address.indexOf('%');
+        if (zone >= 0 && zone < end) {
+            end = zone;
+        }
+
+        // Up to 8 groups, with "::" standing in for a run of zero groups.
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1;
+        int i = start;
+        if (address.startsWith("::", i)) {
+            gap = 0;
+            i += 2;
+        }
+        while (i < end) {
+            int next = address.indexOf(':', i);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            if (next == end && address.indexOf('.', i) >= 0 && address.indexOf('.', i) < end) {
+                // Trailing embedded IPv4, e.g. ::ffff:192.0.2.1.
+                long ipv4 = ipv4(address, i, end);
+                if (ipv4 == 0 || count > 6) {
+                    return 0;
+                }
+                groups[count++] = (int) (ipv4 >>> 16) & 0xffff;
+                groups[count++] = (int) ipv4 & 0xffff;
+                i = end;
+                break;
+            }
+            if (next - i < 1 || next - i > 4 || count == 8) {
+                return 0;
+            }
+            int group = 0;
+            for (int j = i; j < next; j++) {
+                int digit = Character.digit(address.charAt(j), 16);
+                if (digit < 0) {
+                    return 0;
+                }
+                group = (group << 4) | digit;
+            }
+            groups[count++] = group;
+            i = next + 1;
+            if (address.startsWith(":", i) && i < end) {
+                if (gap >= 0) {
+                    return 0;
+                }
+                gap = count;
+                i++;
+            }
+        }
+        if (gap >= 0) {
+            int zeros = 8 - count;
+            System.arraycopy(groups, gap, groups, gap + zeros, count - gap);
+            Arrays.fill(groups, gap, gap + zeros, 0);
+        } else if (count != 8) {
+            return 0;
+        }
+
+        // IPv4-mapped addresses are really IPv4 clients.
+        if (groups[0] == 0 && groups[1] == 0 && groups[2] == 0 && groups[3] == 0 && groups[4] == 0 && groups[5] == 0xffff) {
+            return (1L << 32) | ((long) groups[6] << 16) | groups[7];
+        }
+        long prefix = ((long) groups[0] << 48) | ((long) groups[1] << 32) | ((long) groups[2] << 16) | groups[3];
+        return prefix == 0 ? hash(address) : prefix;
+    }
+
+    private static long hash(String address) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < address.length(); i++) {
+            hash = (hash ^ address.charAt(i)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,143 @@
+package com.lametro.lametro_tracker.config;
+
+import java.time.Duration;
+
+/**
+ * Per-client rate limits in a fixed-size table.
+ *
+ * Clients are 64-bit keys (see {@link ClientKeys}). Each one costs two
+ * longs: the key and its GCRA theoretical arrival time (see
+ * {@link RateLimiter}). The table is split into stripes, each an
+ * open-addressed array guarded by its own lock, so threads only contend
+ * when they hash to the same stripe and the critical section is a few
+ * array reads.
+ *
+ * Nothing is ever removed by a sweep. A new client takes a free slot near
+ * its hash, or else replaces the neighbour that would be refilled soonest,
+ * which is usually one that is already full and so loses nothing. Memory
+ * therefore never grows past the table, however many addresses a client
+ * rotates through.
+ */
+public class ClientRateLimiter {
+
+    // Slots searched around a key's hash before one is evicted.
+    private static final int PROBE_LIMIT = 8;
+
+    private final long baseInterval;
+    private final long window;
+    private volatile long interval;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Allows each client {@code limit} requests per {@code period}, tracking
+     * at most roughly {@code maxClients} clients at a time.
+     */
+    public ClientRateLimiter(int limit, Duration period, int maxClients) {
+        this.baseInterval = period.toNanos() / limit;
+        this.interval = baseInterval;
+        this.window = baseInterval * limit;
+        int stripeCount = Math.min(64, Integer.highestOneBit(Math.max(1, maxClients / PROBE_LIMIT)));
+        int slotsPerStripe = Math.max(PROBE_LIMIT, Integer.highestOneBit(Math.max(1, maxClients / stripeCount - 1)) << 1);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(slotsPerStripe);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public boolean tryAcquire(long key, long now) {
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) (hash >>> 32) & stripeMask];
+        return stripe.tryAcquire(key, (int) hash, now, interval);
+    }
+
+    /**
+     * Allows each client only this replica's share of its limit, as
+     * {@link RateLimiter#setReplicas} does.
+     */
+    public void setReplicas(int replicas) {
+        interval = baseInterval * Math.max(1, replicas);
+    }
+
+    /**
+     * Number of clients currently tracked.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return stripes.length * stripes[0].keys.length;
+    }
+
+    // Spreads nearby addresses (sequential IPv4s, one /64's neighbours) across the table.
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    private class Stripe {
+        // Key 0 marks a free slot; ClientKeys never produces it.
+        final long[] keys;
+        final long[] tats;
+        final int mask;
+        int size;
+
+        Stripe(int slots) {
+            this.keys = new long[slots];
+            this.tats = new long[slots];
+            this.mask = slots - 1;
+        }
+
+        synchronized boolean tryAcquire(long key, int hash, long now, long interval) {
+            int slot = find(key, hash);
+            if (keys[slot] != key) {
+                if (keys[slot] == 0) {
+                    size++;
+                }
+                // New clients start with a full bucket.
+                keys[slot] = key;
+                tats[slot] = Long.MIN_VALUE;
+            }
+            long next = RateLimiter.admit(tats[slot], now, interval, window);
+            if (next == RateLimiter.REJECTED) {
+                return false;
+            }
+            tats[slot] = next;
+            return true;
+        }
+
+        // The key's slot, else the first free slot, else the slot that refills soonest.
+        private int find(long key, int hash) {
+            int free = -1;
+            int victim = -1;
+            for (int i = 0; i < PROBE_LIMIT; i++) {
+                int slot = (hash + i) & mask;
+                long slotKey = keys[slot];
+                if (slotKey == key) {
+                    return slot;
+                }
+                if (slotKey == 0) {
+                    if (free < 0) {
+                        free = slot;
+                    }
+                } else if (victim < 0 || tats[slot] < tats[victim]) {
+                    victim = slot;
+                }
+            }
+            return free >= 0 ? free : victim;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.lametro.lametro_tracker.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps how many requests run at once, at a limit that follows latency.
+ *
+ * By Little's law, work in flight is throughput times latency, so once the
+ * server is saturated, admitting more only lengthens queues. Completed
+ * requests are averaged over short windows and compared with a baseline
+ * learned while the server was not queueing. While recent latency stays
+ * within {@code TOLERANCE} of it the limit grows by its square root each
+ * window, and as queueing pushes latency past that it shrinks in
+ * proportion, down to half per window. Requests over the limit are turned
+ * away at once rather than queued.
+ *
+ * A server kept at its limit never shows its unqueued latency, so on
+ * first reaching it and after each hundred windows there, the limit drops
+ * to the floor for two windows to measure it again, as BBR's ProbeRTT does.
+ */
+public class ConcurrencyLimiter {
+
+    // Recent latency may be this many times the baseline before the limit shrinks.
+    private static final double TOLERANCE = 2.0;
+    // Windows over which the baseline follows latency down, and up while below the limit.
+    private static final int FALL_WINDOWS = 10;
+    private static final int RISE_WINDOWS = 600;
+    // Windows at the limit before it drops to the floor briefly to measure the baseline afresh.
+    private static final int PROBE_AFTER_WINDOWS = 100;
+    // Share of each window's new limit taken, to damp oscillation.
+    private static final double SMOOTHING = 0.2;
+    // A window closes only once it has this many samples.
+    private static final int MIN_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile int limit;
+
+    // Guarded by this.
+    private double estimate;
+    // Latency without queueing, in nanos.
+    private double baseline;
+    private int saturatedWindows;
+    private int probeWindows;
+    private long windowStart = Long.MIN_VALUE;
+    private long windowSum;
+    private int windowCount;
+    private int windowMaxInflight;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long windowNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowNanos;
+        this.estimate = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimate;
+    }
+
+    /**
+     * Takes a slot if fewer than the limit are in use. Every acquired slot
+     * must be given back with {@link #release}.
+     */
+    public boolean tryAcquire() {
+        int limit = this.limit;
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a slot held for {@code rttNanos}, counting that toward the
+     * latency, or not if it is negative.
+     */
+    public void release(long rttNanos, long now) {
+        int running = inflight.getAndDecrement();
+        if (rttNanos >= 0) {
+            sample(rttNanos, running, now);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private synchronized void sample(long rttNanos, int running, long now) {
+        if (windowStart == Long.MIN_VALUE) {
+            windowStart = now;
+        }
+        windowSum += rttNanos;
+        windowCount++;
+        windowMaxInflight = Math.max(windowMaxInflight, running);
+        if (now - windowStart < windowNanos || windowCount < MIN_SAMPLES) {
+            return;
+        }
+        update((double) windowSum / windowCount, windowMaxInflight);
+        windowStart = now;
+        windowSum = 0;
+        windowCount = 0;
+        windowMaxInflight = 0;
+    }
+
+    private void update(double shortRtt, int maxInflight) {
+        if (probeWindows > 0) {
+            // The first window drains requests admitted before the probe; the second is all at the floor.
+            if (--probeWindows == 0) {
+                baseline = shortRtt;
+                limit = (int) estimate;
+            }
+            return;
+        }
+        // Requests only queue near the limit, so latency well below it is the server's own and can be
+        // learned in either direction. Near it, the baseline may only fall, or queueing would creep into it.
+        boolean saturated = maxInflight >= estimate / 2;
+        saturatedWindows = saturated ? saturatedWindows + 1 : 0;
+        if (saturated && (baseline == 0 || saturatedWindows >= PROBE_AFTER_WINDOWS)) {
+            saturatedWindows = 0;
+            probeWindows = 2;
+            limit = minLimit;
+            return;
+        }
+        if (baseline == 0) {
+            baseline = shortRtt;
+        } else if (shortRtt < baseline) {
+            baseline += (shortRtt - baseline) / FALL_WINDOWS;
+        } else if (!saturated) {
+            baseline += (shortRtt - baseline) / RISE_WINDOWS;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baseline / shortRtt));
+        // Latency that is fine at a limit never approached says nothing about the next step up.
+        if (gradient == 1.0 && !saturated) {
+            return;
+        }
+        double next = estimate * gradient + Math.sqrt(estimate);
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate * (1 - SMOOTHING) + next * SMOOTHING));
+        limit = (int) estimate;
+    }
+}
@@ -0,0 +1,49 @@
+package com.lametro.lametro_tracker.config;
+
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.lametro.lametro_tracker.service.ClusterNode;
+import com.lametro.lametro_tracker.service.FeedSource;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.ReplayFeedSource;
+
+/**
+ * Picks where feeds come from: the upstream API by default, or recorded
+ * captures with lametro.feed.source=replay, which needs no API key. In a
+ * cluster, only the leader reads either and the others fetch from it.
+ */
+@Configuration
+public class FeedSourceConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "lametro.feed.source", havingValue = "live", matchIfMissing = true)
+    public FeedSource httpFeedSource(
+        @Value("${lametro.api.key}") String apiKey,
+        @Value("${lametro.feed.connect-timeout-ms:3000}") long connectTimeoutMillis,
+        @Value("${lametro.feed.request-timeout-ms:5000}") long requestTimeoutMillis,
+        ClusterNode cluster,
+        Environment environment
+    ) {
+        // Follows spring.threads.virtual.enabled, as Tomcat's request threads do.
+        return cluster.share(new HttpFeedSource(apiKey, connectTimeoutMillis, requestTimeoutMillis,
+            Threading.VIRTUAL.isActive(environment)));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "lametro.feed.source", havingValue = "replay")
+    public FeedSource replayFeedSource(
+        @Value("${lametro.replay.dir}") String dir,
+        @Value("${lametro.replay.speed:1}") double speed,
+        @Value("${lametro.replay.loop:false}") boolean loop,
+        ClusterNode cluster
+    ) {
+        return cluster.share(new ReplayFeedSource(Path.of(dir), speed, loop, System::currentTimeMillis));
+    }
+}
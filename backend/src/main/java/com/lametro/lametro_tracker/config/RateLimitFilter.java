@@ -1,7 +1,5 @@
 package com.lametro.lametro_tracker.config;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -9,58 +7,62 @@ import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import com.lametro.lametro_tracker.service.ClusterChangedEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import java.io.IOException;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
+// Ahead of AdmissionFilter, which takes the default lowest precedence.
 @Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
 public class RateLimitFilter implements Filter {
 
-    // Global bucket: 1000 requests per minute for all users combined.
-    private final Bucket globalBucket = Bucket.builder()
-        .addLimit(Bandwidth.builder().capacity(1000).refillGreedy(1000, Duration.ofMinutes(1)).build())
-        .build();
-
-    // Per-IP buckets: 100 requests per minute per IP.
-    // Each entry stores the bucket and the last access time.
-    private final Map<String, BucketWithTimestamp> ipBuckets = new ConcurrentHashMap<>();
+    // Clients tracked at once (16 bytes each).
+    private static final int MAX_TRACKED_CLIENTS = 65_536;
 
-    // How long before an unused bucket is eligible for cleanup (5 minutes).
-    private static final long BUCKET_EXPIRY_MINUTES = 5;
+    // Global limit: 1000 requests per minute for all users combined.
+    private final RateLimiter globalLimiter = new RateLimiter(1000, Duration.ofMinutes(1));
 
-    // Background thread to clean up old buckets.
-    private final ScheduledExecutorService cleanupScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Per-client limit: 100 requests per minute per IPv4 address or IPv6 /64.
+    // The table has a fixed size and evicts as it goes, so there is nothing to clean up.
+    private final ClientRateLimiter clientLimiter = new ClientRateLimiter(100, Duration.ofMinutes(1), MAX_TRACKED_CLIENTS);
 
-    // Wrapper class to store bucket with last access time.
-    private static class BucketWithTimestamp {
-        final Bucket bucket;
-        volatile Instant lastAccess;
+    private final Counter clientRejections;
+    private final Counter globalRejections;
 
-        BucketWithTimestamp(Bucket bucket) {
-            this.bucket = bucket;
-            this.lastAccess = Instant.now();
-        }
-
-        void touch() {
-            this.lastAccess = Instant.now();
-        }
+    public RateLimitFilter(MeterRegistry meters) {
+        this.clientRejections = rejections(meters, "client");
+        this.globalRejections = rejections(meters, "global");
+        Gauge.builder("lametro.ratelimit.tracked.clients", clientLimiter, ClientRateLimiter::size)
+            .description("Clients whose limits are currently tracked")
+            .register(meters);
     }
 
-    public RateLimitFilter() {
-        // Run cleanup every 5 minutes.
-        cleanupScheduler.scheduleAtFixedRate(this::cleanupOldBuckets, 5, 5, TimeUnit.MINUTES);
+    /**
+     * Behind a load balancer, each of the cluster's live replicas enforces
+     * an even share of every limit, so clients get the same limits however
+     * many replicas there are.
+     */
+    @EventListener
+    public void onClusterChanged(ClusterChangedEvent event) {
+        globalLimiter.setReplicas(event.getReplicas());
+        clientLimiter.setReplicas(event.getReplicas());
     }
 
-    private void cleanupOldBuckets() {
-        Instant cutoff = Instant.now().minus(Duration.ofMinutes(BUCKET_EXPIRY_MINUTES));
-        ipBuckets.entrySet().removeIf(entry -> entry.getValue().lastAccess.isBefore(cutoff));
+    /**
+     * Number of clients whose limits are currently tracked.
+     */
+    public int getTrackedClients() {
+        return clientLimiter.size();
     }
 
     @Override
@@ -76,19 +78,20 @@ public class RateLimitFilter implements Filter {
             return;
         }
 
-        String clientIp = getClientIp(httpRequest);
-        BucketWithTimestamp bucketWithTimestamp = ipBuckets.computeIfAbsent(clientIp, this::createIpBucket);
-        bucketWithTimestamp.touch();  // Update last access time.
+        long clientKey = ClientKeys.of(getClientIp(httpRequest));
+        long now = System.nanoTime();
 
         // Check per-IP limit first (more likely to be hit by abusive users).
-        if (!bucketWithTimestamp.bucket.tryConsume(1)) {
+        if (!clientLimiter.tryAcquire(clientKey, now)) {
+            clientRejections.increment();
             httpResponse.setStatus(429);
             httpResponse.getWriter().write("Rate limit exceeded. Please try again later.");
             return;
         }
 
         // Then check global limit.
-        if (!globalBucket.tryConsume(1)) {
+        if (!globalLimiter.tryAcquire(now)) {
+            globalRejections.increment();
             httpResponse.setStatus(429);
             httpResponse.getWriter().write("Rate limit exceeded. Please try again later.");
             return;
@@ -97,11 +100,11 @@ public class RateLimitFilter implements Filter {
         chain.doFilter(request, response);
     }
 
-    private BucketWithTimestamp createIpBucket(String ip) {
-        Bucket bucket = Bucket.builder()
-            .addLimit(Bandwidth.builder().capacity(100).refillGreedy(100, Duration.ofMinutes(1)).build())
-            .build();
-        return new BucketWithTimestamp(bucket);
+    private static Counter rejections(MeterRegistry meters, String limit) {
+        return Counter.builder("lametro.ratelimit.rejected")
+            .description("Requests answered 429, by the limit they hit")
+            .tag("limit", limit)
+            .register(meters);
     }
 
     private String getClientIp(HttpServletRequest request) {
@@ -109,7 +112,8 @@ public class RateLimitFilter implements Filter {
         String forwardedFor = request.getHeader("X-Forwarded-For");
         if (forwardedFor != null && !forwardedFor.isEmpty()) {
             // X-Forwarded-For can contain multiple IPs; first one is the client.
-            return forwardedFor.split(",")[0].trim();
+            int comma = forwardedFor.indexOf(',');
+            return (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
         }
         return request.getRemoteAddr();
     }
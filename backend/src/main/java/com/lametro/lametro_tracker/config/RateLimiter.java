@@ -0,0 +1,65 @@
+package com.lametro.lametro_tracker.config;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single lock-free rate limit using the generic cell rate algorithm.
+ *
+ * Instead of a token count plus a refill timestamp, GCRA keeps one number:
+ * the theoretical arrival time (TAT) at which the bucket would be full
+ * again. Each request pushes it forward by one emission interval and is
+ * allowed while it stays within the burst window of now. That fits in a
+ * single long, so it can be updated with one CAS.
+ */
+public class RateLimiter {
+
+    private final long baseInterval;
+    private final long window;
+    private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+    private volatile long interval;
+
+    /**
+     * Allows {@code limit} requests per {@code period}, all of which may
+     * arrive at once.
+     */
+    public RateLimiter(int limit, Duration period) {
+        this.baseInterval = period.toNanos() / limit;
+        this.interval = baseInterval;
+        this.window = baseInterval * limit;
+    }
+
+    /**
+     * Allows only this replica's share of the limit when the load balancer
+     * spreads requests evenly over {@code replicas} of them, so the limit
+     * holds for the group as a whole.
+     */
+    public void setReplicas(int replicas) {
+        interval = baseInterval * Math.max(1, replicas);
+    }
+
+    public boolean tryAcquire(long now) {
+        long interval = this.interval;
+        while (true) {
+            long current = tat.get();
+            long next = admit(current, now, interval, window);
+            if (next == REJECTED) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    static final long REJECTED = Long.MIN_VALUE;
+
+    /**
+     * Returns the TAT after admitting one request at {@code now}, or
+     * {@link #REJECTED} if the request is over the limit.
+     */
+    static long admit(long tat, long now, long interval, long window) {
+        long next = Math.max(tat, now) + interval;
+        return next - now <= window ? next : REJECTED;
+    }
+}
@@ -0,0 +1,29 @@
+package com.lametro.lametro_tracker.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+
+/**
+ * Realtime endpoints are served for the primary agency at /api/... and for
+ * any configured agency at /api/agencies/{agency}/...
+ */
+final class AgencyPaths {
+
+    static final String PREFIX = "/api/agencies/{agency}";
+
+    private AgencyPaths() {}
+
+    /**
+     * The agency named in the path, or the primary one for unscoped paths.
+     */
+    static Agency resolve(AgencyRegistry agencies, String id) {
+        Agency agency = agencies.get(id);
+        if (agency == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown agency " + id);
+        }
+        return agency;
+    }
+}
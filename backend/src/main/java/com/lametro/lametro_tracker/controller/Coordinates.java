@@ -0,0 +1,87 @@
+package com.lametro.lametro_tracker.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Parses and checks the coordinates of spatial query parameters, answering
+ * anything malformed with a 400.
+ */
+final class Coordinates {
+
+    // Largest radius any spatial query may ask for, in meters.
+    static final double MAX_RADIUS_METERS = 50_000;
+
+    private Coordinates() {}
+
+    /**
+     * Parses "lat,lon".
+     */
+    static double[] parsePoint(String name, String value) {
+        double[] point = parseNumbers(name, value, 2);
+        checkLatitude(name, point[0]);
+        checkLongitude(name, point[1]);
+        return point;
+    }
+
+    /**
+     * Parses "west,south,east,north". Boxes may not cross the antimeridian.
+     */
+    static double[] parseBox(String name, String value) {
+        double[] box = parseNumbers(name, value, 4);
+        checkLongitude(name, box[0]);
+        checkLatitude(name, box[1]);
+        checkLongitude(name, box[2]);
+        checkLatitude(name, box[3]);
+        if (box[0] > box[2] || box[1] > box[3]) {
+            throw badRequest(name + " must be west,south,east,north");
+        }
+        return box;
+    }
+
+    /**
+     * Returns the radius, or the default if none was given.
+     */
+    static double checkRadius(Double radius, double defaultMeters) {
+        double meters = radius == null ? defaultMeters : radius;
+        if (!(meters > 0 && meters <= MAX_RADIUS_METERS)) {
+            throw badRequest("radius must be more than 0 and at most " + (int) MAX_RADIUS_METERS + " meters");
+        }
+        return meters;
+    }
+
+    static void checkLatitude(String name, double lat) {
+        if (!(lat >= -90 && lat <= 90)) {
+            throw badRequest(name + " has a latitude out of range: " + lat);
+        }
+    }
+
+    static void checkLongitude(String name, double lon) {
+        if (!(lon >= -180 && lon <= 180)) {
+            throw badRequest(name + " has a longitude out of range: " + lon);
+        }
+    }
+
+    private static double[] parseNumbers(String name, String value, int count) {
+        String[] parts = value.split(",", -1);
+        if (parts.length != count) {
+            throw badRequest(name + " needs " + count + " comma-separated numbers");
+        }
+        double[] numbers = new double[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                numbers[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                numbers[i] = Double.NaN;
+            }
+            if (!Double.isFinite(numbers[i])) {
+                throw badRequest(name + " has an invalid number: " + parts[i]);
+            }
+        }
+        return numbers;
+    }
+
+    private static ResponseStatusException badRequest(String message) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, message);
+    }
+}
@@ -0,0 +1,94 @@
+package com.lametro.lametro_tracker.controller;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.lametro.lametro_tracker.model.ObservedArrival;
+import com.lametro.lametro_tracker.model.TrackPoint;
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+import com.lametro.lametro_tracker.service.HistoryStore;
+
+/**
+ * Recorded vehicle tracks and observed arrivals, for the primary agency at
+ * /api/history/... and for any agency at /api/agencies/{agency}/history/...
+ * Not found unless history is being recorded.
+ */
+@RestController
+public class HistoryController {
+
+    // Seconds queried back from to when the request doesn't give from, and at most.
+    private static final long DEFAULT_RANGE_SECONDS = 3_600;
+    private static final long MAX_RANGE_SECONDS = 86_400;
+
+    private final AgencyRegistry agencies;
+    private final HistoryStore history;
+
+    public HistoryController(AgencyRegistry agencies, HistoryStore history) {
+        this.agencies = agencies;
+        this.history = history;
+    }
+
+    /**
+     * Where the vehicle was between from and to (epoch seconds, the last
+     * hour by default), oldest first.
+     */
+    @GetMapping({"/api/history/vehicles/{vehicleId}", AgencyPaths.PREFIX + "/history/vehicles/{vehicleId}"})
+    public List<TrackPoint> getTrack(
+        @PathVariable(required = false) String agency,
+        @PathVariable String vehicleId,
+        @RequestParam(required = false) Long from,
+        @RequestParam(required = false) Long to
+    ) {
+        Agency resolved = resolve(agency);
+        long[] range = range(from, to);
+        return history.track(resolved.getId(), vehicleId, range[0], range[1]);
+    }
+
+    /**
+     * Trains that came to the stations or platforms between from and to,
+     * in order, with the headway each followed the previous one at the same
+     * platform, on its route and direction, by. Optionally only one route,
+     * or one direction.
+     */
+    @GetMapping({"/api/history/headways", AgencyPaths.PREFIX + "/history/headways"})
+    public List<ObservedArrival> getHeadways(
+        @PathVariable(required = false) String agency,
+        @RequestParam String stopIds,
+        @RequestParam(required = false) String routeId,
+        @RequestParam(required = false) Integer directionId,
+        @RequestParam(required = false) Long from,
+        @RequestParam(required = false) Long to
+    ) {
+        Agency resolved = resolve(agency);
+        long[] range = range(from, to);
+        List<String> platforms = resolved.getSchedule().resolveStopIds(stopIds);
+        if (platforms == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "stopIds must name at least one stop");
+        }
+        return history.arrivals(resolved.getId(), platforms, routeId, directionId, range[0], range[1]);
+    }
+
+    private Agency resolve(String agency) {
+        if (!history.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "History is not being recorded");
+        }
+        return AgencyPaths.resolve(agencies, agency);
+    }
+
+    private static long[] range(Long from, Long to) {
+        long end = to == null ? System.currentTimeMillis() / 1000 : to;
+        long start = from == null ? end - DEFAULT_RANGE_SECONDS : from;
+        if (start >= end || end - start > MAX_RANGE_SECONDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "from must be before to, and at most " + MAX_RANGE_SECONDS + " seconds before it");
+        }
+        return new long[] {start, end};
+    }
+}
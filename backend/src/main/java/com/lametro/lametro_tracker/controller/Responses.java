@@ -0,0 +1,66 @@
+package com.lametro.lametro_tracker.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.lametro.lametro_tracker.service.BodyFormat;
+import com.lametro.lametro_tracker.service.PreparedBody;
+
+/**
+ * Builds responses for pre-rendered bodies.
+ */
+final class Responses {
+
+    private static final MediaType PROTOBUF = MediaType.parseMediaType(BodyFormat.PROTOBUF.getMediaType());
+
+    private Responses() {}
+
+    /**
+     * Sends the body in the best encoding the client accepts. Spring answers a
+     * matching If-None-Match or If-Modified-Since with a 304 before the body
+     * is written.
+     *
+     * @param etag strong validator for the identity encoding, or null
+     * @param lastModified epoch millis, or 0 if unknown; ignored when etag is null
+     */
+    static ResponseEntity<byte[]> prepared(PreparedBody body, String etag, long lastModified,
+            CacheControl cacheControl, String acceptEncoding) {
+        return prepared(body, null, etag, lastModified, cacheControl, acceptEncoding);
+    }
+
+    /**
+     * As above, for a body rendered in the format negotiated from the
+     * request's Accept header.
+     */
+    static ResponseEntity<byte[]> prepared(PreparedBody body, BodyFormat format, String etag, long lastModified,
+            CacheControl cacheControl, String acceptEncoding) {
+        String coding = body.negotiate(acceptEncoding);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+            .contentType(format == BodyFormat.PROTOBUF ? PROTOBUF : MediaType.APPLICATION_JSON)
+            .cacheControl(cacheControl);
+        if (format == null) {
+            builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        } else {
+            builder.varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (etag != null) {
+            // Each format and content coding is a distinct representation, so give it its own tag.
+            if (format != null && !format.getSuffix().isEmpty()) {
+                etag = etag.substring(0, etag.length() - 1) + "-" + format.getSuffix() + "\"";
+            }
+            if (coding != null) {
+                etag = etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+            }
+            builder.eTag(etag);
+            if (lastModified > 0) {
+                builder.lastModified(lastModified);
+            }
+        }
+        if (coding != null) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding);
+        }
+        return builder.body(body.bytes(coding));
+    }
+}
@@ -0,0 +1,151 @@
+package com.lametro.lametro_tracker.controller;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.lametro.lametro_tracker.model.TripInfo;
+import com.lametro.lametro_tracker.service.LineGeometryService;
+import com.lametro.lametro_tracker.service.PreparedBody;
+import com.lametro.lametro_tracker.service.StaticGtfs;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Station, route, trip and line geometry data from the static GTFS
+ * schedule. It only changes on deploy, so responses are rendered once and
+ * may be cached by clients and CDNs for an hour.
+ */
+@RestController
+public class StaticGtfsController {
+
+    // Defaults and bounds for /api/static/stations/nearest.
+    private static final int DEFAULT_NEAREST_LIMIT = 5;
+    private static final int MAX_NEAREST_LIMIT = 50;
+    private static final double DEFAULT_NEAREST_RADIUS_METERS = 5_000;
+
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+
+    private final StaticGtfsService staticGtfsService;
+    private final LineGeometryService lineGeometryService;
+    private final JsonMapper jsonMapper;
+    private final Map<String, PreparedBody> bodies = new ConcurrentHashMap<>();
+    private final PreparedBody emptyList;
+
+    public StaticGtfsController(StaticGtfsService staticGtfsService, LineGeometryService lineGeometryService,
+            JsonMapper jsonMapper) {
+        this.staticGtfsService = staticGtfsService;
+        this.lineGeometryService = lineGeometryService;
+        this.jsonMapper = jsonMapper;
+        this.emptyList = PreparedBody.of(jsonMapper.writeValueAsBytes(List.of()));
+    }
+
+    @GetMapping("/api/static/stations")
+    public ResponseEntity<byte[]> getStations(
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        return respond("stations", staticGtfsService::getStations, acceptEncoding);
+    }
+
+    /**
+     * Up to limit stations within radius meters of the point, nearest first,
+     * each with its distance in meters.
+     */
+    @GetMapping("/api/static/stations/nearest")
+    public ResponseEntity<byte[]> getNearestStations(
+        @RequestParam double lat,
+        @RequestParam double lon,
+        @RequestParam(defaultValue = "" + DEFAULT_NEAREST_LIMIT) int limit,
+        @RequestParam(required = false) Double radius,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        Coordinates.checkLatitude("lat", lat);
+        Coordinates.checkLongitude("lon", lon);
+        double meters = Coordinates.checkRadius(radius, DEFAULT_NEAREST_RADIUS_METERS);
+        if (limit < 1 || limit > MAX_NEAREST_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be 1 to " + MAX_NEAREST_LIMIT);
+        }
+        // Every point is different, so render each time.
+        return respond(PreparedBody.of(jsonMapper.writeValueAsBytes(
+            staticGtfsService.getNearestStations(lat, lon, meters, limit))), acceptEncoding);
+    }
+
+    @GetMapping("/api/static/routes")
+    public ResponseEntity<byte[]> getRoutes(
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        return respond("routes", staticGtfsService::getRoutes, acceptEncoding);
+    }
+
+    /**
+     * Every line, simplified for the given zoom level. Zooms outside the
+     * served range get the nearest one.
+     */
+    @GetMapping("/api/static/lines")
+    public ResponseEntity<byte[]> getLines(
+        @RequestParam(defaultValue = "" + LineGeometryService.MAX_ZOOM) int zoom,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        int level = Math.max(LineGeometryService.MIN_ZOOM, Math.min(LineGeometryService.MAX_ZOOM, zoom));
+        return respond("lines/" + level, () -> lineGeometryService.getLines(level), acceptEncoding);
+    }
+
+    /**
+     * The lines crossing one XYZ map tile, simplified for its zoom level.
+     */
+    @GetMapping("/api/static/lines/{z}/{x}/{y}")
+    public ResponseEntity<byte[]> getLineTile(
+        @PathVariable int z,
+        @PathVariable int x,
+        @PathVariable int y,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        if (z < LineGeometryService.MIN_ZOOM || z > LineGeometryService.MAX_ZOOM) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                "Line tiles cover zooms " + LineGeometryService.MIN_ZOOM + " to " + LineGeometryService.MAX_ZOOM);
+        }
+        // Only tiles with lines are cached, so arbitrary coordinates can't grow the cache.
+        if (!lineGeometryService.hasTile(z, x, y)) {
+            return respond(emptyList, acceptEncoding);
+        }
+        return respond("lines/" + z + "/" + x + "/" + y, () -> lineGeometryService.getTile(z, x, y), acceptEncoding);
+    }
+
+    @GetMapping("/api/static/trips/{tripId}")
+    public ResponseEntity<byte[]> getTrip(
+        @PathVariable String tripId,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        TripInfo trip = staticGtfsService.getTrip(tripId);
+        if (trip == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown trip " + tripId);
+        }
+        // Trip bodies are tiny and unbounded in number, so render them each time.
+        return respond(PreparedBody.of(jsonMapper.writeValueAsBytes(trip)), acceptEncoding);
+    }
+
+    private ResponseEntity<byte[]> respond(String key, Supplier<Object> view, String acceptEncoding) {
+        PreparedBody body = bodies.computeIfAbsent(key, k -> PreparedBody.of(jsonMapper.writeValueAsBytes(view.get())));
+        return respond(body, acceptEncoding);
+    }
+
+    private ResponseEntity<byte[]> respond(PreparedBody body, String acceptEncoding) {
+        StaticGtfs gtfs = staticGtfsService.getGtfs();
+        String etag = gtfs.isEmpty() ? null : "\"" + Long.toHexString(gtfs.getVersion()) + "\"";
+        return Responses.prepared(body, etag, 0, CACHE_CONTROL, acceptEncoding);
+    }
+}
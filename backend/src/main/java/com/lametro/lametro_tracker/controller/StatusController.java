@@ -0,0 +1,69 @@
+package com.lametro.lametro_tracker.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.lametro.lametro_tracker.model.FeedStatus;
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.FeedSnapshot;
+import com.lametro.lametro_tracker.service.FetchStats;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+
+/**
+ * Upstream fetch health and the age of the snapshots being served, for
+ * every agency's feeds.
+ */
+@RestController
+public class StatusController {
+
+    private final AgencyRegistry agencies;
+    private final FeedClient feedClient;
+
+    public StatusController(AgencyRegistry agencies, FeedClient feedClient) {
+        this.agencies = agencies;
+        this.feedClient = feedClient;
+    }
+
+    /**
+     * IDs of the agencies served under /api/agencies/{agency}, primary first.
+     */
+    @GetMapping("/api/agencies")
+    public List<String> getAgencies() {
+        return agencies.getAll().stream().map(Agency::getId).toList();
+    }
+
+    @GetMapping("/api/status")
+    public List<FeedStatus> getStatus() {
+        List<FeedStatus> statuses = new ArrayList<>();
+        for (Agency agency : agencies.getAll()) {
+            GtfsRtService realtime = agency.getRealtime();
+            statuses.add(status(realtime, GtfsRtService.VEHICLE_POSITIONS_FEED, realtime.getVehicleSnapshot()));
+            statuses.add(status(realtime, GtfsRtService.TRIP_UPDATES_FEED, realtime.getReportedTripUpdateSnapshot()));
+        }
+        return statuses;
+    }
+
+    private FeedStatus status(GtfsRtService realtime, String feed, FeedSnapshot<?> snapshot) {
+        String feedName = realtime.feedName(feed);
+        FetchStats stats = feedClient.getStats(feedName);
+        return new FeedStatus(
+            realtime.getAgency(),
+            feed,
+            feedClient.getBreaker(feedName).getState().name(),
+            stats.getSuccesses(),
+            stats.getFailures(),
+            stats.getRejections(),
+            stats.getLastLatencyMillis(),
+            stats.getLastPayloadBytes(),
+            stats.getTotalBytes(),
+            stats.getLastSuccessAt(),
+            Long.toHexString(snapshot.getVersion()),
+            snapshot.getLastModified()
+        );
+    }
+}
@@ -0,0 +1,46 @@
+package com.lametro.lametro_tracker.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+import com.lametro.lametro_tracker.service.SnapshotStreams;
+
+/**
+ * Server-Sent Events versions of /api/vehicles and /api/trip-updates. A
+ * message is pushed whenever a new snapshot changes what the subscriber
+ * asked for, instead of the client polling. Scoped to an agency the same
+ * way the endpoints they mirror are.
+ */
+@RestController
+public class StreamController {
+
+    private final SnapshotStreams streams;
+    private final AgencyRegistry agencies;
+
+    public StreamController(SnapshotStreams streams, AgencyRegistry agencies) {
+        this.streams = streams;
+        this.agencies = agencies;
+    }
+
+    @GetMapping({"/api/stream/vehicles", AgencyPaths.PREFIX + "/stream/vehicles"})
+    public SseEmitter streamVehicles(@PathVariable(required = false) String agency) {
+        return streams.subscribeVehicles(AgencyPaths.resolve(agencies, agency).getRealtime());
+    }
+
+    @GetMapping({"/api/stream/arrivals", AgencyPaths.PREFIX + "/stream/arrivals"})
+    public SseEmitter streamArrivals(
+        @PathVariable(required = false) String agency,
+        @RequestParam(required = false) String routeId,
+        @RequestParam(required = false) Integer directionId,
+        @RequestParam(required = false) String stopIds
+    ) {
+        Agency resolved = AgencyPaths.resolve(agencies, agency);
+        return streams.subscribeArrivals(resolved.getRealtime(), routeId, directionId,
+            resolved.getSchedule().resolveStopIds(stopIds));
+    }
+}
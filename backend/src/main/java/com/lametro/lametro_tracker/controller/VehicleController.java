@@ -1,65 +1,209 @@
 package com.lametro.lametro_tracker.controller;
 
-import java.util.Arrays;
+import java.time.Duration;
 import java.util.List;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
-import com.lametro.lametro_tracker.model.StopTimeUpdate;
 import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+import com.lametro.lametro_tracker.service.BodyFormat;
+import com.lametro.lametro_tracker.service.FeedSnapshot;
 import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.PreparedBody;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+import com.lametro.lametro_tracker.service.VehicleTracker;
 
-
+/**
+ * Realtime vehicles and arrivals, for the primary agency at /api/... and for
+ * any agency at /api/agencies/{agency}/...
+ */
 @RestController
 public class VehicleController {
 
-    private final GtfsRtService gtfsRtService;
+    // Radius for near= queries that don't give one, in meters.
+    private static final double DEFAULT_RADIUS_METERS = 1_000;
+
+    // Journeys returned when the query doesn't say, and at most.
+    private static final int DEFAULT_JOURNEYS = 3;
+    private static final int MAX_JOURNEYS = 10;
 
-    public VehicleController(GtfsRtService gtfsRtService) {
-        this.gtfsRtService = gtfsRtService;
+    private final AgencyRegistry agencies;
+    private final SnapshotRenderer renderer;
+
+    public VehicleController(AgencyRegistry agencies, SnapshotRenderer renderer) {
+        this.agencies = agencies;
+        this.renderer = renderer;
     }
-    
-    @GetMapping("/api/vehicles")
-    public List<VehiclePosition> getVehiclePositions(){
-        return gtfsRtService.getVehiclePositions();
+
+    /**
+     * Every vehicle, or only those inside bbox=west,south,east,north, or only
+     * those within radius meters of near=lat,lon, nearest first. Like the
+     * arrivals below, sent as compact protobuf (see lametro.proto) when the
+     * client accepts application/x-protobuf.
+     */
+    @GetMapping({"/api/vehicles", AgencyPaths.PREFIX + "/vehicles"})
+    public ResponseEntity<byte[]> getVehiclePositions(
+        @PathVariable(required = false) String agency,
+        @RequestParam(required = false) String bbox,
+        @RequestParam(required = false) String near,
+        @RequestParam(required = false) Double radius,
+        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        VehicleSnapshot snapshot = AgencyPaths.resolve(agencies, agency).getRealtime().getVehicleSnapshot();
+        BodyFormat format = BodyFormat.negotiate(accept);
+        if (bbox != null && near != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either bbox or near, not both");
+        }
+        if (bbox != null) {
+            double[] box = Coordinates.parseBox("bbox", bbox);
+            return respond(snapshot, renderer.vehicles(snapshot.findWithin(box[1], box[0], box[3], box[2]), format),
+                format, acceptEncoding);
+        }
+        if (near != null) {
+            double[] point = Coordinates.parsePoint("near", near);
+            double meters = Coordinates.checkRadius(radius, DEFAULT_RADIUS_METERS);
+            return respond(snapshot, renderer.vehicles(snapshot.findNear(point[0], point[1], meters), format),
+                format, acceptEncoding);
+        }
+        return respond(snapshot, renderer.vehicles(snapshot, format), format, acceptEncoding);
+    }
+
+    /**
+     * Vehicles added, changed or removed since the snapshot version the client
+     * last saw (the ETag of /api/vehicles, or the version of the last delta).
+     * Falls back to the full list when that version is no longer retained.
+     */
+    @GetMapping({"/api/vehicles/delta", AgencyPaths.PREFIX + "/vehicles/delta"})
+    public ResponseEntity<byte[]> getVehicleDelta(
+        @PathVariable(required = false) String agency,
+        @RequestParam(required = false) String since,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        GtfsRtService realtime = AgencyPaths.resolve(agencies, agency).getRealtime();
+        var snapshot = realtime.getVehicleSnapshot();
+        Long sinceVersion = parseVersion(since);
+        FeedSnapshot<VehiclePosition> base = sinceVersion == null ? null : realtime.getVehicleSnapshot(sinceVersion);
+        return respond(snapshot, renderer.vehicleDelta(snapshot, base), acceptEncoding);
+    }
+
+    /**
+     * Vehicles moved along their shapes to where they should be now, for
+     * clients that animate between polls without following shapes
+     * themselves. Changes every second, so it is only cached that long.
+     */
+    @GetMapping({"/api/vehicles/predicted", AgencyPaths.PREFIX + "/vehicles/predicted"})
+    public ResponseEntity<byte[]> getPredictedVehiclePositions(
+        @PathVariable(required = false) String agency,
+        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ){
+        Agency resolved = AgencyPaths.resolve(agencies, agency);
+        var snapshot = resolved.getRealtime().getVehicleSnapshot();
+        BodyFormat format = BodyFormat.negotiate(accept);
+        // Nothing moves past the horizon, which also bounds the bodies kept per snapshot.
+        long at = Math.min(System.currentTimeMillis() / 1000,
+            snapshot.getLastModified() / 1000 + VehicleTracker.PREDICTION_HORIZON_SECONDS);
+        return Responses.prepared(renderer.predictedVehicles(snapshot, at, resolved.getTracker(), format), format,
+            null, 0, CacheControl.maxAge(Duration.ofSeconds(1)), acceptEncoding);
     }
 
-    @GetMapping("/api/trip-updates")
-    public List<StopTimeUpdate> getStopTimeUpdates(
+    @GetMapping({"/api/trip-updates", AgencyPaths.PREFIX + "/trip-updates"})
+    public ResponseEntity<byte[]> getStopTimeUpdates(
+        @PathVariable(required = false) String agency,
         @RequestParam(required = false) String routeId,
         @RequestParam(required = false) Integer directionId,
-        @RequestParam(required = false) String stopIds
+        @RequestParam(required = false) String stopIds,
+        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
     ){
-        List<StopTimeUpdate> updates = gtfsRtService.getTripUpdates();
-
-        // Parse comma-separated stop IDs into prefixes for matching.
-        List<String> stopIdPrefixes = null;
-        if (stopIds != null && !stopIds.isEmpty()) {
-            stopIdPrefixes = Arrays.stream(stopIds.split(","))
-                .map(id -> id.endsWith("S") ? id.substring(0, id.length() - 1) : id)
-                .toList();
+        Agency resolved = AgencyPaths.resolve(agencies, agency);
+        // Station IDs stand for all of their platforms.
+        List<String> platformStopIds = resolved.getSchedule().resolveStopIds(stopIds);
+        TripUpdateSnapshot snapshot = resolved.getRealtime().getTripUpdateSnapshot();
+        BodyFormat format = BodyFormat.negotiate(accept);
+        return respond(snapshot, renderer.arrivals(snapshot, routeId, directionId, platformStopIds, format), format,
+            acceptEncoding);
+    }
+
+    @GetMapping({"/api/trip-details", AgencyPaths.PREFIX + "/trip-details"})
+    public ResponseEntity<byte[]> getTripDetails(
+        @PathVariable(required = false) String agency,
+        @RequestParam String tripId,
+        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        TripUpdateSnapshot snapshot = AgencyPaths.resolve(agencies, agency).getRealtime().getTripUpdateSnapshot();
+        BodyFormat format = BodyFormat.negotiate(accept);
+        return respond(snapshot, renderer.trip(snapshot, tripId, format), format, acceptEncoding);
+    }
+
+    /**
+     * The next journeys from one station to another, each a direct trip or
+     * two with a transfer between them, in departure order. Boarding from
+     * after (epoch seconds) or now. Either end may be a station or platform.
+     */
+    @GetMapping({"/api/journeys", AgencyPaths.PREFIX + "/journeys"})
+    public ResponseEntity<byte[]> getJourneys(
+        @PathVariable(required = false) String agency,
+        @RequestParam String from,
+        @RequestParam String to,
+        @RequestParam(required = false) Long after,
+        @RequestParam(required = false) Integer limit,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        int count = limit == null ? DEFAULT_JOURNEYS : limit;
+        if (count < 1 || count > MAX_JOURNEYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_JOURNEYS);
+        }
+        TripUpdateSnapshot snapshot = AgencyPaths.resolve(agencies, agency).getRealtime().getTripUpdateSnapshot();
+        if (after != null) {
+            return respond(snapshot, renderer.journeys(snapshot, from, to, after, count), acceptEncoding);
         }
-        
-        final List<String> prefixes = stopIdPrefixes;
-
-        return updates.stream()
-            .filter(u -> routeId == null || u.getRouteId().equals(routeId))
-            .filter(u -> directionId == null || u.getDirectionId() == directionId)
-            .filter(u -> prefixes == null || prefixes.stream().anyMatch(p -> u.getStopId().startsWith(p)))
-            .sorted((a, b) -> Long.compare(a.getArrivalTime(), b.getArrivalTime()))
-            .limit(4)
-            .toList();
+        // Trains leaving drop out as time passes, so this changes between snapshots too.
+        PreparedBody body = renderer.journeys(snapshot, from, to, System.currentTimeMillis() / 1000, count);
+        return Responses.prepared(body, null, 0, CacheControl.maxAge(Duration.ofSeconds(1)), acceptEncoding);
+    }
+
+    // Accepts a bare hex version or any ETag we issued for it.
+    private static Long parseVersion(String version) {
+        if (version == null) {
+            return null;
+        }
+        String hex = version.replace("W/", "").replace("\"", "");
+        int codingSuffix = hex.indexOf('-');
+        if (codingSuffix >= 0) {
+            hex = hex.substring(0, codingSuffix);
+        }
+        try {
+            return Long.parseUnsignedLong(hex, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Responses only change when the snapshot does, so tag them with its version.
+    // no-cache makes clients revalidate each poll.
+    private static ResponseEntity<byte[]> respond(FeedSnapshot<?> snapshot, PreparedBody body, String acceptEncoding) {
+        return respond(snapshot, body, null, acceptEncoding);
     }
 
-    @GetMapping("/api/trip-details")
-    public List<StopTimeUpdate> getTripDetails(@RequestParam String tripId) {
-        List<StopTimeUpdate> updates = gtfsRtService.getTripUpdates();
-        
-        return updates.stream()
-            .filter(u -> u.getTripId().equals(tripId))
-            .sorted((a, b) -> Long.compare(a.getArrivalTime(), b.getArrivalTime()))
-            .toList();
+    private static ResponseEntity<byte[]> respond(FeedSnapshot<?> snapshot, PreparedBody body, BodyFormat format,
+            String acceptEncoding) {
+        return Responses.prepared(body, format, snapshot.getETag(), snapshot.getLastModified(), CacheControl.noCache(),
+            acceptEncoding);
     }
 }
@@ -0,0 +1,70 @@
+package com.lametro.lametro_tracker.model;
+
+public class FeedStatus {
+    private String agency;
+    private String feed;
+    private String circuitState;
+    private long successes;
+    private long failures;
+    private long rejections;
+    private long lastLatencyMillis;
+    private long lastPayloadBytes;
+    private long totalBytes;
+    private long lastSuccessAt;
+    private String snapshotVersion;
+    private long snapshotLastModified;
+
+    public FeedStatus(String agency, String feed, String circuitState, long successes, long failures, long rejections,
+            long lastLatencyMillis, long lastPayloadBytes, long totalBytes, long lastSuccessAt,
+            String snapshotVersion, long snapshotLastModified) {
+        this.agency = agency;
+        this.feed = feed;
+        this.circuitState = circuitState;
+        this.successes = successes;
+        this.failures = failures;
+        this.rejections = rejections;
+        this.lastLatencyMillis = lastLatencyMillis;
+        this.lastPayloadBytes = lastPayloadBytes;
+        this.totalBytes = totalBytes;
+        this.lastSuccessAt = lastSuccessAt;
+        this.snapshotVersion = snapshotVersion;
+        this.snapshotLastModified = snapshotLastModified;
+    }
+
+    public String getAgency(){
+        return agency;
+    }
+    public String getFeed(){
+        return feed;
+    }
+    public String getCircuitState(){
+        return circuitState;
+    }
+    public long getSuccesses(){
+        return successes;
+    }
+    public long getFailures(){
+        return failures;
+    }
+    public long getRejections(){
+        return rejections;
+    }
+    public long getLastLatencyMillis(){
+        return lastLatencyMillis;
+    }
+    public long getLastPayloadBytes(){
+        return lastPayloadBytes;
+    }
+    public long getTotalBytes(){
+        return totalBytes;
+    }
+    public long getLastSuccessAt(){
+        return lastSuccessAt;
+    }
+    public String getSnapshotVersion(){
+        return snapshotVersion;
+    }
+    public long getSnapshotLastModified(){
+        return snapshotLastModified;
+    }
+}
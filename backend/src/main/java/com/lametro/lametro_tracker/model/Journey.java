@@ -0,0 +1,26 @@
+package com.lametro.lametro_tracker.model;
+
+import java.util.List;
+
+public class Journey {
+    // One leg for a direct trip, two with a transfer.
+    private List<JourneyLeg> legs;
+
+    public Journey(List<JourneyLeg> legs) {
+        this.legs = List.copyOf(legs);
+    }
+
+    public List<JourneyLeg> getLegs(){
+        return legs;
+    }
+    public long getDepartureTime(){
+        return legs.get(0).getDepartureTime();
+    }
+    public long getArrivalTime(){
+        return legs.get(legs.size() - 1).getArrivalTime();
+    }
+    public int getTransfers(){
+        return legs.size() - 1;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.lametro.lametro_tracker.model;
+
+public class JourneyLeg {
+    private String tripId;
+    private String routeId;
+    private int directionId;
+    // Platforms boarded and left at.
+    private String fromStopId;
+    private String toStopId;
+    // Predicted arrival at each platform, in epoch seconds.
+    private long departureTime;
+    private long arrivalTime;
+
+    public JourneyLeg(String tripId, String routeId, int directionId, String fromStopId, long departureTime,
+            String toStopId, long arrivalTime) {
+        this.tripId = tripId;
+        this.routeId = routeId;
+        this.directionId = directionId;
+        this.fromStopId = fromStopId;
+        this.departureTime = departureTime;
+        this.toStopId = toStopId;
+        this.arrivalTime = arrivalTime;
+    }
+
+    public String getTripId(){
+        return tripId;
+    }
+    public String getRouteId(){
+        return routeId;
+    }
+    public int getDirectionId(){
+        return directionId;
+    }
+    public String getFromStopId(){
+        return fromStopId;
+    }
+    public String getToStopId(){
+        return toStopId;
+    }
+    public long getDepartureTime(){
+        return departureTime;
+    }
+    public long getArrivalTime(){
+        return arrivalTime;
+    }
+
+}
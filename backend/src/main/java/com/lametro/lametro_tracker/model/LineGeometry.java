@@ -0,0 +1,27 @@
+package com.lametro.lametro_tracker.model;
+
+import java.util.List;
+
+public class LineGeometry {
+    private String routeId;
+    private String color;
+    // Encoded polylines (precision 1e5, lat/lon order), one per unbroken run.
+    private List<String> polylines;
+
+    public LineGeometry(String routeId, String color, List<String> polylines) {
+        this.routeId = routeId;
+        this.color = color;
+        this.polylines = polylines;
+    }
+
+    public String getRouteId(){
+        return routeId;
+    }
+    public String getColor(){
+        return color;
+    }
+    public List<String> getPolylines(){
+        return polylines;
+    }
+
+}
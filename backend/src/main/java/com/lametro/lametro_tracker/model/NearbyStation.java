@@ -0,0 +1,18 @@
+package com.lametro.lametro_tracker.model;
+
+import java.util.List;
+
+public class NearbyStation extends Station {
+    // Straight-line meters from the queried point.
+    private int distance;
+
+    public NearbyStation(String stopId, String name, double lat, double lon, List<String> stopIds, int distance) {
+        super(stopId, name, lat, lon, stopIds);
+        this.distance = distance;
+    }
+
+    public int getDistance(){
+        return distance;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.lametro.lametro_tracker.model;
+
+public class ObservedArrival {
+    private String tripId;
+    private String routeId;
+    private int directionId;
+    private String stopId;
+    // Epoch seconds, as last predicted before the train got there.
+    private long arrivalTime;
+    // Seconds since the previous arrival of the same route and direction, null for the first.
+    private Long headway;
+
+    public ObservedArrival(String tripId, String routeId, int directionId, String stopId, long arrivalTime, Long headway) {
+        this.tripId = tripId;
+        this.routeId = routeId;
+        this.directionId = directionId;
+        this.stopId = stopId;
+        this.arrivalTime = arrivalTime;
+        this.headway = headway;
+    }
+
+    public String getTripId(){
+        return tripId;
+    }
+    public String getRouteId(){
+        return routeId;
+    }
+    public int getDirectionId(){
+        return directionId;
+    }
+    public String getStopId(){
+        return stopId;
+    }
+    public long getArrivalTime(){
+        return arrivalTime;
+    }
+    public Long getHeadway(){
+        return headway;
+    }
+}
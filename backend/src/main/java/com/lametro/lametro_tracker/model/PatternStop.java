@@ -0,0 +1,24 @@
+package com.lametro.lametro_tracker.model;
+
+public class PatternStop {
+    private String stopId;
+    private String name;
+    private String platformStopId;
+
+    public PatternStop(String stopId, String name, String platformStopId) {
+        this.stopId = stopId;
+        this.name = name;
+        this.platformStopId = platformStopId;
+    }
+
+    public String getStopId(){
+        return stopId;
+    }
+    public String getName(){
+        return name;
+    }
+    public String getPlatformStopId(){
+        return platformStopId;
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.lametro.lametro_tracker.model;
+
+import java.util.List;
+
+public class Route {
+    private String routeId;
+    private String name;
+    private String color;
+    // Stations in travel order, indexed by direction ID.
+    private List<List<PatternStop>> stopPatterns;
+
+    public Route(String routeId, String name, String color, List<List<PatternStop>> stopPatterns) {
+        this.routeId = routeId;
+        this.name = name;
+        this.color = color;
+        this.stopPatterns = stopPatterns;
+    }
+
+    public String getRouteId(){
+        return routeId;
+    }
+    public String getName(){
+        return name;
+    }
+    public String getColor(){
+        return color;
+    }
+    public List<List<PatternStop>> getStopPatterns(){
+        return stopPatterns;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.lametro.lametro_tracker.model;
+
+import java.util.List;
+
+public class Station {
+    private String stopId;
+    private String name;
+    private double lat;
+    private double lon;
+    private List<String> stopIds;
+
+    public Station(String stopId, String name, double lat, double lon, List<String> stopIds) {
+        this.stopId = stopId;
+        this.name = name;
+        this.lat = lat;
+        this.lon = lon;
+        this.stopIds = stopIds;
+    }
+
+    public String getStopId(){
+        return stopId;
+    }
+    public String getName(){
+        return name;
+    }
+    public double getLat(){
+        return lat;
+    }
+    public double getLon(){
+        return lon;
+    }
+    public List<String> getStopIds(){
+        return stopIds;
+    }
+
+}
@@ -6,13 +6,23 @@ public class StopTimeUpdate {
     private int directionId;
     private String stopId;
     private long arrivalTime;
+    private Source source;
+    // Epoch seconds of the report the arrival was derived from; its age is now minus this.
+    private long observedAt;
 
     public StopTimeUpdate(String tripId, String routeId, int directionId, String stopId, long arrivalTime) {
+        this(tripId, routeId, directionId, stopId, arrivalTime, Source.REALTIME, 0);
+    }
+
+    public StopTimeUpdate(String tripId, String routeId, int directionId, String stopId, long arrivalTime,
+            Source source, long observedAt) {
         this.tripId = tripId;
         this.routeId = routeId;
         this.directionId = directionId;
         this.stopId = stopId;
         this.arrivalTime = arrivalTime;
+        this.source = source;
+        this.observedAt = observedAt;
     }
 
     public String getTripId(){
@@ -30,5 +40,23 @@ public class StopTimeUpdate {
     public long getArrivalTime(){
         return arrivalTime;
     }
+    public Source getSource(){
+        return source;
+    }
+    public long getObservedAt(){
+        return observedAt;
+    }
+
+    /**
+     * Where an arrival time comes from.
+     */
+    public enum Source {
+        // Reported for this stop in the trip updates feed.
+        REALTIME,
+        // The trip's last reported delay carried on to a later stop along the schedule.
+        PROPAGATED,
+        // The vehicle's position on its shape plus scheduled running time, for trips without updates.
+        VEHICLE
+    }
 
 }
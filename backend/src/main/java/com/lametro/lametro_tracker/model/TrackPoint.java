@@ -0,0 +1,45 @@
+package com.lametro.lametro_tracker.model;
+
+public class TrackPoint {
+    // Epoch seconds of the position report.
+    private long timestamp;
+    private double latitude;
+    private double longitude;
+    private float bearing;
+    private String tripId;
+    private String routeId;
+    private int directionId;
+
+    public TrackPoint(long timestamp, double latitude, double longitude, float bearing, String tripId, String routeId,
+            int directionId) {
+        this.timestamp = timestamp;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.bearing = bearing;
+        this.tripId = tripId;
+        this.routeId = routeId;
+        this.directionId = directionId;
+    }
+
+    public long getTimestamp(){
+        return timestamp;
+    }
+    public double getLatitude(){
+        return latitude;
+    }
+    public double getLongitude(){
+        return longitude;
+    }
+    public float getBearing(){
+        return bearing;
+    }
+    public String getTripId(){
+        return tripId;
+    }
+    public String getRouteId(){
+        return routeId;
+    }
+    public int getDirectionId(){
+        return directionId;
+    }
+}
@@ -0,0 +1,29 @@
+package com.lametro.lametro_tracker.model;
+
+public class TripInfo {
+    private String tripId;
+    private String routeId;
+    private int directionId;
+    private String shapeId;
+
+    public TripInfo(String tripId, String routeId, int directionId, String shapeId) {
+        this.tripId = tripId;
+        this.routeId = routeId;
+        this.directionId = directionId;
+        this.shapeId = shapeId;
+    }
+
+    public String getTripId(){
+        return tripId;
+    }
+    public String getRouteId(){
+        return routeId;
+    }
+    public int getDirectionId(){
+        return directionId;
+    }
+    public String getShapeId(){
+        return shapeId;
+    }
+
+}
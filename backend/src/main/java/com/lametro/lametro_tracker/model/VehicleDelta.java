@@ -0,0 +1,35 @@
+package com.lametro.lametro_tracker.model;
+
+import java.util.List;
+
+public class VehicleDelta {
+    private String version;
+    private String baseVersion;
+    private boolean full;
+    private List<VehiclePosition> upserted;
+    private List<String> removed;
+
+    public VehicleDelta(String version, String baseVersion, boolean full, List<VehiclePosition> upserted, List<String> removed) {
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.full = full;
+        this.upserted = upserted;
+        this.removed = removed;
+    }
+
+    public String getVersion(){
+        return version;
+    }
+    public String getBaseVersion(){
+        return baseVersion;
+    }
+    public boolean isFull(){
+        return full;
+    }
+    public List<VehiclePosition> getUpserted(){
+        return upserted;
+    }
+    public List<String> getRemoved(){
+        return removed;
+    }
+}
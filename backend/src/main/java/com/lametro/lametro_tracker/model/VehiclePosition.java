@@ -9,6 +9,11 @@ public class VehiclePosition {
     private double longitude;
     private float bearing;
     private long timestamp;
+    // Set when the position is snapped to the trip's shape; latitude,
+    // longitude and bearing are then the snapped point on it.
+    private String shapeId;
+    private Double distanceAlongShape;
+    private Double speed;
 
     public VehiclePosition () {}
 
@@ -47,6 +52,15 @@ public class VehiclePosition {
     public void setTimestamp(long timestamp){
         this.timestamp = timestamp;
     }
+    public void setShapeId(String shapeId){
+        this.shapeId = shapeId;
+    }
+    public void setDistanceAlongShape(Double distanceAlongShape){
+        this.distanceAlongShape = distanceAlongShape;
+    }
+    public void setSpeed(Double speed){
+        this.speed = speed;
+    }
     public String getVehicleId(){
         return vehicleId;
     }
@@ -71,4 +85,15 @@ public class VehiclePosition {
     public long getTimestamp(){
         return timestamp;
     }
+    public String getShapeId(){
+        return shapeId;
+    }
+    // Meters from the start of the shape.
+    public Double getDistanceAlongShape(){
+        return distanceAlongShape;
+    }
+    // Meters per second along the shape, from the last two reports.
+    public Double getSpeed(){
+        return speed;
+    }
 }
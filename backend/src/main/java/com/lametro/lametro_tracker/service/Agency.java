@@ -0,0 +1,36 @@
+package com.lametro.lametro_tracker.service;
+
+/**
+ * Everything served for one agency: its static schedule, the tracker that
+ * snaps its vehicles to that schedule's shapes, and its realtime feeds.
+ */
+public class Agency {
+
+    private final String id;
+    private final StaticGtfsService schedule;
+    private final VehicleTracker tracker;
+    private final GtfsRtService realtime;
+
+    public Agency(String id, StaticGtfsService schedule, VehicleTracker tracker, GtfsRtService realtime) {
+        this.id = id;
+        this.schedule = schedule;
+        this.tracker = tracker;
+        this.realtime = realtime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public StaticGtfsService getSchedule() {
+        return schedule;
+    }
+
+    public VehicleTracker getTracker() {
+        return tracker;
+    }
+
+    public GtfsRtService getRealtime() {
+        return realtime;
+    }
+}
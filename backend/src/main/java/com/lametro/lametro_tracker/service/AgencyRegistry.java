@@ -0,0 +1,162 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * The agencies whose GTFS-RT feeds are served, and the threads that keep
+ * them fresh.
+ *
+ * Each agency has its own schedule, tracker, predictor and snapshots, so
+ * every agency added costs its own memory and refresh work and nothing
+ * shared grows with it. Each of its two feeds is refreshed on its own fixed
+ * delay by one scheduler thread that only starts fetches. Fetched payloads
+ * are parsed on a bounded ingestion pool shared by every feed. A feed never
+ * has more than one fetch outstanding, so it never has more than one task in
+ * the pool's queue, and feeds take turns for workers however large or slow
+ * any one of them is.
+ *
+ * The first agency listed is the primary one. It uses the schedule that
+ * backs /api/static and is also served at the unscoped /api paths. Others
+ * read their settings from lametro.agency.{id}.* and have no schedule
+ * unless given a gtfs-dir.
+ */
+@Component
+public class AgencyRegistry implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AgencyRegistry.class);
+
+    // Filled in the constructor and never changed, so reads need no locking.
+    private final Map<String, Agency> agencies = new LinkedHashMap<>();
+    private final Map<String, Long> refreshIntervals = new LinkedHashMap<>();
+    private final Agency primary;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService ingestion;
+
+    public AgencyRegistry(
+        Environment environment,
+        FeedClient feedClient,
+        SnapshotRenderer renderer,
+        StaticGtfsService primarySchedule,
+        ApplicationEventPublisher events,
+        MeterRegistry meters,
+        @Value("${lametro.agencies:lametro-rail}") List<String> agencyIds,
+        @Value("${lametro.feed.base-url:https://api.goswift.ly/real-time}") String baseUrl,
+        @Value("${lametro.feed.refresh-interval-ms:15000}") long refreshIntervalMillis,
+        @Value("${lametro.feed.ingest-threads:2}") int ingestThreads,
+        @Value("${lametro.feed.vehicle-history-size:8}") int vehicleHistorySize,
+        @Value("${lametro.prediction.max-age-seconds:300}") long predictionMaxAgeSeconds
+    ) {
+        if (agencyIds.isEmpty()) {
+            throw new IllegalArgumentException("lametro.agencies lists no agencies");
+        }
+        CustomizableThreadFactory schedulerThreads = new CustomizableThreadFactory("feed-scheduler-");
+        schedulerThreads.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(schedulerThreads);
+        CustomizableThreadFactory ingestionThreads = new CustomizableThreadFactory("feed-ingest-");
+        ingestionThreads.setDaemon(true);
+        // Queue length and busy workers there show how much parsing headroom is left.
+        this.ingestion = ExecutorServiceMetrics.monitor(meters,
+            Executors.newFixedThreadPool(ingestThreads, ingestionThreads), "feed-ingest");
+
+        for (String id : agencyIds) {
+            String prefix = "lametro.agency." + id + ".";
+            StaticGtfsService schedule = agencies.isEmpty() ? primarySchedule : new StaticGtfsService(
+                environment.getProperty(prefix + "gtfs-dir", ""),
+                environment.getProperty(prefix + "gtfs-cache-file", ""));
+            VehicleTracker tracker = new VehicleTracker(schedule);
+            String vehiclePositionsUrl = environment.getProperty(prefix + "vehicle-positions-url",
+                feedUrl(baseUrl, id, GtfsRtService.VEHICLE_POSITIONS_FEED));
+            String tripUpdatesUrl = environment.getProperty(prefix + "trip-updates-url",
+                feedUrl(baseUrl, id, GtfsRtService.TRIP_UPDATES_FEED));
+            GtfsRtService realtime = new GtfsRtService(id, feedClient, renderer, tracker,
+                new ArrivalPredictor(schedule, predictionMaxAgeSeconds), events, ingestion, meters,
+                vehiclePositionsUrl, tripUpdatesUrl, vehicleHistorySize);
+            if (agencies.putIfAbsent(id, new Agency(id, schedule, tracker, realtime)) != null) {
+                throw new IllegalArgumentException("Agency " + id + " is listed twice");
+            }
+            refreshIntervals.put(id, environment.getProperty(prefix + "refresh-interval-ms", Long.class, refreshIntervalMillis));
+        }
+        this.primary = agencies.values().iterator().next();
+    }
+
+    /**
+     * The agency with the given ID, the primary one if the ID is null, or
+     * null if there is no such agency.
+     */
+    public Agency get(String id) {
+        return id == null ? primary : agencies.get(id);
+    }
+
+    public Agency getPrimary() {
+        return primary;
+    }
+
+    public Collection<Agency> getAll() {
+        return agencies.values();
+    }
+
+    /**
+     * Starts refreshing every feed, first right away.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (Agency agency : agencies.values()) {
+            long interval = refreshIntervals.get(agency.getId());
+            GtfsRtService realtime = agency.getRealtime();
+            scheduleRefresh(realtime::refreshVehiclePositions, 0, interval);
+            scheduleRefresh(realtime::refreshTripUpdates, 0, interval);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        ingestion.shutdownNow();
+    }
+
+    // The next refresh is scheduled once this one completes, like a fixed delay, without holding the thread meanwhile.
+    private void scheduleRefresh(Supplier<CompletableFuture<Void>> refresh, long delay, long interval) {
+        try {
+            scheduler.schedule(() -> {
+                CompletableFuture<Void> done;
+                try {
+                    done = refresh.get();
+                } catch (RuntimeException e) {
+                    log.error("Could not start feed refresh", e);
+                    done = CompletableFuture.completedFuture(null);
+                }
+                done.whenComplete((ignored, error) -> scheduleRefresh(refresh, interval, interval));
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+        }
+    }
+
+    private static String feedUrl(String baseUrl, String agency, String feed) {
+        return baseUrl + "/" + agency + "/gtfs-rt-" + feed;
+    }
+}
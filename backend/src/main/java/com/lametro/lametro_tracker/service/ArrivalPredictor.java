@@ -0,0 +1,337 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+/**
+ * Turns the reported trip updates and vehicle positions into arrival
+ * predictions for every station a train still has ahead of it.
+ *
+ * Reported arrivals are kept as they are. Past a trip's last reported stop,
+ * and across gaps between reported stops, its delay is carried along the
+ * pattern's scheduled running times. Trips with a vehicle on its shape but
+ * no trip update get arrivals from how far along the shape the vehicle is.
+ * Every row is tagged with its source and the time of the report it came
+ * from.
+ *
+ * A feed that hasn't been refreshed within the maximum age is left out, so
+ * an upstream outage shows as aging predictions and then none, rather than
+ * a board frozen at the last good fetch.
+ *
+ * Everything static is resolved to arrays up front, so a pass is one walk
+ * over the reported rows and vehicles plus one table build.
+ */
+public class ArrivalPredictor {
+
+    // A vehicle this close to a station hasn't left it yet.
+    private static final double AT_STATION_METERS = 30;
+
+    // Platforms further than this from a shape are not on it.
+    private static final double MAX_PLATFORM_METERS = 100;
+
+    private final long maxAgeMillis;
+
+    // Static lookups by ID.
+    private final Map<String, Integer> routeIndex = new HashMap<>();
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+    private final Map<String, Integer> shapeIndex = new HashMap<>();
+    private final Map<String, Integer> tripPattern = new HashMap<>();
+    private final Map<String, Integer> tripShape = new HashMap<>();
+    // Station ID of every stop, itself for stations and unparented stops.
+    private final Map<String, String> stationIds = new HashMap<>();
+
+    // Per pattern (route * 2 + direction): its stations sorted, with each one's
+    // position in it, and by position its platform IDs and scheduled seconds
+    // from the first station.
+    private final int[][] patternStations;
+    private final int[][] patternStationPositions;
+    private final String[][] patternPlatforms;
+    private final int[][] patternSeconds;
+
+    // Per shape: the pattern it follows or -1, each pattern station's distance
+    // along it (NaN if off it), and scheduled seconds per meter overall.
+    private final int[] shapePattern;
+    private final double[][] stationAlong;
+    private final double[] secondsPerMeter;
+
+    public ArrivalPredictor(
+        StaticGtfsService staticGtfsService,
+        long maxAgeSeconds
+    ) {
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+        StaticGtfs gtfs = staticGtfsService.getGtfs();
+        ShapeIndex shapes = staticGtfsService.getShapes();
+
+        for (int route = 0; route < gtfs.routeCount(); route++) {
+            routeIndex.put(gtfs.routeId(route), route);
+        }
+        for (int stop = 0; stop < gtfs.stopCount(); stop++) {
+            int station = gtfs.parentStation(stop);
+            stationIndex.put(gtfs.stopId(stop), station >= 0 ? station : stop);
+            stationIds.put(gtfs.stopId(stop), gtfs.stopId(station >= 0 ? station : stop));
+        }
+        for (int shape = 0; shape < gtfs.shapeCount(); shape++) {
+            shapeIndex.put(gtfs.shapeId(shape), shape);
+        }
+
+        int patterns = gtfs.routeCount() * 2;
+        patternStations = new int[patterns][];
+        patternStationPositions = new int[patterns][];
+        patternPlatforms = new String[patterns][];
+        patternSeconds = new int[patterns][];
+        for (int p = 0; p < patterns; p++) {
+            int length = gtfs.patternLength(p / 2, p % 2);
+            patternPlatforms[p] = new String[length];
+            patternSeconds[p] = new int[length];
+            // Station in the high half, position in the low, so sorting orders by station.
+            long[] keyed = new long[length];
+            for (int i = 0; i < length; i++) {
+                keyed[i] = (long) gtfs.patternStation(p / 2, p % 2, i) << 32 | i;
+                patternPlatforms[p][i] = gtfs.stopId(gtfs.patternPlatform(p / 2, p % 2, i));
+                patternSeconds[p][i] = gtfs.patternSeconds(p / 2, p % 2, i);
+            }
+            Arrays.sort(keyed);
+            int[] stations = new int[length];
+            int[] positions = new int[length];
+            int count = 0;
+            for (long key : keyed) {
+                // A station a loop visits twice keeps its later position.
+                if (count > 0 && stations[count - 1] == (int) (key >>> 32)) {
+                    count--;
+                }
+                stations[count] = (int) (key >>> 32);
+                positions[count++] = (int) key;
+            }
+            patternStations[p] = Arrays.copyOf(stations, count);
+            patternStationPositions[p] = Arrays.copyOf(positions, count);
+        }
+
+        shapePattern = new int[gtfs.shapeCount()];
+        Arrays.fill(shapePattern, -1);
+        for (int trip = 0; trip < gtfs.tripCount(); trip++) {
+            int route = gtfs.tripRoute(trip);
+            if (route < 0) {
+                continue;
+            }
+            int pattern = route * 2 + gtfs.tripDirection(trip);
+            tripPattern.put(gtfs.tripId(trip), pattern);
+            int shape = gtfs.tripShape(trip);
+            if (shape >= 0) {
+                tripShape.put(gtfs.tripId(trip), shape);
+                if (shapePattern[shape] < 0) {
+                    shapePattern[shape] = pattern;
+                }
+            }
+        }
+        stationAlong = new double[gtfs.shapeCount()][];
+        secondsPerMeter = new double[gtfs.shapeCount()];
+        for (int shape = 0; shape < gtfs.shapeCount(); shape++) {
+            int p = shapePattern[shape];
+            if (p < 0) {
+                continue;
+            }
+            int length = patternSeconds[p].length;
+            double[] along = new double[length];
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < length; i++) {
+                int platform = gtfs.patternPlatform(p / 2, p % 2, i);
+                along[i] = shapes.snap(shape, gtfs.stopLat(platform), gtfs.stopLon(platform), MAX_PLATFORM_METERS);
+                if (!Double.isNaN(along[i])) {
+                    first = first < 0 ? i : first;
+                    last = i;
+                }
+            }
+            stationAlong[shape] = along;
+            if (first >= 0 && along[last] > along[first]) {
+                secondsPerMeter[shape] = (patternSeconds[p][last] - patternSeconds[p][first]) / (along[last] - along[first]);
+            }
+        }
+    }
+
+    /**
+     * Predicts arrivals from the latest reports, as of now (epoch millis).
+     * The result's version changes whenever the reports it used do.
+     */
+    public TripUpdateSnapshot predict(TripUpdateSnapshot reported, FeedSnapshot<VehiclePosition> vehicles, long now) {
+        boolean useReported = isFresh(reported, now);
+        boolean useVehicles = isFresh(vehicles, now);
+        StopTimeTable.Builder rows = new StopTimeTable.Builder();
+        Set<String> reportedTrips = new HashSet<>();
+
+        if (useReported) {
+            Propagation propagation = new Propagation(rows, reportedTrips, reported.getLastModified() / 1000);
+            reported.forEachArrival(propagation);
+            propagation.finishTrip();
+        }
+        if (useVehicles) {
+            for (VehiclePosition vehicle : vehicles.getEntities()) {
+                if (!reportedTrips.contains(vehicle.getTripId())) {
+                    predictFromVehicle(vehicle, rows);
+                }
+            }
+        }
+
+        long version = (useReported ? reported.getVersion() : 0) * 31 + (useVehicles ? vehicles.getVersion() : 0);
+        long lastModified = Math.max(useReported ? reported.getLastModified() : 0, useVehicles ? vehicles.getLastModified() : 0);
+        return new TripUpdateSnapshot(rows.build(), version, lastModified, now, this::stationOf);
+    }
+
+    /**
+     * The ID of the stop's station, or the stop ID itself if it isn't in
+     * the schedule.
+     */
+    public String stationOf(String stopId) {
+        return stationIds.getOrDefault(stopId, stopId);
+    }
+
+    // The station's position in the pattern, or -1 if it isn't on it.
+    private int positionIn(int pattern, int station) {
+        int i = Arrays.binarySearch(patternStations[pattern], station);
+        return i >= 0 ? patternStationPositions[pattern][i] : -1;
+    }
+
+    private boolean isFresh(FeedSnapshot<?> snapshot, long now) {
+        return !snapshot.isEmpty() && now - snapshot.getFetchedAt() <= maxAgeMillis;
+    }
+
+    // Stations ahead of the vehicle, timed by the schedule from where it is on its shape.
+    private void predictFromVehicle(VehiclePosition vehicle, StopTimeTable.Builder rows) {
+        Integer shape = vehicle.getShapeId() == null ? null : shapeIndex.get(vehicle.getShapeId());
+        if (shape == null || shapePattern[shape] < 0 || vehicle.getDistanceAlongShape() == null
+                || vehicle.getTripId() == null || vehicle.getTripId().isEmpty()) {
+            return;
+        }
+        int p = shapePattern[shape];
+        double[] along = stationAlong[shape];
+        int[] seconds = patternSeconds[p];
+        double position = vehicle.getDistanceAlongShape();
+
+        // Scheduled seconds at the vehicle's position, between the stations either side of it.
+        int behind = -1;
+        int ahead = -1;
+        for (int i = 0; i < along.length; i++) {
+            if (Double.isNaN(along[i])) {
+                continue;
+            }
+            if (along[i] <= position) {
+                behind = i;
+            } else if (ahead < 0) {
+                ahead = i;
+            }
+        }
+        double scheduledAt;
+        if (behind >= 0 && ahead >= 0) {
+            scheduledAt = seconds[behind]
+                + (seconds[ahead] - seconds[behind]) * (position - along[behind]) / (along[ahead] - along[behind]);
+        } else if (ahead >= 0) {
+            scheduledAt = seconds[ahead] - (along[ahead] - position) * secondsPerMeter[shape];
+        } else if (behind >= 0) {
+            scheduledAt = seconds[behind] + (position - along[behind]) * secondsPerMeter[shape];
+        } else {
+            return;
+        }
+
+        for (int i = 0; i < along.length; i++) {
+            if (Double.isNaN(along[i]) || along[i] < position - AT_STATION_METERS) {
+                continue;
+            }
+            long arrival = vehicle.getTimestamp() + Math.max(0, Math.round(seconds[i] - scheduledAt));
+            rows.add(vehicle.getTripId(), vehicle.getRouteId(), vehicle.getDirectionId(), patternPlatforms[p][i],
+                arrival, StopTimeUpdate.Source.VEHICLE, vehicle.getTimestamp());
+        }
+    }
+
+    /**
+     * Copies reported arrivals trip by trip, filling in the pattern's
+     * stations after and between them from the last reported stop's delay.
+     * Only stations on the trip's own shape are filled, so a short-turn
+     * trip stops where its shape does. A trip whose shape isn't known is
+     * only filled between reported stops.
+     */
+    private final class Propagation implements TripUpdateSnapshot.ArrivalVisitor {
+        private final StopTimeTable.Builder rows;
+        private final Set<String> reportedTrips;
+        private final long feedTime;
+
+        private String tripId;
+        private String routeId;
+        private int directionId;
+        private int pattern;
+        // Each pattern station's distance along the trip's shape (NaN if off it), or null if unknown.
+        private double[] along;
+        // The furthest reported station along the pattern so far, or -1.
+        private int last;
+        private long lastArrival;
+        private long lastObservedAt;
+
+        Propagation(StopTimeTable.Builder rows, Set<String> reportedTrips, long feedTime) {
+            this.rows = rows;
+            this.reportedTrips = reportedTrips;
+            this.feedTime = feedTime;
+        }
+
+        @Override
+        public void visit(String tripId, String routeId, int directionId, String stopId, long arrivalTime,
+                StopTimeUpdate.Source source, long observedAt) {
+            if (!tripId.equals(this.tripId)) {
+                finishTrip();
+                startTrip(tripId, routeId, directionId);
+            }
+            // Updates without their own timestamp were observed at the feed's.
+            long observed = observedAt > 0 ? observedAt : feedTime;
+            rows.add(tripId, routeId, directionId, stopId, arrivalTime, source, observed);
+
+            Integer station = stationIndex.get(stopId);
+            int position = pattern < 0 || station == null ? -1 : positionIn(pattern, station);
+            if (position <= last) {
+                return;
+            }
+            if (last >= 0) {
+                // Never predict a skipped station later than the next reported one.
+                fill(last + 1, position, arrivalTime);
+            }
+            last = position;
+            lastArrival = arrivalTime;
+            lastObservedAt = observed;
+        }
+
+        void finishTrip() {
+            if (tripId != null && last >= 0 && along != null) {
+                fill(last + 1, patternSeconds[pattern].length, Long.MAX_VALUE);
+            }
+        }
+
+        private void startTrip(String tripId, String routeId, int directionId) {
+            this.tripId = tripId;
+            this.routeId = routeId;
+            this.directionId = directionId;
+            reportedTrips.add(tripId);
+            Integer route = routeIndex.get(routeId);
+            Integer scheduled = tripPattern.get(tripId);
+            pattern = route != null && directionId >= 0 && directionId <= 1 ? route * 2 + directionId
+                : scheduled != null ? scheduled : -1;
+            Integer shape = tripShape.get(tripId);
+            along = shape != null && pattern >= 0 && shapePattern[shape] == pattern ? stationAlong[shape] : null;
+            last = -1;
+        }
+
+        private void fill(int from, int to, long latest) {
+            int[] seconds = patternSeconds[pattern];
+            for (int i = from; i < to; i++) {
+                if (along != null && Double.isNaN(along[i])) {
+                    continue;
+                }
+                long arrival = Math.min(latest, lastArrival + seconds[i] - seconds[last]);
+                rows.add(tripId, routeId, directionId, patternPlatforms[pattern][i], arrival,
+                    StopTimeUpdate.Source.PROPAGATED, lastObservedAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.Locale;
+
+/**
+ * Encodings a vehicle or arrival response body can be rendered in.
+ */
+public enum BodyFormat {
+
+    JSON("application/json", ""),
+    // See ProtobufEncoder and lametro.proto.
+    PROTOBUF("application/x-protobuf", "pb");
+
+    private final String mediaType;
+    private final String suffix;
+
+    BodyFormat(String mediaType, String suffix) {
+        this.mediaType = mediaType;
+        this.suffix = suffix;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Tells bodies and ETags in this format apart from the JSON ones, or is
+     * empty for JSON.
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Protobuf if the Accept header names it with a higher q than the range
+     * JSON falls under, otherwise JSON. At equal q a wildcard range loses to
+     * protobuf named outright, and of the two named types the one listed
+     * first wins.
+     */
+    public static BodyFormat negotiate(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return JSON;
+        }
+        // Each format's best match so far: its q, how specific the range was, and where it was listed.
+        double protobufQuality = 0;
+        int protobufPosition = -1;
+        double jsonQuality = 0;
+        int jsonSpecificity = -1;
+        int jsonPosition = -1;
+        String[] parts = accept.split(",");
+        for (int position = 0; position < parts.length; position++) {
+            String[] params = parts[position].split(";");
+            String type = params[0].trim().toLowerCase(Locale.ROOT);
+            double quality = QualityValue.of(params);
+            if (type.equals("application/x-protobuf") || type.equals("application/protobuf")) {
+                if (protobufPosition < 0 || quality > protobufQuality) {
+                    protobufQuality = quality;
+                    protobufPosition = position;
+                }
+                continue;
+            }
+            // Protobuf must be asked for by name, but JSON answers any range covering it.
+            int specificity = type.equals("application/json") ? 2
+                : type.equals("application/*") ? 1
+                : type.equals("*/*") ? 0 : -1;
+            if (specificity > jsonSpecificity) {
+                jsonQuality = quality;
+                jsonSpecificity = specificity;
+                jsonPosition = position;
+            }
+        }
+        if (protobufPosition < 0 || protobufQuality <= 0) {
+            return JSON;
+        }
+        if (protobufQuality != jsonQuality) {
+            return protobufQuality > jsonQuality ? PROTOBUF : JSON;
+        }
+        if (jsonSpecificity < 2) {
+            return PROTOBUF;
+        }
+        return protobufPosition < jsonPosition ? PROTOBUF : JSON;
+    }
+}
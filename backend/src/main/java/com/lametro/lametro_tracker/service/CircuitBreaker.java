@@ -0,0 +1,59 @@
+package com.lametro.lametro_tracker.service;
+
+/**
+ * Minimal consecutive-failure circuit breaker for an upstream feed.
+ *
+ * After {@code failureThreshold} failures in a row the circuit opens and
+ * calls are rejected without touching the network for {@code openMillis}.
+ * The first call after that is let through as a probe: success closes the
+ * circuit, failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public synchronized boolean tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt >= openMillis) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // A probe is already in flight.
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure(long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
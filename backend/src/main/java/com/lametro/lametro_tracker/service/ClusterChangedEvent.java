@@ -0,0 +1,33 @@
+package com.lametro.lametro_tracker.service;
+
+/**
+ * Published when the cluster's leader or its number of live replicas
+ * changes, and once when this replica joins.
+ */
+public class ClusterChangedEvent {
+
+    private final String leader;
+    private final boolean leading;
+    private final int replicas;
+
+    public ClusterChangedEvent(String leader, boolean leading, int replicas) {
+        this.leader = leader;
+        this.leading = leading;
+        this.replicas = replicas;
+    }
+
+    // The leader's host:port, or null outside a cluster.
+    public String getLeader() {
+        return leader;
+    }
+
+    // Whether this replica is the leader.
+    public boolean isLeading() {
+        return leading;
+    }
+
+    // Live replicas, this one included.
+    public int getReplicas() {
+        return replicas;
+    }
+}
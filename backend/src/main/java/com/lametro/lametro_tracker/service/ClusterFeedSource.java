@@ -0,0 +1,50 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches from upstream while this replica leads its cluster, serving each
+ * payload on to the others, and from the leader while it follows.
+ */
+public class ClusterFeedSource implements FeedSource, AutoCloseable {
+
+    private final FeedSource upstream;
+    private final ClusterNode cluster;
+
+    public ClusterFeedSource(FeedSource upstream, ClusterNode cluster) {
+        this.upstream = upstream;
+        this.cluster = cluster;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetch(String feedName, String url) {
+        if (!cluster.isLeader()) {
+            return cluster.fetchFromLeader(feedName);
+        }
+        return upstream.fetch(feedName, url).thenApply(payload -> {
+            cluster.publish(feedName, payload);
+            return payload;
+        });
+    }
+
+    // Declares no checked exception, wrapping the upstream's, so callers have nothing to handle.
+    @Override
+    public void close() {
+        if (upstream instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Could not close the upstream feed source", e);
+            }
+        }
+    }
+}
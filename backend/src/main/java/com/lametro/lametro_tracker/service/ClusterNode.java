@@ -0,0 +1,284 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Membership in a group of replicas that share one upstream ingest.
+ *
+ * Every replica is given the same list of peers (the host:port of each
+ * one's cluster port, its own included) and pings the others on a
+ * heartbeat. The first peer in the list that has answered within the peer
+ * timeout leads: only it polls the upstream API, and it serves each feed's
+ * latest payload on its cluster port for the others to fetch instead (see
+ * {@link ClusterFeedSource}). Snapshot versions are hashes of the payloads,
+ * so every replica builds the same versions and ETags from them, whichever
+ * one the load balancer sends a client to.
+ *
+ * There is no consensus protocol. Replicas that can't see each other each
+ * lead, which costs extra upstream calls but never stops ingestion. The
+ * cluster port, like the management port, is meant to stay inside the VPC.
+ *
+ * With no peers configured the replica is a cluster of one and always leads.
+ */
+@Component
+public class ClusterNode implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterNode.class);
+
+    static final String PING_PATH = "/cluster/ping";
+    static final String FEEDS_PATH = "/cluster/feeds/";
+
+    private final String self;
+    // In election order.
+    private final List<String> peers;
+    private final long heartbeatMillis;
+    private final long peerTimeoutMillis;
+    private final ApplicationEventPublisher events;
+    // Epoch millis each peer last answered a ping.
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    // Latest payload of each feed, while leading.
+    private final Map<String, Payload> published = new ConcurrentHashMap<>();
+    // Latest payload of each feed fetched from the leader, while following.
+    private final Map<String, Payload> fetched = new ConcurrentHashMap<>();
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService heartbeat;
+    private HttpServer server;
+
+    private volatile String leader;
+    private volatile int replicas;
+
+    public ClusterNode(
+        @Value("${lametro.cluster.self:}") String self,
+        @Value("${lametro.cluster.peers:}") List<String> peers,
+        @Value("${lametro.cluster.heartbeat-ms:2000}") long heartbeatMillis,
+        @Value("${lametro.cluster.peer-timeout-ms:6000}") long peerTimeoutMillis,
+        ApplicationEventPublisher events,
+        MeterRegistry meters
+    ) {
+        this.self = self;
+        this.peers = peers.stream().map(String::trim).filter(peer -> !peer.isEmpty()).toList();
+        this.heartbeatMillis = heartbeatMillis;
+        this.peerTimeoutMillis = peerTimeoutMillis;
+        this.events = events;
+        if (!this.peers.isEmpty() && !this.peers.contains(self)) {
+            throw new IllegalStateException("lametro.cluster.self must be one of lametro.cluster.peers");
+        }
+        // Until the first heartbeat, assume every peer is up, so they all start out agreeing on the leader.
+        long now = System.currentTimeMillis();
+        this.peers.forEach(peer -> lastSeen.put(peer, now));
+        this.leader = this.peers.isEmpty() ? null : this.peers.get(0);
+        this.replicas = Math.max(1, this.peers.size());
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cluster-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(4, threadFactory);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(peerTimeoutMillis))
+            .executor(executor)
+            .build();
+
+        Gauge.builder("lametro.cluster.replicas", this, ClusterNode::getReplicas)
+            .description("Live replicas in the cluster, this one included")
+            .register(meters);
+        Gauge.builder("lametro.cluster.leader", this, node -> node.isLeader() ? 1 : 0)
+            .description("1 if this replica polls upstream for the cluster")
+            .register(meters);
+    }
+
+    public boolean isEnabled() {
+        return !peers.isEmpty();
+    }
+
+    public boolean isLeader() {
+        return leader == null || leader.equals(self);
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Wraps the upstream source so only the leader uses it, when this
+     * replica is part of a cluster.
+     */
+    public FeedSource share(FeedSource upstream) {
+        return isEnabled() ? new ClusterFeedSource(upstream, this) : upstream;
+    }
+
+    /**
+     * Opens the cluster port and starts the heartbeat.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        int port = Integer.parseInt(self.substring(self.lastIndexOf(':') + 1));
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PING_PATH, this::handlePing);
+        server.createContext(FEEDS_PATH, this::handleFeed);
+        server.setExecutor(executor);
+        server.start();
+        log.info("Joined cluster as {} of {}, {} leads", self, peers, leader);
+        events.publishEvent(new ClusterChangedEvent(leader, isLeader(), replicas));
+        heartbeat.scheduleWithFixedDelay(this::ping, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        heartbeat.shutdownNow();
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Makes a payload this replica fetched upstream, as leader, the one it
+     * serves to the others.
+     */
+    void publish(String feedName, byte[] payload) {
+        published.put(feedName, new Payload(payload));
+    }
+
+    /**
+     * The leader's latest payload for the feed. Fails with the leader's
+     * status if it has none or has stopped leading, so the feed's retries
+     * and circuit breaker treat it like an upstream failure.
+     */
+    CompletableFuture<byte[]> fetchFromLeader(String feedName) {
+        Payload cached = fetched.get(feedName);
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://" + leader + FEEDS_PATH + feedName))
+            .timeout(Duration.ofMillis(peerTimeoutMillis))
+            .GET();
+        if (cached != null) {
+            request.header("If-None-Match", cached.etag);
+        }
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() == 304 && cached != null) {
+                return cached.bytes;
+            }
+            if (response.statusCode() != 200) {
+                throw new FeedClient.UpstreamStatusException(response.statusCode());
+            }
+            fetched.put(feedName, new Payload(response.body()));
+            return response.body();
+        });
+    }
+
+    // Pings every other peer, then re-elects from who answered.
+    private void ping() {
+        List<CompletableFuture<?>> pings = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.equals(self)) {
+                continue;
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + peer + PING_PATH))
+                .timeout(Duration.ofMillis(heartbeatMillis))
+                .GET()
+                .build();
+            pings.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).handle((response, error) -> {
+                if (error == null && response.statusCode() == 200) {
+                    lastSeen.put(peer, System.currentTimeMillis());
+                }
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(pings.toArray(CompletableFuture[]::new)).join();
+        elect(System.currentTimeMillis());
+    }
+
+    private void elect(long now) {
+        List<String> live = peers.stream()
+            .filter(peer -> peer.equals(self) || now - lastSeen.getOrDefault(peer, 0L) <= peerTimeoutMillis)
+            .toList();
+        String newLeader = live.get(0);
+        if (newLeader.equals(leader) && live.size() == replicas) {
+            return;
+        }
+        if (!newLeader.equals(leader)) {
+            log.info("{} now leads the cluster of {} live replicas", newLeader, live.size());
+        }
+        leader = newLeader;
+        replicas = live.size();
+        events.publishEvent(new ClusterChangedEvent(newLeader, isLeader(), replicas));
+    }
+
+    private void handlePing(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    private void handleFeed(HttpExchange exchange) throws IOException {
+        String feedName = exchange.getRequestURI().getPath().substring(FEEDS_PATH.length());
+        Payload payload = published.get(feedName);
+        // A replica that no longer leads mustn't hand out payloads that are going stale.
+        if (!isLeader() || payload == null) {
+            exchange.sendResponseHeaders(isLeader() ? 404 : 503, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", payload.etag);
+        if (payload.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+        exchange.sendResponseHeaders(200, payload.bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(payload.bytes);
+        }
+    }
+
+    /**
+     * A feed payload tagged with a hash of its bytes.
+     */
+    private static final class Payload {
+        final byte[] bytes;
+        final String etag;
+
+        Payload(byte[] bytes) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            this.bytes = bytes;
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "\"";
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Fetches raw GTFS-RT payloads from the configured {@link FeedSource}.
+ *
+ * Failed attempts are retried with jittered exponential backoff, and each
+ * feed has its own circuit breaker so an unhealthy upstream is left alone
+ * while the last good snapshot keeps being served.
+ *
+ * Fetch latency, payload size, rejections and circuit state are published
+ * as metrics tagged with the feed name. Given a record directory, every
+ * new payload is also captured there for {@link ReplayFeedSource}.
+ */
+@Component
+public class FeedClient implements DisposableBean {
+
+    private final FeedSource source;
+    private final FeedRecorder recorder;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMillis;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, FetchStats> stats = new ConcurrentHashMap<>();
+    private final MeterRegistry meters;
+
+    public FeedClient(
+        FeedSource source,
+        @Value("${lametro.feed.record-dir:}") String recordDir,
+        @Value("${lametro.feed.max-retries:2}") int maxRetries,
+        @Value("${lametro.feed.retry-backoff-ms:500}") long retryBackoffMillis,
+        @Value("${lametro.feed.breaker-failure-threshold:5}") int breakerFailureThreshold,
+        @Value("${lametro.feed.breaker-open-ms:60000}") long breakerOpenMillis,
+        MeterRegistry meters
+    ) {
+        this.source = source;
+        this.recorder = recordDir.isEmpty() ? null : new FeedRecorder(Path.of(recordDir));
+        this.maxRetries = maxRetries;
+        // The jittered delay is drawn below the backoff, so it can't be 0.
+        this.retryBackoffMillis = Math.max(1, retryBackoffMillis);
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenMillis = breakerOpenMillis;
+        this.meters = meters;
+    }
+
+    /**
+     * Fetches the feed body, already decompressed. Completes exceptionally
+     * with {@link CircuitOpenException} without a request if the feed's
+     * circuit is open.
+     */
+    public CompletableFuture<byte[]> fetch(String feedName, String url) {
+        CircuitBreaker breaker = getBreaker(feedName);
+        FetchStats feedStats = getStats(feedName);
+        if (!breaker.tryAcquire(System.currentTimeMillis())) {
+            feedStats.recordRejection();
+            Counter.builder("lametro.feed.fetch.rejected")
+                .description("Fetches skipped because the feed's circuit was open")
+                .tag("feed", feedName)
+                .register(meters)
+                .increment();
+            return CompletableFuture.failedFuture(new CircuitOpenException(feedName));
+        }
+
+        long start = System.nanoTime();
+        return attempt(feedName, url, 0).whenComplete((payload, error) -> {
+            long now = System.currentTimeMillis();
+            long elapsed = System.nanoTime() - start;
+            if (error == null) {
+                breaker.recordSuccess();
+                feedStats.recordSuccess(TimeUnit.NANOSECONDS.toMillis(elapsed), payload.length, now);
+                DistributionSummary.builder("lametro.feed.payload")
+                    .description("Decompressed size of fetched feed payloads")
+                    .baseUnit("bytes")
+                    .tag("feed", feedName)
+                    .register(meters)
+                    .record(payload.length);
+                if (recorder != null) {
+                    recorder.record(feedName, payload, now);
+                }
+            } else {
+                breaker.recordFailure(now);
+                feedStats.recordFailure();
+            }
+            // Includes retries and their backoff.
+            Timer.builder("lametro.feed.fetch")
+                .description("Upstream fetch latency, including retries")
+                .tag("feed", feedName)
+                .tag("outcome", error == null ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(meters)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    public CircuitBreaker getBreaker(String feedName) {
+        return breakers.computeIfAbsent(feedName, name -> {
+            CircuitBreaker breaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMillis);
+            Gauge.builder("lametro.feed.circuit.open", breaker, b -> b.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while the feed's circuit is open or half open")
+                .tag("feed", name)
+                .register(meters);
+            return breaker;
+        });
+    }
+
+    public FetchStats getStats(String feedName) {
+        return stats.computeIfAbsent(feedName, name -> new FetchStats());
+    }
+
+    @Override
+    public void destroy() {
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    private CompletableFuture<byte[]> attempt(String feedName, String url, int attempt) {
+        CompletableFuture<byte[]> fetched;
+        try {
+            fetched = source.fetch(feedName, url);
+        } catch (RuntimeException e) {
+            // E.g. a malformed URL. Failing the future still releases the breaker's trial permit.
+            fetched = CompletableFuture.failedFuture(e);
+        }
+        return fetched
+            .handle((payload, error) -> {
+                if (error == null) {
+                    return CompletableFuture.completedFuture(payload);
+                }
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (attempt >= maxRetries || !isRetryable(cause)) {
+                    return CompletableFuture.<byte[]>failedFuture(cause);
+                }
+                // Full jitter keeps replicas from retrying in lockstep.
+                long delay = ThreadLocalRandom.current().nextLong(retryBackoffMillis << attempt) + 1;
+                return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> attempt(feedName, url, attempt + 1));
+            })
+            .thenCompose(Function.identity());
+    }
+
+    // Network errors, timeouts, throttling and server errors may clear up; anything else won't.
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof IOException || error instanceof UncheckedIOException) {
+            return true;
+        }
+        if (error instanceof UpstreamStatusException statusError) {
+            return statusError.getStatusCode() == 429 || statusError.getStatusCode() >= 500;
+        }
+        return false;
+    }
+
+    public static class UpstreamStatusException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        public UpstreamStatusException(int statusCode) {
+            super("Upstream returned HTTP " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String feedName) {
+            super("Circuit open for feed " + feedName);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+
+/**
+ * Reads a GTFS-RT FeedMessage one entity at a time.
+ *
+ * FeedMessage.parseFrom builds the whole entity list before any of it can
+ * be used, so every entity of the feed is live at once. Walking the
+ * top-level fields by hand lets each entity be mapped and dropped while
+ * it is still young.
+ */
+public final class FeedParser {
+
+    private FeedParser() {}
+
+    /**
+     * Passes each entity in the payload to the consumer, in feed order, and
+     * returns the feed header.
+     */
+    public static FeedHeader parse(byte[] payload, Consumer<FeedEntity> consumer) {
+        CodedInputStream in = CodedInputStream.newInstance(payload);
+        ExtensionRegistryLite registry = ExtensionRegistryLite.getEmptyRegistry();
+        FeedHeader header = FeedHeader.getDefaultInstance();
+        try {
+            while (true) {
+                int tag = in.readTag();
+                if (tag == 0) {
+                    break;
+                }
+                int field = WireFormat.getTagFieldNumber(tag);
+                boolean delimited = WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+                if (field == FeedMessage.HEADER_FIELD_NUMBER && delimited) {
+                    header = in.readMessage(FeedHeader.parser(), registry);
+                } else if (field == FeedMessage.ENTITY_FIELD_NUMBER && delimited) {
+                    consumer.accept(in.readMessage(FeedEntity.parser(), registry));
+                } else if (!in.skipField(tag)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Reading from an in-memory array only fails on malformed input.
+            throw new IllegalStateException("Malformed GTFS-RT payload", e);
+        }
+        return header;
+    }
+}
@@ -0,0 +1,83 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Writes fetched feed payloads to disk as captures {@link ReplayFeedSource}
+ * can play back, one file per change at {dir}/{feed name}/{epoch millis}.pb.
+ *
+ * A payload identical to the feed's previous one isn't written again, since
+ * replay keeps serving the last capture until the next. Files are written
+ * on a thread of their own and only renamed into place once complete, so
+ * recording never holds up ingestion and a replay reading the same directory
+ * never sees half a capture. If the disk can't keep up, captures are
+ * dropped rather than queued without bound.
+ */
+public class FeedRecorder implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedRecorder.class);
+
+    private static final int MAX_PENDING_WRITES = 64;
+
+    private final Path dir;
+    private final ThreadPoolExecutor writer;
+    // Only written by the feed's own fetch, of which there is one at a time.
+    private final Map<String, byte[]> lastPayloads = new ConcurrentHashMap<>();
+
+    public FeedRecorder(Path dir) {
+        this.dir = dir;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("feed-recorder-");
+        threadFactory.setDaemon(true);
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_WRITES), threadFactory,
+            (task, executor) -> log.warn("Dropped a feed capture, {} writes already pending", MAX_PENDING_WRITES));
+    }
+
+    /**
+     * Queues the payload to be written as the feed's capture at the given
+     * time (epoch millis), unless it is the same as the last one.
+     */
+    public void record(String feedName, byte[] payload, long capturedAt) {
+        if (Arrays.equals(lastPayloads.put(feedName, payload), payload)) {
+            return;
+        }
+        writer.execute(() -> write(feedName, payload, capturedAt));
+    }
+
+    @Override
+    public void close() {
+        // Let pending captures finish so a recording ends with the last payload seen.
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String feedName, byte[] payload, long capturedAt) {
+        Path feedDir = dir.resolve(feedName);
+        try {
+            Files.createDirectories(feedDir);
+            Path partial = feedDir.resolve(capturedAt + ReplayFeedSource.CAPTURE_SUFFIX + ".part");
+            Files.write(partial, payload);
+            Files.move(partial, feedDir.resolve(capturedAt + ReplayFeedSource.CAPTURE_SUFFIX),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not record {} capture to {}", feedName, feedDir, e);
+        }
+    }
+}
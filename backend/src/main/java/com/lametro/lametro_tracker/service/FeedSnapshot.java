@@ -0,0 +1,98 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Immutable result of a single GTFS-RT feed refresh. A new snapshot is built
+ * off the request path and swapped in whole, so readers never see a
+ * partially populated list.
+ *
+ * The version identifies the feed content the snapshot was built from and
+ * doubles as the HTTP validator for responses derived from it.
+ */
+public class FeedSnapshot<T> {
+
+    // Upper bound on distinct response bodies kept per snapshot.
+    private static final int MAX_PREPARED_BODIES = 1024;
+
+    private final List<T> entities;
+    private final long version;
+    private final long lastModified;
+    private final long fetchedAt;
+    private final ConcurrentMap<String, PreparedBody> preparedBodies = new ConcurrentHashMap<>();
+
+    public FeedSnapshot(List<T> entities, long version, long lastModified, long fetchedAt) {
+        this.entities = List.copyOf(entities);
+        this.version = version;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public FeedSnapshot(List<T> entities, long fetchedAt) {
+        this(entities, 0, fetchedAt, fetchedAt);
+    }
+
+    // For subclasses that keep their rows in their own representation.
+    protected FeedSnapshot(long version, long lastModified, long fetchedAt) {
+        this(List.of(), version, lastModified, fetchedAt);
+    }
+
+    public static <T> FeedSnapshot<T> empty() {
+        return new FeedSnapshot<>(List.of(), 0);
+    }
+
+    public List<T> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Content version of the feed, or 0 if the snapshot is not versioned.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Feed timestamp in epoch milliseconds, from the GTFS-RT header when present.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Strong ETag for responses built from this snapshot, or null if unversioned.
+     */
+    public String getETag() {
+        return version == 0 ? null : "\"" + Long.toHexString(version) + "\"";
+    }
+
+    /**
+     * Returns the response body stored under the key, rendering it on first
+     * use. Bodies live and die with the snapshot, so they never go stale.
+     */
+    public PreparedBody preparedBody(String key, Supplier<byte[]> renderer) {
+        PreparedBody body = preparedBodies.get(key);
+        if (body != null) {
+            return body;
+        }
+        if (preparedBodies.size() >= MAX_PREPARED_BODIES) {
+            return PreparedBody.of(renderer.get());
+        }
+        return preparedBodies.computeIfAbsent(key, k -> PreparedBody.of(renderer.get()));
+    }
+
+    public boolean isEmpty() {
+        return entities.isEmpty();
+    }
+
+    public int size() {
+        return entities.size();
+    }
+}
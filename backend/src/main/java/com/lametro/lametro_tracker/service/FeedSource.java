@@ -0,0 +1,16 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where {@link FeedClient} gets GTFS-RT payloads from: the upstream API
+ * ({@link HttpFeedSource}) or recorded captures ({@link ReplayFeedSource}).
+ */
+public interface FeedSource {
+
+    /**
+     * Makes one attempt at the feed's current payload, already
+     * decompressed. Retries and circuit breaking are left to the caller.
+     */
+    CompletableFuture<byte[]> fetch(String feedName, String url);
+}
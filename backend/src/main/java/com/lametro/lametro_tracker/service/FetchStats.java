@@ -0,0 +1,64 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters for one upstream feed, updated by {@link FeedClient}.
+ */
+public class FetchStats {
+
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private volatile long lastLatencyMillis;
+    private volatile long lastPayloadBytes;
+    private volatile long lastSuccessAt;
+
+    void recordSuccess(long latencyMillis, long payloadBytes, long now) {
+        successes.incrementAndGet();
+        totalBytes.addAndGet(payloadBytes);
+        lastLatencyMillis = latencyMillis;
+        lastPayloadBytes = payloadBytes;
+        lastSuccessAt = now;
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    void recordRejection() {
+        rejections.incrementAndGet();
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Fetches skipped because the circuit breaker was open.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public long getLastPayloadBytes() {
+        return lastPayloadBytes;
+    }
+
+    public long getLastSuccessAt() {
+        return lastSuccessAt;
+    }
+}
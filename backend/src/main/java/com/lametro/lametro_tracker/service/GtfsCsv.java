@@ -0,0 +1,110 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a static GTFS text file row by row, with columns looked up by
+ * header name. Handles the quoting GTFS allows; rows are not kept.
+ */
+final class GtfsCsv implements Closeable {
+
+    private final BufferedReader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<String> fields = new ArrayList<>();
+
+    GtfsCsv(Path file) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+        // Some exports start with a byte order mark.
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        split(header);
+        for (int i = 0; i < fields.size(); i++) {
+            columns.put(fields.get(i).trim(), i);
+        }
+        fields.clear();
+    }
+
+    /**
+     * Advances to the next row, returning false at the end of the file.
+     */
+    boolean next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+        } while (line.isBlank());
+        split(line);
+        return true;
+    }
+
+    /**
+     * The current row's value in the named column, or "" if the file has no
+     * such column.
+     */
+    String get(String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= fields.size() ? "" : fields.get(index);
+    }
+
+    boolean hasColumn(String column) {
+        return columns.containsKey(column);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void split(String line) {
+        fields.clear();
+        if (line.indexOf('"') < 0) {
+            int start = 0;
+            int comma;
+            while ((comma = line.indexOf(',', start)) >= 0) {
+                fields.add(line.substring(start, comma));
+                start = comma + 1;
+            }
+            fields.add(line.substring(start));
+            return;
+        }
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+}
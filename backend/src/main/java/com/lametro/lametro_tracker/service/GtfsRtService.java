@@ -1,119 +1,357 @@
 package com.lametro.lametro_tracker.service;
 
-import java.net.HttpURLConnection;
-import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
-import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
+import org.springframework.context.ApplicationEventPublisher;
 
-import com.google.transit.realtime.GtfsRealtime.FeedEntity;
-import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
 import com.lametro.lametro_tracker.model.StopTimeUpdate;
 import com.lametro.lametro_tracker.model.VehiclePosition;
 
-@Service
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Keeps one agency's latest GTFS-RT vehicle positions and trip updates in
+ * memory. {@link AgencyRegistry} refreshes both feeds in the background, so
+ * API requests only ever read the current snapshot and never wait on Swiftly.
+ *
+ * Payloads are fetched on the shared HTTP client and parsed on the ingestion
+ * executor, so a large feed being parsed never holds up another's fetch.
+ *
+ * The trip updates served are predictions recomputed from both feeds on
+ * every refresh, and on failed refreshes too so that stale reports age out.
+ *
+ * For each feed and the predictions, metrics give the time to build a
+ * snapshot, how often one is swapped in or the payload was unchanged, and
+ * the size and header age of the snapshot being served.
+ */
 public class GtfsRtService {
 
     private static final Logger log = LoggerFactory.getLogger(GtfsRtService.class);
 
-    @Value("${lametro.api.key}")
-    private String apiKey;
+    public static final String VEHICLE_POSITIONS_FEED = "vehicle-positions";
+    public static final String TRIP_UPDATES_FEED = "trip-updates";
+    public static final String PREDICTIONS_FEED = "predictions";
 
-    private static final long CACHE_TTL_MS = 15_000;
-    private List<VehiclePosition> vehiclePositionsCache = new ArrayList<>();
-    private long vehiclePositionsCacheTime = 0;
-    private List<StopTimeUpdate> tripUpdatesCache = new ArrayList<>();
-    private long tripUpdatesCacheTime = 0;
+    // Comfortably above a day's worth of rail trip IDs.
+    private static final int MAX_INTERNED_IDS = 50_000;
 
-    public List<VehiclePosition> getVehiclePositions(){
-        long now = System.currentTimeMillis();
-        if (now - vehiclePositionsCacheTime < CACHE_TTL_MS && !vehiclePositionsCache.isEmpty()) {
-            return vehiclePositionsCache;
-        }
-        List<VehiclePosition> positions = new ArrayList<>();
-        try {
-            URI uri = new URI("https://api.goswift.ly/real-time/lametro-rail/gtfs-rt-vehicle-positions");
-            HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
-            conn.setRequestProperty("Authorization", apiKey);
-            try (InputStream inputStream = conn.getInputStream()){
-                FeedMessage feed = FeedMessage.parseFrom(inputStream);
-                for (FeedEntity entity: feed.getEntityList()) {
-                    if (entity.hasVehicle()) {
-                        var vehicle = entity.getVehicle();
-                        String vehicleId = vehicle.getVehicle().getId();
-                        String routeId = vehicle.getTrip().getRouteId();
-                        String tripId = vehicle.getTrip().getTripId();
-                        int directionId = vehicle.getTrip().getDirectionId();
-                        double latitude = vehicle.getPosition().getLatitude();
-                        double longitude = vehicle.getPosition().getLongitude();
-                        float bearing = vehicle.getPosition().getBearing();
-                        long timestamp = vehicle.getTimestamp();
-
-                        VehiclePosition pos = new VehiclePosition(
-                            vehicleId, routeId, tripId, directionId, latitude, longitude, bearing, timestamp
-                        );
-
-                        positions.add(pos);
-                    }
-                }
+    private final String agency;
+    private final FeedClient feedClient;
+    private final SnapshotRenderer renderer;
+    private final VehicleTracker tracker;
+    private final ArrivalPredictor predictor;
+    private final ApplicationEventPublisher events;
+    private final Executor ingestion;
+    private final MeterRegistry meters;
+    private final String vehiclePositionsUrl;
+    private final String tripUpdatesUrl;
 
-                // Update cache.
-                vehiclePositionsCache = positions;
-                vehiclePositionsCacheTime = now;
-            }
-        } catch (Exception e) {
-            log.error("Error fetching GTFS-RT vehicle positions", e);
-            if (!vehiclePositionsCache.isEmpty()) {
-                return vehiclePositionsCache;
+    // Number of past vehicle snapshots kept so clients can ask for deltas.
+    private final int vehicleHistorySize;
+
+    // Route, stop, trip and vehicle IDs shared by every snapshot of both feeds.
+    private final StringInterner ids = new StringInterner(MAX_INTERNED_IDS);
+
+    // Written only by the refresh tasks, read by every request thread.
+    private volatile VehicleSnapshot vehiclePositions = VehicleSnapshot.none();
+    private volatile List<VehicleSnapshot> recentVehicleSnapshots = List.of();
+    private volatile TripUpdateSnapshot reportedTripUpdates = TripUpdateSnapshot.none();
+    private volatile TripUpdateSnapshot tripUpdates = TripUpdateSnapshot.none();
+
+    // At most one fetch per feed is ever outstanding.
+    private final AtomicBoolean vehicleFetchInFlight = new AtomicBoolean();
+    private final AtomicBoolean tripUpdateFetchInFlight = new AtomicBoolean();
+
+    public GtfsRtService(
+        String agency,
+        FeedClient feedClient,
+        SnapshotRenderer renderer,
+        VehicleTracker tracker,
+        ArrivalPredictor predictor,
+        ApplicationEventPublisher events,
+        Executor ingestion,
+        MeterRegistry meters,
+        String vehiclePositionsUrl,
+        String tripUpdatesUrl,
+        int vehicleHistorySize
+    ) {
+        this.agency = agency;
+        this.feedClient = feedClient;
+        this.renderer = renderer;
+        this.tracker = tracker;
+        this.predictor = predictor;
+        this.events = events;
+        this.ingestion = ingestion;
+        this.meters = meters;
+        this.vehiclePositionsUrl = vehiclePositionsUrl;
+        this.tripUpdatesUrl = tripUpdatesUrl;
+        this.vehicleHistorySize = vehicleHistorySize;
+        registerSnapshotGauges(VEHICLE_POSITIONS_FEED, () -> vehiclePositions);
+        registerSnapshotGauges(TRIP_UPDATES_FEED, () -> reportedTripUpdates);
+        registerSnapshotGauges(PREDICTIONS_FEED, () -> tripUpdates);
+    }
+
+    public String getAgency() {
+        return agency;
+    }
+
+    /**
+     * The name the feed client keeps this agency's breaker and stats under.
+     */
+    public String feedName(String feed) {
+        return agency + "/" + feed;
+    }
+
+    public List<VehiclePosition> getVehiclePositions() {
+        return vehiclePositions.getEntities();
+    }
+
+    public VehicleSnapshot getVehicleSnapshot() {
+        return vehiclePositions;
+    }
+
+    /**
+     * Returns the recent vehicle snapshot with the given version, or null if
+     * it has already aged out of the history.
+     */
+    public VehicleSnapshot getVehicleSnapshot(long version) {
+        for (VehicleSnapshot snapshot : recentVehicleSnapshots) {
+            if (snapshot.getVersion() == version) {
+                return snapshot;
             }
         }
-        return positions;
+        return null;
     }
 
     public List<StopTimeUpdate> getTripUpdates() {
-        long now = System.currentTimeMillis();
-        if (now - tripUpdatesCacheTime < CACHE_TTL_MS && !tripUpdatesCache.isEmpty()) {
-            return tripUpdatesCache;
+        return tripUpdates.getEntities();
+    }
+
+    /**
+     * Predicted arrivals, merged from both feeds.
+     */
+    public TripUpdateSnapshot getTripUpdateSnapshot() {
+        return tripUpdates;
+    }
+
+    /**
+     * The trip-updates feed as last fetched, before merging with vehicle
+     * positions.
+     */
+    public TripUpdateSnapshot getReportedTripUpdateSnapshot() {
+        return reportedTripUpdates;
+    }
+
+    public CompletableFuture<Void> refreshVehiclePositions() {
+        return refresh(VEHICLE_POSITIONS_FEED, vehiclePositionsUrl, vehicleFetchInFlight, this::applyVehiclePositions);
+    }
+
+    public CompletableFuture<Void> refreshTripUpdates() {
+        return refresh(TRIP_UPDATES_FEED, tripUpdatesUrl, tripUpdateFetchInFlight, this::applyTripUpdates);
+    }
+
+    // The in-flight flag also means each feed has at most one parse queued on the ingestion executor.
+    private CompletableFuture<Void> refresh(String feed, String url, AtomicBoolean inFlight, Consumer<byte[]> apply) {
+        if (!inFlight.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
         }
-        List<StopTimeUpdate> updates = new ArrayList<>();
+        String feedName = feedName(feed);
+        CompletableFuture<byte[]> fetched;
         try {
-            URI uri = new URI("https://api.goswift.ly/real-time/lametro-rail/gtfs-rt-trip-updates");
-            HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
-            conn.setRequestProperty("Authorization", apiKey);
-            try (InputStream inputStream = conn.getInputStream()) {
-                FeedMessage feed = FeedMessage.parseFrom(inputStream);
-                for (FeedEntity entity : feed.getEntityList()) {
-                    if (entity.hasTripUpdate()) {
-                        var tripUpdate = entity.getTripUpdate();
-                        String tripId = tripUpdate.getTrip().getTripId();
-                        String routeId = tripUpdate.getTrip().getRouteId();
-                        int directionId = tripUpdate.getTrip().getDirectionId();
-
-                        for (var stopTimeUpdate : tripUpdate.getStopTimeUpdateList()) {
-                            String stopId = stopTimeUpdate.getStopId();
-                            if (stopTimeUpdate.hasArrival()) {
-                                long arrivalTime = stopTimeUpdate.getArrival().getTime();
-                                updates.add(new StopTimeUpdate(tripId, routeId, directionId, stopId, arrivalTime));
-                            }
-                        }
-                    }
+            fetched = feedClient.fetch(feedName, url);
+        } catch (RuntimeException e) {
+            // Goes through the handlers below, so the in-flight flag is still cleared.
+            fetched = CompletableFuture.failedFuture(e);
+        }
+        return fetched
+            .thenAcceptAsync(apply, ingestion)
+            .exceptionally(error -> {
+                // Keep serving the last good snapshot until it is too old to predict from.
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof FeedClient.CircuitOpenException) {
+                    log.debug("Skipping {} refresh: {}", feedName, cause.getMessage());
+                } else {
+                    log.error("Error fetching GTFS-RT {}", feedName, cause);
                 }
+                publishPredictions();
+                return null;
+            })
+            .whenComplete((ignored, error) -> inFlight.set(false));
+    }
 
-                // Update cache.
-                tripUpdatesCache = updates;
-                tripUpdatesCacheTime = now;
+    private void applyVehiclePositions(byte[] payload) {
+        long version = contentVersion(payload);
+        if (version == vehiclePositions.getVersion()) {
+            // Upstream hasn't changed since the last refresh.
+            counter("lametro.feed.unchanged", VEHICLE_POSITIONS_FEED).increment();
+            return;
+        }
+
+        // Swap in the new snapshot.
+        long start = System.nanoTime();
+        VehicleSnapshot snapshot = readVehiclePositions(payload, version, System.currentTimeMillis());
+        renderer.prepare(snapshot);
+        recordBuild(VEHICLE_POSITIONS_FEED, start);
+        vehiclePositions = snapshot;
+        recentVehicleSnapshots = appendBounded(recentVehicleSnapshots, snapshot, vehicleHistorySize);
+        counter("lametro.snapshot.swaps", VEHICLE_POSITIONS_FEED).increment();
+        events.publishEvent(new SnapshotPublishedEvent(agency, snapshot));
+        publishPredictions();
+    }
+
+    private void applyTripUpdates(byte[] payload) {
+        long version = contentVersion(payload);
+        if (version == reportedTripUpdates.getVersion()) {
+            // Upstream hasn't changed since the last refresh.
+            counter("lametro.feed.unchanged", TRIP_UPDATES_FEED).increment();
+            return;
+        }
+        long start = System.nanoTime();
+        reportedTripUpdates = readTripUpdates(payload, version, System.currentTimeMillis());
+        recordBuild(TRIP_UPDATES_FEED, start);
+        counter("lametro.snapshot.swaps", TRIP_UPDATES_FEED).increment();
+        publishPredictions();
+    }
+
+    // Both refresh tasks call this, so it runs one at a time.
+    private synchronized void publishPredictions() {
+        long start = System.nanoTime();
+        TripUpdateSnapshot snapshot = predictor.predict(reportedTripUpdates, vehiclePositions, System.currentTimeMillis());
+        if (snapshot.getVersion() == tripUpdates.getVersion()) {
+            // Built from the same reports as the one being served.
+            return;
+        }
+
+        // Swap in the new snapshot.
+        renderer.prepare(snapshot);
+        snapshot.getJourneys();
+        recordBuild(PREDICTIONS_FEED, start);
+        tripUpdates = snapshot;
+        counter("lametro.snapshot.swaps", PREDICTIONS_FEED).increment();
+        events.publishEvent(new SnapshotPublishedEvent(agency, snapshot));
+    }
+
+    private void registerSnapshotGauges(String feed, Supplier<FeedSnapshot<?>> current) {
+        Gauge.builder("lametro.snapshot.entities", current, s -> s.get().size())
+            .description("Rows in the snapshot being served")
+            .tag("feed", feedName(feed))
+            .strongReference(true)
+            .register(meters);
+        // Alert on this for staleness: it keeps growing while upstream is down or frozen.
+        Gauge.builder("lametro.snapshot.age", current, s -> snapshotAgeSeconds(s.get()))
+            .description("Seconds since the feed timestamp of the snapshot being served")
+            .baseUnit("seconds")
+            .tag("feed", feedName(feed))
+            .strongReference(true)
+            .register(meters);
+    }
+
+    private static double snapshotAgeSeconds(FeedSnapshot<?> snapshot) {
+        long lastModified = snapshot.getLastModified();
+        return lastModified == 0 ? Double.NaN : (System.currentTimeMillis() - lastModified) / 1000.0;
+    }
+
+    // Parsing a payload, or computing predictions, plus warming its common responses.
+    private void recordBuild(String feed, long start) {
+        Timer.builder("lametro.snapshot.build")
+            .description("Time to build a snapshot and render its common responses")
+            .tag("feed", feedName(feed))
+            .publishPercentileHistogram()
+            .register(meters)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Counter counter(String name, String feed) {
+        return meters.counter(name, "feed", feedName(feed));
+    }
+
+    /**
+     * Parses a vehicle positions payload into a snapshot without publishing
+     * it, snapping each vehicle to its shape.
+     */
+    public VehicleSnapshot readVehiclePositions(byte[] payload, long version, long now) {
+        List<VehiclePosition> positions = new ArrayList<>();
+        FeedHeader header = FeedParser.parse(payload, entity -> {
+            if (entity.hasVehicle()) {
+                var vehicle = entity.getVehicle();
+                String vehicleId = ids.intern(vehicle.getVehicle().getId());
+                String routeId = ids.intern(vehicle.getTrip().getRouteId());
+                String tripId = ids.intern(vehicle.getTrip().getTripId());
+                int directionId = vehicle.getTrip().getDirectionId();
+                double latitude = vehicle.getPosition().getLatitude();
+                double longitude = vehicle.getPosition().getLongitude();
+                float bearing = vehicle.getPosition().getBearing();
+                long timestamp = vehicle.getTimestamp();
+
+                positions.add(new VehiclePosition(
+                    vehicleId, routeId, tripId, directionId, latitude, longitude, bearing, timestamp
+                ));
             }
-        } catch (Exception e) {
-            log.error("Error fetching GTFS-RT trip updates", e);
-            if (!tripUpdatesCache.isEmpty()) {
-                return tripUpdatesCache;
+        });
+        tracker.track(positions, vehiclePositions);
+        return new VehicleSnapshot(positions, version, feedTime(header, now), now);
+    }
+
+    /**
+     * Parses a trip updates payload into a snapshot of the reported arrivals
+     * without publishing it. A stop with only a departure time is taken to
+     * arrive then. Stops with only a delay are left out, since the schedule
+     * we have gives running times but not per-trip times to apply it to.
+     */
+    public TripUpdateSnapshot readTripUpdates(byte[] payload, long version, long now) {
+        StopTimeTable.Builder updates = new StopTimeTable.Builder();
+        FeedHeader header = FeedParser.parse(payload, entity -> {
+            if (entity.hasTripUpdate()) {
+                var tripUpdate = entity.getTripUpdate();
+                String tripId = ids.intern(tripUpdate.getTrip().getTripId());
+                String routeId = ids.intern(tripUpdate.getTrip().getRouteId());
+                int directionId = tripUpdate.getTrip().getDirectionId();
+                long observedAt = tripUpdate.getTimestamp();
+
+                for (var stopTimeUpdate : tripUpdate.getStopTimeUpdateList()) {
+                    long arrivalTime = stopTimeUpdate.getArrival().getTime() > 0 ? stopTimeUpdate.getArrival().getTime()
+                        : stopTimeUpdate.getDeparture().getTime();
+                    if (arrivalTime > 0) {
+                        String stopId = ids.intern(stopTimeUpdate.getStopId());
+                        updates.add(tripId, routeId, directionId, stopId, arrivalTime, StopTimeUpdate.Source.REALTIME, observedAt);
+                    }
+                }
             }
-        }
-        return updates;
+        });
+        return new TripUpdateSnapshot(updates.build(), version, feedTime(header, now), now);
+    }
+
+    private static <T> List<T> appendBounded(List<T> list, T item, int maxSize) {
+        int start = Math.min(list.size(), Math.max(0, list.size() - maxSize + 1));
+        List<T> result = new ArrayList<>(list.subList(start, list.size()));
+        result.add(item);
+        return List.copyOf(result);
+    }
+
+    // Hash of the raw protobuf, so identical feeds always get the same version.
+    private static long contentVersion(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    // Prefer the producer's header timestamp over our own fetch time.
+    private static long feedTime(FeedHeader header, long fallback) {
+        long headerTimestamp = header.getTimestamp();
+        return headerTimestamp > 0 ? headerTimestamp * 1000 : fallback;
     }
 }
@@ -0,0 +1,426 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File format of the history store: one append-only file per series and
+ * time partition, holding one block per recorded snapshot.
+ *
+ * A file starts with a 16-byte header (magic, version, kind, flags and the
+ * partition start in epoch millis). Each block has a 20-byte header (body
+ * length, snapshot time in epoch millis, row count, dictionary offset)
+ * followed by the offset of each column, the columns one after another, and
+ * then a dictionary of the strings the columns refer to by index. Every value is a zigzag varint
+ * encoded as its column's {@link Codec} says, so most take one or two bytes.
+ *
+ * Blocks are only ever appended whole, and readers map a file up to the
+ * length the writer last committed, so they never see half a block.
+ */
+final class HistorySegment {
+
+    static final String SUFFIX = ".seg";
+
+    // Set on files whose superseded rows have been dropped.
+    static final byte COMPACTED = 1;
+
+    private static final int MAGIC = 0x4C4D5453;
+    private static final byte VERSION = 1;
+    private static final int FILE_HEADER = 16;
+    private static final int BLOCK_HEADER = 20;
+
+    // How a column's values are stored: as they are, as the difference from
+    // the previous row's, as seconds from the block's time, or as an index
+    // into the block's dictionary.
+    enum Codec { PLAIN, DELTA, SINCE_BLOCK, STRING }
+
+    /**
+     * What a series records, column by column.
+     */
+    enum Kind {
+        VEHICLES("vehicles", Codec.STRING, Codec.STRING, Codec.STRING, Codec.PLAIN, Codec.DELTA, Codec.DELTA,
+            Codec.PLAIN, Codec.SINCE_BLOCK),
+        ARRIVALS("arrivals", Codec.STRING, Codec.STRING, Codec.PLAIN, Codec.STRING, Codec.DELTA, Codec.PLAIN,
+            Codec.SINCE_BLOCK);
+
+        final String directory;
+        final Codec[] columns;
+
+        Kind(String directory, Codec... columns) {
+            this.directory = directory;
+            this.columns = columns;
+        }
+    }
+
+    // Vehicle columns; coordinates are in millionths of a degree.
+    static final int V_VEHICLE = 0, V_TRIP = 1, V_ROUTE = 2, V_DIRECTION = 3, V_LAT = 4, V_LON = 5, V_BEARING = 6,
+        V_TIMESTAMP = 7;
+
+    // Arrival columns.
+    static final int A_TRIP = 0, A_ROUTE = 1, A_DIRECTION = 2, A_STOP = 3, A_ARRIVAL = 4, A_SOURCE = 5,
+        A_OBSERVED_AT = 6;
+
+    private HistorySegment() {}
+
+    static Path path(Path dir, long partitionStart) {
+        return dir.resolve(partitionStart + SUFFIX);
+    }
+
+    /**
+     * The partition start in a segment's file name, or -1 if it isn't one.
+     */
+    static long partitionStart(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Creates the segment, or opens it to append after the blocks already
+     * in it. Returns the channel positioned at the end.
+     */
+    static FileChannel openForAppend(Path file, Kind kind, long partitionStart) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER) {
+            channel.truncate(0);
+            channel.write(fileHeader(kind, (byte) 0, partitionStart), 0);
+        }
+        // Drop a block left half-written by a crash.
+        channel.truncate(validLength(channel));
+        channel.position(channel.size());
+        return channel;
+    }
+
+    static ByteBuffer fileHeader(Kind kind, byte flags, long partitionStart) {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).put(VERSION).put((byte) kind.ordinal()).put(flags).put((byte) 0).putLong(partitionStart);
+        return header.flip();
+    }
+
+    static byte flags(ByteBuffer file) {
+        return file.get(6);
+    }
+
+    /**
+     * Maps the first {@code length} bytes of the segment read-only, or
+     * returns null if it holds no valid header.
+     */
+    static ByteBuffer map(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(length, channel.size());
+            if (size < FILE_HEADER) {
+                return null;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer.getInt(0) == MAGIC && buffer.get(4) == VERSION ? buffer : null;
+        }
+    }
+
+    /**
+     * Visits every block of a mapped segment whose time is within the
+     * range, decoding each into the same reusable block.
+     */
+    static void forEachBlock(ByteBuffer file, Kind kind, long fromMillis, long toMillis, BlockVisitor visitor) {
+        Block block = new Block(kind, file);
+        int position = FILE_HEADER;
+        while (position + BLOCK_HEADER <= file.limit()) {
+            int length = file.getInt(position);
+            long time = file.getLong(position + 4);
+            if (length < 0 || position + BLOCK_HEADER + length > file.limit()) {
+                return;
+            }
+            if (time >= fromMillis && time <= toMillis) {
+                block.read(position, time, file.getInt(position + 12), file.getInt(position + 16));
+                visitor.visit(block);
+            }
+            position += BLOCK_HEADER + length;
+        }
+    }
+
+    private static long validLength(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        long position = FILE_HEADER;
+        while (true) {
+            header.clear();
+            if (channel.read(header, position) < BLOCK_HEADER) {
+                return position;
+            }
+            long end = position + BLOCK_HEADER + header.getInt(0);
+            if (header.getInt(0) < 0 || end > channel.size()) {
+                return position;
+            }
+            position = end;
+        }
+    }
+
+    interface BlockVisitor {
+        void visit(Block block);
+    }
+
+    /**
+     * One block of a segment. Columns are decoded only when asked for, so a
+     * query that rules a block out by one column never reads the rest, and
+     * strings only when a row is returned.
+     */
+    static final class Block {
+        private final Kind kind;
+        private final ByteBuffer file;
+        long time;
+        int rows;
+        private int body;
+        private final long[][] columns;
+        private final boolean[] decoded;
+        private int[] stringStart = new int[64];
+        private int[] stringLength = new int[64];
+        private String[] decodedStrings = new String[64];
+        private int strings;
+
+        Block(Kind kind, ByteBuffer file) {
+            this.kind = kind;
+            this.file = file;
+            this.columns = new long[kind.columns.length][64];
+            this.decoded = new boolean[kind.columns.length];
+        }
+
+        /**
+         * The dictionary index of the string, or -1 if no row refers to it.
+         */
+        int find(byte[] utf8) {
+            for (int i = 0; i < strings; i++) {
+                if (stringLength[i] == utf8.length && matches(utf8, stringStart[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Number of strings in the block's dictionary.
+        int stringCount() {
+            return strings;
+        }
+
+        String string(long index) {
+            int i = (int) index;
+            if (decodedStrings[i] == null) {
+                byte[] bytes = new byte[stringLength[i]];
+                file.get(stringStart[i], bytes);
+                decodedStrings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return decodedStrings[i];
+        }
+
+        /**
+         * Every row's value in the column, decoded on first use.
+         */
+        long[] column(int c) {
+            long[] column = columns[c];
+            if (decoded[c]) {
+                return column;
+            }
+            int[] at = {body + file.getInt(body + c * 4)};
+            long blockSeconds = time / 1000;
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                long value = unzigzag(readVarint(file, at));
+                switch (kind.columns[c]) {
+                    case DELTA -> value = previous += value;
+                    case SINCE_BLOCK -> value += blockSeconds;
+                    default -> { }
+                }
+                column[row] = value;
+            }
+            decoded[c] = true;
+            return column;
+        }
+
+        private boolean matches(byte[] utf8, int start) {
+            for (int i = 0; i < utf8.length; i++) {
+                if (file.get(start + i) != utf8[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void read(int position, long time, int rows, int dictionaryOffset) {
+            this.time = time;
+            this.rows = rows;
+            this.body = position + BLOCK_HEADER;
+            Arrays.fill(decoded, false);
+            if (columns[0].length < rows) {
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = new long[Math.max(rows, columns[c].length * 2)];
+                }
+            }
+            int[] at = {body + dictionaryOffset};
+            strings = (int) readVarint(file, at);
+            if (stringStart.length < strings) {
+                stringStart = new int[strings * 2];
+                stringLength = new int[strings * 2];
+                decodedStrings = new String[strings * 2];
+            }
+            Arrays.fill(decodedStrings, 0, strings, null);
+            for (int i = 0; i < strings; i++) {
+                stringLength[i] = (int) readVarint(file, at);
+                stringStart[i] = at[0];
+                at[0] += stringLength[i];
+            }
+        }
+
+        private static long readVarint(ByteBuffer buffer, int[] at) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(at[0]++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Builds one block at a time in reusable column arrays, then encodes it
+     * into a reusable buffer. Not thread-safe; each series has its own.
+     */
+    static final class Encoder {
+        private final Kind kind;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private long[][] columns;
+        private int rows;
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+
+        Encoder(Kind kind) {
+            this.kind = kind;
+            this.columns = new long[kind.columns.length][256];
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        long string(String value) {
+            return dictionary.computeIfAbsent(value == null ? "" : value, key -> {
+                strings.add(key);
+                return strings.size() - 1;
+            });
+        }
+
+        void set(int column, long value) {
+            if (rows == columns[column].length) {
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], rows * 2);
+                }
+            }
+            columns[column][rows] = value;
+        }
+
+        void endRow() {
+            rows++;
+        }
+
+        /**
+         * Appends the rows so far as a block at the given time (epoch
+         * millis) and starts the next block empty. Returns the bytes written.
+         */
+        int writeTo(FileChannel channel, long time) throws IOException {
+            try {
+                return write(channel, time);
+            } finally {
+                clear();
+            }
+        }
+
+        /**
+         * Drops the rows so far.
+         */
+        void clear() {
+            rows = 0;
+            dictionary.clear();
+            strings.clear();
+        }
+
+        private int write(FileChannel channel, long time) throws IOException {
+            // Each column's offset in the body comes first.
+            size = BLOCK_HEADER + columns.length * 4;
+            long blockSeconds = time / 1000;
+            for (int c = 0; c < columns.length; c++) {
+                ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(BLOCK_HEADER + c * 4, size - BLOCK_HEADER);
+                long previous = 0;
+                for (int row = 0; row < rows; row++) {
+                    long value = columns[c][row];
+                    switch (kind.columns[c]) {
+                        case DELTA -> {
+                            long delta = value - previous;
+                            previous = value;
+                            value = delta;
+                        }
+                        case SINCE_BLOCK -> value -= blockSeconds;
+                        default -> { }
+                    }
+                    writeVarint(zigzag(value));
+                }
+            }
+            int dictionaryOffset = size - BLOCK_HEADER;
+            writeVarint(strings.size());
+            for (String value : strings) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(utf8.length);
+                ensure(utf8.length);
+                System.arraycopy(utf8, 0, bytes, size, utf8.length);
+                size += utf8.length;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, size - BLOCK_HEADER).putLong(4, time).putInt(12, rows).putInt(16, dictionaryOffset);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return size;
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
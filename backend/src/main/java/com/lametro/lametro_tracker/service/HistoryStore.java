@@ -0,0 +1,706 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.lametro.lametro_tracker.model.ObservedArrival;
+import com.lametro.lametro_tracker.model.TrackPoint;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.HistorySegment.Block;
+import com.lametro.lametro_tracker.service.HistorySegment.Kind;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Optional record of every vehicle position and predicted arrival, kept in
+ * {@link HistorySegment} files at {dir}/{agency}/{vehicles|arrivals}/, one
+ * per time partition.
+ *
+ * Only changes are written: a vehicle when it reports a new position, an
+ * arrival when its predicted time moves. Each partition starts over with
+ * everything it sees, so it can be read or deleted on its own. Once a
+ * partition is older than the raw window it is compacted: arrivals keep only
+ * their last prediction, which is when the train came, and tracks are
+ * thinned to a point every {@value #COMPACTED_TRACK_SECONDS} seconds.
+ * Partitions older than the retention are deleted.
+ *
+ * Snapshots are encoded and appended on a thread of their own, so a refresh
+ * only pays for queueing them. If the disk can't keep up, snapshots are
+ * dropped and counted rather than queued without bound. Compaction and
+ * deletion run on another thread, so they never hold up appends. Queries
+ * map the segments read-only and skip blocks whose dictionary doesn't name
+ * what they are looking for.
+ */
+@Component
+public class HistoryStore implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryStore.class);
+
+    private static final int MAX_PENDING_SNAPSHOTS = 64;
+
+    // Compacted tracks keep a point per vehicle at most this often.
+    static final long COMPACTED_TRACK_SECONDS = 30;
+
+    // A position is recorded by the first fetch after its report, at most this much later.
+    private static final long MAX_REPORT_LAG_MILLIS = 5 * 60_000;
+
+    private static final double MICRODEGREES = 1e6;
+
+    // Null when history is off.
+    private final Path dir;
+    private final long segmentMillis;
+    private final long rawMillis;
+    private final long retentionMillis;
+    private final MeterRegistry meters;
+    private final ThreadPoolExecutor writer;
+    private final ThreadPoolExecutor maintenance;
+    // Held while compacting or deleting, so only one pass touches the files at a time.
+    private final Object maintenanceLock = new Object();
+    private final Counter dropped;
+    // Keyed by agency ID and kind.
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    public HistoryStore(
+        @Value("${lametro.history.dir:}") String dir,
+        @Value("${lametro.history.segment-minutes:60}") long segmentMinutes,
+        @Value("${lametro.history.raw-hours:24}") long rawHours,
+        @Value("${lametro.history.retention-days:30}") long retentionDays,
+        MeterRegistry meters
+    ) {
+        this.dir = dir == null || dir.isEmpty() ? null : Path.of(dir);
+        this.segmentMillis = segmentMinutes * 60_000;
+        this.rawMillis = rawHours * 3_600_000;
+        this.retentionMillis = retentionDays * 86_400_000;
+        this.meters = meters;
+        this.dropped = Counter.builder("lametro.history.dropped")
+            .description("Snapshots not recorded because the history writer was behind")
+            .register(meters);
+        if (this.dir == null) {
+            this.writer = null;
+            this.maintenance = null;
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("history-writer-");
+        threadFactory.setDaemon(true);
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_SNAPSHOTS), threadFactory, (task, executor) -> dropped.increment());
+        CustomizableThreadFactory maintenanceFactory = new CustomizableThreadFactory("history-maintenance-");
+        maintenanceFactory.setDaemon(true);
+        // Passes are queued at most once per series per partition, so the queue stays short.
+        this.maintenance = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), maintenanceFactory, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    @EventListener
+    public void onSnapshotPublished(SnapshotPublishedEvent event) {
+        if (writer != null) {
+            writer.execute(() -> record(event.getAgency(), event.getSnapshot()));
+        }
+    }
+
+    /**
+     * Appends what changed in the snapshot since the last one of its kind,
+     * as of the time it was fetched. Normally called on the writer thread.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void record(String agency, FeedSnapshot<?> snapshot) {
+        if (dir == null || snapshot.isEmpty()) {
+            return;
+        }
+        Kind kind = snapshot instanceof TripUpdateSnapshot ? Kind.ARRIVALS : Kind.VEHICLES;
+        Series target = series.computeIfAbsent(key(agency, kind), k -> new Series(agency, kind));
+        long started = System.nanoTime();
+        try {
+            target.start(snapshot.getFetchedAt());
+            if (snapshot instanceof TripUpdateSnapshot arrivals) {
+                target.addArrivals(arrivals);
+            } else {
+                target.addVehicles((List<VehiclePosition>) snapshot.getEntities());
+            }
+            target.commit(snapshot.getFetchedAt());
+        } catch (IOException e) {
+            log.error("Could not record {} {} history to {}", agency, kind.directory, target.dir, e);
+            target.close();
+        }
+        target.appends.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Where the vehicle reported itself between from and to (epoch seconds),
+     * oldest first.
+     */
+    public List<TrackPoint> track(String agency, String vehicleId, long from, long to) {
+        byte[] id = vehicleId.getBytes(StandardCharsets.UTF_8);
+        Map<Long, TrackPoint> points = new HashMap<>();
+        scan(agency, Kind.VEHICLES, from * 1000, to * 1000 + MAX_REPORT_LAG_MILLIS, false, block -> {
+            int vehicle = block.find(id);
+            if (vehicle < 0) {
+                return;
+            }
+            long[] vehicles = block.column(HistorySegment.V_VEHICLE);
+            for (int row = 0; row < block.rows; row++) {
+                if (vehicles[row] != vehicle) {
+                    continue;
+                }
+                long timestamp = block.column(HistorySegment.V_TIMESTAMP)[row];
+                if (timestamp >= from && timestamp <= to) {
+                    // A new partition records every vehicle again, so a point can appear twice.
+                    points.putIfAbsent(timestamp, new TrackPoint(timestamp,
+                        block.column(HistorySegment.V_LAT)[row] / MICRODEGREES,
+                        block.column(HistorySegment.V_LON)[row] / MICRODEGREES,
+                        block.column(HistorySegment.V_BEARING)[row],
+                        block.string(block.column(HistorySegment.V_TRIP)[row]),
+                        block.string(block.column(HistorySegment.V_ROUTE)[row]),
+                        (int) block.column(HistorySegment.V_DIRECTION)[row]));
+                }
+            }
+        });
+        List<TrackPoint> track = new ArrayList<>(points.values());
+        track.sort(Comparator.comparingLong(TrackPoint::getTimestamp));
+        return track;
+    }
+
+    /**
+     * Arrivals at the platforms between from and to (epoch seconds), each
+     * at the time last predicted for it, in order, with the headway since
+     * the one before at the same platform on the same route and direction.
+     * Optionally only one route, or one direction.
+     */
+    public List<ObservedArrival> arrivals(String agency, List<String> stopIds, String routeId, Integer directionId,
+            long from, long to) {
+        byte[][] stops = stopIds.stream().map(id -> id.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+        byte[] route = routeId == null ? null : routeId.getBytes(StandardCharsets.UTF_8);
+        Map<String, ObservedArrival> latest = new LinkedHashMap<>();
+        long[] observedUntil = {0};
+        int[] stopIndexes = new int[stops.length];
+        // An arrival's last prediction is recorded in the partition its train came in, or next to it.
+        long newestPartition = scan(agency, Kind.ARRIVALS, from * 1000 - segmentMillis, to * 1000 + segmentMillis, true, block -> {
+            observedUntil[0] = Math.max(observedUntil[0], block.time);
+            int routeIndex = route == null ? -1 : block.find(route);
+            boolean any = false;
+            for (int i = 0; i < stops.length; i++) {
+                stopIndexes[i] = block.find(stops[i]);
+                any |= stopIndexes[i] >= 0;
+            }
+            if (!any || route != null && routeIndex < 0) {
+                return;
+            }
+            long[] stopColumn = block.column(HistorySegment.A_STOP);
+            for (int row = 0; row < block.rows; row++) {
+                if (!contains(stopIndexes, stopColumn[row])
+                        || route != null && block.column(HistorySegment.A_ROUTE)[row] != routeIndex
+                        || directionId != null && block.column(HistorySegment.A_DIRECTION)[row] != directionId) {
+                    continue;
+                }
+                String tripId = block.string(block.column(HistorySegment.A_TRIP)[row]);
+                String stopId = block.string(stopColumn[row]);
+                // Keyed by trip and stop, so later predictions replace earlier ones.
+                latest.put(tripId + '\n' + stopId, new ObservedArrival(tripId,
+                    block.string(block.column(HistorySegment.A_ROUTE)[row]),
+                    (int) block.column(HistorySegment.A_DIRECTION)[row], stopId,
+                    block.column(HistorySegment.A_ARRIVAL)[row], null));
+            }
+        });
+
+        // Anything still ahead of the last recorded snapshot hasn't been observed yet.
+        long recordedUntil = Math.max(observedUntil[0], newestPartition);
+        List<ObservedArrival> observed = new ArrayList<>();
+        for (ObservedArrival arrival : latest.values()) {
+            if (arrival.getArrivalTime() * 1000 <= recordedUntil) {
+                observed.add(arrival);
+            }
+        }
+        observed.sort(Comparator.comparingLong(ObservedArrival::getArrivalTime));
+        // Keyed by platform as well, so one train reaching two of the platforms isn't a headway.
+        Map<String, Long> previous = new HashMap<>();
+        List<ObservedArrival> result = new ArrayList<>();
+        for (ObservedArrival arrival : observed) {
+            String place = arrival.getStopId() + '\n' + arrival.getRouteId() + '\n' + arrival.getDirectionId();
+            Long last = previous.put(place, arrival.getArrivalTime());
+            if (arrival.getArrivalTime() >= from && arrival.getArrivalTime() <= to) {
+                result.add(new ObservedArrival(arrival.getTripId(), arrival.getRouteId(), arrival.getDirectionId(),
+                    arrival.getStopId(), arrival.getArrivalTime(), last == null ? null : arrival.getArrivalTime() - last));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes and compacts every series' closed partitions as of now (epoch
+     * millis). Runs by itself, in the background, whenever a series starts
+     * a new partition.
+     */
+    public void maintain(long now) {
+        for (Series each : series.values()) {
+            each.maintain(now);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (writer == null) {
+            return;
+        }
+        // Let queued snapshots finish so the last one seen is on disk.
+        writer.shutdown();
+        maintenance.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+            maintenance.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            series.values().forEach(Series::close);
+        }
+    }
+
+    // Visits the blocks of every partition overlapping the range, oldest first. Compacted
+    // partitions are one block timed at their end, so all of it is visited. Returns the
+    // start of the newest partition recorded, in range or not, or -1 if there is none.
+    private long scan(String agency, Kind kind, long fromMillis, long toMillis, boolean allBlocks,
+            HistorySegment.BlockVisitor visitor) {
+        if (dir == null) {
+            return -1;
+        }
+        Path kindDir = dir.resolve(agency).resolve(kind.directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(kindDir)) {
+            files = listing.filter(file -> HistorySegment.partitionStart(file) >= 0)
+                .sorted(Comparator.comparingLong(HistorySegment::partitionStart)).toList();
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Series writing = series.get(key(agency, kind));
+        for (Path file : files) {
+            long start = HistorySegment.partitionStart(file);
+            if (start > toMillis || start + segmentMillis <= fromMillis) {
+                continue;
+            }
+            ByteBuffer mapped;
+            try {
+                mapped = HistorySegment.map(file, writing == null ? Long.MAX_VALUE : writing.readableLength(start));
+            } catch (NoSuchFileException e) {
+                // Deleted by retention since the listing.
+                continue;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (mapped == null) {
+                continue;
+            }
+            boolean whole = allBlocks || HistorySegment.flags(mapped) == HistorySegment.COMPACTED;
+            HistorySegment.forEachBlock(mapped, kind, whole ? Long.MIN_VALUE : fromMillis,
+                whole ? Long.MAX_VALUE : toMillis, visitor);
+        }
+        return files.isEmpty() ? -1 : HistorySegment.partitionStart(files.get(files.size() - 1));
+    }
+
+    private static boolean contains(int[] values, long value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String agency, Kind kind) {
+        return agency + '/' + kind.directory;
+    }
+
+    /**
+     * One agency's vehicles or arrivals: the partition being appended to
+     * and what has been recorded in it.
+     */
+    private final class Series {
+        final Kind kind;
+        final Path dir;
+        final HistorySegment.Encoder encoder;
+        final Timer appends;
+        // Last value recorded in this partition per vehicle, or per trip and stop.
+        final Map<String, Long> recorded = new HashMap<>();
+        FileChannel channel;
+        volatile long partitionStart = -1;
+        // Bytes of the partition's file that hold whole blocks.
+        volatile long committed;
+
+        Series(String agency, Kind kind) {
+            this.kind = kind;
+            this.dir = HistoryStore.this.dir.resolve(agency).resolve(kind.directory);
+            this.encoder = new HistorySegment.Encoder(kind);
+            this.appends = Timer.builder("lametro.history.append")
+                .description("Time to encode and append a snapshot's changes")
+                .tag("agency", agency)
+                .tag("kind", kind.directory)
+                .register(meters);
+        }
+
+        // Opens the partition the time falls in, if it isn't the one open already.
+        void start(long time) throws IOException {
+            long start = Math.floorDiv(time, segmentMillis) * segmentMillis;
+            if (channel != null && start == partitionStart) {
+                return;
+            }
+            close();
+            Files.createDirectories(dir);
+            channel = HistorySegment.openForAppend(HistorySegment.path(dir, start), kind, start);
+            recorded.clear();
+            committed = channel.size();
+            partitionStart = start;
+            maintenance.execute(() -> maintain(time));
+        }
+
+        void addVehicles(List<VehiclePosition> vehicles) {
+            for (VehiclePosition vehicle : vehicles) {
+                if (vehicle.getVehicleId() == null) {
+                    continue;
+                }
+                Long last = recorded.put(vehicle.getVehicleId(), vehicle.getTimestamp());
+                if (last != null && last == vehicle.getTimestamp()) {
+                    continue;
+                }
+                encoder.set(HistorySegment.V_VEHICLE, encoder.string(vehicle.getVehicleId()));
+                encoder.set(HistorySegment.V_TRIP, encoder.string(vehicle.getTripId()));
+                encoder.set(HistorySegment.V_ROUTE, encoder.string(vehicle.getRouteId()));
+                encoder.set(HistorySegment.V_DIRECTION, vehicle.getDirectionId());
+                encoder.set(HistorySegment.V_LAT, Math.round(vehicle.getLatitude() * MICRODEGREES));
+                encoder.set(HistorySegment.V_LON, Math.round(vehicle.getLongitude() * MICRODEGREES));
+                encoder.set(HistorySegment.V_BEARING, Math.round(vehicle.getBearing()));
+                encoder.set(HistorySegment.V_TIMESTAMP, vehicle.getTimestamp());
+                encoder.endRow();
+            }
+        }
+
+        void addArrivals(TripUpdateSnapshot arrivals) {
+            arrivals.forEachArrival((tripId, routeId, directionId, stopId, arrivalTime, source, observedAt) -> {
+                Long last = recorded.put(tripId + '\n' + stopId, arrivalTime);
+                if (last != null && last == arrivalTime) {
+                    return;
+                }
+                encoder.set(HistorySegment.A_TRIP, encoder.string(tripId));
+                encoder.set(HistorySegment.A_ROUTE, encoder.string(routeId));
+                encoder.set(HistorySegment.A_DIRECTION, directionId);
+                encoder.set(HistorySegment.A_STOP, encoder.string(stopId));
+                encoder.set(HistorySegment.A_ARRIVAL, arrivalTime);
+                encoder.set(HistorySegment.A_SOURCE, source.ordinal());
+                encoder.set(HistorySegment.A_OBSERVED_AT, observedAt);
+                encoder.endRow();
+            });
+        }
+
+        void commit(long time) throws IOException {
+            if (encoder.rows() > 0) {
+                encoder.writeTo(channel, time);
+                committed = channel.position();
+            }
+        }
+
+        // How much of a partition's file readers may map.
+        long readableLength(long start) {
+            long length = committed;
+            return start == partitionStart ? length : Long.MAX_VALUE;
+        }
+
+        void close() {
+            encoder.clear();
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close history segment in {}", dir, e);
+            }
+            channel = null;
+            partitionStart = -1;
+        }
+
+        void maintain(long now) {
+            synchronized (maintenanceLock) {
+                maintainFiles(now);
+            }
+        }
+
+        private void maintainFiles(long now) {
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(dir)) {
+                files = listing.toList();
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Could not list history segments in {}", dir, e);
+                return;
+            }
+            for (Path file : files) {
+                long start = HistorySegment.partitionStart(file);
+                if (start < 0 || start == partitionStart) {
+                    continue;
+                }
+                try {
+                    if (start + segmentMillis <= now - retentionMillis) {
+                        Files.deleteIfExists(file);
+                    } else if (start + segmentMillis <= now - rawMillis) {
+                        compact(file, start);
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not compact or delete history segment {}", file, e);
+                }
+            }
+        }
+
+        // Rewrites the partition as one block of the rows worth keeping, then swaps it in. One pass over
+        // the key columns picks the rows by their place in the file, and a second copies just those out.
+        private void compact(Path file, long start) throws IOException {
+            ByteBuffer mapped = HistorySegment.map(file, Long.MAX_VALUE);
+            if (mapped == null || HistorySegment.flags(mapped) == HistorySegment.COMPACTED) {
+                return;
+            }
+            long[] end = {start};
+            HistorySegment.forEachBlock(mapped, kind, Long.MIN_VALUE, Long.MAX_VALUE,
+                block -> end[0] = Math.max(end[0], block.time));
+            int[] kept = kind == Kind.ARRIVALS ? lastArrivals(mapped) : thinnedTrack(mapped);
+
+            HistorySegment.Encoder compacted = new HistorySegment.Encoder(kind);
+            int[] blockStart = {0};
+            int[] next = {0};
+            HistorySegment.forEachBlock(mapped, kind, Long.MIN_VALUE, Long.MAX_VALUE, block -> {
+                int first = blockStart[0];
+                blockStart[0] += block.rows;
+                for (; next[0] < kept.length && kept[next[0]] < blockStart[0]; next[0]++) {
+                    int row = kept[next[0]] - first;
+                    for (int c = 0; c < kind.columns.length; c++) {
+                        long value = block.column(c)[row];
+                        compacted.set(c, kind.columns[c] == HistorySegment.Codec.STRING
+                            ? compacted.string(block.string(value)) : value);
+                    }
+                    compacted.endRow();
+                }
+            });
+            Path partial = file.resolveSibling(file.getFileName() + ".part");
+            try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                out.write(HistorySegment.fileHeader(kind, HistorySegment.COMPACTED, start));
+                if (compacted.rows() > 0) {
+                    compacted.writeTo(out, end[0]);
+                }
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // The rows of the last prediction of each trip's arrival at each stop, in file order.
+        private int[] lastArrivals(ByteBuffer mapped) {
+            PartitionStrings strings = new PartitionStrings();
+            LastRows last = new LastRows();
+            int[] blockStart = {0};
+            HistorySegment.forEachBlock(mapped, kind, Long.MIN_VALUE, Long.MAX_VALUE, block -> {
+                strings.startBlock(block);
+                long[] trips = block.column(HistorySegment.A_TRIP);
+                long[] stops = block.column(HistorySegment.A_STOP);
+                for (int row = 0; row < block.rows; row++) {
+                    last.put((long) strings.id(trips[row]) << 32 | strings.id(stops[row]), blockStart[0] + row);
+                }
+                blockStart[0] += block.rows;
+            });
+            return last.rows();
+        }
+
+        // The rows of each vehicle's points at least COMPACTED_TRACK_SECONDS apart, in file order.
+        private int[] thinnedTrack(ByteBuffer mapped) {
+            PartitionStrings strings = new PartitionStrings();
+            int[][] vehicles = {new int[1024]};
+            long[][] timestamps = {new long[1024]};
+            int[] count = {0};
+            HistorySegment.forEachBlock(mapped, kind, Long.MIN_VALUE, Long.MAX_VALUE, block -> {
+                strings.startBlock(block);
+                if (count[0] + block.rows > vehicles[0].length) {
+                    int capacity = Math.max(count[0] + block.rows, vehicles[0].length * 2);
+                    vehicles[0] = Arrays.copyOf(vehicles[0], capacity);
+                    timestamps[0] = Arrays.copyOf(timestamps[0], capacity);
+                }
+                long[] ids = block.column(HistorySegment.V_VEHICLE);
+                System.arraycopy(block.column(HistorySegment.V_TIMESTAMP), 0, timestamps[0], count[0], block.rows);
+                for (int row = 0; row < block.rows; row++) {
+                    vehicles[0][count[0] + row] = strings.id(ids[row]);
+                }
+                count[0] += block.rows;
+            });
+            int rows = count[0];
+            int[] vehicle = vehicles[0];
+            long[] timestamp = timestamps[0];
+
+            // Counting sort by vehicle, which keeps each one's rows in file order.
+            int[] groupStart = new int[strings.size() + 1];
+            for (int row = 0; row < rows; row++) {
+                groupStart[vehicle[row] + 1]++;
+            }
+            for (int v = 0; v < strings.size(); v++) {
+                groupStart[v + 1] += groupStart[v];
+            }
+            int[] grouped = new int[rows];
+            int[] next = Arrays.copyOf(groupStart, strings.size());
+            for (int row = 0; row < rows; row++) {
+                grouped[next[vehicle[row]]++] = row;
+            }
+
+            int[] kept = new int[rows];
+            int keptCount = 0;
+            long[] byTime = new long[rows];
+            for (int v = 0; v < strings.size(); v++) {
+                int from = groupStart[v];
+                int size = groupStart[v + 1] - from;
+                // Timestamp in the high bits and place in the group in the low 24, far more than a
+                // vehicle reports in a partition, so sorting orders by time and then file order.
+                for (int i = 0; i < size; i++) {
+                    byTime[i] = Math.max(0, timestamp[grouped[from + i]]) << 24 | i;
+                }
+                Arrays.sort(byTime, 0, size);
+                long lastKept = Long.MIN_VALUE;
+                for (int i = 0; i < size; i++) {
+                    int row = grouped[from + (int) (byTime[i] & 0xFFFFFF)];
+                    if (timestamp[row] >= lastKept + COMPACTED_TRACK_SECONDS) {
+                        kept[keptCount++] = row;
+                        lastKept = timestamp[row];
+                    }
+                }
+            }
+            kept = Arrays.copyOf(kept, keptCount);
+            Arrays.sort(kept);
+            return kept;
+        }
+    }
+
+    /**
+     * Numbers the strings of a partition's blocks in one dictionary, so
+     * rows from different blocks can be compared by number.
+     */
+    private static final class PartitionStrings {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private Block block;
+        // The block's dictionary indexes to partition numbers, or -1 until first used.
+        private int[] renumbered = new int[64];
+
+        void startBlock(Block block) {
+            this.block = block;
+            if (renumbered.length < block.stringCount()) {
+                renumbered = new int[block.stringCount() * 2];
+            }
+            Arrays.fill(renumbered, 0, block.stringCount(), -1);
+        }
+
+        int id(long index) {
+            int i = (int) index;
+            if (renumbered[i] < 0) {
+                renumbered[i] = ids.computeIfAbsent(block.string(i), key -> ids.size());
+            }
+            return renumbered[i];
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+
+    /**
+     * The last row seen for each key, in an open-addressed table that grows
+     * with the distinct keys rather than the rows.
+     */
+    private static final class LastRows {
+        private static final long EMPTY = -1;
+
+        private long[] keys = new long[1024];
+        private int[] rows = new int[1024];
+        private int size;
+
+        LastRows() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void put(long key, int row) {
+            int slot = slot(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                if (++size * 2 > keys.length) {
+                    grow();
+                    slot = slot(keys, key);
+                }
+            }
+            rows[slot] = row;
+        }
+
+        // Every key's last row, in order.
+        int[] rows() {
+            int[] result = new int[size];
+            int count = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    result[count++] = rows[slot];
+                }
+            }
+            Arrays.sort(result);
+            return result;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new long[oldKeys.length * 2];
+            rows = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+
+        // The key's slot, or the empty one it would go in.
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Fetches feeds from the upstream API with one shared, pooled HTTP/2 client
+ * with connect and request timeouts.
+ */
+public class HttpFeedSource implements FeedSource, AutoCloseable {
+
+    private final HttpClient httpClient;
+    // Null when responses are handled on virtual threads, which need no pool.
+    private final ExecutorService pool;
+    private final String apiKey;
+    private final Duration requestTimeout;
+
+    public HttpFeedSource(String apiKey, long connectTimeoutMillis, long requestTimeoutMillis) {
+        this(apiKey, connectTimeoutMillis, requestTimeoutMillis, false);
+    }
+
+    /**
+     * With {@code virtualThreads}, which needs Java 21, responses are read
+     * and decompressed on a virtual thread each instead of a pool of two.
+     */
+    public HttpFeedSource(String apiKey, long connectTimeoutMillis, long requestTimeoutMillis, boolean virtualThreads) {
+        Executor executor;
+        if (virtualThreads) {
+            this.pool = null;
+            executor = new VirtualThreadTaskExecutor("feed-client-");
+        } else {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("feed-client-");
+            threadFactory.setDaemon(true);
+            this.pool = Executors.newFixedThreadPool(2, threadFactory);
+            executor = pool;
+        }
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(executor)
+            .build();
+        this.apiKey = apiKey;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetch(String feedName, String url) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(requestTimeout)
+            .header("Authorization", apiKey)
+            .header("Accept-Encoding", "gzip")
+            .GET()
+            .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(HttpFeedSource::decode);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] decode(HttpResponse<byte[]> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw new FeedClient.UpstreamStatusException(response.statusCode());
+        }
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+            .map(coding -> coding.equalsIgnoreCase("gzip"))
+            .orElse(false);
+        if (!gzipped) {
+            return response.body();
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import com.lametro.lametro_tracker.model.Journey;
+import com.lametro.lametro_tracker.model.JourneyLeg;
+
+/**
+ * Answers "if I board at this station now, when do I reach that one" from
+ * one arrival snapshot, with at most one transfer, made at a station where
+ * lines meet.
+ *
+ * Built once per snapshot from its arrivals: every trip's stops as a
+ * contiguous run of rows in arrival order, and every station's rows sorted
+ * by arrival. A query marks each trip's row at the destination, and for
+ * each interchange it passes works out once, from every boarding time on,
+ * which connection gets there soonest. Each departure from the origin is
+ * then a walk along its trip with one binary search per interchange, so a
+ * query never reads the whole feed.
+ *
+ * Journeys are returned in departure order, leaving out any that a later
+ * departure reaches the destination no later than.
+ */
+public final class JourneyIndex {
+
+    // Shortest time allowed to change trains, platform to platform.
+    public static final long MIN_TRANSFER_SECONDS = 120;
+
+    private final UnaryOperator<String> stationOf;
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+
+    // Per trip: its IDs and direction, and its rows tripStart[t] until tripStart[t + 1].
+    private final String[] tripIds;
+    private final String[] routeIds;
+    private final byte[] directions;
+    private final int[] tripStart;
+
+    // Per row, trip by trip and each trip's stops earliest first.
+    private final int[] trip;
+    private final int[] station;
+    private final String[] stopIds;
+    private final long[] arrival;
+
+    // Rows sorted by (station, arrival); station s owns stationStart[s] until stationStart[s + 1].
+    private final int[] byStation;
+    private final int[] stationStart;
+
+    // Stations served by more than one route, the only ones changed at.
+    private final boolean[] interchange;
+
+    /**
+     * Indexes the snapshot's arrivals, placing each platform at the station
+     * the resolver gives for its stop ID.
+     */
+    public JourneyIndex(TripUpdateSnapshot snapshot, UnaryOperator<String> stationOf) {
+        this.stationOf = stationOf;
+        int size = snapshot.size();
+        trip = new int[size];
+        station = new int[size];
+        stopIds = new String[size];
+        arrival = new long[size];
+        List<String> tripIdList = new ArrayList<>();
+        List<String> routeIdList = new ArrayList<>();
+        List<Integer> directionList = new ArrayList<>();
+        int[] rows = {0};
+        snapshot.forEachArrival((tripId, routeId, directionId, stopId, arrivalTime, source, observedAt) -> {
+            int row = rows[0]++;
+            if (tripIdList.isEmpty() || !tripIdList.get(tripIdList.size() - 1).equals(tripId)) {
+                tripIdList.add(tripId);
+                routeIdList.add(routeId);
+                directionList.add(directionId);
+            }
+            trip[row] = tripIdList.size() - 1;
+            station[row] = stationIndex.computeIfAbsent(stationOf.apply(stopId), id -> stationIndex.size());
+            stopIds[row] = stopId;
+            arrival[row] = arrivalTime;
+        });
+        tripIds = tripIdList.toArray(String[]::new);
+        routeIds = routeIdList.toArray(String[]::new);
+        directions = new byte[tripIds.length];
+        tripStart = new int[tripIds.length + 1];
+        for (int t = 0; t < tripIds.length; t++) {
+            directions[t] = (byte) (int) directionList.get(t);
+        }
+        for (int row = 0; row < size; row++) {
+            tripStart[trip[row] + 1]++;
+        }
+        for (int t = 0; t < tripIds.length; t++) {
+            tripStart[t + 1] += tripStart[t];
+        }
+
+        // Rows by arrival, then spread into station buckets keeping that order.
+        long earliest = Long.MAX_VALUE;
+        for (long time : arrival) {
+            earliest = Math.min(earliest, time);
+        }
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            // Arrivals decades apart only lose their order among themselves.
+            keys[row] = Math.min(arrival[row] - earliest, Integer.MAX_VALUE) << 32 | row;
+        }
+        Arrays.sort(keys);
+        stationStart = new int[stationIndex.size() + 1];
+        for (int row = 0; row < size; row++) {
+            stationStart[station[row] + 1]++;
+        }
+        for (int s = 0; s < stationIndex.size(); s++) {
+            stationStart[s + 1] += stationStart[s];
+        }
+        byStation = new int[size];
+        int[] next = Arrays.copyOf(stationStart, stationIndex.size());
+        for (long key : keys) {
+            int row = (int) key;
+            byStation[next[station[row]]++] = row;
+        }
+
+        interchange = new boolean[stationIndex.size()];
+        for (int s = 0; s < interchange.length; s++) {
+            for (int i = stationStart[s] + 1; i < stationStart[s + 1] && !interchange[s]; i++) {
+                interchange[s] = !routeIds[trip[byStation[i]]].equals(routeIds[trip[byStation[stationStart[s]]]]);
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} journeys boarding at the origin no earlier
+     * than {@code after} (epoch seconds), in departure order. Either end may
+     * be a station or one of its platforms.
+     */
+    public List<Journey> find(String from, String to, long after, int limit) {
+        Integer origin = from == null ? null : stationIndex.get(stationOf.apply(from));
+        Integer destination = to == null ? null : stationIndex.get(stationOf.apply(to));
+        if (origin == null || destination == null || origin.equals(destination) || limit <= 0) {
+            return List.of();
+        }
+        int a = origin;
+        int b = destination;
+
+        // Each trip's row at the destination, or -1. A trip calling there twice keeps the later one.
+        int[] alightAt = new int[tripIds.length];
+        Arrays.fill(alightAt, -1);
+        for (int i = stationStart[b]; i < stationStart[b + 1]; i++) {
+            int row = byStation[i];
+            alightAt[trip[row]] = Math.max(alightAt[trip[row]], row);
+        }
+
+        // Per interchange, once needed: from each of its rows on, the connection reaching b soonest.
+        int[][] connections = new int[interchange.length][];
+
+        // Undominated journeys so far, in departure order and so also in arrival order.
+        List<int[]> kept = new ArrayList<>();
+        for (int i = firstArrival(a, after); i < stationStart[a + 1]; i++) {
+            int board = byStation[i];
+            if (kept.size() >= limit && arrival[board] >= arrival(kept.get(limit - 1))) {
+                // Nothing boarding from here on can arrive before the journeys already kept.
+                break;
+            }
+            int[] journey = fastest(board, a, b, alightAt, connections);
+            if (journey == null) {
+                continue;
+            }
+            while (!kept.isEmpty() && arrival(kept.get(kept.size() - 1)) >= arrival(journey)) {
+                kept.remove(kept.size() - 1);
+            }
+            kept.add(journey);
+        }
+
+        List<Journey> journeys = new ArrayList<>(Math.min(limit, kept.size()));
+        for (int[] rows : kept.subList(0, Math.min(limit, kept.size()))) {
+            List<JourneyLeg> legs = new ArrayList<>(rows.length / 2);
+            for (int leg = 0; leg < rows.length; leg += 2) {
+                legs.add(leg(rows[leg], rows[leg + 1]));
+            }
+            journeys.add(new Journey(legs));
+        }
+        return journeys;
+    }
+
+    // The earliest arrival at b boarding this row, as boarding and alighting rows per leg, or null.
+    private int[] fastest(int board, int a, int b, int[] alightAt, int[][] connections) {
+        int t = trip[board];
+        int[] best = alightAt[t] > board ? new int[] {board, alightAt[t]} : null;
+        long bestArrival = best == null ? Long.MAX_VALUE : arrival[best[1]];
+        for (int change = board + 1; change < tripStart[t + 1] && arrival[change] < bestArrival; change++) {
+            int x = station[change];
+            if (x == a || x == b || !interchange[x]) {
+                continue;
+            }
+            if (connections[x] == null) {
+                connections[x] = connections(x, alightAt);
+            }
+            int i = firstArrival(x, arrival[change] + MIN_TRANSFER_SECONDS);
+            int connect = i < stationStart[x + 1] ? connections[x][i - stationStart[x]] : -1;
+            // A connection on this same trip would be no faster than staying on.
+            if (connect >= 0 && arrival[alightAt[trip[connect]]] < bestArrival) {
+                best = new int[] {board, change, connect, alightAt[trip[connect]]};
+                bestArrival = arrival[best[3]];
+            }
+        }
+        return best;
+    }
+
+    // For each of the station's rows, the row from there on whose trip reaches b soonest, or -1.
+    private int[] connections(int x, int[] alightAt) {
+        int from = stationStart[x];
+        int[] best = new int[stationStart[x + 1] - from];
+        int soonest = -1;
+        for (int i = best.length - 1; i >= 0; i--) {
+            int connect = byStation[from + i];
+            int alight = alightAt[trip[connect]];
+            if (alight > connect && (soonest < 0 || arrival[alight] <= arrival[alightAt[trip[soonest]]])) {
+                soonest = connect;
+            }
+            best[i] = soonest;
+        }
+        return best;
+    }
+
+    // Position in byStation of the station's first row arriving at or after the time.
+    private int firstArrival(int s, long time) {
+        int lo = stationStart[s];
+        int hi = stationStart[s + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (arrival[byStation[mid]] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long arrival(int[] journey) {
+        return arrival[journey[journey.length - 1]];
+    }
+
+    private JourneyLeg leg(int board, int alight) {
+        int t = trip[board];
+        return new JourneyLeg(tripIds[t], routeIds[t], directions[t], stopIds[board], arrival[board],
+            stopIds[alight], arrival[alight]);
+    }
+}
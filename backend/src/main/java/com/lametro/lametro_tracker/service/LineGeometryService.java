@@ -0,0 +1,264 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.lametro.lametro_tracker.model.LineGeometry;
+
+/**
+ * Rail line geometry for the map, simplified per zoom level and cut into
+ * web map tiles.
+ *
+ * At startup each route's longest shape is projected to Web Mercator and
+ * simplified with Douglas-Peucker to within a pixel at every zoom from
+ * {@link #MIN_ZOOM} to {@link #MAX_ZOOM}. Each simplified line is then split
+ * into the standard 256-pixel XYZ tiles it crosses. Lines are sent as
+ * encoded polylines, which store each point as a varint delta from the last.
+ * Clients overzoom past {@link #MAX_ZOOM}, where a pixel is a few meters and
+ * little detail is left to add.
+ */
+@Service
+public class LineGeometryService {
+
+    private static final Logger log = LoggerFactory.getLogger(LineGeometryService.class);
+
+    public static final int MIN_ZOOM = 8;
+    public static final int MAX_ZOOM = 15;
+
+    // Simplification may move a line by at most this much.
+    private static final double TOLERANCE_PIXELS = 1;
+
+    // Segments within this distance of a tile are included in it, so lines join across tile edges.
+    private static final double TILE_BUFFER_PIXELS = 4;
+
+    private static final int TILE_PIXELS = 256;
+
+    // Indexed by zoom - MIN_ZOOM.
+    private final List<List<LineGeometry>> lines = new ArrayList<>();
+    private final List<Map<Long, List<LineGeometry>>> tiles = new ArrayList<>();
+
+    public LineGeometryService(StaticGtfsService staticGtfsService) {
+        long start = System.nanoTime();
+        StaticGtfs gtfs = staticGtfsService.getGtfs();
+        List<double[][]> shapes = new ArrayList<>();
+        List<String> routeIds = new ArrayList<>();
+        List<String> colors = new ArrayList<>();
+        for (int route = 0; route < gtfs.routeCount(); route++) {
+            int shape = longestShape(gtfs, route);
+            if (shape >= 0) {
+                shapes.add(project(gtfs, shape));
+                routeIds.add(gtfs.routeId(route));
+                colors.add("#" + gtfs.routeColor(route));
+            }
+        }
+
+        int points = 0;
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            double scale = (double) TILE_PIXELS * (1L << zoom);
+            List<LineGeometry> zoomLines = new ArrayList<>();
+            Map<Long, Map<String, LineGeometry>> zoomTiles = new HashMap<>();
+            for (int i = 0; i < shapes.size(); i++) {
+                double[][] line = simplify(shapes.get(i), TOLERANCE_PIXELS / scale);
+                points += line[0].length;
+                zoomLines.add(new LineGeometry(routeIds.get(i), colors.get(i), List.of(encode(line, 0, line[0].length))));
+                tile(line, zoom, routeIds.get(i), colors.get(i), zoomTiles);
+            }
+            Map<Long, List<LineGeometry>> byTile = new HashMap<>();
+            zoomTiles.forEach((key, routes) -> byTile.put(key, List.copyOf(routes.values())));
+            lines.add(List.copyOf(zoomLines));
+            tiles.add(byTile);
+        }
+        log.info("Prepared line geometry in {} ms: {} lines, {} points and {} tiles over zooms {}-{}",
+            (System.nanoTime() - start) / 1_000_000, shapes.size(), points,
+            tiles.stream().mapToInt(Map::size).sum(), MIN_ZOOM, MAX_ZOOM);
+    }
+
+    /**
+     * Every line, simplified for the given zoom (clamped to the served range).
+     */
+    public List<LineGeometry> getLines(int zoom) {
+        return lines.get(Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom)) - MIN_ZOOM);
+    }
+
+    /**
+     * The lines crossing one XYZ tile, or null if the zoom is out of range.
+     * Tiles no line crosses are empty.
+     */
+    public List<LineGeometry> getTile(int zoom, int x, int y) {
+        if (zoom < MIN_ZOOM || zoom > MAX_ZOOM) {
+            return null;
+        }
+        return tiles.get(zoom - MIN_ZOOM).getOrDefault(tileKey(x, y), List.of());
+    }
+
+    public boolean hasTile(int zoom, int x, int y) {
+        return zoom >= MIN_ZOOM && zoom <= MAX_ZOOM && tiles.get(zoom - MIN_ZOOM).containsKey(tileKey(x, y));
+    }
+
+    // The drawn line of a route is its shape with the most points.
+    private static int longestShape(StaticGtfs gtfs, int route) {
+        int longest = -1;
+        for (int trip = 0; trip < gtfs.tripCount(); trip++) {
+            int shape = gtfs.tripShape(trip);
+            if (gtfs.tripRoute(trip) == route && shape >= 0
+                    && (longest < 0 || gtfs.shapePointCount(shape) > gtfs.shapePointCount(longest))) {
+                longest = shape;
+            }
+        }
+        return longest;
+    }
+
+    // Rows: Mercator x and y in [0, 1), then latitude and longitude.
+    private static double[][] project(StaticGtfs gtfs, int shape) {
+        int count = gtfs.shapePointCount(shape);
+        double[][] line = new double[4][count];
+        for (int i = 0; i < count; i++) {
+            double lat = gtfs.shapeLat(shape, i);
+            double lon = gtfs.shapeLon(shape, i);
+            double sin = Math.sin(Math.toRadians(lat));
+            line[0][i] = (lon + 180) / 360;
+            line[1][i] = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+            line[2][i] = lat;
+            line[3][i] = lon;
+        }
+        return line;
+    }
+
+    /**
+     * Douglas-Peucker: keeps the endpoints, then recursively the point
+     * furthest from the chord while it is further than the tolerance.
+     */
+    private static double[][] simplify(double[][] line, double tolerance) {
+        int count = line[0].length;
+        if (count < 3) {
+            return line;
+        }
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        int kept = 2;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int furthest = -1;
+            double furthestDistance = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistance(line, i, first, last);
+                if (distance > furthestDistance) {
+                    furthest = i;
+                    furthestDistance = distance;
+                }
+            }
+            if (furthest >= 0) {
+                keep[furthest] = true;
+                kept++;
+                stack[top++] = first;
+                stack[top++] = furthest;
+                stack[top++] = furthest;
+                stack[top++] = last;
+            }
+        }
+        double[][] simplified = new double[line.length][kept];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (keep[i]) {
+                for (int row = 0; row < line.length; row++) {
+                    simplified[row][j] = line[row][i];
+                }
+                j++;
+            }
+        }
+        return simplified;
+    }
+
+    // Distance from point p to the segment from a to b, in Mercator units.
+    private static double segmentDistance(double[][] line, int p, int a, int b) {
+        double dx = line[0][b] - line[0][a];
+        double dy = line[1][b] - line[1][a];
+        double px = line[0][p] - line[0][a];
+        double py = line[1][p] - line[1][a];
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        return Math.hypot(px - t * dx, py - t * dy);
+    }
+
+    // Adds each segment to every tile its buffered bounding box touches, as runs of consecutive points.
+    private static void tile(double[][] line, int zoom, String routeId, String color,
+            Map<Long, Map<String, LineGeometry>> zoomTiles) {
+        int tilesPerSide = 1 << zoom;
+        double buffer = TILE_BUFFER_PIXELS / TILE_PIXELS;
+        Map<Long, List<int[]>> runs = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < line[0].length; i++) {
+            int minX = clamp(Math.min(line[0][i], line[0][i + 1]) * tilesPerSide - buffer, tilesPerSide);
+            int maxX = clamp(Math.max(line[0][i], line[0][i + 1]) * tilesPerSide + buffer, tilesPerSide);
+            int minY = clamp(Math.min(line[1][i], line[1][i + 1]) * tilesPerSide - buffer, tilesPerSide);
+            int maxY = clamp(Math.max(line[1][i], line[1][i + 1]) * tilesPerSide + buffer, tilesPerSide);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    List<int[]> tileRuns = runs.computeIfAbsent(tileKey(x, y), key -> new ArrayList<>());
+                    int[] run = tileRuns.isEmpty() ? null : tileRuns.get(tileRuns.size() - 1);
+                    if (run != null && run[1] == i + 1) {
+                        run[1] = i + 2;
+                    } else {
+                        tileRuns.add(new int[] {i, i + 2});
+                    }
+                }
+            }
+        }
+        runs.forEach((key, tileRuns) -> {
+            List<String> polylines = new ArrayList<>(tileRuns.size());
+            for (int[] run : tileRuns) {
+                polylines.add(encode(line, run[0], run[1]));
+            }
+            zoomTiles.computeIfAbsent(key, k -> new LinkedHashMap<>())
+                .put(routeId, new LineGeometry(routeId, color, List.copyOf(polylines)));
+        });
+    }
+
+    private static int clamp(double tile, int tilesPerSide) {
+        return (int) Math.max(0, Math.min(tilesPerSide - 1, Math.floor(tile)));
+    }
+
+    private static long tileKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /**
+     * Encodes points [from, to) in the encoded polyline format: latitude and
+     * longitude at five decimals, each as a zigzag varint delta from the
+     * previous point in printable base64-like characters.
+     */
+    private static String encode(double[][] line, int from, int to) {
+        StringBuilder encoded = new StringBuilder((to - from) * 6);
+        long lastLat = 0;
+        long lastLon = 0;
+        for (int i = from; i < to; i++) {
+            long lat = Math.round(line[2][i] * 1e5);
+            long lon = Math.round(line[3][i] * 1e5);
+            encodeValue(lat - lastLat, encoded);
+            encodeValue(lon - lastLon, encoded);
+            lastLat = lat;
+            lastLon = lon;
+        }
+        return encoded.toString();
+    }
+
+    private static void encodeValue(long delta, StringBuilder encoded) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            encoded.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        encoded.append((char) (value + 63));
+    }
+}
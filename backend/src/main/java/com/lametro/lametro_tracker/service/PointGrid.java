@@ -0,0 +1,152 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.Arrays;
+
+/**
+ * A fixed set of points bucketed into a uniform latitude/longitude grid,
+ * for bounding-box and radius queries.
+ *
+ * Occupied cells are kept sorted by key with the points of cell c at
+ * cellPoints[cellStart[c]] until cellStart[c + 1], so the grid is three
+ * arrays however many cells are empty. A query visits the cells its area
+ * overlaps, or every occupied cell if that is fewer.
+ */
+public final class PointGrid {
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_000;
+
+    private final double cellDegrees;
+    private final double[] lats;
+    private final double[] lons;
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] cellPoints;
+
+    public PointGrid(double[] lats, double[] lons, double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.lats = lats;
+        this.lons = lons;
+        int count = lats.length;
+
+        // Sort point indices by cell, then cut the runs into cells.
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = cellKey(cell(lats[i]), cell(lons[i]));
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keyed[a], keyed[b]));
+        int cells = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || keyed[order[i]] != keyed[order[i - 1]]) {
+                cells++;
+            }
+        }
+        cellKeys = new long[cells];
+        cellStart = new int[cells + 1];
+        cellPoints = new int[count];
+        int c = -1;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || keyed[order[i]] != keyed[order[i - 1]]) {
+                cellKeys[++c] = keyed[order[i]];
+                cellStart[c] = i;
+            }
+            cellPoints[i] = order[i];
+        }
+        cellStart[cells] = count;
+    }
+
+    public int size() {
+        return lats.length;
+    }
+
+    /**
+     * Indices of the points inside the box, edges included, in index order.
+     */
+    public int[] within(double south, double west, double north, double east) {
+        int[] found = new int[lats.length];
+        int count = 0;
+        int minRow = cell(south);
+        int maxRow = cell(north);
+        int minColumn = cell(west);
+        int maxColumn = cell(east);
+        if ((long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > cellKeys.length) {
+            for (int i = 0; i < lats.length; i++) {
+                if (inside(i, south, west, north, east)) {
+                    found[count++] = i;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int c = Arrays.binarySearch(cellKeys, cellKey(row, column));
+                if (c < 0) {
+                    continue;
+                }
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    if (inside(cellPoints[k], south, west, north, east)) {
+                        found[count++] = cellPoints[k];
+                    }
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(found, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Indices of the points within the radius, nearest first, at most
+     * limit of them.
+     */
+    public int[] nearest(double lat, double lon, double radiusMeters, int limit) {
+        double latDelta = radiusMeters / METERS_PER_DEGREE;
+        double lonDelta = latDelta / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+        int[] candidates = within(lat - latDelta, lon - lonDelta, lat + latDelta, lon + lonDelta);
+
+        // Insertion into the running top list; candidate counts are small.
+        int[] best = new int[Math.max(0, Math.min(limit, candidates.length))];
+        double[] bestDistance = new double[best.length];
+        int found = 0;
+        for (int i : candidates) {
+            double distance = distanceMeters(lat, lon, lats[i], lons[i]);
+            if (distance > radiusMeters || (found == best.length && (found == 0 || distance >= bestDistance[found - 1]))) {
+                continue;
+            }
+            int slot = found < best.length ? found++ : found - 1;
+            while (slot > 0 && bestDistance[slot - 1] > distance) {
+                best[slot] = best[slot - 1];
+                bestDistance[slot] = bestDistance[slot - 1];
+                slot--;
+            }
+            best[slot] = i;
+            bestDistance[slot] = distance;
+        }
+        return Arrays.copyOf(best, found);
+    }
+
+    /**
+     * Distance in meters on a plane tangent at the first point, accurate to
+     * well under a percent across a city.
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * METERS_PER_DEGREE;
+        double dx = (lon2 - lon1) * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat1));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private boolean inside(int i, double south, double west, double north, double east) {
+        return lats[i] >= south && lats[i] <= north && lons[i] >= west && lons[i] <= east;
+    }
+
+    private int cell(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,104 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A rendered response body along with its gzip and deflate encodings.
+ * Each encoding is compressed the first time a request asks for it and
+ * kept for later ones, so a body cached on a snapshot is compressed at
+ * most once per coding, and one rendered for a single request only in the
+ * coding it is sent in.
+ */
+public class PreparedBody {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    // Below this size the compression framing costs more than it saves.
+    private static final int MIN_COMPRESS_BYTES = 256;
+
+    private final byte[] identity;
+    // Racing requests may both compress, but they store the same bytes.
+    private volatile byte[] gzip;
+    private volatile byte[] deflate;
+
+    private PreparedBody(byte[] identity) {
+        this.identity = identity;
+    }
+
+    public static PreparedBody of(byte[] body) {
+        return new PreparedBody(body);
+    }
+
+    /**
+     * Picks the content coding to send for the given Accept-Encoding header,
+     * or null to send the body uncompressed. The coding with the higher q
+     * wins, gzip on a tie, and a coding listed by name takes its own q over
+     * that of "*".
+     */
+    public String negotiate(String acceptEncoding) {
+        if (identity.length < MIN_COMPRESS_BYTES || acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        // -1 until the header lists the coding.
+        double gzipQuality = -1;
+        double deflateQuality = -1;
+        double anyQuality = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double quality = QualityValue.of(params);
+            if (coding.equals(GZIP)) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (coding.equals(DEFLATE)) {
+                deflateQuality = Math.max(deflateQuality, quality);
+            } else if (coding.equals("*")) {
+                anyQuality = Math.max(anyQuality, quality);
+            }
+        }
+        if (gzipQuality < 0) {
+            gzipQuality = Math.max(0, anyQuality);
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = Math.max(0, anyQuality);
+        }
+        // A coding with q=0 is explicitly not acceptable.
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        }
+        return deflateQuality > 0 ? DEFLATE : null;
+    }
+
+    public byte[] bytes(String coding) {
+        if (GZIP.equals(coding)) {
+            byte[] body = gzip;
+            if (body == null) {
+                gzip = body = compress(identity, true);
+            }
+            return body;
+        }
+        if (DEFLATE.equals(coding)) {
+            byte[] body = deflate;
+            if (body == null) {
+                deflate = body = compress(identity, false);
+            }
+            return body;
+        }
+        return identity;
+    }
+
+    private static byte[] compress(byte[] data, boolean gzip) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (DeflaterOutputStream stream = gzip ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+            stream.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
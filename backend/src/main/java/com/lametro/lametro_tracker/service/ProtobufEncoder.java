@@ -0,0 +1,192 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.CodedOutputStream;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+/**
+ * Writes vehicles and arrivals as the compact protobuf messages in
+ * lametro.proto, for clients that send Accept: application/x-protobuf.
+ *
+ * Each ID is sent once in a string table and referred to by index after
+ * that, with 0 meaning none. Coordinates are fixed-point millionths of a
+ * degree, about 10 cm, and times are offsets from a base time in the
+ * message, so most fields fit in one or two bytes.
+ */
+public final class ProtobufEncoder {
+
+    // Fields of Vehicles and Arrivals.
+    static final int STRINGS = 1;
+    static final int BASE_TIME = 2;
+    static final int ENTITIES = 3;
+
+    // Fields of Vehicle.
+    static final int VEHICLE_ID = 1;
+    static final int VEHICLE_ROUTE_ID = 2;
+    static final int VEHICLE_TRIP_ID = 3;
+    static final int VEHICLE_DIRECTION_ID = 4;
+    static final int LATITUDE_E6 = 5;
+    static final int LONGITUDE_E6 = 6;
+    static final int BEARING = 7;
+    static final int VEHICLE_TIMESTAMP = 8;
+    static final int SHAPE_ID = 9;
+    static final int DISTANCE_ALONG_SHAPE_DM = 10;
+    static final int SPEED_CM_PER_SECOND = 11;
+
+    // Fields of Arrival.
+    static final int ARRIVAL_TRIP_ID = 1;
+    static final int ARRIVAL_ROUTE_ID = 2;
+    static final int ARRIVAL_DIRECTION_ID = 3;
+    static final int STOP_ID = 4;
+    static final int ARRIVAL_TIME = 5;
+    static final int SOURCE = 6;
+    static final int OBSERVED_AT = 7;
+
+    // Longest entity message: eleven fields of at most a tag and a ten-byte varint.
+    private static final int MAX_ENTITY_BYTES = 11 * 11;
+
+    private ProtobufEncoder() {}
+
+    public static byte[] vehicles(List<VehiclePosition> vehicles) {
+        long baseTime = vehicles.isEmpty() ? 0 : vehicles.get(0).getTimestamp();
+        Writer writer = new Writer(vehicles.size());
+        try {
+            writer.start(baseTime);
+            for (VehiclePosition vehicle : vehicles) {
+                CodedOutputStream out = writer.startEntity();
+                writer.writeString(out, VEHICLE_ID, vehicle.getVehicleId());
+                writer.writeString(out, VEHICLE_ROUTE_ID, vehicle.getRouteId());
+                writer.writeString(out, VEHICLE_TRIP_ID, vehicle.getTripId());
+                writeUInt32(out, VEHICLE_DIRECTION_ID, vehicle.getDirectionId());
+                writeSInt32(out, LATITUDE_E6, (int) Math.round(vehicle.getLatitude() * 1e6));
+                writeSInt32(out, LONGITUDE_E6, (int) Math.round(vehicle.getLongitude() * 1e6));
+                writeUInt32(out, BEARING, Math.round(vehicle.getBearing()));
+                writeSInt64(out, VEHICLE_TIMESTAMP, vehicle.getTimestamp() - baseTime);
+                writer.writeString(out, SHAPE_ID, vehicle.getShapeId());
+                // Sent even when 0, since null means the vehicle isn't on a shape.
+                if (vehicle.getDistanceAlongShape() != null) {
+                    out.writeUInt32(DISTANCE_ALONG_SHAPE_DM, (int) Math.round(vehicle.getDistanceAlongShape() * 10));
+                }
+                if (vehicle.getSpeed() != null) {
+                    out.writeSInt32(SPEED_CM_PER_SECOND, (int) Math.round(vehicle.getSpeed() * 100));
+                }
+                writer.endEntity(out);
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            // Only an entity outgrowing its buffer can fail, and none can.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] arrivals(List<StopTimeUpdate> arrivals) {
+        long baseTime = arrivals.isEmpty() ? 0 : arrivals.get(0).getArrivalTime();
+        Writer writer = new Writer(arrivals.size());
+        try {
+            writer.start(baseTime);
+            for (StopTimeUpdate arrival : arrivals) {
+                CodedOutputStream out = writer.startEntity();
+                writer.writeString(out, ARRIVAL_TRIP_ID, arrival.getTripId());
+                writer.writeString(out, ARRIVAL_ROUTE_ID, arrival.getRouteId());
+                writeUInt32(out, ARRIVAL_DIRECTION_ID, arrival.getDirectionId());
+                writer.writeString(out, STOP_ID, arrival.getStopId());
+                writeSInt64(out, ARRIVAL_TIME, arrival.getArrivalTime() - baseTime);
+                writeUInt32(out, SOURCE, arrival.getSource().ordinal());
+                // 0 means the report time isn't known.
+                if (arrival.getObservedAt() != 0) {
+                    out.writeSInt64(OBSERVED_AT, arrival.getObservedAt() - baseTime);
+                }
+                writer.endEntity(out);
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Fields left at 0 are left out, as protobuf does.
+    private static void writeUInt32(CodedOutputStream out, int field, int value) throws IOException {
+        if (value != 0) {
+            out.writeUInt32(field, value);
+        }
+    }
+
+    private static void writeSInt32(CodedOutputStream out, int field, int value) throws IOException {
+        if (value != 0) {
+            out.writeSInt32(field, value);
+        }
+    }
+
+    private static void writeSInt64(CodedOutputStream out, int field, long value) throws IOException {
+        if (value != 0) {
+            out.writeSInt64(field, value);
+        }
+    }
+
+    /**
+     * Builds one message: entities are written as they come, and the
+     * string table they refer to is appended at the end, which protobuf
+     * readers don't mind.
+     */
+    private static final class Writer {
+
+        private final ByteArrayOutputStream bytes;
+        private final CodedOutputStream message;
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        // Each entity is written here first, to learn its length.
+        private final byte[] entity = new byte[MAX_ENTITY_BYTES];
+
+        Writer(int entities) {
+            int estimate = 64 + entities * 32;
+            bytes = new ByteArrayOutputStream(estimate);
+            // Its default 4 KB buffer would outweigh a whole station board.
+            message = CodedOutputStream.newInstance(bytes, Math.min(estimate, 4096));
+            // Index 0 is the empty string, so unset fields read as no ID.
+            strings.add("");
+        }
+
+        void start(long baseTime) throws IOException {
+            if (baseTime != 0) {
+                message.writeInt64(BASE_TIME, baseTime);
+            }
+        }
+
+        CodedOutputStream startEntity() {
+            return CodedOutputStream.newInstance(entity);
+        }
+
+        void writeString(CodedOutputStream out, int field, String value) throws IOException {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                indexes.put(value, index);
+                strings.add(value);
+            }
+            out.writeUInt32(field, index);
+        }
+
+        void endEntity(CodedOutputStream out) throws IOException {
+            message.writeByteArray(ENTITIES, entity, 0, MAX_ENTITY_BYTES - out.spaceLeft());
+        }
+
+        byte[] finish() throws IOException {
+            for (String value : strings) {
+                message.writeString(STRINGS, value);
+            }
+            message.flush();
+            return bytes.toByteArray();
+        }
+    }
+}
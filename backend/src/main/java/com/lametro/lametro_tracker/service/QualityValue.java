@@ -0,0 +1,29 @@
+package com.lametro.lametro_tracker.service;
+
+/**
+ * Reads the q parameter of one element of an Accept or Accept-Encoding
+ * header, split on ';' with the type or coding first.
+ */
+final class QualityValue {
+
+    private QualityValue() {
+    }
+
+    /**
+     * The element's weight: 1 when it has no q, 0 (not acceptable) when the
+     * q is malformed.
+     */
+    static double of(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Math.max(0, Double.parseDouble(param.substring(2)));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
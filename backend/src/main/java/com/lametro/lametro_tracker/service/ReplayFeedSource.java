@@ -0,0 +1,163 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Serves feeds from captures written by {@link FeedRecorder} instead of the
+ * upstream API, so the whole service can run offline and without an API
+ * key: for load tests, benchmarks and reproducing incidents.
+ *
+ * Every feed plays on one timeline. The first fetch starts it at the
+ * earliest capture of any feed, and from then on each fetch gets the feed's
+ * latest capture at or before the replay time, which advances with the
+ * clock times the speed. A feed whose first capture is still ahead answers
+ * like a missing upstream feed, with a 404. At the end of the recording the
+ * last captures keep being served, or it starts over if looping.
+ *
+ * A speed of 0 or less steps instead: each fetch of a feed gets its next
+ * capture, whatever the time, so a run ingests the same sequence of
+ * payloads however fast it goes.
+ *
+ * Payloads are served with their recorded feed timestamps, so snapshot ages
+ * and predicted positions are as of the recording.
+ */
+public class ReplayFeedSource implements FeedSource {
+
+    static final String CAPTURE_SUFFIX = ".pb";
+
+    private final Map<String, Recording> recordings;
+    private final double speed;
+    private final boolean loop;
+    private final LongSupplier clock;
+    private final long firstCapture;
+    private final long lastCapture;
+    // Clock time of the first fetch, or -1 until then.
+    private final AtomicLong startedAt = new AtomicLong(-1);
+
+    public ReplayFeedSource(Path dir, double speed, boolean loop, LongSupplier clock) {
+        this.recordings = scan(dir);
+        if (recordings.isEmpty()) {
+            throw new IllegalArgumentException("No feed captures under " + dir);
+        }
+        this.speed = speed;
+        this.loop = loop;
+        this.clock = clock;
+        this.firstCapture = recordings.values().stream().mapToLong(r -> r.times[0]).min().getAsLong();
+        this.lastCapture = recordings.values().stream().mapToLong(r -> r.times[r.times.length - 1]).max().getAsLong();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetch(String feedName, String url) {
+        Recording recording = recordings.get(feedName);
+        int index = recording == null ? -1 : speed <= 0 ? recording.next(loop) : recording.indexAt(replayTime());
+        if (index < 0) {
+            return CompletableFuture.failedFuture(new FeedClient.UpstreamStatusException(404));
+        }
+        try {
+            return CompletableFuture.completedFuture(recording.read(index));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * The recorded time (epoch millis) being played now. Stepping replays
+     * have no single one and report the first capture.
+     */
+    public long replayTime() {
+        long now = clock.getAsLong();
+        startedAt.compareAndSet(-1, now);
+        long elapsed = speed <= 0 ? 0 : (long) ((now - startedAt.get()) * speed);
+        if (loop) {
+            elapsed %= lastCapture - firstCapture + 1;
+        }
+        return firstCapture + elapsed;
+    }
+
+    private static Map<String, Recording> scan(Path dir) {
+        Map<String, List<Path>> files = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(path -> captureTime(path) >= 0).forEach(path -> files
+                .computeIfAbsent(dir.relativize(path.getParent()).toString().replace('\\', '/'), feed -> new ArrayList<>())
+                .add(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read feed captures under " + dir, e);
+        }
+        Map<String, Recording> recordings = new HashMap<>();
+        files.forEach((feedName, captures) -> recordings.put(feedName, new Recording(captures)));
+        return recordings;
+    }
+
+    // The capture's time from its file name, or -1 if it isn't a capture.
+    private static long captureTime(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.endsWith(CAPTURE_SUFFIX) || !Files.isRegularFile(path)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - CAPTURE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * One feed's captures in time order, with the last one read kept so an
+     * unchanged feed isn't read from disk on every fetch.
+     */
+    private static final class Recording {
+        final long[] times;
+        final Path[] paths;
+        final AtomicInteger cursor = new AtomicInteger();
+        volatile Capture last;
+
+        Recording(List<Path> captures) {
+            captures.sort((a, b) -> Long.compare(captureTime(a), captureTime(b)));
+            this.paths = captures.toArray(Path[]::new);
+            this.times = captures.stream().mapToLong(ReplayFeedSource::captureTime).toArray();
+        }
+
+        // The latest capture at or before the time, or -1 if there is none yet.
+        int indexAt(long time) {
+            int found = Arrays.binarySearch(times, time);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        int next(boolean loop) {
+            int index = cursor.getAndIncrement();
+            return loop ? Math.floorMod(index, times.length) : Math.min(index, times.length - 1);
+        }
+
+        byte[] read(int index) throws IOException {
+            Capture capture = last;
+            if (capture == null || capture.index != index) {
+                capture = new Capture(index, Files.readAllBytes(paths[index]));
+                last = capture;
+            }
+            return capture.payload;
+        }
+    }
+
+    private static final class Capture {
+        final int index;
+        final byte[] payload;
+
+        Capture(int index, byte[] payload) {
+            this.index = index;
+            this.payload = payload;
+        }
+    }
+}
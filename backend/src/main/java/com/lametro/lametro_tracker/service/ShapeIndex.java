@@ -0,0 +1,188 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shape geometry prepared for map matching: distance along each shape at
+ * every point, and a uniform grid over each shape's segments so a position
+ * is only compared with the segments of its shape near it.
+ *
+ * Coordinates are projected to meters on a plane tangent at the middle of
+ * the data, which is accurate to well under a meter across one metro area.
+ * Segment i joins points i and i + 1 of the same shape, in the flat point
+ * order of the schedule.
+ */
+public final class ShapeIndex {
+
+    private static final double CELL_METERS = 250;
+
+    private final StaticGtfs gtfs;
+    private final double originLat;
+    private final double originLon;
+    private final double metersPerDegreeLat;
+    private final double metersPerDegreeLon;
+
+    // Shape s owns points pointStart[s] until pointStart[s + 1].
+    private final int[] pointStart;
+    private final double[] x;
+    private final double[] y;
+    private final double[] along;
+
+    // (shape, cell) pairs sorted by key; pair c holds segments cellSegments[cellStart[c]] until cellStart[c + 1].
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] cellSegments;
+
+    public ShapeIndex(StaticGtfs gtfs) {
+        this.gtfs = gtfs;
+        int shapes = gtfs.shapeCount();
+        pointStart = new int[shapes + 1];
+        for (int s = 0; s < shapes; s++) {
+            pointStart[s + 1] = pointStart[s] + gtfs.shapePointCount(s);
+        }
+        int points = pointStart[shapes];
+
+        double minLat = 90;
+        double maxLat = -90;
+        double minLon = 180;
+        double maxLon = -180;
+        for (int s = 0; s < shapes; s++) {
+            for (int i = 0; i < gtfs.shapePointCount(s); i++) {
+                minLat = Math.min(minLat, gtfs.shapeLat(s, i));
+                maxLat = Math.max(maxLat, gtfs.shapeLat(s, i));
+                minLon = Math.min(minLon, gtfs.shapeLon(s, i));
+                maxLon = Math.max(maxLon, gtfs.shapeLon(s, i));
+            }
+        }
+        originLat = points == 0 ? 0 : (minLat + maxLat) / 2;
+        originLon = points == 0 ? 0 : (minLon + maxLon) / 2;
+        metersPerDegreeLat = Math.toRadians(1) * 6_371_000;
+        metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(originLat));
+
+        x = new double[points];
+        y = new double[points];
+        along = new double[points];
+        Map<Long, List<Integer>> cells = new TreeMap<>();
+        for (int s = 0; s < shapes; s++) {
+            for (int i = pointStart[s]; i < pointStart[s + 1]; i++) {
+                x[i] = (gtfs.shapeLon(s, i - pointStart[s]) - originLon) * metersPerDegreeLon;
+                y[i] = (gtfs.shapeLat(s, i - pointStart[s]) - originLat) * metersPerDegreeLat;
+                if (i == pointStart[s]) {
+                    continue;
+                }
+                along[i] = along[i - 1] + Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+                int segment = i - 1;
+                for (int cx = cell(Math.min(x[i], x[i - 1])); cx <= cell(Math.max(x[i], x[i - 1])); cx++) {
+                    for (int cy = cell(Math.min(y[i], y[i - 1])); cy <= cell(Math.max(y[i], y[i - 1])); cy++) {
+                        cells.computeIfAbsent(cellKey(s, cx, cy), key -> new ArrayList<>()).add(segment);
+                    }
+                }
+            }
+        }
+
+        cellKeys = new long[cells.size()];
+        cellStart = new int[cells.size() + 1];
+        int c = 0;
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            cellKeys[c] = entry.getKey();
+            cellStart[c + 1] = cellStart[c] + entry.getValue().size();
+            c++;
+        }
+        cellSegments = new int[cellStart[cells.size()]];
+        c = 0;
+        for (List<Integer> segments : cells.values()) {
+            for (int i = 0; i < segments.size(); i++) {
+                cellSegments[cellStart[c] + i] = segments.get(i);
+            }
+            c++;
+        }
+    }
+
+    /**
+     * Length of the shape in meters.
+     */
+    public double length(int shape) {
+        int last = pointStart[shape + 1] - 1;
+        return last < pointStart[shape] ? 0 : along[last];
+    }
+
+    /**
+     * Distance along the shape of the point on it nearest to the position,
+     * or NaN if no part of the shape is within maxMeters.
+     */
+    public double snap(int shape, double lat, double lon, double maxMeters) {
+        double px = (lon - originLon) * metersPerDegreeLon;
+        double py = (lat - originLat) * metersPerDegreeLat;
+        // Compared squared; Math.hypot is far slower than this loop needs.
+        double bestSquared = maxMeters * maxMeters;
+        double bestAlong = Double.NaN;
+        // Only the cells overlapping the square around the position can hold a close enough segment.
+        for (int cx = cell(px - maxMeters); cx <= cell(px + maxMeters); cx++) {
+            for (int cy = cell(py - maxMeters); cy <= cell(py + maxMeters); cy++) {
+                int c = Arrays.binarySearch(cellKeys, cellKey(shape, cx, cy));
+                if (c < 0) {
+                    continue;
+                }
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = cellSegments[k];
+                    double dx = x[i + 1] - x[i];
+                    double dy = y[i + 1] - y[i];
+                    double lengthSquared = dx * dx + dy * dy;
+                    double t = lengthSquared == 0 ? 0
+                        : Math.max(0, Math.min(1, ((px - x[i]) * dx + (py - y[i]) * dy) / lengthSquared));
+                    double ex = x[i] + t * dx - px;
+                    double ey = y[i] + t * dy - py;
+                    double squared = ex * ex + ey * ey;
+                    if (squared <= bestSquared) {
+                        bestSquared = squared;
+                        bestAlong = along[i] + t * (along[i + 1] - along[i]);
+                    }
+                }
+            }
+        }
+        return bestAlong;
+    }
+
+    /**
+     * The point at the given distance along the shape, clamped to its ends,
+     * as latitude, longitude and bearing in degrees clockwise from north.
+     */
+    public double[] locate(int shape, double distance) {
+        int from = pointStart[shape];
+        int to = pointStart[shape + 1] - 1;
+        if (to <= from) {
+            return new double[] {gtfs.shapeLat(shape, 0), gtfs.shapeLon(shape, 0), 0};
+        }
+        // Last point at or before the distance, so the segment is [i, i + 1].
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (along[mid] <= distance) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int i = lo;
+        double segment = along[i + 1] - along[i];
+        double t = segment == 0 ? 0 : Math.max(0, Math.min(1, (distance - along[i]) / segment));
+        double lat = originLat + (y[i] + t * (y[i + 1] - y[i])) / metersPerDegreeLat;
+        double lon = originLon + (x[i] + t * (x[i + 1] - x[i])) / metersPerDegreeLon;
+        double bearing = Math.toDegrees(Math.atan2(x[i + 1] - x[i], y[i + 1] - y[i]));
+        return new double[] {lat, lon, bearing < 0 ? bearing + 360 : bearing};
+    }
+
+    private static int cell(double meters) {
+        return (int) Math.floor(meters / CELL_METERS);
+    }
+
+    // Cell coordinates are within a few hundred of the origin, far inside 21 bits.
+    private static long cellKey(int shape, int cx, int cy) {
+        return ((long) shape << 42) | ((cx & 0x1fffffL) << 21) | (cy & 0x1fffffL);
+    }
+}
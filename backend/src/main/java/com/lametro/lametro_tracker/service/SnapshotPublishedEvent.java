@@ -0,0 +1,23 @@
+package com.lametro.lametro_tracker.service;
+
+/**
+ * Published after a refresh swaps in a new snapshot.
+ */
+public class SnapshotPublishedEvent {
+
+    private final String agency;
+    private final FeedSnapshot<?> snapshot;
+
+    public SnapshotPublishedEvent(String agency, FeedSnapshot<?> snapshot) {
+        this.agency = agency;
+        this.snapshot = snapshot;
+    }
+
+    public String getAgency() {
+        return agency;
+    }
+
+    public FeedSnapshot<?> getSnapshot() {
+        return snapshot;
+    }
+}
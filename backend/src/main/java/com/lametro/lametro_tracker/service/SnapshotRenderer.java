@@ -0,0 +1,167 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Renders API response bodies from a snapshot, at most once per snapshot and
+ * query. The refresh task warms the common queries before the snapshot is
+ * published; anything else is rendered on first request and then shared.
+ *
+ * lametro.render counts each lookup by view and result: "hit" for a body
+ * already rendered, "render" for one rendered on the request path and
+ * "warm" for one rendered ahead of publishing.
+ */
+@Component
+public class SnapshotRenderer {
+
+    // Number of upcoming arrivals returned by /api/trip-updates.
+    public static final int ARRIVALS_LIMIT = 4;
+
+    private static final List<String> VIEWS = List.of("vehicles", "vehicles-query", "delta", "predicted", "arrivals", "trip", "journeys");
+
+    private enum Result { HIT, RENDER, WARM }
+
+    private final JsonMapper jsonMapper;
+    // Registered up front, so counting on the request path doesn't build meter IDs.
+    private final Map<String, Counter[]> counters = new HashMap<>();
+
+    public SnapshotRenderer(JsonMapper jsonMapper, MeterRegistry meters) {
+        this.jsonMapper = jsonMapper;
+        for (String view : VIEWS) {
+            Counter[] byResult = new Counter[Result.values().length];
+            for (Result result : Result.values()) {
+                byResult[result.ordinal()] = Counter.builder("lametro.render")
+                    .description("Response body lookups by view and whether they had to render")
+                    .tag("view", view)
+                    .tag("result", result.name().toLowerCase(Locale.ROOT))
+                    .register(meters);
+            }
+            counters.put(view, byResult);
+        }
+    }
+
+    public PreparedBody vehicles(FeedSnapshot<VehiclePosition> snapshot) {
+        return vehicles(snapshot, BodyFormat.JSON);
+    }
+
+    public PreparedBody vehicles(FeedSnapshot<VehiclePosition> snapshot, BodyFormat format) {
+        return vehicles(snapshot, format, Result.RENDER);
+    }
+
+    /**
+     * Renders vehicles picked out of a snapshot by a spatial query. These are
+     * rendered on every request, since arbitrary boxes and points would
+     * rarely repeat and only crowd out the shared bodies.
+     */
+    public PreparedBody vehicles(List<VehiclePosition> vehicles, BodyFormat format) {
+        count("vehicles-query", Result.RENDER);
+        return PreparedBody.of(encodeVehicles(vehicles, format));
+    }
+
+    public PreparedBody vehicleDelta(FeedSnapshot<VehiclePosition> snapshot, FeedSnapshot<VehiclePosition> base) {
+        String key = "delta:" + (base == null ? "full" : Long.toHexString(base.getVersion()));
+        return cached(snapshot, "delta", key, Result.RENDER,
+            () -> jsonMapper.writeValueAsBytes(VehicleDiff.between(base, snapshot)));
+    }
+
+    /**
+     * Vehicles moved along their shapes to the given time in epoch seconds.
+     */
+    public PreparedBody predictedVehicles(FeedSnapshot<VehiclePosition> snapshot, long at, VehicleTracker tracker,
+            BodyFormat format) {
+        return cached(snapshot, "predicted", "predicted:" + at + format.getSuffix(), Result.RENDER, () ->
+            encodeVehicles(tracker.predict(snapshot.getEntities(), at), format));
+    }
+
+    public PreparedBody arrivals(TripUpdateSnapshot snapshot, String routeId, Integer directionId, List<String> stopIds) {
+        return arrivals(snapshot, routeId, directionId, stopIds, BodyFormat.JSON);
+    }
+
+    public PreparedBody arrivals(TripUpdateSnapshot snapshot, String routeId, Integer directionId, List<String> stopIds,
+            BodyFormat format) {
+        return arrivals(snapshot, routeId, directionId, stopIds, format, Result.RENDER);
+    }
+
+    public PreparedBody trip(TripUpdateSnapshot snapshot, String tripId, BodyFormat format) {
+        return cached(snapshot, "trip", "trip:" + tripId + format.getSuffix(), Result.RENDER,
+            () -> encodeArrivals(snapshot.findTrip(tripId), format));
+    }
+
+    /**
+     * Renders journeys between two stations on every request: the query
+     * takes microseconds, and boarding times would rarely repeat.
+     */
+    public PreparedBody journeys(TripUpdateSnapshot snapshot, String from, String to, long after, int limit) {
+        count("journeys", Result.RENDER);
+        return PreparedBody.of(jsonMapper.writeValueAsBytes(snapshot.getJourneys().find(from, to, after, limit)));
+    }
+
+    public void prepare(FeedSnapshot<VehiclePosition> snapshot) {
+        warm(vehicles(snapshot, BodyFormat.JSON, Result.WARM));
+    }
+
+    /**
+     * Renders the arrival boards the frontend asks for: one per route,
+     * direction and platform.
+     */
+    public void prepare(TripUpdateSnapshot snapshot) {
+        snapshot.forEachStop((routeId, directionId, stopId) ->
+            warm(arrivals(snapshot, routeId, directionId, List.of(stopId), BodyFormat.JSON, Result.WARM)));
+    }
+
+    private PreparedBody vehicles(FeedSnapshot<VehiclePosition> snapshot, BodyFormat format, Result miss) {
+        return cached(snapshot, "vehicles", "vehicles" + format.getSuffix(), miss,
+            () -> encodeVehicles(snapshot.getEntities(), format));
+    }
+
+    private PreparedBody arrivals(TripUpdateSnapshot snapshot, String routeId, Integer directionId, List<String> stopIds,
+            BodyFormat format, Result miss) {
+        String key = "arrivals:" + routeId + ":" + directionId + ":"
+            + (stopIds == null ? "*" : String.join(",", stopIds.stream().distinct().sorted().toList())) + format.getSuffix();
+        return cached(snapshot, "arrivals", key, miss, () -> encodeArrivals(
+            snapshot.findArrivals(routeId, directionId, stopIds, ARRIVALS_LIMIT), format));
+    }
+
+    // Browsers all send gzip, so that encoding is worth having before the first request.
+    private static void warm(PreparedBody body) {
+        if (body.negotiate(PreparedBody.GZIP) != null) {
+            body.bytes(PreparedBody.GZIP);
+        }
+    }
+
+    private byte[] encodeVehicles(List<VehiclePosition> vehicles, BodyFormat format) {
+        return format == BodyFormat.PROTOBUF ? ProtobufEncoder.vehicles(vehicles) : jsonMapper.writeValueAsBytes(vehicles);
+    }
+
+    private byte[] encodeArrivals(List<StopTimeUpdate> arrivals, BodyFormat format) {
+        return format == BodyFormat.PROTOBUF ? ProtobufEncoder.arrivals(arrivals) : jsonMapper.writeValueAsBytes(arrivals);
+    }
+
+    // Counts the lookup as a hit, or as the given miss result if it had to render.
+    private PreparedBody cached(FeedSnapshot<?> snapshot, String view, String key, Result miss, Supplier<byte[]> render) {
+        boolean[] rendered = new boolean[1];
+        PreparedBody body = snapshot.preparedBody(key, () -> {
+            rendered[0] = true;
+            return render.get();
+        });
+        count(view, rendered[0] ? miss : Result.HIT);
+        return body;
+    }
+
+    private void count(String view, Result result) {
+        counters.get(view)[result.ordinal()].increment();
+    }
+}
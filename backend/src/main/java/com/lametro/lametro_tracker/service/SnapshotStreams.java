@@ -0,0 +1,279 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Pushes snapshot updates to Server-Sent Events subscribers.
+ *
+ * Connections are held as async servlet requests, so an idle subscriber
+ * costs a socket and a few small objects but no thread. Rendering and
+ * sending run on a small fixed pool. Each subscriber has a single pending
+ * slot that newer messages overwrite, so a slow client only ever gets the
+ * latest state and is dropped if it keeps falling behind. Subscribers are
+ * grouped by agency, so a refresh only walks the streams of the agency it
+ * was for.
+ */
+@Component
+public class SnapshotStreams implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStreams.class);
+
+    // A subscriber that has this many updates overwritten in a row is dropped.
+    private static final int MAX_SKIPPED_UPDATES = 3;
+
+    // Comment sent to quiet streams so proxies don't close them as idle.
+    private static final Message HEARTBEAT = new Message(null, null, null);
+    private static final long HEARTBEAT_INTERVAL_MS = 30_000;
+
+    private final SnapshotRenderer renderer;
+    // Keyed by agency ID.
+    private final Map<String, Set<Subscriber>> vehicleSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> arrivalSubscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService senders;
+    private final Counter slowSubscribersDropped;
+
+    @Value("${lametro.stream.max-subscribers:20000}")
+    private int maxSubscribers;
+
+    @Value("${lametro.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    public SnapshotStreams(
+        SnapshotRenderer renderer,
+        MeterRegistry meters,
+        @Value("${lametro.stream.sender-threads:4}") int senderThreads
+    ) {
+        this.renderer = renderer;
+        Gauge.builder("lametro.stream.subscribers", subscriberCount, AtomicInteger::get)
+            .description("Open Server-Sent Events streams")
+            .register(meters);
+        Gauge.builder("lametro.stream.subscribers.max", this, streams -> streams.maxSubscribers)
+            .description("Open streams allowed before new ones are refused")
+            .register(meters);
+        this.slowSubscribersDropped = Counter.builder("lametro.stream.dropped")
+            .description("Subscribers dropped for falling behind")
+            .register(meters);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sse-sender-");
+        threadFactory.setDaemon(true);
+        this.senders = Executors.newFixedThreadPool(senderThreads, threadFactory);
+    }
+
+    public SseEmitter subscribeVehicles(GtfsRtService realtime) {
+        Subscriber subscriber = register("vehicles", group(vehicleSubscribers, realtime.getAgency()), null);
+        subscriber.offer(vehiclesMessage(realtime.getVehicleSnapshot()));
+        return subscriber.emitter;
+    }
+
+    public SseEmitter subscribeArrivals(GtfsRtService realtime, String routeId, Integer directionId, List<String> stopIds) {
+        Subscriber subscriber = register("arrivals", group(arrivalSubscribers, realtime.getAgency()),
+            snapshot -> renderer.arrivals(snapshot, routeId, directionId, stopIds));
+        subscriber.offer(arrivalsMessage(realtime.getTripUpdateSnapshot()));
+        return subscriber.emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @EventListener
+    @SuppressWarnings("unchecked")
+    public void onSnapshotPublished(SnapshotPublishedEvent event) {
+        if (event.getSnapshot() instanceof TripUpdateSnapshot snapshot) {
+            // Each subscriber's board is rendered by its sender, not on the publishing thread.
+            Message message = arrivalsMessage(snapshot);
+            for (Subscriber subscriber : group(arrivalSubscribers, event.getAgency())) {
+                subscriber.offer(message);
+            }
+        } else {
+            Message message = vehiclesMessage((FeedSnapshot<VehiclePosition>) event.getSnapshot());
+            for (Subscriber subscriber : group(vehicleSubscribers, event.getAgency())) {
+                subscriber.offer(message);
+            }
+        }
+    }
+
+    @Scheduled(fixedRate = HEARTBEAT_INTERVAL_MS)
+    public void sendHeartbeats() {
+        long cutoff = System.currentTimeMillis() - HEARTBEAT_INTERVAL_MS;
+        for (Map<String, Set<Subscriber>> groups : List.of(vehicleSubscribers, arrivalSubscribers)) {
+            for (Set<Subscriber> subscribers : groups.values()) {
+                for (Subscriber subscriber : subscribers) {
+                    if (subscriber.lastSentAt < cutoff) {
+                        subscriber.offerHeartbeat();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        senders.shutdownNow();
+    }
+
+    private Subscriber register(String eventName, Set<Subscriber> subscribers,
+            Function<TripUpdateSnapshot, PreparedBody> view) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many open streams");
+        }
+        Subscriber subscriber = new Subscriber(eventName, new SseEmitter(timeoutMs), subscribers, view);
+        subscribers.add(subscriber);
+        subscriber.emitter.onCompletion(subscriber::remove);
+        subscriber.emitter.onTimeout(subscriber::remove);
+        subscriber.emitter.onError(e -> subscriber.remove());
+        return subscriber;
+    }
+
+    private static Set<Subscriber> group(Map<String, Set<Subscriber>> groups, String agency) {
+        return groups.computeIfAbsent(agency, id -> ConcurrentHashMap.newKeySet());
+    }
+
+    private Message vehiclesMessage(FeedSnapshot<VehiclePosition> snapshot) {
+        return new Message(Long.toHexString(snapshot.getVersion()), renderer.vehicles(snapshot), null);
+    }
+
+    private static Message arrivalsMessage(TripUpdateSnapshot snapshot) {
+        return new Message(Long.toHexString(snapshot.getVersion()), null, snapshot);
+    }
+
+    // Either a rendered body, or the arrivals snapshot to render each subscriber's view of.
+    private static class Message {
+        final String id;
+        final PreparedBody body;
+        final TripUpdateSnapshot arrivals;
+
+        Message(String id, PreparedBody body, TripUpdateSnapshot arrivals) {
+            this.id = id;
+            this.body = body;
+            this.arrivals = arrivals;
+        }
+    }
+
+    private class Subscriber {
+        final String eventName;
+        final SseEmitter emitter;
+        final Set<Subscriber> group;
+        final Function<TripUpdateSnapshot, PreparedBody> view;
+        final AtomicReference<Message> pending = new AtomicReference<>();
+        final AtomicBoolean sending = new AtomicBoolean();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicBoolean removed = new AtomicBoolean();
+        // Only touched by the thread currently draining.
+        byte[] lastSentBody;
+        volatile long lastSentAt = System.currentTimeMillis();
+
+        Subscriber(String eventName, SseEmitter emitter, Set<Subscriber> group,
+                Function<TripUpdateSnapshot, PreparedBody> view) {
+            this.eventName = eventName;
+            this.emitter = emitter;
+            this.group = group;
+            this.view = view;
+        }
+
+        void offer(Message message) {
+            Message previous = pending.getAndSet(message);
+            if (previous != null && previous != HEARTBEAT && skipped.incrementAndGet() > MAX_SKIPPED_UPDATES) {
+                log.debug("Dropping slow {} stream subscriber", eventName);
+                slowSubscribersDropped.increment();
+                remove();
+                emitter.complete();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        void offerHeartbeat() {
+            if (pending.compareAndSet(null, HEARTBEAT)) {
+                scheduleDrain();
+            }
+        }
+
+        void scheduleDrain() {
+            if (!removed.get() && sending.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        void drain() {
+            while (true) {
+                Message message = pending.getAndSet(null);
+                if (message == null) {
+                    sending.set(false);
+                    // Recheck in case an offer raced with releasing the flag.
+                    if (pending.get() == null || !sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    send(message);
+                    skipped.set(0);
+                } catch (IOException | IllegalStateException e) {
+                    remove();
+                    return;
+                } catch (RuntimeException e) {
+                    // A body that fails to render would fail again, so the stream can't recover.
+                    log.warn("Failed to render {} stream update", eventName, e);
+                    remove();
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+
+        void send(Message message) throws IOException {
+            if (message == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("keepalive"));
+            } else {
+                // Identical queries share one rendered body per snapshot. Streams only send it uncompressed.
+                PreparedBody prepared = message.body != null ? message.body : view.apply(message.arrivals);
+                byte[] body = prepared.bytes(null);
+                if (Arrays.equals(body, lastSentBody)) {
+                    return;
+                }
+                emitter.send(SseEmitter.event().id(message.id).name(eventName).data(body, MediaType.APPLICATION_JSON));
+                lastSentBody = body;
+            }
+            lastSentAt = System.currentTimeMillis();
+        }
+
+        void remove() {
+            if (removed.compareAndSet(false, true)) {
+                group.remove(this);
+                subscriberCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,883 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The static GTFS schedule (routes, stops, trips and shapes) held in
+ * compact, index-based tables.
+ *
+ * Every table is sorted by its ID and addressed by position, so lookups by
+ * ID are binary searches and cross references (a stop's parent station, a
+ * trip's route and shape) are plain ints. Shape points are flat coordinate
+ * arrays, and the platforms of each station and the stations of each
+ * route pattern are offset-indexed int arrays.
+ *
+ * The tables are compiled into one little-endian buffer, outside the heap,
+ * and every accessor reads it in place. {@link #writeTo} saves that buffer
+ * as a cache file and {@link #open} maps it back, so a restart with
+ * unchanged input skips parsing altogether.
+ *
+ * Route stop patterns come from stop_times.txt when it is present. The
+ * rail export we ship has no stop_times.txt, so otherwise each pattern is
+ * the stations whose platforms lie on the route's longest shape for that
+ * direction, in the order the shape reaches them. For the current export
+ * that reproduces the patterns scripts/convert_gtfs.py derived from
+ * stop_times.
+ *
+ * Each pattern also carries scheduled running times: seconds from its first
+ * station to each of the others. These come from the same trip in
+ * stop_times.txt, or without it from distance along the shape at the
+ * average scheduled speed of the rail network.
+ */
+public final class StaticGtfs {
+
+    public static final String[] FILES = {"routes.txt", "stops.txt", "trips.txt", "shapes.txt", "stop_times.txt"};
+
+    // A platform further than this from a shape is not on it.
+    private static final double MAX_PLATFORM_DISTANCE_METERS = 100;
+
+    // Stations closer than this along a shape are one stop with separately
+    // listed stations per line (Expo/Crenshaw for the E and K Lines).
+    private static final double MIN_STATION_SPACING_METERS = 150;
+
+    // Average scheduled rail speed including dwell times, about 20 mph, for
+    // running times without stop_times.txt.
+    private static final double SCHEDULED_METERS_PER_SECOND = 9;
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private static final Comparator<String> UTF8_ORDER =
+        (a, b) -> Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    // Compiled layout: a header, then one 8-byte aligned section per column.
+    private static final long MAGIC = 0x31534654474d4c4cL;
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int ROUTE_IDS = 0;
+    private static final int ROUTE_NAMES = 1;
+    private static final int ROUTE_COLORS = 2;
+    private static final int STOP_IDS = 3;
+    private static final int STOP_NAMES = 4;
+    private static final int STOP_LATS = 5;
+    private static final int STOP_LONS = 6;
+    private static final int LOCATION_TYPES = 7;
+    private static final int PARENT_STATIONS = 8;
+    // Platforms of station s are PLATFORMS[PLATFORM_START[s]] until PLATFORM_START[s + 1].
+    private static final int PLATFORM_START = 9;
+    private static final int PLATFORMS = 10;
+    private static final int TRIP_IDS = 11;
+    private static final int TRIP_ROUTES = 12;
+    private static final int TRIP_DIRECTIONS = 13;
+    private static final int TRIP_SHAPES = 14;
+    private static final int SHAPE_IDS = 15;
+    // Points of shape s are POINT_START[s] until POINT_START[s + 1], in sequence order.
+    private static final int POINT_START = 16;
+    private static final int POINT_LATS = 17;
+    private static final int POINT_LONS = 18;
+    // Pattern p = route * 2 + direction lists PATTERN_STATIONS[PATTERN_START[p]] until PATTERN_START[p + 1].
+    private static final int PATTERN_START = 19;
+    private static final int PATTERN_STATIONS = 20;
+    private static final int PATTERN_PLATFORMS = 21;
+    private static final int PATTERN_SECONDS = 22;
+    private static final int SECTIONS = 23;
+
+    // Magic, format version, section count, total size, input checksum, section offsets.
+    private static final int HEADER_BYTES = 8 + 4 + 4 + 8 + 8 + 4 * SECTIONS;
+
+    private static final StaticGtfs EMPTY = new StaticGtfs(encode(new Tables()), false);
+
+    // Little-endian and read-only; direct or memory-mapped, so the tables stay off the heap.
+    private final ByteBuffer data;
+    private final boolean mapped;
+    private final long version;
+    private final int[] offsets = new int[SECTIONS];
+    private final int routeCount;
+    private final int stopCount;
+    private final int tripCount;
+    private final int shapeCount;
+
+    private StaticGtfs(ByteBuffer data, boolean mapped) {
+        this.data = data;
+        this.mapped = mapped;
+        this.version = data.getLong(24);
+        for (int section = 0; section < SECTIONS; section++) {
+            offsets[section] = data.getInt(32 + 4 * section);
+        }
+        this.routeCount = data.getInt(offsets[ROUTE_IDS]);
+        this.stopCount = data.getInt(offsets[STOP_IDS]);
+        this.tripCount = data.getInt(offsets[TRIP_IDS]);
+        this.shapeCount = data.getInt(offsets[SHAPE_IDS]);
+    }
+
+    public static StaticGtfs empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Checksum of the input files, or 0 for the empty schedule.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isEmpty() {
+        return stopCount == 0 && routeCount == 0;
+    }
+
+    /**
+     * Size of the compiled tables in bytes, all of it outside the heap.
+     */
+    public int sizeInBytes() {
+        return data.capacity();
+    }
+
+    /**
+     * Whether the tables are read in place from a compiled cache file.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    // Routes.
+
+    public int routeCount() {
+        return routeCount;
+    }
+
+    public int routeIndex(String routeId) {
+        return find(ROUTE_IDS, routeId);
+    }
+
+    public String routeId(int route) {
+        return string(ROUTE_IDS, route);
+    }
+
+    public String routeName(int route) {
+        return string(ROUTE_NAMES, route);
+    }
+
+    public String routeColor(int route) {
+        return string(ROUTE_COLORS, route);
+    }
+
+    // Stops.
+
+    public int stopCount() {
+        return stopCount;
+    }
+
+    public int stopIndex(String stopId) {
+        return find(STOP_IDS, stopId);
+    }
+
+    public String stopId(int stop) {
+        return string(STOP_IDS, stop);
+    }
+
+    public String stopName(int stop) {
+        return string(STOP_NAMES, stop);
+    }
+
+    public double stopLat(int stop) {
+        return doubleAt(STOP_LATS, stop);
+    }
+
+    public double stopLon(int stop) {
+        return doubleAt(STOP_LONS, stop);
+    }
+
+    /**
+     * GTFS location_type: 0 platform, 1 station, 2 entrance, and so on.
+     */
+    public int locationType(int stop) {
+        return byteAt(LOCATION_TYPES, stop);
+    }
+
+    /**
+     * Index of the stop's parent station, or -1 if it has none.
+     */
+    public int parentStation(int stop) {
+        return intAt(PARENT_STATIONS, stop);
+    }
+
+    public int platformCount(int station) {
+        return intAt(PLATFORM_START, station + 1) - intAt(PLATFORM_START, station);
+    }
+
+    public int platform(int station, int i) {
+        return intAt(PLATFORMS, intAt(PLATFORM_START, station) + i);
+    }
+
+    // Trips.
+
+    public int tripCount() {
+        return tripCount;
+    }
+
+    public int tripIndex(String tripId) {
+        return find(TRIP_IDS, tripId);
+    }
+
+    public String tripId(int trip) {
+        return string(TRIP_IDS, trip);
+    }
+
+    public int tripRoute(int trip) {
+        return intAt(TRIP_ROUTES, trip);
+    }
+
+    public int tripDirection(int trip) {
+        return byteAt(TRIP_DIRECTIONS, trip);
+    }
+
+    /**
+     * Index of the trip's shape, or -1 if it has none.
+     */
+    public int tripShape(int trip) {
+        return intAt(TRIP_SHAPES, trip);
+    }
+
+    // Shapes.
+
+    public int shapeCount() {
+        return shapeCount;
+    }
+
+    public int shapeIndex(String shapeId) {
+        return find(SHAPE_IDS, shapeId);
+    }
+
+    public String shapeId(int shape) {
+        return string(SHAPE_IDS, shape);
+    }
+
+    public int shapePointCount(int shape) {
+        return intAt(POINT_START, shape + 1) - intAt(POINT_START, shape);
+    }
+
+    public double shapeLat(int shape, int i) {
+        return doubleAt(POINT_LATS, intAt(POINT_START, shape) + i);
+    }
+
+    public double shapeLon(int shape, int i) {
+        return doubleAt(POINT_LONS, intAt(POINT_START, shape) + i);
+    }
+
+    // Route stop patterns.
+
+    /**
+     * Number of stations served by the route in the given direction (0 or 1).
+     */
+    public int patternLength(int route, int direction) {
+        int pattern = route * 2 + direction;
+        return intAt(PATTERN_START, pattern + 1) - intAt(PATTERN_START, pattern);
+    }
+
+    /**
+     * The i-th station of the route in the given direction, in travel order.
+     */
+    public int patternStation(int route, int direction, int i) {
+        return intAt(PATTERN_STATIONS, intAt(PATTERN_START, route * 2 + direction) + i);
+    }
+
+    /**
+     * The platform the route uses at the i-th station of its pattern.
+     */
+    public int patternPlatform(int route, int direction, int i) {
+        return intAt(PATTERN_PLATFORMS, intAt(PATTERN_START, route * 2 + direction) + i);
+    }
+
+    /**
+     * Scheduled seconds from the first station of the route's pattern to
+     * the i-th.
+     */
+    public int patternSeconds(int route, int direction, int i) {
+        return intAt(PATTERN_SECONDS, intAt(PATTERN_START, route * 2 + direction) + i);
+    }
+
+    /**
+     * The platform stop IDs a stop ID stands for: every platform of a
+     * station, or the stop itself. Returns null for unknown IDs.
+     */
+    public List<String> platformIds(String stopId) {
+        int stop = stopIndex(stopId);
+        if (stop < 0) {
+            return null;
+        }
+        int count = platformCount(stop);
+        if (count == 0) {
+            return List.of(stopId(stop));
+        }
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = stopId(platform(stop, i));
+        }
+        return List.of(ids);
+    }
+
+    private int intAt(int section, int i) {
+        return data.getInt(offsets[section] + 4 * i);
+    }
+
+    private double doubleAt(int section, int i) {
+        return data.getDouble(offsets[section] + 8 * i);
+    }
+
+    private byte byteAt(int section, int i) {
+        return data.get(offsets[section] + i);
+    }
+
+    // A string section is its count, count + 1 end offsets starting at 0, then the UTF-8 bytes.
+    private String string(int section, int i) {
+        int base = offsets[section];
+        int bytes = base + 4 * (data.getInt(base) + 2);
+        int from = data.getInt(base + 4 + 4 * i);
+        byte[] utf8 = new byte[data.getInt(base + 8 + 4 * i) - from];
+        data.get(bytes + from, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // Binary search over a sorted string section, comparing bytes in place.
+    private int find(int section, String id) {
+        if (id == null) {
+            return -1;
+        }
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int base = offsets[section];
+        int bytes = base + 4 * (data.getInt(base) + 2);
+        int lo = 0;
+        int hi = data.getInt(base) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int from = bytes + data.getInt(base + 4 + 4 * mid);
+            int to = bytes + data.getInt(base + 8 + 4 * mid);
+            int cmp = compare(from, to, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int from, int to, byte[] key) {
+        int length = Math.min(to - from, key.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = Byte.compareUnsigned(data.get(from + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(to - from, key.length);
+    }
+
+    /**
+     * Checksum of the input files, used to tell whether a compiled cache is
+     * still current.
+     */
+    public static long checksum(Path dir) throws IOException {
+        CRC32 crc = new CRC32();
+        for (String file : FILES) {
+            Path path = dir.resolve(file);
+            if (Files.exists(path)) {
+                crc.update(file.getBytes(StandardCharsets.UTF_8));
+                crc.update(Files.readAllBytes(path));
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Maps a cache file written by {@link #writeTo}. Returns null if the
+     * file is missing or is not a cache of this format.
+     */
+    public static StaticGtfs open(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping outlives the channel.
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getLong(0) != MAGIC || data.getInt(8) != FORMAT_VERSION || data.getInt(12) != SECTIONS
+                    || data.getLong(16) != size) {
+                return null;
+            }
+            for (int section = 0; section < SECTIONS; section++) {
+                int offset = data.getInt(32 + 4 * section);
+                if (offset < HEADER_BYTES || offset > size) {
+                    return null;
+                }
+            }
+            return new StaticGtfs(data, true);
+        }
+    }
+
+    /**
+     * Writes the compiled tables to a cache file. The file is replaced
+     * atomically, so a concurrent reader sees the old or the new tables.
+     */
+    public void writeTo(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer source = data.duplicate().clear();
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Parses a directory of GTFS text files and compiles it. routes.txt,
+     * stops.txt and trips.txt are required; shapes.txt and stop_times.txt
+     * are optional.
+     */
+    public static StaticGtfs load(Path dir) throws IOException {
+        Tables tables = new Tables();
+        tables.version = checksum(dir);
+
+        // Routes.
+        List<String[]> routeRows = new ArrayList<>();
+        try (GtfsCsv csv = new GtfsCsv(dir.resolve("routes.txt"))) {
+            while (csv.next()) {
+                routeRows.add(new String[] {csv.get("route_id"), csv.get("route_long_name").isEmpty()
+                    ? csv.get("route_short_name") : csv.get("route_long_name"), csv.get("route_color")});
+            }
+        }
+        routeRows.sort(Comparator.comparing(row -> row[0], UTF8_ORDER));
+        String[] routeIds = column(routeRows, 0);
+        tables.routeIds = routeIds;
+        tables.routeNames = column(routeRows, 1);
+        tables.routeColors = column(routeRows, 2);
+
+        // Stops.
+        List<String[]> stopRows = new ArrayList<>();
+        try (GtfsCsv csv = new GtfsCsv(dir.resolve("stops.txt"))) {
+            while (csv.next()) {
+                stopRows.add(new String[] {csv.get("stop_id"), csv.get("stop_name"), csv.get("stop_lat"),
+                    csv.get("stop_lon"), csv.get("location_type"), csv.get("parent_station")});
+            }
+        }
+        stopRows.sort(Comparator.comparing(row -> row[0], UTF8_ORDER));
+        String[] stopIds = column(stopRows, 0);
+        int stopCount = stopIds.length;
+        double[] stopLats = new double[stopCount];
+        double[] stopLons = new double[stopCount];
+        byte[] locationTypes = new byte[stopCount];
+        int[] parentStations = new int[stopCount];
+        int[] platformStart = new int[stopCount + 1];
+        for (int i = 0; i < stopCount; i++) {
+            String[] row = stopRows.get(i);
+            stopLats[i] = parseDouble(row[2]);
+            stopLons[i] = parseDouble(row[3]);
+            locationTypes[i] = row[4].isEmpty() ? 0 : Byte.parseByte(row[4]);
+            parentStations[i] = indexOf(stopIds, row[5].isEmpty() ? null : row[5]);
+            if (parentStations[i] >= 0 && locationTypes[i] == 0) {
+                platformStart[parentStations[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < stopCount; i++) {
+            platformStart[i + 1] += platformStart[i];
+        }
+        int[] platforms = new int[platformStart[stopCount]];
+        int[] platformFill = Arrays.copyOf(platformStart, stopCount);
+        for (int i = 0; i < stopCount; i++) {
+            if (parentStations[i] >= 0 && locationTypes[i] == 0) {
+                platforms[platformFill[parentStations[i]]++] = i;
+            }
+        }
+        tables.stopIds = stopIds;
+        tables.stopNames = column(stopRows, 1);
+        tables.stopLats = stopLats;
+        tables.stopLons = stopLons;
+        tables.locationTypes = locationTypes;
+        tables.parentStations = parentStations;
+        tables.platformStart = platformStart;
+        tables.platforms = platforms;
+
+        // Shapes.
+        Map<String, List<double[]>> shapePoints = new HashMap<>();
+        Path shapesFile = dir.resolve("shapes.txt");
+        if (Files.exists(shapesFile)) {
+            try (GtfsCsv csv = new GtfsCsv(shapesFile)) {
+                while (csv.next()) {
+                    shapePoints.computeIfAbsent(csv.get("shape_id"), key -> new ArrayList<>()).add(new double[] {
+                        parseDouble(csv.get("shape_pt_sequence")), parseDouble(csv.get("shape_pt_lat")),
+                        parseDouble(csv.get("shape_pt_lon"))});
+                }
+            }
+        }
+        String[] shapeIds = shapePoints.keySet().toArray(String[]::new);
+        Arrays.sort(shapeIds, UTF8_ORDER);
+        int[] pointStart = new int[shapeIds.length + 1];
+        for (int s = 0; s < shapeIds.length; s++) {
+            pointStart[s + 1] = pointStart[s] + shapePoints.get(shapeIds[s]).size();
+        }
+        double[] pointLats = new double[pointStart[shapeIds.length]];
+        double[] pointLons = new double[pointLats.length];
+        for (int s = 0; s < shapeIds.length; s++) {
+            List<double[]> points = shapePoints.get(shapeIds[s]);
+            points.sort(Comparator.comparingDouble(point -> point[0]));
+            for (int i = 0; i < points.size(); i++) {
+                pointLats[pointStart[s] + i] = points.get(i)[1];
+                pointLons[pointStart[s] + i] = points.get(i)[2];
+            }
+        }
+        tables.shapeIds = shapeIds;
+        tables.pointStart = pointStart;
+        tables.pointLats = pointLats;
+        tables.pointLons = pointLons;
+
+        // Trips.
+        List<String[]> tripRows = new ArrayList<>();
+        try (GtfsCsv csv = new GtfsCsv(dir.resolve("trips.txt"))) {
+            while (csv.next()) {
+                tripRows.add(new String[] {csv.get("trip_id"), csv.get("route_id"), csv.get("direction_id"), csv.get("shape_id")});
+            }
+        }
+        tripRows.sort(Comparator.comparing(row -> row[0], UTF8_ORDER));
+        String[] tripIds = column(tripRows, 0);
+        int[] tripRoutes = new int[tripIds.length];
+        byte[] tripDirections = new byte[tripIds.length];
+        int[] tripShapes = new int[tripIds.length];
+        for (int i = 0; i < tripIds.length; i++) {
+            String[] row = tripRows.get(i);
+            tripRoutes[i] = indexOf(routeIds, row[1]);
+            tripDirections[i] = (byte) ("1".equals(row[2]) ? 1 : 0);
+            tripShapes[i] = indexOf(shapeIds, row[3].isEmpty() ? null : row[3]);
+        }
+        tables.tripIds = tripIds;
+        tables.tripRoutes = tripRoutes;
+        tables.tripDirections = tripDirections;
+        tables.tripShapes = tripShapes;
+
+        // Route stop patterns, as (station, platform, seconds) per route and direction,
+        // derived through the accessors of a first compile without them.
+        tables.patternStart = new int[routeIds.length * 2 + 1];
+        StaticGtfs partial = new StaticGtfs(encode(tables), false);
+        Path stopTimesFile = dir.resolve("stop_times.txt");
+        List<List<int[]>> patterns = Files.exists(stopTimesFile)
+            ? partial.patternsFromStopTimes(stopTimesFile)
+            : partial.patternsFromShapes();
+        int[] patternStart = tables.patternStart;
+        for (int p = 0; p < patterns.size(); p++) {
+            patternStart[p + 1] = patternStart[p] + patterns.get(p).size();
+        }
+        int[] patternStations = new int[patternStart[patterns.size()]];
+        int[] patternPlatforms = new int[patternStations.length];
+        int[] patternSeconds = new int[patternStations.length];
+        for (int p = 0; p < patterns.size(); p++) {
+            for (int i = 0; i < patterns.get(p).size(); i++) {
+                patternStations[patternStart[p] + i] = patterns.get(p).get(i)[0];
+                patternPlatforms[patternStart[p] + i] = patterns.get(p).get(i)[1];
+                patternSeconds[patternStart[p] + i] = patterns.get(p).get(i)[2];
+            }
+        }
+        tables.patternStations = patternStations;
+        tables.patternPlatforms = patternPlatforms;
+        tables.patternSeconds = patternSeconds;
+
+        return new StaticGtfs(encode(tables), false);
+    }
+
+    // For each route and direction, the stops and running times of its longest scheduled trip.
+    private List<List<int[]>> patternsFromStopTimes(Path file) throws IOException {
+        Map<String, List<long[]>> stopsByTrip = new HashMap<>();
+        try (GtfsCsv csv = new GtfsCsv(file)) {
+            while (csv.next()) {
+                int stop = stopIndex(csv.get("stop_id"));
+                if (stop >= 0) {
+                    String time = csv.get("arrival_time").isBlank() ? csv.get("departure_time") : csv.get("arrival_time");
+                    stopsByTrip.computeIfAbsent(csv.get("trip_id"), key -> new ArrayList<>())
+                        .add(new long[] {Long.parseLong(csv.get("stop_sequence").trim()), stop, parseTime(time)});
+                }
+            }
+        }
+        String[] longest = new String[routeCount * 2];
+        for (Map.Entry<String, List<long[]>> entry : stopsByTrip.entrySet()) {
+            int trip = tripIndex(entry.getKey());
+            if (trip < 0 || tripRoute(trip) < 0) {
+                continue;
+            }
+            int pattern = tripRoute(trip) * 2 + tripDirection(trip);
+            if (longest[pattern] == null || entry.getValue().size() > stopsByTrip.get(longest[pattern]).size()) {
+                longest[pattern] = entry.getKey();
+            }
+        }
+        List<List<int[]>> patterns = new ArrayList<>();
+        for (String tripId : longest) {
+            List<int[]> pattern = new ArrayList<>();
+            if (tripId != null) {
+                List<long[]> stops = stopsByTrip.get(tripId);
+                stops.sort(Comparator.comparingLong(stop -> stop[0]));
+                interpolateTimes(stops);
+                for (long[] stop : stops) {
+                    int platform = (int) stop[1];
+                    int station = parentStation(platform) >= 0 ? parentStation(platform) : platform;
+                    pattern.add(new int[] {station, platform, (int) (stop[2] - stops.get(0)[2])});
+                }
+            }
+            patterns.add(pattern);
+        }
+        return patterns;
+    }
+
+    // Stops that aren't timepoints may leave their times blank; space them evenly between known ones.
+    private static void interpolateTimes(List<long[]> stops) {
+        int known = -1;
+        for (int i = 0; i < stops.size(); i++) {
+            if (stops.get(i)[2] < 0) {
+                continue;
+            }
+            if (known < 0) {
+                for (int j = 0; j < i; j++) {
+                    stops.get(j)[2] = stops.get(i)[2];
+                }
+            } else {
+                for (int j = known + 1; j < i; j++) {
+                    stops.get(j)[2] = stops.get(known)[2] + (stops.get(i)[2] - stops.get(known)[2]) * (j - known) / (i - known);
+                }
+            }
+            known = i;
+        }
+        for (int j = known + 1; j < stops.size(); j++) {
+            stops.get(j)[2] = known < 0 ? 0 : stops.get(known)[2];
+        }
+    }
+
+    // Seconds past midnight of an HH:MM:SS time, which may run past 24:00, or -1 if blank.
+    private static long parseTime(String time) {
+        if (time.isBlank()) {
+            return -1;
+        }
+        String[] parts = time.trim().split(":");
+        return Long.parseLong(parts[0]) * 3600 + Long.parseLong(parts[1]) * 60 + Long.parseLong(parts[2]);
+    }
+
+    // For each route and direction, the stations along its longest shape and their running times.
+    private List<List<int[]>> patternsFromShapes() {
+        int[] longest = new int[routeCount * 2];
+        Arrays.fill(longest, -1);
+        for (int trip = 0; trip < tripCount; trip++) {
+            int shape = tripShape(trip);
+            if (tripRoute(trip) < 0 || shape < 0) {
+                continue;
+            }
+            int pattern = tripRoute(trip) * 2 + tripDirection(trip);
+            if (longest[pattern] < 0 || shapePointCount(shape) > shapePointCount(longest[pattern])) {
+                longest[pattern] = shape;
+            }
+        }
+
+        List<List<int[]>> patterns = new ArrayList<>();
+        for (int shape : longest) {
+            List<int[]> pattern = new ArrayList<>();
+            if (shape >= 0) {
+                // Nearest platform of each station within reach of the shape, keyed by station.
+                Map<Integer, double[]> best = new HashMap<>();
+                for (int stop = 0; stop < stopCount; stop++) {
+                    int station = parentStation(stop);
+                    if (locationType(stop) != 0 || station < 0) {
+                        continue;
+                    }
+                    double[] projection = project(shape, stopLat(stop), stopLon(stop));
+                    double[] current = best.get(station);
+                    if (projection[0] <= MAX_PLATFORM_DISTANCE_METERS && (current == null || projection[0] < current[0])) {
+                        best.put(station, new double[] {projection[0], projection[1], stop});
+                    }
+                }
+                List<Map.Entry<Integer, double[]>> along = new ArrayList<>(best.entrySet());
+                along.sort(Comparator.comparingDouble(entry -> entry.getValue()[1]));
+                double[] previous = null;
+                for (Map.Entry<Integer, double[]> entry : along) {
+                    double[] current = entry.getValue();
+                    int[] stop = {entry.getKey(), (int) current[2], (int) Math.round(current[1] / SCHEDULED_METERS_PER_SECOND)};
+                    if (previous != null && current[1] - previous[1] < MIN_STATION_SPACING_METERS) {
+                        // Keep whichever of the two lies on the line itself.
+                        if (current[0] < previous[0]) {
+                            pattern.set(pattern.size() - 1, stop);
+                            previous = current;
+                        }
+                        continue;
+                    }
+                    pattern.add(stop);
+                    previous = current;
+                }
+            }
+            // Count from the first station.
+            for (int i = pattern.size() - 1; i >= 0; i--) {
+                pattern.get(i)[2] -= pattern.get(0)[2];
+            }
+            patterns.add(pattern);
+        }
+        return patterns;
+    }
+
+    /**
+     * Distance in meters from the point to the shape, and how far along the
+     * shape the nearest point lies.
+     */
+    private double[] project(int shape, double lat, double lon) {
+        double metersPerDegreeLat = Math.toRadians(1) * EARTH_RADIUS_METERS;
+        double metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(lat));
+        double bestDistance = Double.MAX_VALUE;
+        double bestAlong = 0;
+        double along = 0;
+        int points = shapePointCount(shape);
+        for (int i = 0; i < points - 1; i++) {
+            double ax = (shapeLon(shape, i) - lon) * metersPerDegreeLon;
+            double ay = (shapeLat(shape, i) - lat) * metersPerDegreeLat;
+            double dx = (shapeLon(shape, i + 1) - shapeLon(shape, i)) * metersPerDegreeLon;
+            double dy = (shapeLat(shape, i + 1) - shapeLat(shape, i)) * metersPerDegreeLat;
+            double length = Math.hypot(dx, dy);
+            double t = length == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / (length * length)));
+            double distance = Math.hypot(ax + t * dx, ay + t * dy);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestAlong = along + t * length;
+            }
+            along += length;
+        }
+        return new double[] {bestDistance, bestAlong};
+    }
+
+    // Lays the tables out in a direct buffer in the compiled format.
+    private static ByteBuffer encode(Tables tables) {
+        Object[] columns = tables.columns();
+        byte[][][] utf8 = new byte[SECTIONS][][];
+        int[] offsets = new int[SECTIONS];
+        int size = HEADER_BYTES;
+        for (int section = 0; section < SECTIONS; section++) {
+            size = (size + 7) & ~7;
+            offsets[section] = size;
+            if (columns[section] instanceof String[] strings) {
+                utf8[section] = new byte[strings.length][];
+                size += 4 * (strings.length + 2);
+                for (int i = 0; i < strings.length; i++) {
+                    utf8[section][i] = strings[i].getBytes(StandardCharsets.UTF_8);
+                    size += utf8[section][i].length;
+                }
+            } else if (columns[section] instanceof double[] doubles) {
+                size += 8 * doubles.length;
+            } else if (columns[section] instanceof int[] ints) {
+                size += 4 * ints.length;
+            } else {
+                size += ((byte[]) columns[section]).length;
+            }
+        }
+
+        ByteBuffer data = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        data.putLong(0, MAGIC).putInt(8, FORMAT_VERSION).putInt(12, SECTIONS).putLong(16, size).putLong(24, tables.version);
+        for (int section = 0; section < SECTIONS; section++) {
+            int offset = offsets[section];
+            data.putInt(32 + 4 * section, offset);
+            if (utf8[section] != null) {
+                byte[][] strings = utf8[section];
+                int bytes = offset + 4 * (strings.length + 2);
+                int end = 0;
+                data.putInt(offset, strings.length).putInt(offset + 4, 0);
+                for (int i = 0; i < strings.length; i++) {
+                    data.put(bytes + end, strings[i]);
+                    end += strings[i].length;
+                    data.putInt(offset + 8 + 4 * i, end);
+                }
+            } else if (columns[section] instanceof double[] doubles) {
+                for (int i = 0; i < doubles.length; i++) {
+                    data.putDouble(offset + 8 * i, doubles[i]);
+                }
+            } else if (columns[section] instanceof int[] ints) {
+                for (int i = 0; i < ints.length; i++) {
+                    data.putInt(offset + 4 * i, ints[i]);
+                }
+            } else {
+                data.put(offset, (byte[]) columns[section]);
+            }
+        }
+        return data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // IDs are kept in UTF-8 byte order, which is the order find compares in.
+    private static int indexOf(String[] sorted, String id) {
+        if (id == null) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(sorted, id, UTF8_ORDER);
+        return index >= 0 ? index : -1;
+    }
+
+    private static String[] column(List<String[]> rows, int column) {
+        String[] values = new String[rows.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rows.get(i)[column];
+        }
+        return values;
+    }
+
+    private static double parseDouble(String value) {
+        return value.isBlank() ? 0 : Double.parseDouble(value.trim());
+    }
+
+    // The decoded columns, only held while compiling.
+    private static final class Tables {
+        long version;
+        String[] routeIds = new String[0];
+        String[] routeNames = new String[0];
+        String[] routeColors = new String[0];
+        String[] stopIds = new String[0];
+        String[] stopNames = new String[0];
+        double[] stopLats = new double[0];
+        double[] stopLons = new double[0];
+        byte[] locationTypes = new byte[0];
+        int[] parentStations = new int[0];
+        int[] platformStart = new int[1];
+        int[] platforms = new int[0];
+        String[] tripIds = new String[0];
+        int[] tripRoutes = new int[0];
+        byte[] tripDirections = new byte[0];
+        int[] tripShapes = new int[0];
+        String[] shapeIds = new String[0];
+        int[] pointStart = new int[1];
+        double[] pointLats = new double[0];
+        double[] pointLons = new double[0];
+        int[] patternStart = new int[1];
+        int[] patternStations = new int[0];
+        int[] patternPlatforms = new int[0];
+        int[] patternSeconds = new int[0];
+
+        // In section order.
+        Object[] columns() {
+            return new Object[] {routeIds, routeNames, routeColors, stopIds, stopNames, stopLats, stopLons,
+                locationTypes, parentStations, platformStart, platforms, tripIds, tripRoutes, tripDirections,
+                tripShapes, shapeIds, pointStart, pointLats, pointLons, patternStart, patternStations,
+                patternPlatforms, patternSeconds};
+        }
+    }
+}
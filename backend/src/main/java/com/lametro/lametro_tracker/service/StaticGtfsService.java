@@ -0,0 +1,192 @@
+package com.lametro.lametro_tracker.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.lametro.lametro_tracker.model.NearbyStation;
+import com.lametro.lametro_tracker.model.PatternStop;
+import com.lametro.lametro_tracker.model.Route;
+import com.lametro.lametro_tracker.model.Station;
+import com.lametro.lametro_tracker.model.TripInfo;
+
+/**
+ * Loads the static GTFS schedule once at startup and answers station, route
+ * and trip lookups from it. If the files are missing, or no directory is
+ * given, the app still runs with an empty schedule.
+ *
+ * The compiled schedule is cached in a file keyed by a checksum of the
+ * input, so restarts with unchanged input just map the cache.
+ */
+@Service
+public class StaticGtfsService {
+
+    private static final Logger log = LoggerFactory.getLogger(StaticGtfsService.class);
+
+    // Stations are a few hundred meters apart, so a nearest query looks at a few cells.
+    private static final double STATION_CELL_DEGREES = 0.01;
+
+    private final StaticGtfs gtfs;
+    private final ShapeIndex shapes;
+    private final List<Station> stations;
+    private final PointGrid stationGrid;
+
+    public StaticGtfsService(
+        @Value("${lametro.gtfs.dir:../gtfs-data}") String dir,
+        @Value("${lametro.gtfs.cache-file:}") String cacheFile
+    ) {
+        this.gtfs = dir.isEmpty() ? StaticGtfs.empty() : load(Path.of(dir), cacheFile.isEmpty() ? null : Path.of(cacheFile));
+        this.shapes = new ShapeIndex(gtfs);
+        this.stations = buildStations(gtfs);
+        double[] lats = new double[stations.size()];
+        double[] lons = new double[stations.size()];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = stations.get(i).getLat();
+            lons[i] = stations.get(i).getLon();
+        }
+        this.stationGrid = new PointGrid(lats, lons, STATION_CELL_DEGREES);
+    }
+
+    public StaticGtfs getGtfs() {
+        return gtfs;
+    }
+
+    public ShapeIndex getShapes() {
+        return shapes;
+    }
+
+    /**
+     * Resolves comma-separated stop IDs to the platform stop IDs that trip
+     * updates use. A station ID stands for all of its platforms. An unknown
+     * ID ending in "S" is taken to be the station of the platform without it.
+     */
+    public List<String> resolveStopIds(String stopIds) {
+        if (stopIds == null || stopIds.isEmpty()) {
+            return null;
+        }
+        Set<String> platforms = new LinkedHashSet<>();
+        for (String id : stopIds.split(",")) {
+            List<String> resolved = gtfs.platformIds(id);
+            if (resolved != null) {
+                platforms.addAll(resolved);
+            } else {
+                platforms.add(id.endsWith("S") ? id.substring(0, id.length() - 1) : id);
+            }
+        }
+        return List.copyOf(platforms);
+    }
+
+    /**
+     * Every station that has at least one platform, in stop ID order.
+     */
+    public List<Station> getStations() {
+        return stations;
+    }
+
+    /**
+     * Up to {@code limit} stations within the radius of the point, nearest
+     * first, each with its distance.
+     */
+    public List<NearbyStation> getNearestStations(double lat, double lon, double radiusMeters, int limit) {
+        List<NearbyStation> nearest = new ArrayList<>();
+        for (int i : stationGrid.nearest(lat, lon, radiusMeters, limit)) {
+            Station station = stations.get(i);
+            int distance = (int) Math.round(PointGrid.distanceMeters(lat, lon, station.getLat(), station.getLon()));
+            nearest.add(new NearbyStation(station.getStopId(), station.getName(), station.getLat(), station.getLon(),
+                station.getStopIds(), distance));
+        }
+        return nearest;
+    }
+
+    public List<Route> getRoutes() {
+        List<Route> routes = new ArrayList<>();
+        for (int route = 0; route < gtfs.routeCount(); route++) {
+            List<List<PatternStop>> patterns = new ArrayList<>();
+            for (int direction = 0; direction < 2; direction++) {
+                List<PatternStop> pattern = new ArrayList<>();
+                for (int i = 0; i < gtfs.patternLength(route, direction); i++) {
+                    int station = gtfs.patternStation(route, direction, i);
+                    pattern.add(new PatternStop(gtfs.stopId(station), gtfs.stopName(station),
+                        gtfs.stopId(gtfs.patternPlatform(route, direction, i))));
+                }
+                patterns.add(pattern);
+            }
+            routes.add(new Route(gtfs.routeId(route), gtfs.routeName(route), "#" + gtfs.routeColor(route), patterns));
+        }
+        return routes;
+    }
+
+    /**
+     * The scheduled route, direction and shape of a trip, or null if the
+     * schedule doesn't know it.
+     */
+    public TripInfo getTrip(String tripId) {
+        int trip = gtfs.tripIndex(tripId);
+        if (trip < 0) {
+            return null;
+        }
+        int route = gtfs.tripRoute(trip);
+        int shape = gtfs.tripShape(trip);
+        return new TripInfo(gtfs.tripId(trip), route < 0 ? null : gtfs.routeId(route), gtfs.tripDirection(trip),
+            shape < 0 ? null : gtfs.shapeId(shape));
+    }
+
+    private static List<Station> buildStations(StaticGtfs gtfs) {
+        List<Station> stations = new ArrayList<>();
+        for (int stop = 0; stop < gtfs.stopCount(); stop++) {
+            if (gtfs.platformCount(stop) > 0) {
+                stations.add(new Station(gtfs.stopId(stop), gtfs.stopName(stop), gtfs.stopLat(stop),
+                    gtfs.stopLon(stop), gtfs.platformIds(gtfs.stopId(stop))));
+            }
+        }
+        return List.copyOf(stations);
+    }
+
+    private static StaticGtfs load(Path dir, Path cacheFile) {
+        if (!Files.isDirectory(dir)) {
+            log.warn("No static GTFS directory at {}; station, route and trip lookups will be empty", dir.toAbsolutePath());
+            return StaticGtfs.empty();
+        }
+        long start = System.nanoTime();
+        try {
+            StaticGtfs cached = cacheFile == null ? null : StaticGtfs.open(cacheFile);
+            if (cached != null && cached.getVersion() == StaticGtfs.checksum(dir)) {
+                logLoaded(cached, "Mapped", cacheFile, start);
+                return cached;
+            }
+            StaticGtfs gtfs = StaticGtfs.load(dir);
+            logLoaded(gtfs, "Compiled", dir, start);
+            return cacheFile == null ? gtfs : writeCache(gtfs, cacheFile);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to load static GTFS from {}", dir, e);
+            return StaticGtfs.empty();
+        }
+    }
+
+    // Serves from the cache file once it is written, or from memory if it can't be.
+    private static StaticGtfs writeCache(StaticGtfs gtfs, Path cacheFile) {
+        try {
+            gtfs.writeTo(cacheFile);
+            StaticGtfs mapped = StaticGtfs.open(cacheFile);
+            return mapped != null ? mapped : gtfs;
+        } catch (IOException e) {
+            log.warn("Could not write static GTFS cache {}: {}", cacheFile, e.toString());
+            return gtfs;
+        }
+    }
+
+    private static void logLoaded(StaticGtfs gtfs, String how, Path from, long start) {
+        log.info("{} static GTFS from {} in {} ms: {} routes, {} stops, {} trips, {} shapes, {} KB off-heap",
+            how, from, (System.nanoTime() - start) / 1_000_000, gtfs.routeCount(), gtfs.stopCount(),
+            gtfs.tripCount(), gtfs.shapeCount(), gtfs.sizeInBytes() / 1024);
+    }
+}
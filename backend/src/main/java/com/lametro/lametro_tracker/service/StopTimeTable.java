@@ -0,0 +1,424 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+
+/**
+ * Trip-update arrivals stored column by column in parallel primitive arrays.
+ *
+ * Route, stop and trip IDs live once each in sorted dictionaries and rows
+ * refer to them by index. Rows are ordered by (route, direction, stop,
+ * arrival), so every route, route+direction, or route+direction+stop is a
+ * contiguous range found by binary search. Two extra index
+ * columns give the rows in arrival order and in (trip, arrival) order.
+ *
+ * A row costs about 40 bytes against roughly 90 for a StopTimeUpdate, and
+ * queries read the arrays without allocating until they build their result.
+ */
+public final class StopTimeTable {
+
+    private static final StopTimeTable EMPTY = new Builder().build();
+
+    private static final StopTimeUpdate.Source[] SOURCES = StopTimeUpdate.Source.values();
+
+    // Dictionaries, sorted so that IDs can be found by binary search.
+    private final String[] routes;
+    private final String[] stops;
+    private final String[] trips;
+
+    // One entry per row, sorted by (route, direction, stop, arrival).
+    private final int[] route;
+    private final byte[] direction;
+    private final int[] stop;
+    private final int[] trip;
+    private final long[] arrival;
+    private final byte[] source;
+    private final long[] observedAt;
+
+    // Row numbers sorted by arrival.
+    private final int[] byArrival;
+
+    // Row numbers sorted by (trip, arrival); trip t owns tripStart[t] until tripStart[t + 1].
+    private final int[] byTrip;
+    private final int[] tripStart;
+
+    private StopTimeTable(String[] routes, String[] stops, String[] trips, int[] route, byte[] direction,
+            int[] stop, int[] trip, long[] arrival, byte[] source, long[] observedAt, int[] byArrival, int[] byTrip,
+            int[] tripStart) {
+        this.routes = routes;
+        this.stops = stops;
+        this.trips = trips;
+        this.route = route;
+        this.direction = direction;
+        this.stop = stop;
+        this.trip = trip;
+        this.arrival = arrival;
+        this.source = source;
+        this.observedAt = observedAt;
+        this.byArrival = byArrival;
+        this.byTrip = byTrip;
+        this.tripStart = tripStart;
+    }
+
+    public static StopTimeTable empty() {
+        return EMPTY;
+    }
+
+    public static StopTimeTable of(List<StopTimeUpdate> updates) {
+        Builder builder = new Builder();
+        for (StopTimeUpdate update : updates) {
+            builder.add(update.getTripId(), update.getRouteId(), update.getDirectionId(),
+                update.getStopId(), update.getArrivalTime(), update.getSource(), update.getObservedAt());
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return arrival.length;
+    }
+
+    /**
+     * Every row as a StopTimeUpdate, earliest first. Allocates one object per
+     * row, so keep it off the request path.
+     */
+    public List<StopTimeUpdate> toList() {
+        return rows(byArrival, 0, byArrival.length);
+    }
+
+    /**
+     * Returns the next {@code limit} arrivals matching the optional route,
+     * direction and stop IDs, earliest first.
+     */
+    public List<StopTimeUpdate> findArrivals(String routeId, Integer directionId, List<String> stopIds, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        if (routeId == null && directionId == null && stopIds == null) {
+            return rows(byArrival, 0, Math.min(limit, byArrival.length));
+        }
+
+        int firstRoute = 0;
+        int lastRoute = routes.length - 1;
+        if (routeId != null) {
+            firstRoute = Arrays.binarySearch(routes, routeId);
+            if (firstRoute < 0) {
+                return List.of();
+            }
+            lastRoute = firstRoute;
+        }
+
+        // The best rows so far, earliest first.
+        int[] best = new int[limit];
+        int found = 0;
+        for (int r = firstRoute; r <= lastRoute; r++) {
+            int from = lowerBound(r, Integer.MIN_VALUE, 0);
+            int to = lowerBound(r + 1, Integer.MIN_VALUE, 0);
+            while (from < to) {
+                int d = direction[from];
+                int directionEnd = lowerBound(r, d + 1, 0);
+                if (directionId == null || directionId == d) {
+                    if (stopIds == null) {
+                        found = collect(from, directionEnd, best, found);
+                    } else {
+                        for (String stopId : stopIds) {
+                            int s = Arrays.binarySearch(stops, stopId);
+                            if (s >= 0) {
+                                found = collect(lowerBound(r, d, s), lowerBound(r, d, s + 1), best, found);
+                            }
+                        }
+                    }
+                }
+                from = directionEnd;
+            }
+        }
+        return rows(best, 0, found);
+    }
+
+    /**
+     * Returns every stop of the given trip, earliest first.
+     */
+    public List<StopTimeUpdate> findTrip(String tripId) {
+        int t = Arrays.binarySearch(trips, tripId);
+        if (t < 0) {
+            return List.of();
+        }
+        return rows(byTrip, tripStart[t], tripStart[t + 1]);
+    }
+
+    /**
+     * Visits every route, direction and stop combination, in table order.
+     */
+    public void forEachStop(TripUpdateSnapshot.StopVisitor visitor) {
+        for (int i = 0; i < arrival.length; i++) {
+            if (i == 0 || route[i] != route[i - 1] || direction[i] != direction[i - 1] || stop[i] != stop[i - 1]) {
+                visitor.visit(routes[route[i]], direction[i], stops[stop[i]]);
+            }
+        }
+    }
+
+    /**
+     * Visits every row trip by trip, each trip's stops earliest first.
+     */
+    public void forEachArrival(TripUpdateSnapshot.ArrivalVisitor visitor) {
+        for (int row : byTrip) {
+            visitor.visit(trips[trip[row]], routes[route[row]], direction[row], stops[stop[row]], arrival[row],
+                SOURCES[source[row]], observedAt[row]);
+        }
+    }
+
+    // Merges rows [from, to) into the running top list, skipping rows already in it.
+    private int collect(int from, int to, int[] best, int found) {
+        for (int i = from; i < to; i++) {
+            if (found == best.length && arrival[i] >= arrival[best[found - 1]]) {
+                continue;
+            }
+            if (contains(best, found, i)) {
+                continue;
+            }
+            int slot = found < best.length ? found++ : found - 1;
+            while (slot > 0 && arrival[best[slot - 1]] > arrival[i]) {
+                best[slot] = best[slot - 1];
+                slot--;
+            }
+            best[slot] = i;
+        }
+        return found;
+    }
+
+    private static boolean contains(int[] rows, int count, int row) {
+        for (int i = 0; i < count; i++) {
+            if (rows[i] == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // First row whose (route, direction, stop) is not less than the given key.
+    private int lowerBound(int r, int d, int s) {
+        int lo = 0;
+        int hi = arrival.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = route[mid] != r ? Integer.compare(route[mid], r)
+                : direction[mid] != d ? Integer.compare(direction[mid], d)
+                : Integer.compare(stop[mid], s);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private List<StopTimeUpdate> rows(int[] order, int from, int to) {
+        List<StopTimeUpdate> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int row = order[i];
+            result.add(new StopTimeUpdate(trips[trip[row]], routes[route[row]], direction[row],
+                stops[stop[row]], arrival[row], SOURCES[source[row]], observedAt[row]));
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates rows in feed order and sorts them into a table once.
+     */
+    public static class Builder {
+        private final Map<String, Integer> routeIds = new HashMap<>();
+        private final Map<String, Integer> stopIds = new HashMap<>();
+        private final Map<String, Integer> tripIds = new HashMap<>();
+        private int size;
+        private int[] route = new int[64];
+        private byte[] direction = new byte[64];
+        private int[] stop = new int[64];
+        private int[] trip = new int[64];
+        private long[] arrival = new long[64];
+        private byte[] source = new byte[64];
+        private long[] observedAt = new long[64];
+
+        public Builder add(String tripId, String routeId, int directionId, String stopId, long arrivalTime) {
+            return add(tripId, routeId, directionId, stopId, arrivalTime, StopTimeUpdate.Source.REALTIME, 0);
+        }
+
+        public Builder add(String tripId, String routeId, int directionId, String stopId, long arrivalTime,
+                StopTimeUpdate.Source arrivalSource, long observed) {
+            if (size == arrival.length) {
+                int capacity = size * 2;
+                route = Arrays.copyOf(route, capacity);
+                direction = Arrays.copyOf(direction, capacity);
+                stop = Arrays.copyOf(stop, capacity);
+                trip = Arrays.copyOf(trip, capacity);
+                arrival = Arrays.copyOf(arrival, capacity);
+                source = Arrays.copyOf(source, capacity);
+                observedAt = Arrays.copyOf(observedAt, capacity);
+            }
+            route[size] = id(routeIds, routeId);
+            direction[size] = (byte) directionId;
+            stop[size] = id(stopIds, stopId);
+            trip[size] = id(tripIds, tripId);
+            arrival[size] = arrivalTime;
+            source[size] = (byte) arrivalSource.ordinal();
+            observedAt[size] = observed;
+            size++;
+            return this;
+        }
+
+        public StopTimeTable build() {
+            String[] routes = dictionary(routeIds);
+            String[] stops = dictionary(stopIds);
+            String[] trips = dictionary(tripIds);
+            int[] routeRank = ranks(routeIds, routes);
+            int[] stopRank = ranks(stopIds, stops);
+            int[] tripRank = ranks(tripIds, trips);
+
+            // Every ordering is an Arrays.sort over primitive longs holding a
+            // rank in the high half and a unique tiebreak in the low half.
+            long[] keys = new long[size];
+            long[] values = new long[size];
+            long earliest = Long.MAX_VALUE;
+            long latest = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                earliest = Math.min(earliest, arrival[i]);
+                latest = Math.max(latest, arrival[i]);
+            }
+            // Seconds after the earliest arrival already rank them, unless they span decades.
+            int[] arrivalRank = new int[size];
+            if (latest - earliest < Integer.MAX_VALUE) {
+                for (int i = 0; i < size; i++) {
+                    arrivalRank[i] = (int) (arrival[i] - earliest);
+                }
+            } else {
+                System.arraycopy(arrival, 0, values, 0, size);
+                arrivalRank = valueRanks(values, arrival, size);
+            }
+
+            // Feed rows by arrival, then feed order.
+            for (int i = 0; i < size; i++) {
+                keys[i] = (long) arrivalRank[i] << 32 | i;
+            }
+            Arrays.sort(keys);
+            int[] arrivalOrder = new int[size];
+            int[] arrivalPosition = new int[size];
+            for (int k = 0; k < size; k++) {
+                arrivalOrder[k] = (int) keys[k];
+                arrivalPosition[arrivalOrder[k]] = k;
+            }
+
+            // Table rows: feed rows by (route, direction, stop), then arrival.
+            for (int i = 0; i < size; i++) {
+                values[i] = ((long) routeRank[route[i]] << 8 | direction[i] + 128) * stops.length + stopRank[stop[i]];
+            }
+            int[] groupRank = new int[size];
+            if (((long) routes.length << 8) * stops.length < Integer.MAX_VALUE) {
+                for (int i = 0; i < size; i++) {
+                    groupRank[i] = (int) values[i];
+                }
+            } else {
+                groupRank = valueRanks(values, Arrays.copyOf(values, size), size);
+            }
+            for (int i = 0; i < size; i++) {
+                keys[i] = (long) groupRank[i] << 32 | arrivalPosition[i];
+            }
+            Arrays.sort(keys);
+
+            int[] sortedRoute = new int[size];
+            byte[] sortedDirection = new byte[size];
+            int[] sortedStop = new int[size];
+            int[] sortedTrip = new int[size];
+            long[] sortedArrival = new long[size];
+            byte[] sortedSource = new byte[size];
+            long[] sortedObservedAt = new long[size];
+            int[] sortedArrivalRank = new int[size];
+            for (int row = 0; row < size; row++) {
+                int i = arrivalOrder[(int) keys[row]];
+                sortedRoute[row] = routeRank[route[i]];
+                sortedDirection[row] = direction[i];
+                sortedStop[row] = stopRank[stop[i]];
+                sortedTrip[row] = tripRank[trip[i]];
+                sortedArrival[row] = arrival[i];
+                sortedSource[row] = source[i];
+                sortedObservedAt[row] = observedAt[i];
+                sortedArrivalRank[row] = arrivalRank[i];
+            }
+
+            // Table rows by arrival, then table order.
+            for (int row = 0; row < size; row++) {
+                keys[row] = (long) sortedArrivalRank[row] << 32 | row;
+            }
+            Arrays.sort(keys);
+            int[] byArrival = new int[size];
+            int[] byArrivalPosition = new int[size];
+            for (int k = 0; k < size; k++) {
+                byArrival[k] = (int) keys[k];
+                byArrivalPosition[byArrival[k]] = k;
+            }
+
+            // Table rows by trip, then arrival and table order.
+            for (int row = 0; row < size; row++) {
+                keys[row] = (long) sortedTrip[row] << 32 | byArrivalPosition[row];
+            }
+            Arrays.sort(keys);
+            int[] byTrip = new int[size];
+            for (int k = 0; k < size; k++) {
+                byTrip[k] = byArrival[(int) keys[k]];
+            }
+
+            int[] tripStart = new int[trips.length + 1];
+            for (int row = 0; row < size; row++) {
+                tripStart[sortedTrip[row] + 1]++;
+            }
+            for (int t = 0; t < trips.length; t++) {
+                tripStart[t + 1] += tripStart[t];
+            }
+
+            return new StopTimeTable(routes, stops, trips, sortedRoute, sortedDirection, sortedStop,
+                sortedTrip, sortedArrival, sortedSource, sortedObservedAt, byArrival, byTrip, tripStart);
+        }
+
+        private static int id(Map<String, Integer> ids, String value) {
+            return ids.computeIfAbsent(value == null ? "" : value, key -> ids.size());
+        }
+
+        private static String[] dictionary(Map<String, Integer> ids) {
+            String[] values = ids.keySet().toArray(String[]::new);
+            Arrays.sort(values);
+            return values;
+        }
+
+        // Maps each provisional id to its position in the sorted dictionary.
+        private static int[] ranks(Map<String, Integer> ids, String[] sorted) {
+            int[] ranks = new int[sorted.length];
+            for (int rank = 0; rank < sorted.length; rank++) {
+                ranks[ids.get(sorted[rank])] = rank;
+            }
+            return ranks;
+        }
+
+        // Rank of each value among the values, equal values sharing the lowest; sorts the scratch array.
+        private static int[] valueRanks(long[] scratch, long[] values, int size) {
+            Arrays.sort(scratch, 0, size);
+            int[] ranks = new int[size];
+            for (int i = 0; i < size; i++) {
+                int lo = 0;
+                int hi = size;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (scratch[mid] < values[i]) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                ranks[i] = lo;
+            }
+            return ranks;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one String instance per distinct feed identifier across refreshes.
+ *
+ * The rail network has a few hundred stops, a handful of routes and a few
+ * thousand trips a day, yet every refresh decodes fresh copies of all of
+ * them. Interning lets each snapshot point at the same long-lived strings
+ * so the per-refresh copies die young. The pool is simply dropped and
+ * rebuilt if it ever grows past its bound.
+ */
+public class StringInterner {
+
+    private final int maxSize;
+    private volatile ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+    public StringInterner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public String intern(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        ConcurrentHashMap<String, String> current = pool;
+        String existing = current.putIfAbsent(value, value);
+        if (existing != null) {
+            return existing;
+        }
+        if (current.size() > maxSize) {
+            pool = new ConcurrentHashMap<>();
+        }
+        return value;
+    }
+
+    public int size() {
+        return pool.size();
+    }
+}
@@ -0,0 +1,118 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+
+/**
+ * Trip-update snapshot backed by a columnar {@link StopTimeTable}, built once
+ * per refresh. Queries binary-search the table's sorted columns instead of
+ * scanning and sorting the whole feed, and the snapshot holds no per-arrival
+ * objects between requests.
+ *
+ * Its {@link JourneyIndex} is built on first use and kept with it.
+ */
+public class TripUpdateSnapshot extends FeedSnapshot<StopTimeUpdate> {
+
+    private final StopTimeTable table;
+    private final UnaryOperator<String> stationOf;
+    private volatile JourneyIndex journeys;
+
+    /**
+     * A snapshot whose journeys treat stops the resolver maps to the same
+     * station ID as one place to change trains.
+     */
+    public TripUpdateSnapshot(StopTimeTable table, long version, long lastModified, long fetchedAt,
+            UnaryOperator<String> stationOf) {
+        super(version, lastModified, fetchedAt);
+        this.table = table;
+        this.stationOf = stationOf;
+    }
+
+    public TripUpdateSnapshot(StopTimeTable table, long version, long lastModified, long fetchedAt) {
+        this(table, version, lastModified, fetchedAt, UnaryOperator.identity());
+    }
+
+    public TripUpdateSnapshot(List<StopTimeUpdate> entities, long version, long lastModified, long fetchedAt) {
+        this(StopTimeTable.of(entities), version, lastModified, fetchedAt);
+    }
+
+    public TripUpdateSnapshot(List<StopTimeUpdate> entities, long fetchedAt) {
+        this(entities, 0, fetchedAt, fetchedAt);
+    }
+
+    public static TripUpdateSnapshot none() {
+        return new TripUpdateSnapshot(StopTimeTable.empty(), 0, 0, 0);
+    }
+
+    /**
+     * Every arrival in the snapshot, earliest first, built from the table on
+     * each call.
+     */
+    @Override
+    public List<StopTimeUpdate> getEntities() {
+        return table.toList();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.size() == 0;
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns the next {@code limit} arrivals matching the optional route,
+     * direction and platform stop IDs, earliest first.
+     */
+    public List<StopTimeUpdate> findArrivals(String routeId, Integer directionId, List<String> stopIds, int limit) {
+        return table.findArrivals(routeId, directionId, stopIds, limit);
+    }
+
+    /**
+     * Returns every stop of the given trip, earliest first.
+     */
+    public List<StopTimeUpdate> findTrip(String tripId) {
+        return table.findTrip(tripId);
+    }
+
+    /**
+     * The journey index over this snapshot's arrivals. Building it sorts
+     * every row once, so the refresh task does it before publishing.
+     */
+    public JourneyIndex getJourneys() {
+        JourneyIndex index = journeys;
+        if (index == null) {
+            // Racing builders produce equal indexes, so either may win.
+            index = new JourneyIndex(this, stationOf);
+            journeys = index;
+        }
+        return index;
+    }
+
+    /**
+     * Visits every route, direction and stop combination in the snapshot.
+     */
+    public void forEachStop(StopVisitor visitor) {
+        table.forEachStop(visitor);
+    }
+
+    /**
+     * Visits every arrival trip by trip, each trip's stops earliest first.
+     */
+    public void forEachArrival(ArrivalVisitor visitor) {
+        table.forEachArrival(visitor);
+    }
+
+    public interface StopVisitor {
+        void visit(String routeId, int directionId, String stopId);
+    }
+
+    public interface ArrivalVisitor {
+        void visit(String tripId, String routeId, int directionId, String stopId, long arrivalTime,
+            StopTimeUpdate.Source source, long observedAt);
+    }
+}
@@ -0,0 +1,73 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.lametro.lametro_tracker.model.VehicleDelta;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+/**
+ * Computes what changed in the vehicle feed between two snapshots.
+ *
+ * Positions are compared on a coarse grid so GPS jitter between reports
+ * does not count as movement, and report timestamps are ignored.
+ */
+public final class VehicleDiff {
+
+    // About 11 m of latitude, well under the spacing between stations.
+    static final double COORDINATE_QUANTUM = 1e-4;
+    static final float BEARING_QUANTUM = 5f;
+    static final double SPEED_QUANTUM = 1;
+
+    private VehicleDiff() {}
+
+    /**
+     * Returns the changes from base to current, or the full current list if
+     * there is no base to diff against.
+     */
+    public static VehicleDelta between(FeedSnapshot<VehiclePosition> base, FeedSnapshot<VehiclePosition> current) {
+        String version = Long.toHexString(current.getVersion());
+        if (base == null) {
+            return new VehicleDelta(version, null, true, current.getEntities(), List.of());
+        }
+
+        Map<String, VehiclePosition> previous = new HashMap<>();
+        for (VehiclePosition vehicle : base.getEntities()) {
+            previous.put(vehicle.getVehicleId(), vehicle);
+        }
+
+        List<VehiclePosition> upserted = new ArrayList<>();
+        for (VehiclePosition vehicle : current.getEntities()) {
+            VehiclePosition before = previous.remove(vehicle.getVehicleId());
+            if (before == null || changed(before, vehicle)) {
+                upserted.add(vehicle);
+            }
+        }
+        // Whatever is left was in the base but is no longer reporting.
+        List<String> removed = new ArrayList<>(previous.keySet());
+
+        return new VehicleDelta(version, Long.toHexString(base.getVersion()), false, upserted, removed);
+    }
+
+    static boolean changed(VehiclePosition a, VehiclePosition b) {
+        return !Objects.equals(a.getRouteId(), b.getRouteId())
+            || !Objects.equals(a.getTripId(), b.getTripId())
+            || a.getDirectionId() != b.getDirectionId()
+            || quantize(a.getLatitude(), COORDINATE_QUANTUM) != quantize(b.getLatitude(), COORDINATE_QUANTUM)
+            || quantize(a.getLongitude(), COORDINATE_QUANTUM) != quantize(b.getLongitude(), COORDINATE_QUANTUM)
+            || quantize(a.getBearing(), BEARING_QUANTUM) != quantize(b.getBearing(), BEARING_QUANTUM)
+            || !Objects.equals(a.getShapeId(), b.getShapeId())
+            || quantize(speed(a), SPEED_QUANTUM) != quantize(speed(b), SPEED_QUANTUM);
+    }
+
+    private static double speed(VehiclePosition vehicle) {
+        return vehicle.getSpeed() == null ? 0 : vehicle.getSpeed();
+    }
+
+    private static long quantize(double value, double quantum) {
+        return Math.round(value / quantum);
+    }
+}
@@ -0,0 +1,62 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+/**
+ * Vehicle-position snapshot with a {@link PointGrid} over its vehicles,
+ * built once per refresh, so bounding-box and radius queries only look at
+ * the vehicles in nearby cells.
+ */
+public class VehicleSnapshot extends FeedSnapshot<VehiclePosition> {
+
+    // About 1 km, so a typical map viewport or walking radius covers a handful of cells.
+    private static final double CELL_DEGREES = 0.01;
+
+    private final PointGrid grid;
+
+    public VehicleSnapshot(List<VehiclePosition> entities, long version, long lastModified, long fetchedAt) {
+        super(entities, version, lastModified, fetchedAt);
+        List<VehiclePosition> vehicles = getEntities();
+        double[] lats = new double[vehicles.size()];
+        double[] lons = new double[vehicles.size()];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = vehicles.get(i).getLatitude();
+            lons[i] = vehicles.get(i).getLongitude();
+        }
+        this.grid = new PointGrid(lats, lons, CELL_DEGREES);
+    }
+
+    public VehicleSnapshot(List<VehiclePosition> entities, long fetchedAt) {
+        this(entities, 0, fetchedAt, fetchedAt);
+    }
+
+    public static VehicleSnapshot none() {
+        return new VehicleSnapshot(List.of(), 0);
+    }
+
+    /**
+     * Vehicles inside the box, edges included, in feed order.
+     */
+    public List<VehiclePosition> findWithin(double south, double west, double north, double east) {
+        return select(grid.within(south, west, north, east));
+    }
+
+    /**
+     * Vehicles within the radius of the point, nearest first.
+     */
+    public List<VehiclePosition> findNear(double lat, double lon, double radiusMeters) {
+        return select(grid.nearest(lat, lon, radiusMeters, grid.size()));
+    }
+
+    private List<VehiclePosition> select(int[] indices) {
+        List<VehiclePosition> vehicles = getEntities();
+        List<VehiclePosition> result = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            result.add(vehicles.get(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+package com.lametro.lametro_tracker.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.lametro.lametro_tracker.model.VehiclePosition;
+
+/**
+ * Snaps reported vehicle positions onto their trip's shape and estimates
+ * how fast each vehicle is moving along it.
+ *
+ * A vehicle's shape comes from its trip in the static schedule, or the
+ * route's usual shape for the direction when the trip isn't scheduled.
+ * Speed is the distance covered along the shape between a vehicle's last
+ * two reports, so it needs nothing but the previous snapshot and the
+ * tracker itself keeps no state.
+ */
+public class VehicleTracker {
+
+    // GPS fixes further than this from the shape are left where they are.
+    private static final double MAX_SNAP_METERS = 100;
+
+    // Faster than any train here; larger jumps are bad fixes, not motion.
+    private static final double MAX_SPEED_METERS_PER_SECOND = 40;
+
+    // Predictions stop advancing this long after a vehicle's last report.
+    public static final long PREDICTION_HORIZON_SECONDS = 60;
+
+    private final StaticGtfs gtfs;
+    private final ShapeIndex shapes;
+    // Longest shape of each route and direction, indexed by route * 2 + direction, or -1.
+    private final int[] routeShapes;
+
+    public VehicleTracker(StaticGtfsService staticGtfsService) {
+        this.gtfs = staticGtfsService.getGtfs();
+        this.shapes = staticGtfsService.getShapes();
+        this.routeShapes = new int[gtfs.routeCount() * 2];
+        Arrays.fill(routeShapes, -1);
+        for (int trip = 0; trip < gtfs.tripCount(); trip++) {
+            int route = gtfs.tripRoute(trip);
+            int shape = gtfs.tripShape(trip);
+            if (route < 0 || shape < 0) {
+                continue;
+            }
+            int key = route * 2 + gtfs.tripDirection(trip);
+            if (routeShapes[key] < 0 || gtfs.shapePointCount(shape) > gtfs.shapePointCount(routeShapes[key])) {
+                routeShapes[key] = shape;
+            }
+        }
+    }
+
+    /**
+     * Snaps freshly parsed positions in place, taking speeds from the same
+     * vehicles in the previous snapshot.
+     */
+    public void track(List<VehiclePosition> positions, FeedSnapshot<VehiclePosition> previous) {
+        if (gtfs.shapeCount() == 0) {
+            return;
+        }
+        Map<String, VehiclePosition> before = new HashMap<>();
+        for (VehiclePosition vehicle : previous.getEntities()) {
+            before.put(vehicle.getVehicleId(), vehicle);
+        }
+        for (VehiclePosition vehicle : positions) {
+            int shape = shapeFor(vehicle);
+            if (shape < 0) {
+                continue;
+            }
+            double along = shapes.snap(shape, vehicle.getLatitude(), vehicle.getLongitude(), MAX_SNAP_METERS);
+            if (Double.isNaN(along)) {
+                continue;
+            }
+            String shapeId = gtfs.shapeId(shape);
+            place(vehicle, shape, along);
+            vehicle.setShapeId(shapeId);
+            vehicle.setDistanceAlongShape(along);
+            vehicle.setSpeed(speed(before.get(vehicle.getVehicleId()), shapeId, along, vehicle.getTimestamp()));
+        }
+    }
+
+    /**
+     * Where each snapped vehicle should be at the given time (epoch
+     * seconds), moving along its shape at its last speed for at most
+     * {@link #PREDICTION_HORIZON_SECONDS} after its report. Vehicles that
+     * aren't snapped stay where they were reported.
+     */
+    public List<VehiclePosition> predict(List<VehiclePosition> positions, long at) {
+        List<VehiclePosition> predicted = new ArrayList<>(positions.size());
+        for (VehiclePosition vehicle : positions) {
+            int shape = vehicle.getShapeId() == null ? -1 : gtfs.shapeIndex(vehicle.getShapeId());
+            if (shape < 0) {
+                predicted.add(vehicle);
+                continue;
+            }
+            long elapsed = Math.max(0, Math.min(PREDICTION_HORIZON_SECONDS, at - vehicle.getTimestamp()));
+            double along = Math.min(shapes.length(shape), vehicle.getDistanceAlongShape() + vehicle.getSpeed() * elapsed);
+            VehiclePosition moved = new VehiclePosition(vehicle.getVehicleId(), vehicle.getRouteId(), vehicle.getTripId(),
+                vehicle.getDirectionId(), vehicle.getLatitude(), vehicle.getLongitude(), vehicle.getBearing(),
+                vehicle.getTimestamp());
+            place(moved, shape, along);
+            moved.setShapeId(vehicle.getShapeId());
+            moved.setDistanceAlongShape(along);
+            moved.setSpeed(vehicle.getSpeed());
+            predicted.add(moved);
+        }
+        return predicted;
+    }
+
+    private int shapeFor(VehiclePosition vehicle) {
+        int trip = gtfs.tripIndex(vehicle.getTripId());
+        if (trip >= 0 && gtfs.tripShape(trip) >= 0) {
+            return gtfs.tripShape(trip);
+        }
+        int route = gtfs.routeIndex(vehicle.getRouteId());
+        int direction = vehicle.getDirectionId();
+        return route < 0 || direction < 0 || direction > 1 ? -1 : routeShapes[route * 2 + direction];
+    }
+
+    private void place(VehiclePosition vehicle, int shape, double along) {
+        double[] point = shapes.locate(shape, along);
+        vehicle.setLatitude(point[0]);
+        vehicle.setLongitude(point[1]);
+        vehicle.setBearing((float) point[2]);
+    }
+
+    // Keeps the last speed when there is no newer report or the jump is implausible.
+    private static double speed(VehiclePosition before, String shapeId, double along, long timestamp) {
+        if (before == null || before.getDistanceAlongShape() == null || !Objects.equals(before.getShapeId(), shapeId)) {
+            return 0;
+        }
+        long elapsed = timestamp - before.getTimestamp();
+        if (elapsed <= 0) {
+            return before.getSpeed();
+        }
+        double speed = (along - before.getDistanceAlongShape()) / elapsed;
+        if (speed > MAX_SPEED_METERS_PER_SECOND) {
+            return before.getSpeed();
+        }
+        return Math.max(0, speed);
+    }
+}
@@ -0,0 +1,121 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.lametro.lametro_tracker.config.AdmissionFilter;
+import com.lametro.lametro_tracker.config.ConcurrencyLimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+
+class AdmissionControlTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    void turnsAwayRequestsOverTheLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 100 * MS);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        limiter.release(MS, 0);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInflight());
+    }
+
+    @Test
+    void limitShrinksAsQueueingSlowsRequestsAndRecoversAfter() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(50, 4, 200, 100 * MS);
+        long now = 0;
+
+        // A baseline at full load: 5 ms per request.
+        for (int window = 0; window < 20; window++) {
+            now = window(limiter, now, limiter.getLimit(), 5 * MS);
+        }
+        int settled = limiter.getLimit();
+        assertTrue(settled > 50, "grows while latency holds at " + settled);
+
+        // Queueing: 25 ms per request.
+        for (int window = 0; window < 20; window++) {
+            now = window(limiter, now, limiter.getLimit(), 25 * MS);
+        }
+        int overloaded = limiter.getLimit();
+        assertTrue(overloaded < settled / 2, "shrinks from " + settled + " to " + overloaded);
+
+        for (int window = 0; window < 20; window++) {
+            now = window(limiter, now, limiter.getLimit(), 5 * MS);
+        }
+        assertTrue(limiter.getLimit() > overloaded, "recovers from " + overloaded + " to " + limiter.getLimit());
+    }
+
+    @Test
+    void limitHoldsWhileTrafficIsLight() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(50, 4, 200, 100 * MS);
+        long now = 0;
+
+        for (int window = 0; window < 20; window++) {
+            now = window(limiter, now, 5, MS);
+        }
+
+        assertEquals(50, limiter.getLimit());
+    }
+
+    @Test
+    void filterShedsApiRequestsWithA503() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        AdmissionFilter filter = new AdmissionFilter(meters, true, 8, 8, 8, 100);
+        MockHttpServletResponse[] responses = new MockHttpServletResponse[9];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = new MockHttpServletResponse();
+        }
+
+        nest(filter, "/api/vehicles", responses, 0);
+
+        assertEquals(200, responses[7].getStatus());
+        assertEquals(503, responses[8].getStatus());
+        assertEquals("1", responses[8].getHeader("Retry-After"));
+        assertEquals(1, meters.get("lametro.admission.rejected").counter().count());
+
+        // Slots are given back, and other paths are never limited.
+        MockHttpServletResponse[] more = new MockHttpServletResponse[9];
+        for (int i = 0; i < more.length; i++) {
+            more[i] = new MockHttpServletResponse();
+        }
+        nest(filter, "/health", more, 0);
+        assertEquals(200, more[8].getStatus());
+        assertEquals(0, filter.getInflight());
+    }
+
+    // Sends each request from inside the one before, so they are all in flight at once.
+    private static void nest(AdmissionFilter filter, String path, MockHttpServletResponse[] responses, int i)
+            throws IOException, ServletException {
+        if (i < responses.length) {
+            filter.doFilter(new MockHttpServletRequest("GET", path), responses[i],
+                (request, response) -> nest(filter, path, responses, i + 1));
+        }
+    }
+
+    // Runs one window of requests at the given concurrency, each taking rtt.
+    private static long window(ConcurrencyLimiter limiter, long now, int concurrency, long rtt) {
+        for (int batch = 0; batch < 10; batch++) {
+            int admitted = 0;
+            while (admitted < concurrency && limiter.tryAcquire()) {
+                admitted++;
+            }
+            now += 10 * MS;
+            for (int i = 0; i < admitted; i++) {
+                limiter.release(rtt, now);
+            }
+        }
+        return now;
+    }
+}
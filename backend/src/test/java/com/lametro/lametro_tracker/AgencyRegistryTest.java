@@ -0,0 +1,92 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+class AgencyRegistryTest {
+
+    private StubFeedServer upstream;
+    private HttpFeedSource source;
+    private FeedClient feedClient;
+    private AgencyRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = new StubFeedServer();
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        source = new HttpFeedSource("test-key", 1_000, 1_000);
+        feedClient = new FeedClient(source, "", 0, 10, 2, 60_000, meters);
+        // The bus agency's vehicles come from a URL of its own, everything else from the base URL.
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("lametro.agency.lametro-bus.vehicle-positions-url", upstream.url("/bus/vehicles"))
+            .withProperty("lametro.agency.lametro-bus.refresh-interval-ms", "20");
+        StaticGtfsService schedule = new StaticGtfsService("", "");
+        registry = new AgencyRegistry(environment, feedClient, new SnapshotRenderer(JsonMapper.builder().build(), meters),
+            schedule, event -> {}, meters, List.of("lametro-rail", "lametro-bus"), upstream.url(""), 20, 2, 8, 300);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+        feedClient.destroy();
+        source.close();
+        upstream.close();
+    }
+
+    @Test
+    void eachAgencyHasItsOwnFeedsAndSnapshots() {
+        upstream.serve("/lametro-rail/gtfs-rt-vehicle-positions", TestFeeds.vehicleFeed("rail1", 34.05));
+        upstream.serve("/bus/vehicles", TestFeeds.vehicleFeed("bus1", 34.05));
+
+        Agency rail = registry.get("lametro-rail");
+        Agency bus = registry.get("lametro-bus");
+        rail.getRealtime().refreshVehiclePositions().join();
+        bus.getRealtime().refreshVehiclePositions().join();
+
+        assertSame(rail, registry.get(null));
+        assertNull(registry.get("nowhere"));
+        assertEquals("rail1", rail.getRealtime().getVehiclePositions().get(0).getVehicleId());
+        assertEquals("bus1", bus.getRealtime().getVehiclePositions().get(0).getVehicleId());
+        // Breakers and stats are kept per agency too.
+        assertEquals(1, feedClient.getStats(bus.getRealtime().feedName(GtfsRtService.VEHICLE_POSITIONS_FEED)).getSuccesses());
+        assertEquals(0, feedClient.getStats(bus.getRealtime().feedName(GtfsRtService.TRIP_UPDATES_FEED)).getSuccesses());
+    }
+
+    @Test
+    void keepsRefreshingEveryFeedOnItsOwnSchedule() throws Exception {
+        upstream.serve("/lametro-rail/gtfs-rt-vehicle-positions", TestFeeds.vehicleFeed("rail1", 34.05));
+        upstream.serve("/bus/vehicles", TestFeeds.vehicleFeed("bus1", 34.05));
+        // No trip updates are served, so those feeds fail and then open their circuits.
+
+        registry.start();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (upstream.hits("/bus/vehicles") < 3 || upstream.hits("/lametro-rail/gtfs-rt-vehicle-positions") < 3
+                || upstream.hits("/lametro-rail/gtfs-rt-trip-updates") < 2) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Feeds stopped refreshing");
+            }
+            Thread.sleep(10);
+        }
+        assertEquals("bus1", registry.get("lametro-bus").getRealtime().getVehiclePositions().get(0).getVehicleId());
+    }
+}
@@ -0,0 +1,167 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.StopTimeUpdate.Source;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.ArrivalPredictor;
+import com.lametro.lametro_tracker.service.FeedSnapshot;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+import com.lametro.lametro_tracker.service.VehicleTracker;
+
+class ArrivalPredictorTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    private VehicleTracker tracker;
+    private ArrivalPredictor predictor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Four stations 556 m apart on a straight northbound line. C isn't a
+        // timepoint, so its scheduled time falls halfway between B and D.
+        // t3 turns back at C.
+        Files.writeString(dir.resolve("routes.txt"), """
+            route_id,route_short_name,route_long_name,route_type,route_color
+            901,,Test Line,0,FF0000
+            """);
+        Files.writeString(dir.resolve("stops.txt"), """
+            stop_id,stop_name,stop_lat,stop_lon,location_type,parent_station
+            AS,A,34.000,-118.00,1,
+            BS,B,34.005,-118.00,1,
+            CS,C,34.010,-118.00,1,
+            DS,D,34.015,-118.00,1,
+            A,A,34.000,-118.00,0,AS
+            B,B,34.005,-118.00,0,BS
+            C,C,34.010,-118.00,0,CS
+            D,D,34.015,-118.00,0,DS
+            """);
+        Files.writeString(dir.resolve("trips.txt"), """
+            route_id,service_id,trip_id,direction_id,shape_id
+            901,wk,t1,0,north
+            901,wk,t2,0,north
+            901,wk,t3,0,short
+            """);
+        Files.writeString(dir.resolve("shapes.txt"), """
+            shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence
+            north,34.000,-118.00,1
+            north,34.015,-118.00,2
+            short,34.000,-118.00,1
+            short,34.010,-118.00,2
+            """);
+        Files.writeString(dir.resolve("stop_times.txt"), """
+            trip_id,arrival_time,departure_time,stop_id,stop_sequence
+            t1,08:00:00,08:00:00,A,1
+            t1,08:02:00,08:02:30,B,2
+            t1,,,C,3
+            t1,08:08:00,08:08:00,D,4
+            t3,08:10:00,08:10:00,A,1
+            t3,08:12:00,08:12:30,B,2
+            t3,08:15:00,08:15:00,C,3
+            """);
+        StaticGtfsService staticGtfs = new StaticGtfsService(dir.toString(), "");
+        tracker = new VehicleTracker(staticGtfs);
+        predictor = new ArrivalPredictor(staticGtfs, 300);
+    }
+
+    @Test
+    void propagatesTheLastReportedDelayDownstream() {
+        TripUpdateSnapshot reported = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("t1", "901", 0, "B", 1_000)
+        ), 1L, 900_000L, NOW);
+
+        List<StopTimeUpdate> trip = predictor.predict(reported, VehicleSnapshot.none(), NOW).findTrip("t1");
+
+        assertEquals(List.of("B", "C", "D"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+        assertEquals(List.of(1_000L, 1_180L, 1_360L), trip.stream().map(StopTimeUpdate::getArrivalTime).toList());
+        assertEquals(List.of(Source.REALTIME, Source.PROPAGATED, Source.PROPAGATED),
+            trip.stream().map(StopTimeUpdate::getSource).toList());
+        // No trip-level timestamp, so observed at the feed's.
+        assertEquals(900, trip.get(2).getObservedAt());
+    }
+
+    @Test
+    void fillsSkippedStationsWithoutPassingTheNextReport() {
+        TripUpdateSnapshot reported = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("t1", "901", 0, "A", 100, Source.REALTIME, 50),
+            new StopTimeUpdate("t1", "901", 0, "C", 200, Source.REALTIME, 60)
+        ), 1L, 900_000L, NOW);
+
+        List<StopTimeUpdate> trip = predictor.predict(reported, VehicleSnapshot.none(), NOW).findTrip("t1");
+
+        assertEquals(List.of("A", "B", "C", "D"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+        assertEquals(List.of(100L, 200L, 200L, 380L), trip.stream().map(StopTimeUpdate::getArrivalTime).toList());
+        assertEquals(List.of(50L, 50L, 60L, 60L), trip.stream().map(StopTimeUpdate::getObservedAt).toList());
+    }
+
+    @Test
+    void stopsPropagatingWhereTheTripsShapeEnds() {
+        TripUpdateSnapshot reported = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("t3", "901", 0, "B", 1_000)
+        ), 1L, 900_000L, NOW);
+
+        List<StopTimeUpdate> trip = predictor.predict(reported, VehicleSnapshot.none(), NOW).findTrip("t3");
+
+        assertEquals(List.of("B", "C"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+    }
+
+    @Test
+    void onlyFillsBetweenReportsForTripsOutsideTheSchedule() {
+        TripUpdateSnapshot reported = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("added", "901", 0, "A", 100),
+            new StopTimeUpdate("added", "901", 0, "C", 200)
+        ), 1L, 900_000L, NOW);
+
+        List<StopTimeUpdate> trip = predictor.predict(reported, VehicleSnapshot.none(), NOW).findTrip("added");
+
+        assertEquals(List.of("A", "B", "C"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+    }
+
+    @Test
+    void predictsFromVehiclesForTripsWithoutUpdates() {
+        // Halfway between B and D, reported by t2 only.
+        VehiclePosition vehicle = new VehiclePosition("v2", "901", "t2", 0, 34.0075, -118.0, 0f, 5_000);
+        tracker.track(List.of(vehicle), FeedSnapshot.empty());
+        VehicleSnapshot vehicles = new VehicleSnapshot(List.of(vehicle), 2L, 5_000_000L, NOW);
+        TripUpdateSnapshot reported = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("t1", "901", 0, "D", 1_000)
+        ), 1L, 900_000L, NOW);
+
+        List<StopTimeUpdate> trip = predictor.predict(reported, vehicles, NOW).findTrip("t2");
+
+        assertEquals(List.of("C", "D"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+        assertEquals(5_090, trip.get(0).getArrivalTime(), 2);
+        assertEquals(5_270, trip.get(1).getArrivalTime(), 2);
+        assertEquals(Source.VEHICLE, trip.get(0).getSource());
+        assertEquals(5_000, trip.get(0).getObservedAt());
+    }
+
+    @Test
+    void dropsFeedsThatHaveNotRefreshedWithinTheMaximumAge() {
+        TripUpdateSnapshot reported = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("t1", "901", 0, "B", 1_000)
+        ), 1L, 900_000L, NOW - 301_000);
+
+        TripUpdateSnapshot stale = predictor.predict(reported, VehicleSnapshot.none(), NOW);
+        TripUpdateSnapshot fresh = predictor.predict(reported, VehicleSnapshot.none(), NOW - 1_000);
+
+        assertTrue(stale.isEmpty());
+        assertEquals(0, stale.getVersion());
+        assertEquals(3, fresh.size());
+    }
+}
@@ -0,0 +1,122 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lametro.lametro_tracker.service.ClusterChangedEvent;
+import com.lametro.lametro_tracker.service.ClusterNode;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.FeedSource;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Three replicas in one JVM, each on its own cluster port, sharing a stub
+ * upstream.
+ */
+class ClusterTest {
+
+    private static final byte[] PAYLOAD = {10, 3, 50, 46, 48};
+
+    private StubFeedServer upstream;
+    private final List<String> peers = new ArrayList<>();
+    private final List<ClusterNode> nodes = new ArrayList<>();
+    private final List<FeedSource> sources = new ArrayList<>();
+    private final List<List<ClusterChangedEvent>> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = new StubFeedServer();
+        upstream.serve("/vehicles", PAYLOAD);
+        for (int i = 0; i < 3; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                peers.add("127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        for (String self : peers) {
+            List<ClusterChangedEvent> published = new CopyOnWriteArrayList<>();
+            ClusterNode node = new ClusterNode(self, peers, 100, 1_000,
+                event -> published.add((ClusterChangedEvent) event), new SimpleMeterRegistry());
+            node.start();
+            nodes.add(node);
+            sources.add(node.share(new HttpFeedSource("test-key", 1_000, 1_000)));
+            events.add(published);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (FeedSource source : sources) {
+            ((AutoCloseable) source).close();
+        }
+        nodes.forEach(ClusterNode::destroy);
+        upstream.close();
+    }
+
+    @Test
+    void onlyTheLeaderPollsUpstream() {
+        assertTrue(nodes.get(0).isLeader());
+        assertFalse(nodes.get(1).isLeader());
+
+        assertArrayEquals(PAYLOAD, fetch(0));
+        assertArrayEquals(PAYLOAD, fetch(1));
+        assertArrayEquals(PAYLOAD, fetch(2));
+        // Unchanged since the last fetch, so the leader answers 304 and the cached bytes are reused.
+        byte[] cached = fetch(2);
+
+        assertSame(cached, fetch(2));
+        assertEquals(1, upstream.hits("/vehicles"));
+        assertEquals(3, events.get(1).get(0).getReplicas());
+    }
+
+    @Test
+    void followersFailLikeUpstreamUntilTheLeaderHasAPayload() {
+        CompletionException error = assertThrows(CompletionException.class, () -> fetch(1));
+
+        assertInstanceOf(FeedClient.UpstreamStatusException.class, error.getCause());
+        assertEquals(0, upstream.hits("/vehicles"));
+    }
+
+    @Test
+    void nextPeerTakesOverWhenTheLeaderStops() throws Exception {
+        assertArrayEquals(PAYLOAD, fetch(0));
+        nodes.get(0).destroy();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (nodes.get(2).getReplicas() != 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        while (!nodes.get(1).isLeader() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(nodes.get(1).isLeader());
+        ClusterChangedEvent last = events.get(2).get(events.get(2).size() - 1);
+        assertEquals(2, last.getReplicas());
+        assertEquals(peers.get(1), last.getLeader());
+        assertFalse(last.isLeading());
+        assertArrayEquals(PAYLOAD, fetch(1));
+        assertArrayEquals(PAYLOAD, fetch(2));
+        assertEquals(2, upstream.hits("/vehicles"));
+    }
+
+    private byte[] fetch(int node) {
+        return sources.get(node).fetch("vehicles", upstream.url("/vehicles")).join();
+    }
+}
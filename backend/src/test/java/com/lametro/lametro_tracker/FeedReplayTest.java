@@ -0,0 +1,118 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lametro.lametro_tracker.service.ArrivalPredictor;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.FeedRecorder;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.ReplayFeedSource;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.VehicleTracker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+class FeedReplayTest {
+
+    private static final String VEHICLES = "lametro-rail/vehicle-positions";
+    private static final String TRIPS = "lametro-rail/trip-updates";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsChangesAndReplaysThemOnOneTimeline() throws Exception {
+        FeedRecorder recorder = new FeedRecorder(dir);
+        recorder.record(VEHICLES, bytes("a"), 1_000);
+        recorder.record(VEHICLES, bytes("a"), 2_000);
+        recorder.record(VEHICLES, bytes("b"), 3_000);
+        recorder.record(TRIPS, bytes("t"), 2_000);
+        recorder.close();
+        try (Stream<Path> captures = Files.list(dir.resolve(VEHICLES))) {
+            // The unchanged payload isn't written again.
+            assertEquals(2, captures.count());
+        }
+
+        long[] now = {50_000};
+        ReplayFeedSource replay = new ReplayFeedSource(dir, 2, false, () -> now[0]);
+
+        assertArrayEquals(bytes("a"), replay.fetch(VEHICLES, "").join());
+        // Trip updates weren't recorded until a second later.
+        CompletionException missing = assertThrows(CompletionException.class,
+            () -> replay.fetch(TRIPS, "").join());
+        assertInstanceOf(FeedClient.UpstreamStatusException.class, missing.getCause());
+        now[0] += 500;
+        assertEquals(2_000, replay.replayTime());
+        assertArrayEquals(bytes("a"), replay.fetch(VEHICLES, "").join());
+        assertArrayEquals(bytes("t"), replay.fetch(TRIPS, "").join());
+        now[0] += 500;
+        assertArrayEquals(bytes("b"), replay.fetch(VEHICLES, "").join());
+        // The end of the recording holds.
+        now[0] += 60_000;
+        assertArrayEquals(bytes("b"), replay.fetch(VEHICLES, "").join());
+
+        ReplayFeedSource looping = new ReplayFeedSource(dir, 2, true, () -> now[0]);
+        looping.fetch(VEHICLES, "");
+        // 2.2 recorded seconds in, it has played to the end and started over.
+        now[0] += 1_100;
+        assertEquals(1_199, looping.replayTime());
+        assertArrayEquals(bytes("a"), looping.fetch(VEHICLES, "").join());
+    }
+
+    @Test
+    void steppingReplayFeedsTheServiceEveryCaptureInOrder() {
+        FeedRecorder recorder = new FeedRecorder(dir);
+        recorder.record(VEHICLES, TestFeeds.vehicleFeed("v1", 34.05), 1_000);
+        recorder.record(VEHICLES, TestFeeds.vehicleFeed("v1", 34.06), 9_000);
+        recorder.close();
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        FeedClient feedClient = new FeedClient(new ReplayFeedSource(dir, 0, false, System::currentTimeMillis), "",
+            0, 10, 2, 60_000, meters);
+        StaticGtfsService schedule = new StaticGtfsService("", "");
+        GtfsRtService service = new GtfsRtService("lametro-rail", feedClient,
+            new SnapshotRenderer(JsonMapper.builder().build(), meters), new VehicleTracker(schedule),
+            new ArrivalPredictor(schedule, 300), event -> {}, Runnable::run, meters, "", "", 8);
+
+        service.refreshVehiclePositions().join();
+        assertEquals(34.05, service.getVehiclePositions().get(0).getLatitude(), 1e-5);
+        service.refreshVehiclePositions().join();
+        assertEquals(34.06, service.getVehiclePositions().get(0).getLatitude(), 1e-5);
+        service.refreshVehiclePositions().join();
+        assertEquals(34.06, service.getVehiclePositions().get(0).getLatitude(), 1e-5);
+        assertEquals(3, feedClient.getStats(VEHICLES).getSuccesses());
+    }
+
+    @Test
+    void feedClientRecordsWhatItFetches() throws Exception {
+        byte[] payload = TestFeeds.vehicleFeed("v1", 34.05);
+        try (StubFeedServer upstream = new StubFeedServer(); HttpFeedSource source = new HttpFeedSource("test-key", 1_000, 1_000)) {
+            upstream.serve("/vehicles", payload);
+            FeedClient feedClient = new FeedClient(source, dir.toString(), 0, 10, 2, 60_000, new SimpleMeterRegistry());
+            feedClient.fetch(VEHICLES, upstream.url("/vehicles")).join();
+            feedClient.fetch(VEHICLES, upstream.url("/vehicles")).join();
+            feedClient.destroy();
+        }
+
+        ReplayFeedSource replay = new ReplayFeedSource(dir, 1, false, System::currentTimeMillis);
+        assertArrayEquals(payload, replay.fetch(VEHICLES, "").join());
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.ArrivalPredictor;
+import com.lametro.lametro_tracker.service.CircuitBreaker;
+import com.lametro.lametro_tracker.service.FeedClient;
+import com.lametro.lametro_tracker.service.FeedSnapshot;
+import com.lametro.lametro_tracker.service.FeedSource;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.HttpFeedSource;
+import com.lametro.lametro_tracker.service.ShapeIndex;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.StaticGtfs;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleTracker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+class GtfsRtServiceTest {
+
+    private StubFeedServer upstream;
+    private HttpFeedSource source;
+    private FeedClient feedClient;
+    private SimpleMeterRegistry meters;
+    private StaticGtfsService staticGtfs;
+    private GtfsRtService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = new StubFeedServer();
+        // 1s request timeout, 1 retry, circuit opens after 2 failed refreshes.
+        meters = new SimpleMeterRegistry();
+        source = new HttpFeedSource("test-key", 1_000, 1_000);
+        feedClient = new FeedClient(source, "", 1, 10, 2, 60_000, meters);
+        // No schedule, so vehicles are left unsnapped.
+        staticGtfs = mock(StaticGtfsService.class);
+        when(staticGtfs.getGtfs()).thenReturn(StaticGtfs.empty());
+        when(staticGtfs.getShapes()).thenReturn(new ShapeIndex(StaticGtfs.empty()));
+        service = new GtfsRtService("lametro-rail", feedClient, new SnapshotRenderer(JsonMapper.builder().build(), meters),
+            new VehicleTracker(staticGtfs), new ArrivalPredictor(staticGtfs, 300), event -> {}, Runnable::run, meters,
+            upstream.url("/vehicles"), upstream.url("/trips"), 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        feedClient.destroy();
+        source.close();
+        upstream.close();
+    }
+
+    @Test
+    void refreshParsesUpstreamFeedsIntoSnapshots() {
+        upstream.serve("/vehicles", TestFeeds.vehicleFeed("v1", 34.05));
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_100L));
+
+        service.refreshVehiclePositions().join();
+        service.refreshTripUpdates().join();
+
+        List<VehiclePosition> vehicles = service.getVehiclePositions();
+        assertEquals(1, vehicles.size());
+        assertEquals("v1", vehicles.get(0).getVehicleId());
+        assertEquals(34.05, vehicles.get(0).getLatitude(), 1e-5);
+        assertEquals(1_700_000_000_000L, service.getVehicleSnapshot().getLastModified());
+
+        TripUpdateSnapshot trips = service.getTripUpdateSnapshot();
+        assertNotEquals(0, trips.getVersion());
+        List<StopTimeUpdate> trip = trips.findTrip("t1");
+        assertEquals(List.of("80101", "80102"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+        assertEquals(1_700_000_100L, trip.get(0).getArrivalTime());
+        // The feed as fetched is kept apart from the predictions merged from it.
+        TripUpdateSnapshot reported = service.getReportedTripUpdateSnapshot();
+        assertNotEquals(trips.getVersion(), reported.getVersion());
+        assertEquals(1_700_000_000_000L, reported.getLastModified());
+    }
+
+    @Test
+    void snapshotsShareInternedIdentifiers() {
+        upstream.serve("/vehicles", TestFeeds.vehicleFeed("v1", 34.05));
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_100L));
+
+        service.refreshVehiclePositions().join();
+        service.refreshTripUpdates().join();
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_200L));
+        service.refreshTripUpdates().join();
+
+        VehiclePosition vehicle = service.getVehiclePositions().get(0);
+        List<StopTimeUpdate> trip = service.getTripUpdateSnapshot().findTrip("t1");
+        assertEquals(1_700_000_200L, trip.get(0).getArrivalTime());
+        assertSame(vehicle.getTripId(), trip.get(0).getTripId());
+        assertSame(vehicle.getRouteId(), trip.get(1).getRouteId());
+    }
+
+    @Test
+    void publishesFetchAndSnapshotMetricsPerFeed() {
+        upstream.serve("/vehicles", TestFeeds.vehicleFeed("v1", 34.05));
+
+        service.refreshVehiclePositions().join();
+        service.refreshVehiclePositions().join();
+
+        String feed = service.feedName(GtfsRtService.VEHICLE_POSITIONS_FEED);
+        assertEquals(2, meters.get("lametro.feed.fetch").tags("feed", feed, "outcome", "success").timer().count());
+        assertEquals(1, meters.get("lametro.feed.unchanged").tag("feed", feed).counter().count());
+        assertEquals(1, meters.get("lametro.snapshot.swaps").tag("feed", feed).counter().count());
+        assertEquals(1, meters.get("lametro.snapshot.entities").tag("feed", feed).gauge().value());
+        // The feed's header says 2023, so it is very stale by now.
+        assertTrue(meters.get("lametro.snapshot.age").tag("feed", feed).gauge().value() > 86_400);
+        // The refresh warmed the vehicle list, so the first request for it is a hit.
+        assertEquals(1, meters.get("lametro.render").tags("view", "vehicles", "result", "warm").counter().count());
+    }
+
+    @Test
+    void retriesTransientUpstreamErrors() {
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_100L));
+        upstream.failNext(1, 503);
+
+        service.refreshTripUpdates().join();
+
+        assertEquals(2, upstream.hits("/trips"));
+        assertEquals(2, service.getTripUpdates().size());
+        assertEquals(1, feedClient.getStats(service.feedName(GtfsRtService.TRIP_UPDATES_FEED)).getSuccesses());
+    }
+
+    @Test
+    void retriesAtOnceWithoutBackoff() {
+        FeedClient noBackoff = new FeedClient(source, "", 1, 0, 2, 60_000, meters);
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_100L));
+        upstream.failNext(1, 503);
+
+        noBackoff.fetch("trips", upstream.url("/trips")).join();
+
+        assertEquals(2, upstream.hits("/trips"));
+        noBackoff.destroy();
+    }
+
+    @Test
+    void recoversFromASourceThatThrowsInsteadOfFailing() {
+        AtomicInteger calls = new AtomicInteger();
+        FeedSource throwsOnce = (feedName, url) -> {
+            if (calls.getAndIncrement() == 0) {
+                throw new IllegalArgumentException("Illegal character in authority");
+            }
+            return source.fetch(feedName, url);
+        };
+        FeedClient client = new FeedClient(throwsOnce, "", 1, 10, 2, 60_000, meters);
+        GtfsRtService throwing = new GtfsRtService("lametro-rail", client,
+            new SnapshotRenderer(JsonMapper.builder().build(), meters), new VehicleTracker(staticGtfs),
+            new ArrivalPredictor(staticGtfs, 300), event -> {}, Runnable::run, meters,
+            upstream.url("/vehicles"), upstream.url("/trips"), 8);
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_100L));
+
+        throwing.refreshTripUpdates().join();
+        throwing.refreshTripUpdates().join();
+
+        // The failure neither retried nor left the feed marked in flight.
+        String feedName = throwing.feedName(GtfsRtService.TRIP_UPDATES_FEED);
+        assertEquals(1, client.getStats(feedName).getFailures());
+        assertEquals(1, client.getStats(feedName).getSuccesses());
+        assertEquals(1, upstream.hits("/trips"));
+        client.destroy();
+    }
+
+    @Test
+    void keepsLastGoodSnapshotAndOpensCircuitWhileUpstreamIsDown() {
+        upstream.serve("/trips", TestFeeds.tripFeed(1_700_000_100L));
+        service.refreshTripUpdates().join();
+        TripUpdateSnapshot good = service.getTripUpdateSnapshot();
+
+        upstream.failNext(100, 500);
+        service.refreshTripUpdates().join();
+        service.refreshTripUpdates().join();
+        int hitsWhenOpened = upstream.hits("/trips");
+        service.refreshTripUpdates().join();
+
+        assertSame(good, service.getTripUpdateSnapshot());
+        String feedName = service.feedName(GtfsRtService.TRIP_UPDATES_FEED);
+        assertEquals(CircuitBreaker.State.OPEN, feedClient.getBreaker(feedName).getState());
+        assertEquals(hitsWhenOpened, upstream.hits("/trips"));
+        assertEquals(1, feedClient.getStats(feedName).getRejections());
+    }
+
+    @Test
+    void timesOutSlowUpstream() {
+        upstream.serve("/vehicles", TestFeeds.vehicleFeed("v1", 34.05));
+        upstream.delay(3_000);
+
+        service.refreshVehiclePositions().join();
+
+        FeedSnapshot<VehiclePosition> snapshot = service.getVehicleSnapshot();
+        assertEquals(0, snapshot.getEntities().size());
+        assertEquals(1, feedClient.getStats(service.feedName(GtfsRtService.VEHICLE_POSITIONS_FEED)).getFailures());
+    }
+}
@@ -0,0 +1,184 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lametro.lametro_tracker.model.ObservedArrival;
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.TrackPoint;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.HistoryStore;
+import com.lametro.lametro_tracker.service.SnapshotPublishedEvent;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HistoryStoreTest {
+
+    private static final String AGENCY = "lametro-rail";
+    // The start of an hour, in epoch millis.
+    private static final long HOUR = 3_600_000;
+    private static final long BASE = 472_222 * HOUR;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsPublishedPositionsAsTracks() {
+        HistoryStore history = new HistoryStore(dir.toString(), 60, 24, 30, new SimpleMeterRegistry());
+        long t = BASE / 1000;
+        history.onSnapshotPublished(new SnapshotPublishedEvent(AGENCY, vehicles(BASE + 5_000,
+            vehicle("v1", 34.048123, -118.258456, t), vehicle("v2", 34.1, -118.3, t))));
+        // v1 hasn't reported again, so only v2 is written.
+        history.onSnapshotPublished(new SnapshotPublishedEvent(AGENCY, vehicles(BASE + 15_000,
+            vehicle("v1", 34.048123, -118.258456, t), vehicle("v2", 34.2, -118.4, t + 10))));
+        history.onSnapshotPublished(new SnapshotPublishedEvent(AGENCY, vehicles(BASE + 25_000,
+            vehicle("v1", 34.049, -118.259, t + 20))));
+        // Flushes the writer.
+        history.destroy();
+
+        List<TrackPoint> track = history.track(AGENCY, "v1", t - 60, t + 60);
+        assertEquals(2, track.size());
+        assertEquals(t, track.get(0).getTimestamp());
+        assertEquals(34.048123, track.get(0).getLatitude(), 1e-6);
+        assertEquals(-118.258456, track.get(0).getLongitude(), 1e-6);
+        assertEquals("801", track.get(0).getRouteId());
+        assertEquals(t + 20, track.get(1).getTimestamp());
+
+        assertEquals(1, history.track(AGENCY, "v1", t + 10, t + 60).size());
+        assertEquals(2, history.track(AGENCY, "v2", t - 60, t + 60).size());
+        assertTrue(history.track(AGENCY, "v3", t - 60, t + 60).isEmpty());
+        assertTrue(history.track("lametro-bus", "v1", t - 60, t + 60).isEmpty());
+    }
+
+    @Test
+    void headwaysAreBetweenTrainsAtTheSamePlatform() {
+        HistoryStore history = new HistoryStore(dir.toString(), 60, 24, 30, new SimpleMeterRegistry());
+        long t = BASE / 1000;
+        history.record(AGENCY, arrivals(BASE, arrival("t1", 0, "80211", t + 100), arrival("t1", 0, "80212", t + 200),
+            arrival("t2", 0, "80211", t + 400), arrival("t2", 0, "80212", t + 520)));
+        history.record(AGENCY, arrivals(BASE + 600_000, arrival("t3", 0, "80211", t + 900)));
+
+        List<ObservedArrival> observed = history.arrivals(AGENCY, List.of("80211", "80212"), "801", 0, t, t + 1_000);
+
+        assertEquals(List.of("80211", "80212", "80211", "80212"), observed.stream().map(ObservedArrival::getStopId).toList());
+        assertNull(observed.get(0).getHeadway());
+        assertNull(observed.get(1).getHeadway());
+        assertEquals(300L, observed.get(2).getHeadway());
+        assertEquals(320L, observed.get(3).getHeadway());
+        history.destroy();
+    }
+
+    @Test
+    void headwaysUseEachTrainsLastPrediction() {
+        HistoryStore history = new HistoryStore(dir.toString(), 60, 24, 30, new SimpleMeterRegistry());
+        long t = BASE / 1000;
+        history.record(AGENCY, arrivals(BASE, arrival("t1", 0, t + 100), arrival("t2", 0, t + 400),
+            arrival("t9", 1, t + 150)));
+        history.record(AGENCY, arrivals(BASE + 200_000, arrival("t1", 0, t + 130), arrival("t2", 0, t + 420),
+            arrival("t3", 0, t + 800)));
+        history.record(AGENCY, arrivals(BASE + 500_000, arrival("t2", 0, t + 450), arrival("t3", 0, t + 790)));
+
+        List<ObservedArrival> observed = history.arrivals(AGENCY, List.of("80211"), "801", 0, t, t + 1_000);
+
+        // t3 is still on its way as of the last snapshot.
+        assertEquals(2, observed.size());
+        assertEquals("t1", observed.get(0).getTripId());
+        assertEquals(t + 130, observed.get(0).getArrivalTime());
+        assertNull(observed.get(0).getHeadway());
+        assertEquals("t2", observed.get(1).getTripId());
+        assertEquals(t + 450, observed.get(1).getArrivalTime());
+        assertEquals(320L, observed.get(1).getHeadway());
+
+        assertEquals(3, history.arrivals(AGENCY, List.of("80211"), null, null, t, t + 1_000).size());
+        assertEquals(1, history.arrivals(AGENCY, List.of("80211"), "801", 0, t + 200, t + 1_000).size());
+        assertTrue(history.arrivals(AGENCY, List.of("80212"), null, null, t, t + 1_000).isEmpty());
+        history.destroy();
+    }
+
+    @Test
+    void compactsOldPartitionsAndDeletesExpiredOnes() throws Exception {
+        // Compacted after an hour, deleted after a day.
+        HistoryStore history = new HistoryStore(dir.toString(), 60, 1, 1, new SimpleMeterRegistry());
+        long t = BASE / 1000;
+        for (int i = 0; i < 10; i++) {
+            history.record(AGENCY, vehicles(BASE + i * 10_000L, vehicle("v1", 34 + i * 0.001, -118, t + i * 10)));
+            history.record(AGENCY, arrivals(BASE + i * 10_000L, arrival("t1", 0, t + 1_000 + i)));
+        }
+        Path vehicleSegment = dir.resolve(AGENCY).resolve("vehicles").resolve(BASE + ".seg");
+        long rawSize = size(vehicleSegment);
+
+        // Starting a partition three hours on compacts the first, in the background.
+        history.record(AGENCY, vehicles(BASE + 3 * HOUR, vehicle("v1", 35, -118, t + 3 * 3_600)));
+        history.record(AGENCY, arrivals(BASE + 3 * HOUR, arrival("t2", 0, t + 4 * 3_600)));
+        await(() -> size(vehicleSegment) < rawSize);
+
+        List<TrackPoint> track = history.track(AGENCY, "v1", t, t + 100);
+        assertEquals(List.of(t, t + 30, t + 60, t + 90), timestamps(track));
+        assertEquals(34.003, track.get(1).getLatitude(), 1e-6);
+        assertTrue(size(vehicleSegment) < rawSize);
+        List<ObservedArrival> observed = history.arrivals(AGENCY, List.of("80211"), null, null, t, t + 2_000);
+        assertEquals(1, observed.size());
+        assertEquals(t + 1_009, observed.get(0).getArrivalTime());
+
+        history.record(AGENCY, vehicles(BASE + 27 * HOUR, vehicle("v1", 35, -118, t + 27 * 3_600)));
+        await(() -> !Files.exists(vehicleSegment));
+        assertTrue(history.track(AGENCY, "v1", t, t + 100).isEmpty());
+        history.destroy();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Background maintenance never finished");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<Long> timestamps(List<TrackPoint> track) {
+        List<Long> timestamps = new ArrayList<>();
+        track.forEach(point -> timestamps.add(point.getTimestamp()));
+        return timestamps;
+    }
+
+    private static VehicleSnapshot vehicles(long fetchedAt, VehiclePosition... vehicles) {
+        return new VehicleSnapshot(List.of(vehicles), fetchedAt);
+    }
+
+    private static VehiclePosition vehicle(String id, double lat, double lon, long timestamp) {
+        return new VehiclePosition(id, "801", "trip-" + id, 0, lat, lon, 90f, timestamp);
+    }
+
+    private static TripUpdateSnapshot arrivals(long fetchedAt, StopTimeUpdate... arrivals) {
+        return new TripUpdateSnapshot(List.of(arrivals), fetchedAt);
+    }
+
+    private static StopTimeUpdate arrival(String tripId, int directionId, long arrivalTime) {
+        return arrival(tripId, directionId, "80211", arrivalTime);
+    }
+
+    private static StopTimeUpdate arrival(String tripId, int directionId, String stopId, long arrivalTime) {
+        return new StopTimeUpdate(tripId, "801", directionId, stopId, arrivalTime);
+    }
+}
@@ -0,0 +1,92 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.lametro.lametro_tracker.model.Journey;
+import com.lametro.lametro_tracker.model.JourneyLeg;
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.service.JourneyIndex;
+import com.lametro.lametro_tracker.service.StopTimeTable;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+
+class JourneyIndexTest {
+
+    // Platform "C2" is at station "C". Line 801 runs A-B-C, with t6 an
+    // express skipping B; line 802 runs C-D.
+    private static final JourneyIndex JOURNEYS = new TripUpdateSnapshot(StopTimeTable.of(List.of(
+        new StopTimeUpdate("t1", "801", 0, "A1", 100),
+        new StopTimeUpdate("t1", "801", 0, "B1", 200),
+        new StopTimeUpdate("t1", "801", 0, "C1", 300),
+        new StopTimeUpdate("t2", "801", 0, "A1", 400),
+        new StopTimeUpdate("t2", "801", 0, "B1", 500),
+        new StopTimeUpdate("t2", "801", 0, "C1", 600),
+        new StopTimeUpdate("t6", "801", 0, "A1", 150),
+        new StopTimeUpdate("t6", "801", 0, "C1", 250),
+        new StopTimeUpdate("t3", "802", 0, "C2", 420),
+        new StopTimeUpdate("t3", "802", 0, "D2", 500),
+        new StopTimeUpdate("t4", "802", 0, "C2", 750),
+        new StopTimeUpdate("t4", "802", 0, "D2", 800),
+        new StopTimeUpdate("t5", "802", 0, "C2", 410),
+        new StopTimeUpdate("t5", "802", 0, "D2", 450)
+    )), 1, 0, 0, stopId -> stopId.substring(0, 1)).getJourneys();
+
+    @Test
+    void findsDirectTripsInDepartureOrderSkippingOnesOvertaken() {
+        List<Journey> journeys = JOURNEYS.find("A", "C", 0, 3);
+
+        // t1 leaves first but the express behind it gets there sooner.
+        assertEquals(List.of("t6", "t2"), journeys.stream().map(j -> j.getLegs().get(0).getTripId()).toList());
+        JourneyLeg express = journeys.get(0).getLegs().get(0);
+        assertEquals("A1", express.getFromStopId());
+        assertEquals(150, express.getDepartureTime());
+        assertEquals("C1", express.getToStopId());
+        assertEquals(250, express.getArrivalTime());
+        assertEquals(0, journeys.get(0).getTransfers());
+        assertEquals(List.of("t2"), JOURNEYS.find("A", "C", 200, 3).stream()
+            .map(j -> j.getLegs().get(0).getTripId()).toList());
+    }
+
+    @Test
+    void changesLinesAtStationsWithTimeToTransfer() {
+        List<Journey> journeys = JOURNEYS.find("A1", "D", 0, 3);
+
+        assertEquals(2, journeys.size());
+        // The express reaches C at 250, in time for t5 at 410 but not t3 after t1.
+        Journey first = journeys.get(0);
+        assertEquals(1, first.getTransfers());
+        assertEquals(List.of("t6", "t5"), first.getLegs().stream().map(JourneyLeg::getTripId).toList());
+        assertEquals("C1", first.getLegs().get(0).getToStopId());
+        assertEquals("C2", first.getLegs().get(1).getFromStopId());
+        assertEquals(150, first.getDepartureTime());
+        assertEquals(450, first.getArrivalTime());
+        // From t2's arrival at 600, t5 and t3 have gone and t4 is next.
+        assertEquals(List.of("t2", "t4"), journeys.get(1).getLegs().stream().map(JourneyLeg::getTripId).toList());
+        assertEquals(800, journeys.get(1).getArrivalTime());
+        assertEquals(1, JOURNEYS.find("A", "D", 0, 1).size());
+    }
+
+    @Test
+    void neverTransfersFasterThanTheMinimum() {
+        // Boarding after the express, t1 reaches C at 300: t5 leaves 110 s later, too soon.
+        List<Journey> journeys = JOURNEYS.find("A", "D", 101, 1);
+
+        assertEquals(List.of("t6", "t5"), journeys.get(0).getLegs().stream().map(JourneyLeg::getTripId).toList());
+        journeys = JOURNEYS.find("B", "D", 0, 1);
+        assertEquals(List.of("t1", "t3"), journeys.get(0).getLegs().stream().map(JourneyLeg::getTripId).toList());
+        assertTrue(journeys.get(0).getLegs().get(1).getDepartureTime()
+            >= journeys.get(0).getLegs().get(0).getArrivalTime() + JourneyIndex.MIN_TRANSFER_SECONDS);
+    }
+
+    @Test
+    void unknownOrIdenticalStationsHaveNoJourneys() {
+        assertTrue(JOURNEYS.find("A", "Z", 0, 3).isEmpty());
+        assertTrue(JOURNEYS.find("A1", "A", 0, 3).isEmpty());
+        // Nothing goes back from C to A.
+        assertTrue(JOURNEYS.find("C", "A", 0, 3).isEmpty());
+    }
+}
@@ -0,0 +1,74 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lametro.lametro_tracker.service.LineGeometryService;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+
+class LineGeometryServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void encodesLinesAsPolylines() throws Exception {
+        // The worked example from the encoded polyline format's documentation.
+        writeSchedule("""
+            s1,38.5,-120.2,1
+            s1,40.7,-120.95,2
+            s1,43.252,-126.453,3
+            """);
+
+        LineGeometryService service = new LineGeometryService(new StaticGtfsService(dir.toString(), ""));
+
+        assertEquals(List.of("_p~iF~ps|U_ulLnnqC_mqNvxq`@"), service.getLines(15).get(0).getPolylines());
+        assertEquals("#FF0000", service.getLines(15).get(0).getColor());
+    }
+
+    @Test
+    void dropsPointsWithinAPixelOfTheLine() throws Exception {
+        // A kink of about 11 m: under a pixel at zoom 8, several at zoom 15.
+        writeSchedule("""
+            s1,34.00,-118.00,1
+            s1,34.01,-118.0001,2
+            s1,34.02,-118.00,3
+            """);
+
+        LineGeometryService service = new LineGeometryService(new StaticGtfsService(dir.toString(), ""));
+
+        assertEquals(2, decodedPoints(service.getLines(8).get(0).getPolylines().get(0)));
+        assertEquals(3, decodedPoints(service.getLines(15).get(0).getPolylines().get(0)));
+        // Out of range zooms are clamped for whole lines and absent for tiles.
+        assertEquals(service.getLines(8), service.getLines(3));
+        assertNull(service.getTile(3, 0, 0));
+        assertEquals(List.of(), service.getTile(15, 0, 0));
+    }
+
+    // Each point is two varints; every varint ends with a character below 95.
+    private static int decodedPoints(String polyline) {
+        return (int) polyline.chars().filter(c -> c - 63 < 0x20).count() / 2;
+    }
+
+    private void writeSchedule(String shapePoints) throws Exception {
+        Files.writeString(dir.resolve("routes.txt"), """
+            route_id,route_short_name,route_long_name,route_type,route_color
+            901,,Test Line,0,FF0000
+            """);
+        Files.writeString(dir.resolve("stops.txt"), """
+            stop_id,stop_name,stop_lat,stop_lon,location_type,parent_station
+            """);
+        Files.writeString(dir.resolve("trips.txt"), """
+            route_id,service_id,trip_id,direction_id,shape_id
+            901,wk,t1,0,s1
+            """);
+        Files.writeString(dir.resolve("shapes.txt"), "shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n" + shapePoints);
+    }
+}
@@ -0,0 +1,73 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.lametro.lametro_tracker.service.PointGrid;
+
+class PointGridTest {
+
+    private static final Random random = new Random(16);
+
+    @Test
+    void withinMatchesAFullScan() {
+        double[] lats = randomCoordinates(500, 33.7, 34.3);
+        double[] lons = randomCoordinates(500, -118.6, -117.9);
+        PointGrid grid = new PointGrid(lats, lons, 0.01);
+
+        for (int query = 0; query < 200; query++) {
+            double south = 33.7 + random.nextDouble() * 0.6;
+            double west = -118.6 + random.nextDouble() * 0.7;
+            double north = south + random.nextDouble() * (query % 2 == 0 ? 0.05 : 0.6);
+            double east = west + random.nextDouble() * (query % 2 == 0 ? 0.05 : 0.7);
+
+            int[] expected = IntStream.range(0, lats.length)
+                .filter(i -> lats[i] >= south && lats[i] <= north && lons[i] >= west && lons[i] <= east)
+                .toArray();
+            assertArrayEquals(expected, grid.within(south, west, north, east));
+        }
+    }
+
+    @Test
+    void nearestMatchesAFullScan() {
+        double[] lats = randomCoordinates(500, 33.7, 34.3);
+        double[] lons = randomCoordinates(500, -118.6, -117.9);
+        PointGrid grid = new PointGrid(lats, lons, 0.01);
+
+        for (int query = 0; query < 200; query++) {
+            double lat = 33.7 + random.nextDouble() * 0.6;
+            double lon = -118.6 + random.nextDouble() * 0.7;
+            double radius = 500 + random.nextDouble() * 5_000;
+
+            int[] expected = IntStream.range(0, lats.length)
+                .filter(i -> PointGrid.distanceMeters(lat, lon, lats[i], lons[i]) <= radius)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> PointGrid.distanceMeters(lat, lon, lats[i], lons[i])))
+                .limit(5)
+                .mapToInt(Integer::intValue)
+                .toArray();
+            assertArrayEquals(expected, grid.nearest(lat, lon, radius, 5));
+        }
+    }
+
+    @Test
+    void handlesAnEmptyGrid() {
+        PointGrid grid = new PointGrid(new double[0], new double[0], 0.01);
+
+        assertEquals(0, grid.within(-90, -180, 90, 180).length);
+        assertEquals(0, grid.nearest(34, -118, 1_000, 5).length);
+    }
+
+    private static double[] randomCoordinates(int count, double from, double to) {
+        double[] values = new double[count];
+        Arrays.setAll(values, i -> from + random.nextDouble() * (to - from));
+        return values;
+    }
+}
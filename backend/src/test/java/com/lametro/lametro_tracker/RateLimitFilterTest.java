@@ -1,6 +1,9 @@
 package com.lametro.lametro_tracker;
 
+import com.lametro.lametro_tracker.config.ClientRateLimiter;
 import com.lametro.lametro_tracker.config.RateLimitFilter;
+import com.lametro.lametro_tracker.service.ClusterChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -9,17 +12,14 @@ import org.junit.jupiter.api.Test;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class RateLimitFilterTest {
 
+    private SimpleMeterRegistry meters;
     private RateLimitFilter filter;
     private HttpServletRequest request;
     private HttpServletResponse response;
@@ -28,7 +28,8 @@ class RateLimitFilterTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        filter = new RateLimitFilter();
+        meters = new SimpleMeterRegistry();
+        filter = new RateLimitFilter(meters);
         request = mock(HttpServletRequest.class);
         response = mock(HttpServletResponse.class);
         chain = mock(FilterChain.class);
@@ -64,6 +65,8 @@ class RateLimitFilterTest {
         // First 100 should pass, 101st should be blocked.
         verify(chain, times(100)).doFilter(request, response);
         verify(response, times(1)).setStatus(429);
+        assertEquals(1, meters.get("lametro.ratelimit.rejected").tag("limit", "client").counter().count());
+        assertEquals(0, meters.get("lametro.ratelimit.rejected").tag("limit", "global").counter().count());
     }
 
     @Test
@@ -90,7 +93,7 @@ class RateLimitFilterTest {
     @Test
     void globalLimitBlocksWhenExceeded() throws Exception {
         // Create fresh mocks and filter for this test to avoid interference from other tests.
-        RateLimitFilter freshFilter = new RateLimitFilter();
+        RateLimitFilter freshFilter = new RateLimitFilter(new SimpleMeterRegistry());
         HttpServletRequest freshRequest = mock(HttpServletRequest.class);
         HttpServletResponse freshResponse = mock(HttpServletResponse.class);
         FilterChain freshChain = mock(FilterChain.class);
@@ -141,61 +144,83 @@ class RateLimitFilterTest {
     }
 
     @Test
-    void cleanupRemovesOldBuckets() throws Exception {
+    void ipv6ClientsShareALimitPerSlash64() throws Exception {
         when(request.getRequestURI()).thenReturn("/api/vehicles");
-        when(request.getHeader("X-Forwarded-For")).thenReturn("192.168.1.100");
 
-        // Make a request to create a bucket.
+        // Rotating through one /64 doesn't buy a fresh limit.
+        for (int i = 0; i < 100; i++) {
+            when(request.getHeader("X-Forwarded-For")).thenReturn("2001:db8:1:2::" + Integer.toHexString(i + 1));
+            filter.doFilter(request, response, chain);
+        }
+        when(request.getHeader("X-Forwarded-For")).thenReturn("[2001:0db8:0001:0002:ffff:ffff:ffff:ffff]");
         filter.doFilter(request, response, chain);
 
-        // Get access to the ipBuckets map via reflection.
-        Field ipBucketsField = RateLimitFilter.class.getDeclaredField("ipBuckets");
-        ipBucketsField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Map<String, Object> ipBuckets = (Map<String, Object>) ipBucketsField.get(filter);
-
-        // Verify bucket was created.
-        assertEquals(1, ipBuckets.size());
-        assertTrue(ipBuckets.containsKey("192.168.1.100"));
-
-        // Get the bucket and manually set its lastAccess to 10 minutes ago.
-        Object bucketWithTimestamp = ipBuckets.get("192.168.1.100");
-        Field lastAccessField = bucketWithTimestamp.getClass().getDeclaredField("lastAccess");
-        lastAccessField.setAccessible(true);
-        lastAccessField.set(bucketWithTimestamp, Instant.now().minus(Duration.ofMinutes(10)));
-
-        // Manually trigger cleanup.
-        Method cleanupMethod = RateLimitFilter.class.getDeclaredMethod("cleanupOldBuckets");
-        cleanupMethod.setAccessible(true);
-        cleanupMethod.invoke(filter);
-
-        // Bucket should be removed.
-        assertEquals(0, ipBuckets.size());
+        // A neighbouring /64 is a different client.
+        when(request.getHeader("X-Forwarded-For")).thenReturn("2001:db8:1:3::1");
+        filter.doFilter(request, response, chain);
+
+        verify(chain, times(101)).doFilter(request, response);
+        verify(response, times(1)).setStatus(429);
     }
 
     @Test
-    void cleanupKeepsRecentBuckets() throws Exception {
+    void ipv4MappedAddressesShareTheIpv4Limit() throws Exception {
         when(request.getRequestURI()).thenReturn("/api/vehicles");
-        when(request.getHeader("X-Forwarded-For")).thenReturn("192.168.1.101");
 
-        // Make a request to create a bucket.
+        when(request.getHeader("X-Forwarded-For")).thenReturn("192.168.1.5");
+        for (int i = 0; i < 100; i++) {
+            filter.doFilter(request, response, chain);
+        }
+        when(request.getHeader("X-Forwarded-For")).thenReturn("::ffff:192.168.1.5");
         filter.doFilter(request, response, chain);
 
-        // Get access to the ipBuckets map via reflection.
-        Field ipBucketsField = RateLimitFilter.class.getDeclaredField("ipBuckets");
-        ipBucketsField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Map<String, Object> ipBuckets = (Map<String, Object>) ipBucketsField.get(filter);
+        verify(chain, times(100)).doFilter(request, response);
+        verify(response, times(1)).setStatus(429);
+    }
+
+    @Test
+    void replicasEachEnforceTheirShareOfTheLimit() throws Exception {
+        when(request.getRequestURI()).thenReturn("/api/vehicles");
+        when(request.getHeader("X-Forwarded-For")).thenReturn("192.168.1.6");
+
+        filter.onClusterChanged(new ClusterChangedEvent("10.0.1.5:8090", false, 4));
+        for (int i = 0; i < 26; i++) {
+            filter.doFilter(request, response, chain);
+        }
+
+        verify(chain, times(25)).doFilter(request, response);
+        verify(response, times(1)).setStatus(429);
+    }
+
+    @Test
+    void trackedClientsStayBoundedUnderAddressRotation() {
+        ClientRateLimiter limiter = new ClientRateLimiter(100, Duration.ofMinutes(1), 1024);
+        long now = System.nanoTime();
 
-        // Verify bucket was created.
-        assertEquals(1, ipBuckets.size());
+        for (long key = 1; key <= 100_000; key++) {
+            assertTrue(limiter.tryAcquire(key, now));
+        }
 
-        // Manually trigger cleanup (bucket was just created, so it's recent).
-        Method cleanupMethod = RateLimitFilter.class.getDeclaredMethod("cleanupOldBuckets");
-        cleanupMethod.setAccessible(true);
-        cleanupMethod.invoke(filter);
+        assertEquals(1024, limiter.capacity());
+        assertTrue(limiter.size() <= limiter.capacity());
+    }
+
+    @Test
+    void evictionPrefersClientsThatHaveRefilled() {
+        // One stripe of 8 slots, so every client competes for the same slots.
+        ClientRateLimiter limiter = new ClientRateLimiter(2, Duration.ofMinutes(1), 8);
+        long interval = Duration.ofSeconds(30).toNanos();
+        long now = 0;
+
+        assertTrue(limiter.tryAcquire(1, now));
+        assertTrue(limiter.tryAcquire(1, now));
+        assertFalse(limiter.tryAcquire(1, now));
+        for (long key = 2; key <= 20; key++) {
+            assertTrue(limiter.tryAcquire(key, now + key));
+        }
 
-        // Bucket should still exist (it's recent).
-        assertEquals(1, ipBuckets.size());
+        // The exhausted client was never the one evicted, so it is still limited.
+        assertFalse(limiter.tryAcquire(1, now + 21));
+        assertTrue(limiter.tryAcquire(1, now + interval));
     }
 }
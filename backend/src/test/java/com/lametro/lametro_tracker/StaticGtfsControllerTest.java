@@ -0,0 +1,119 @@
+package com.lametro.lametro_tracker;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.lametro.lametro_tracker.controller.StaticGtfsController;
+import com.lametro.lametro_tracker.service.LineGeometryService;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Runs against the real schedule in ../gtfs-data.
+@WebMvcTest(StaticGtfsController.class)
+@Import({StaticGtfsService.class, LineGeometryService.class, SimpleMeterRegistry.class})
+class StaticGtfsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void getStations_listsPlatformsOfEachStation() throws Exception {
+        mockMvc.perform(get("/api/static/stations"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Cache-Control", "max-age=3600, public"))
+            .andExpect(jsonPath("$[?(@.stopId == '80122S')].stopIds[0]").value("80122"))
+            .andExpect(jsonPath("$[?(@.stopId == '80122S')].stopIds[1]").value("80211"));
+    }
+
+    @Test
+    void getNearestStations_sortsByDistance() throws Exception {
+        // A block east of Union Station.
+        mockMvc.perform(get("/api/static/stations/nearest").param("lat", "34.0562").param("lon", "-118.2330")
+                .param("limit", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].stopId").value("80214S"))
+            .andExpect(jsonPath("$[0].distance").value(115))
+            .andExpect(jsonPath("$[1].distance").value(greaterThan(115)));
+
+        mockMvc.perform(get("/api/static/stations/nearest").param("lat", "0").param("lon", "0"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("[]"));
+
+        mockMvc.perform(get("/api/static/stations/nearest").param("lat", "95").param("lon", "0"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getRoutes_includesOrderedStopPatterns() throws Exception {
+        mockMvc.perform(get("/api/static/routes"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].routeId").value("801"))
+            .andExpect(jsonPath("$[0].color").value("#0072BC"))
+            .andExpect(jsonPath("$[0].stopPatterns[0][0].stopId").value("80101S"))
+            .andExpect(jsonPath("$[0].stopPatterns[1][0].stopId").value("801103S"));
+    }
+
+    @Test
+    void getTrip_returnsRouteDirectionAndShape() throws Exception {
+        mockMvc.perform(get("/api/static/trips/63367541"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.routeId").value("801"))
+            .andExpect(jsonPath("$.directionId").value(0))
+            .andExpect(jsonPath("$.shapeId").value("801NB_P2B_250722"));
+
+        mockMvc.perform(get("/api/static/trips/unknown"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getLines_simplifiesMoreAtLowerZooms() throws Exception {
+        String overview = mockMvc.perform(get("/api/static/lines").param("zoom", "8"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].routeId").value("801"))
+            .andExpect(jsonPath("$[0].color").value("#0072BC"))
+            .andReturn().getResponse().getContentAsString();
+        String detailed = mockMvc.perform(get("/api/static/lines"))
+            .andReturn().getResponse().getContentAsString();
+
+        assertTrue(overview.length() * 4 < detailed.length());
+    }
+
+    @Test
+    void getLineTile_returnsLinesCrossingTheTile() throws Exception {
+        // Downtown, around 7th St/Metro Center.
+        mockMvc.perform(get("/api/static/lines/12/702/1635"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Cache-Control", "max-age=3600, public"))
+            .andExpect(jsonPath("$[?(@.routeId == '801')].polylines").isNotEmpty())
+            .andExpect(jsonPath("$[?(@.routeId == '802')].polylines").isNotEmpty());
+
+        mockMvc.perform(get("/api/static/lines/12/0/0"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("[]"));
+
+        mockMvc.perform(get("/api/static/lines/20/0/0"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getStations_revalidatesWithETag() throws Exception {
+        String etag = mockMvc.perform(get("/api/static/stations"))
+            .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/static/stations").header("If-None-Match", etag))
+            .andExpect(status().isNotModified());
+    }
+}
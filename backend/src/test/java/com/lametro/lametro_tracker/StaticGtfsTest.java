@@ -0,0 +1,159 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lametro.lametro_tracker.service.StaticGtfs;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+
+class StaticGtfsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void indexesStopsTripsAndShapes() throws Exception {
+        writeSchedule();
+
+        StaticGtfs gtfs = StaticGtfs.load(dir);
+
+        int platform = gtfs.stopIndex("10002");
+        assertEquals("10S", gtfs.stopId(gtfs.parentStation(platform)));
+        assertEquals(List.of("10001", "10002"), gtfs.platformIds("10S"));
+        assertEquals(List.of("10002"), gtfs.platformIds("10002"));
+        assertNull(gtfs.platformIds("nope"));
+
+        int trip = gtfs.tripIndex("t2");
+        assertEquals("901", gtfs.routeId(gtfs.tripRoute(trip)));
+        assertEquals(1, gtfs.tripDirection(trip));
+        int shape = gtfs.tripShape(trip);
+        assertEquals("901-back", gtfs.shapeId(shape));
+        assertEquals(3, gtfs.shapePointCount(shape));
+        assertEquals(34.02, gtfs.shapeLat(shape, 0), 1e-9);
+    }
+
+    @Test
+    void derivesStopPatternsFromShapesWithoutStopTimes() throws Exception {
+        writeSchedule();
+
+        StaticGtfs gtfs = StaticGtfs.load(dir);
+
+        int route = gtfs.routeIndex("901");
+        assertEquals(List.of("10S", "11S", "12S"), pattern(gtfs, route, 0));
+        assertEquals(List.of("12S", "11S", "10S"), pattern(gtfs, route, 1));
+        // The nearer of a station's two platforms is the one the route uses.
+        assertEquals("10001", gtfs.stopId(gtfs.patternPlatform(route, 0, 0)));
+    }
+
+    @Test
+    void prefersStopTimesForStopPatterns() throws Exception {
+        writeSchedule();
+        Files.writeString(dir.resolve("stop_times.txt"), """
+            trip_id,arrival_time,departure_time,stop_id,stop_sequence
+            t1,08:00:00,08:00:00,10002,1
+            t1,08:05:00,08:05:00,12001,3
+            """);
+
+        StaticGtfs gtfs = StaticGtfs.load(dir);
+
+        int route = gtfs.routeIndex("901");
+        assertEquals(List.of("10S", "12S"), pattern(gtfs, route, 0));
+        assertEquals("10002", gtfs.stopId(gtfs.patternPlatform(route, 0, 0)));
+    }
+
+    @Test
+    void cacheFileMapsTheSameTables() throws Exception {
+        writeSchedule();
+        StaticGtfs compiled = StaticGtfs.load(dir);
+        Path cache = dir.resolve("cache/gtfs.bin");
+
+        compiled.writeTo(cache);
+        StaticGtfs mapped = StaticGtfs.open(cache);
+
+        assertFalse(compiled.isMapped());
+        assertTrue(mapped.isMapped());
+        assertEquals(StaticGtfs.checksum(dir), mapped.getVersion());
+        assertEquals(List.of("10001", "10002"), mapped.platformIds("10S"));
+        assertEquals("North, Station", mapped.stopName(mapped.stopIndex("10S")));
+        assertEquals(-118.0008, mapped.stopLon(mapped.stopIndex("10002")), 1e-9);
+        int trip = mapped.tripIndex("t2");
+        assertEquals(34.00, mapped.shapeLat(mapped.tripShape(trip), 2), 1e-9);
+        assertEquals(List.of("12S", "11S", "10S"), pattern(mapped, mapped.routeIndex("901"), 1));
+        assertEquals(-1, mapped.tripIndex("t3"));
+    }
+
+    @Test
+    void openIgnoresMissingAndForeignFiles() throws Exception {
+        Path cache = dir.resolve("gtfs.bin");
+        assertNull(StaticGtfs.open(cache));
+
+        Files.write(cache, new byte[512]);
+        assertNull(StaticGtfs.open(cache));
+    }
+
+    @Test
+    void serviceRecompilesTheCacheWhenTheInputChanges() throws Exception {
+        writeSchedule();
+        String cache = dir.resolve("gtfs.bin").toString();
+        assertEquals("Middle Station", new StaticGtfsService(dir.toString(), cache).getStations().get(1).getName());
+
+        Files.writeString(dir.resolve("stops.txt"),
+            Files.readString(dir.resolve("stops.txt")).replace("11S,Middle Station", "11S,Centre Station"));
+        StaticGtfsService service = new StaticGtfsService(dir.toString(), cache);
+
+        assertTrue(service.getGtfs().isMapped());
+        assertEquals("Centre Station", service.getStations().get(1).getName());
+        assertEquals(StaticGtfs.checksum(dir), StaticGtfs.open(Path.of(cache)).getVersion());
+    }
+
+    private static List<String> pattern(StaticGtfs gtfs, int route, int direction) {
+        List<String> stations = new ArrayList<>();
+        for (int i = 0; i < gtfs.patternLength(route, direction); i++) {
+            stations.add(gtfs.stopId(gtfs.patternStation(route, direction, i)));
+        }
+        return stations;
+    }
+
+    // Three stations roughly 1.1 km apart on a north-south line.
+    private void writeSchedule() throws Exception {
+        Files.writeString(dir.resolve("routes.txt"), """
+            route_id,route_short_name,route_long_name,route_type,route_color
+            901,,Test Line,0,FF0000
+            """);
+        Files.writeString(dir.resolve("stops.txt"), """
+            stop_id,stop_name,stop_lat,stop_lon,location_type,parent_station
+            10S,"North, Station",34.00,-118.00,1,
+            10001,North Station - Test Line,34.0001,-118.00,0,10S
+            10002,North Station - Other Line,34.0001,-118.0008,0,10S
+            11S,Middle Station,34.01,-118.00,1,
+            11001,Middle Station,34.01,-118.0001,0,11S
+            12S,South Station,34.02,-118.00,1,
+            12001,South Station,34.02,-118.00,0,12S
+            12002,South Station - Entrance,34.0205,-118.00,2,12S
+            """);
+        Files.writeString(dir.resolve("trips.txt"), """
+            route_id,service_id,trip_id,direction_id,shape_id
+            901,wk,t1,0,901-out
+            901,wk,t2,1,901-back
+            """);
+        Files.writeString(dir.resolve("shapes.txt"), """
+            shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence
+            901-out,34.02,-118.00,3
+            901-out,34.00,-118.00,1
+            901-out,34.01,-118.00,2
+            901-back,34.02,-118.00,1
+            901-back,34.01,-118.00,2
+            901-back,34.00,-118.00,3
+            """);
+    }
+}
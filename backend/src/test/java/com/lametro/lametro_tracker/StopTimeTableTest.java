@@ -0,0 +1,82 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.service.StopTimeTable;
+
+class StopTimeTableTest {
+
+    private static final List<StopTimeUpdate> UPDATES = List.of(
+        new StopTimeUpdate("t2", "801", 1, "80122", 400),
+        new StopTimeUpdate("t1", "801", 0, "80211", 300),
+        new StopTimeUpdate("t1", "801", 0, "80122", 100),
+        new StopTimeUpdate("t3", "802", 0, "80122", 200),
+        new StopTimeUpdate("t1", "801", 0, "80101", 50)
+    );
+
+    @Test
+    void findsArrivalsByRouteDirectionAndStop() {
+        StopTimeTable table = StopTimeTable.of(UPDATES);
+
+        assertEquals(List.of(50L, 100L, 200L, 300L), arrivals(table.findArrivals(null, null, null, 4)));
+        assertEquals(List.of(50L, 100L, 300L), arrivals(table.findArrivals("801", 0, null, 4)));
+        assertEquals(List.of(100L, 200L, 400L), arrivals(table.findArrivals(null, null, List.of("80122"), 4)));
+        assertEquals(List.of(100L, 300L), arrivals(table.findArrivals("801", 0, List.of("80122", "80211", "80122"), 2)));
+        assertTrue(table.findArrivals("801", 0, List.of("8012"), 4).isEmpty());
+        assertEquals(List.of(400L), arrivals(table.findArrivals(null, 1, null, 4)));
+        assertTrue(table.findArrivals("999", null, null, 4).isEmpty());
+        assertTrue(table.findArrivals("801", 0, List.of("99999"), 4).isEmpty());
+    }
+
+    @Test
+    void findsTripStopsInArrivalOrder() {
+        StopTimeTable table = StopTimeTable.of(UPDATES);
+
+        List<StopTimeUpdate> trip = table.findTrip("t1");
+
+        assertEquals(List.of("80101", "80122", "80211"), trip.stream().map(StopTimeUpdate::getStopId).toList());
+        assertEquals("801", trip.get(0).getRouteId());
+        assertTrue(table.findTrip("missing").isEmpty());
+    }
+
+    @Test
+    void matchesBruteForceFilteringOnRandomFeeds() {
+        Random random = new Random(42);
+        List<StopTimeUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            updates.add(new StopTimeUpdate("t" + random.nextInt(200), "80" + random.nextInt(6), random.nextInt(2),
+                "80" + (100 + random.nextInt(300)), random.nextInt(1_000_000)));
+        }
+        StopTimeTable table = StopTimeTable.of(updates);
+
+        for (int i = 0; i < 200; i++) {
+            String routeId = random.nextBoolean() ? "80" + random.nextInt(7) : null;
+            Integer directionId = random.nextBoolean() ? random.nextInt(2) : null;
+            List<String> stopIds = random.nextBoolean() ? null
+                : List.of("80" + (100 + random.nextInt(300)), "80" + (100 + random.nextInt(300)));
+            List<Long> expected = updates.stream()
+                .filter(u -> routeId == null || u.getRouteId().equals(routeId))
+                .filter(u -> directionId == null || u.getDirectionId() == directionId)
+                .filter(u -> stopIds == null || stopIds.contains(u.getStopId()))
+                .sorted(Comparator.comparingLong(StopTimeUpdate::getArrivalTime))
+                .limit(4)
+                .map(StopTimeUpdate::getArrivalTime)
+                .toList();
+
+            assertEquals(expected, arrivals(table.findArrivals(routeId, directionId, stopIds, 4)));
+        }
+    }
+
+    private static List<Long> arrivals(List<StopTimeUpdate> updates) {
+        return updates.stream().map(StopTimeUpdate::getArrivalTime).toList();
+    }
+}
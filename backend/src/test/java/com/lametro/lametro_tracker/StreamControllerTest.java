@@ -0,0 +1,128 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.lametro.lametro_tracker.controller.StreamController;
+import com.lametro.lametro_tracker.model.StopTimeUpdate;
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
+import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.SnapshotPublishedEvent;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.SnapshotStreams;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@WebMvcTest(StreamController.class)
+@Import({SnapshotStreams.class, SnapshotRenderer.class, StaticGtfsService.class, SimpleMeterRegistry.class})
+class StreamControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SnapshotStreams streams;
+
+    @Autowired
+    private StaticGtfsService staticGtfsService;
+
+    @MockitoBean
+    private AgencyRegistry agencies;
+
+    @MockitoBean
+    private GtfsRtService gtfsRtService;
+
+    @BeforeEach
+    void setUp() {
+        when(gtfsRtService.getAgency()).thenReturn("lametro-rail");
+        when(agencies.get(null)).thenReturn(new Agency("lametro-rail", staticGtfsService, null, gtfsRtService));
+    }
+
+    @Test
+    void vehicleStream_sendsCurrentSnapshotThenUpdates() throws Exception {
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(new VehicleSnapshot(
+            List.of(new VehiclePosition("123", "801", "trip1", 0, 34.0, -118.0, 90.0f, 1L)), 0x1L, 1000L, 1000L));
+
+        // Act.
+        MockHttpServletResponse response = mockMvc.perform(get("/api/stream/vehicles"))
+            .andExpect(request().asyncStarted())
+            .andReturn().getResponse();
+        awaitContent(response, "\"vehicleId\":\"123\"");
+
+        VehicleSnapshot next = new VehicleSnapshot(
+            List.of(new VehiclePosition("456", "801", "trip2", 0, 34.1, -118.1, 90.0f, 2L)), 0x2L, 2000L, 2000L);
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(next);
+        streams.onSnapshotPublished(new SnapshotPublishedEvent("lametro-rail", next));
+
+        // Assert.
+        awaitContent(response, "\"vehicleId\":\"456\"");
+        String content = response.getContentAsString();
+        assertTrue(content.contains("event:vehicles"));
+        assertTrue(content.contains("id:2"));
+    }
+
+    @Test
+    void arrivalStream_onlySendsRequestedStopsWhenTheyChange() throws Exception {
+        TripUpdateSnapshot first = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("trip1", "801", 0, "80122", 1000L),
+            new StopTimeUpdate("trip2", "801", 0, "80121", 2000L)
+        ), 0x1L, 1000L, 1000L);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(first);
+
+        // Act.
+        MockHttpServletResponse response = mockMvc.perform(get("/api/stream/arrivals")
+                .param("routeId", "801").param("directionId", "0").param("stopIds", "80122S"))
+            .andExpect(request().asyncStarted())
+            .andReturn().getResponse();
+        awaitContent(response, "\"tripId\":\"trip1\"");
+
+        // A refresh that only moves another stop's arrival produces no message.
+        TripUpdateSnapshot second = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("trip1", "801", 0, "80122", 1000L),
+            new StopTimeUpdate("trip2", "801", 0, "80121", 2500L)
+        ), 0x2L, 2000L, 2000L);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(second);
+        streams.onSnapshotPublished(new SnapshotPublishedEvent("lametro-rail", second));
+
+        TripUpdateSnapshot third = new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("trip3", "801", 0, "80122", 1500L)
+        ), 0x3L, 3000L, 3000L);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(third);
+        streams.onSnapshotPublished(new SnapshotPublishedEvent("lametro-rail", third));
+
+        // Assert.
+        awaitContent(response, "\"tripId\":\"trip3\"");
+        String content = response.getContentAsString();
+        assertFalse(content.contains("trip2"));
+        assertFalse(content.contains("id:2"));
+    }
+
+    private static void awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!response.getContentAsString().contains(expected)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Stream never sent " + expected + ", got: " + response.getContentAsString());
+            }
+            Thread.sleep(10);
+        }
+    }
+}
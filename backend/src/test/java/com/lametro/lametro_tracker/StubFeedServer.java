@@ -0,0 +1,92 @@
+package com.lametro.lametro_tracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the upstream GTFS-RT API. Serves canned protobuf
+ * payloads (gzipped when the client asks) and can inject failures.
+ */
+class StubFeedServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, byte[]> payloads = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private volatile int failuresBeforeSuccess;
+    private volatile int failureStatus = 503;
+    private volatile long delayMillis;
+
+    StubFeedServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    void serve(String path, byte[] payload) {
+        payloads.put(path, payload);
+    }
+
+    void failNext(int count, int status) {
+        failuresBeforeSuccess = count;
+        failureStatus = status;
+    }
+
+    void delay(long millis) {
+        delayMillis = millis;
+    }
+
+    int hits(String path) {
+        AtomicInteger count = hits.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        hits.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] payload = payloads.get(path);
+        if (failuresBeforeSuccess > 0 || payload == null) {
+            failuresBeforeSuccess--;
+            exchange.sendResponseHeaders(payload == null ? 404 : failureStatus, -1);
+            exchange.close();
+            return;
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(payload);
+            }
+            payload = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, payload.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(payload);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.lametro.lametro_tracker;
+
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.Position;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import com.google.transit.realtime.GtfsRealtime.VehicleDescriptor;
+
+/**
+ * Canned GTFS-RT payloads for tests to serve from {@link StubFeedServer}
+ * or record, all stamped 2023-11-14 and describing trip t1 on route 801.
+ */
+final class TestFeeds {
+
+    private static final long TIMESTAMP = 1_700_000_000L;
+
+    private TestFeeds() {}
+
+    // One vehicle on t1, heading east.
+    static byte[] vehicleFeed(String vehicleId, double latitude) {
+        return FeedMessage.newBuilder()
+            .setHeader(header())
+            .addEntity(FeedEntity.newBuilder().setId("1").setVehicle(
+                com.google.transit.realtime.GtfsRealtime.VehiclePosition.newBuilder()
+                    .setVehicle(VehicleDescriptor.newBuilder().setId(vehicleId))
+                    .setTrip(TripDescriptor.newBuilder().setTripId("t1").setRouteId("801").setDirectionId(0))
+                    .setPosition(Position.newBuilder().setLatitude((float) latitude).setLongitude(-118.2f).setBearing(90f))
+                    .setTimestamp(TIMESTAMP)))
+            .build().toByteArray();
+    }
+
+    // t1 arriving at 80101, then at 80102 two minutes later.
+    static byte[] tripFeed(long firstArrival) {
+        return FeedMessage.newBuilder()
+            .setHeader(header())
+            .addEntity(FeedEntity.newBuilder().setId("1").setTripUpdate(TripUpdate.newBuilder()
+                .setTrip(TripDescriptor.newBuilder().setTripId("t1").setRouteId("801").setDirectionId(0))
+                .addStopTimeUpdate(TripUpdate.StopTimeUpdate.newBuilder().setStopId("80101")
+                    .setArrival(TripUpdate.StopTimeEvent.newBuilder().setTime(firstArrival)))
+                .addStopTimeUpdate(TripUpdate.StopTimeUpdate.newBuilder().setStopId("80102")
+                    .setArrival(TripUpdate.StopTimeEvent.newBuilder().setTime(firstArrival + 120)))))
+            .build().toByteArray();
+    }
+
+    private static FeedHeader.Builder header() {
+        return FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(TIMESTAMP);
+    }
+}
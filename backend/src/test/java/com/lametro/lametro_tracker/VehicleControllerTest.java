@@ -1,42 +1,81 @@
 package com.lametro.lametro_tracker;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.hamcrest.Matchers.closeTo;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.lametro.lametro_tracker.model.StopTimeUpdate;
 import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.Agency;
+import com.lametro.lametro_tracker.service.AgencyRegistry;
 import com.lametro.lametro_tracker.service.GtfsRtService;
+import com.lametro.lametro_tracker.service.SnapshotRenderer;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.TripUpdateSnapshot;
+import com.lametro.lametro_tracker.service.VehicleSnapshot;
+import com.lametro.lametro_tracker.service.VehicleTracker;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
 
 import com.lametro.lametro_tracker.controller.VehicleController;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @WebMvcTest (VehicleController.class)
+@Import({SnapshotRenderer.class, StaticGtfsService.class, SimpleMeterRegistry.class})
 public class VehicleControllerTest {
     
     @Autowired 
     private MockMvc mockMvc;
 
+    @Autowired
+    private StaticGtfsService staticGtfsService;
+
+    @MockitoBean
+    private AgencyRegistry agencies;
+
     @MockitoBean
     private GtfsRtService gtfsRtService;
 
+    @BeforeEach
+    void setUp() {
+        when(agencies.get(null)).thenReturn(new Agency("lametro-rail", staticGtfsService,
+            new VehicleTracker(staticGtfsService), gtfsRtService));
+    }
+
     @Test
     void getVehicles_returnsVehicleList() throws Exception {
         VehiclePosition vehicle = new VehiclePosition(
             "123", "801", "trip1", 0, 34.0, -118.0, 90.0f, 1234567890L
         );
-        when(gtfsRtService.getVehiclePositions()).thenReturn(List.of(vehicle));
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(new VehicleSnapshot(List.of(vehicle), 0));
 
         // Act and assert.
         mockMvc.perform(get("/api/vehicles"))
@@ -51,6 +90,51 @@ public class VehicleControllerTest {
             .andExpect(jsonPath("$[0].timestamp").value(1234567890L));
     }
 
+    @Test
+    void getVehicles_setsValidatorsFromSnapshotVersion() throws Exception {
+        VehiclePosition vehicle = new VehiclePosition(
+            "123", "801", "trip1", 0, 34.0, -118.0, 90.0f, 1234567890L
+        );
+        when(gtfsRtService.getVehicleSnapshot())
+            .thenReturn(new VehicleSnapshot(List.of(vehicle), 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"abc\""))
+            .andExpect(header().exists("Last-Modified"))
+            .andExpect(header().string("Cache-Control", "no-cache"));
+    }
+
+    @Test
+    void getVehicles_returnsNotModifiedForCurrentVersion() throws Exception {
+        VehiclePosition vehicle = new VehiclePosition(
+            "123", "801", "trip1", 0, 34.0, -118.0, 90.0f, 1234567890L
+        );
+        when(gtfsRtService.getVehicleSnapshot())
+            .thenReturn(new VehicleSnapshot(List.of(vehicle), 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles").header("If-None-Match", "\"abc\""))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+    }
+
+    @Test
+    void getTripUpdates_returnsBodyForStaleVersion() throws Exception {
+        List<StopTimeUpdate> updates = List.of(
+            new StopTimeUpdate("trip1", "801", 0, "stop1", 1000L)
+        );
+        when(gtfsRtService.getTripUpdateSnapshot())
+            .thenReturn(new TripUpdateSnapshot(updates, 0x2L, 1700000000000L, 1700000005000L));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/trip-updates").header("If-None-Match", "\"1\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"2\""))
+            .andExpect(jsonPath("$.length()").value(1));
+    }
+
     @Test
     void getTripUpdates_filtersByRouteId() throws Exception {
         List<StopTimeUpdate> updates = List.of(
@@ -58,7 +142,7 @@ public class VehicleControllerTest {
             new StopTimeUpdate("trip2", "802", 0, "stop2", 2000L),
             new StopTimeUpdate("trip3", "801", 1, "stop3", 3000L)
         );
-        when(gtfsRtService.getTripUpdates()).thenReturn(updates);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
 
         // Act and assert.
         mockMvc.perform(get("/api/trip-updates").param("routeId", "801"))
@@ -75,7 +159,7 @@ public class VehicleControllerTest {
             new StopTimeUpdate("trip2", "801", 1, "stop2", 2000L),
             new StopTimeUpdate("trip3", "801", 0, "stop3", 3000L)
         );
-        when(gtfsRtService.getTripUpdates()).thenReturn(updates);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
 
         // Assert and act.
         mockMvc.perform(get("/api/trip-updates").param("directionId", "1"))
@@ -93,7 +177,7 @@ public class VehicleControllerTest {
             new StopTimeUpdate("trip4", "801", 0, "stop4", 2000L),
             new StopTimeUpdate("trip5", "801", 0, "stop5", 4000L)
         );
-        when(gtfsRtService.getTripUpdates()).thenReturn(updates);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
 
         // Assert and act.
         mockMvc.perform(get("/api/trip-updates"))
@@ -105,9 +189,45 @@ public class VehicleControllerTest {
             .andExpect(jsonPath("$[3].arrivalTime").value(4000L));
     }
 
+    @Test
+    void getTripUpdates_filtersByStationStopIds() throws Exception {
+        List<StopTimeUpdate> updates = List.of(
+            new StopTimeUpdate("trip1", "801", 0, "80122", 3000L),
+            new StopTimeUpdate("trip2", "802", 0, "80211", 1000L),
+            new StopTimeUpdate("trip3", "801", 0, "80121", 500L),
+            new StopTimeUpdate("trip4", "801", 0, "80122", 2000L)
+        );
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/trip-updates").param("stopIds", "80122S,80211S"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(3))
+            .andExpect(jsonPath("$[0].tripId").value("trip2"))
+            .andExpect(jsonPath("$[1].tripId").value("trip4"))
+            .andExpect(jsonPath("$[2].tripId").value("trip1"));
+    }
+
+    @Test
+    void getTripUpdates_resolvesStationIdToAllPlatforms() throws Exception {
+        List<StopTimeUpdate> updates = List.of(
+            new StopTimeUpdate("trip1", "801", 0, "80122", 3000L),
+            new StopTimeUpdate("trip2", "802", 0, "80211", 1000L),
+            new StopTimeUpdate("trip3", "801", 0, "801220", 500L)
+        );
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
+
+        // 80122S is 7th St/Metro Center, whose platforms are 80122 (A/E) and 80211 (B/D).
+        mockMvc.perform(get("/api/trip-updates").param("stopIds", "80122S"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].tripId").value("trip2"))
+            .andExpect(jsonPath("$[1].tripId").value("trip1"));
+    }
+
     @Test
     void getTripUpdates_returnsEmptyList() throws Exception {
-        when(gtfsRtService.getTripUpdates()).thenReturn(List.of());
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(TripUpdateSnapshot.none());
 
         // Act and assert.
         mockMvc.perform(get("/api/trip-updates"))
@@ -123,7 +243,7 @@ public class VehicleControllerTest {
             new StopTimeUpdate("trip1", "801", 0, "stop2", 2000L),
             new StopTimeUpdate("trip2", "801", 0, "stop3", 3000L)
         );
-        when(gtfsRtService.getTripUpdates()).thenReturn(updates);
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
 
         // Act and assert.
         mockMvc.perform(get("/api/trip-details").param("tripId", "trip1"))
@@ -134,4 +254,320 @@ public class VehicleControllerTest {
             .andExpect(jsonPath("$[0].arrivalTime").value(1000L))
             .andExpect(jsonPath("$[1].arrivalTime").value(2000L));
     }
+
+    @Test
+    void getJourneys_returnsTripsServingBothStations() throws Exception {
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(List.of(
+            new StopTimeUpdate("trip1", "801", 0, "80101", 1000),
+            new StopTimeUpdate("trip1", "801", 0, "80102", 1100),
+            new StopTimeUpdate("trip2", "801", 0, "80101", 2000),
+            new StopTimeUpdate("trip2", "801", 0, "80102", 2100)
+        ), 0xabcL, 1700000000000L, 1700000005000L));
+
+        mockMvc.perform(get("/api/journeys").param("from", "80101").param("to", "80102").param("after", "1500"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"abc\""))
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].departureTime").value(2000))
+            .andExpect(jsonPath("$[0].arrivalTime").value(2100))
+            .andExpect(jsonPath("$[0].transfers").value(0))
+            .andExpect(jsonPath("$[0].legs[0].tripId").value("trip2"));
+        mockMvc.perform(get("/api/journeys").param("from", "80101").param("to", "80102").param("limit", "50"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getVehicles_filtersByBoundingBox() throws Exception {
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(new VehicleSnapshot(List.of(
+            new VehiclePosition("downtown", "801", "trip1", 0, 34.05, -118.25, 0f, 1L),
+            new VehiclePosition("pasadena", "804", "trip2", 0, 34.15, -118.13, 0f, 1L),
+            new VehiclePosition("santa-monica", "806", "trip3", 0, 34.01, -118.49, 0f, 1L)
+        ), 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles").param("bbox", "-118.3,34.0,-118.1,34.2"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"abc\""))
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].vehicleId").value("downtown"))
+            .andExpect(jsonPath("$[1].vehicleId").value("pasadena"));
+    }
+
+    @Test
+    void getVehicles_filtersByRadiusNearestFirst() throws Exception {
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(new VehicleSnapshot(List.of(
+            new VehiclePosition("far", "801", "trip1", 0, 34.058, -118.25, 0f, 1L),
+            new VehiclePosition("near", "801", "trip2", 0, 34.051, -118.25, 0f, 1L),
+            new VehiclePosition("outside", "801", "trip3", 0, 34.07, -118.25, 0f, 1L)
+        ), 0));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles").param("near", "34.05,-118.25").param("radius", "1000"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].vehicleId").value("near"))
+            .andExpect(jsonPath("$[1].vehicleId").value("far"));
+    }
+
+    @Test
+    void getVehicles_rejectsMalformedSpatialQueries() throws Exception {
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(VehicleSnapshot.none());
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles").param("bbox", "-118.1,34.0,-118.3,34.2"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/vehicles").param("bbox", "-118.3,34.0,-118.1"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/vehicles").param("near", "34.05,abc"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/vehicles").param("near", "34.05,-118.25").param("radius", "1000000"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/vehicles").param("near", "34.05,-118.25").param("bbox", "-118.3,34.0,-118.1,34.2"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getVehicles_gzipsLargeBodiesWhenAccepted() throws Exception {
+        List<VehiclePosition> vehicles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            vehicles.add(new VehiclePosition("v" + i, "801", "trip" + i, 0, 34.0, -118.0, 90.0f, 1234567890L));
+        }
+        when(gtfsRtService.getVehicleSnapshot())
+            .thenReturn(new VehicleSnapshot(vehicles, 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act.
+        byte[] body = mockMvc.perform(get("/api/vehicles").header("Accept-Encoding", "br;q=1.0, gzip;q=0.8"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Content-Encoding", "gzip"))
+            .andExpect(header().string("ETag", "\"abc-gzip\""))
+            .andExpect(header().string("Vary", "Accept, Accept-Encoding"))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert.
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(json.startsWith("[{\"vehicleId\":\"v0\""));
+        }
+    }
+
+    @Test
+    void getVehicles_picksTheContentCodingWithTheHigherQuality() throws Exception {
+        List<VehiclePosition> vehicles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            vehicles.add(new VehiclePosition("v" + i, "801", "trip" + i, 0, 34.0, -118.0, 90.0f, 1234567890L));
+        }
+        when(gtfsRtService.getVehicleSnapshot())
+            .thenReturn(new VehicleSnapshot(vehicles, 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act & Assert.
+        mockMvc.perform(get("/api/vehicles").header("Accept-Encoding", "deflate;q=1, gzip;q=0.1"))
+            .andExpect(header().string("Content-Encoding", "deflate"));
+        // Refusing gzip by name holds even though "*" accepts anything else.
+        mockMvc.perform(get("/api/vehicles").header("Accept-Encoding", "gzip;q=0, *"))
+            .andExpect(header().string("Content-Encoding", "deflate"));
+        mockMvc.perform(get("/api/vehicles").header("Accept-Encoding", "gzip;q=0, deflate;q=0, *"))
+            .andExpect(header().doesNotExist("Content-Encoding"));
+        mockMvc.perform(get("/api/vehicles").header("Accept-Encoding", "deflate, gzip"))
+            .andExpect(header().string("Content-Encoding", "gzip"));
+    }
+
+    @Test
+    void getVehicles_sendsCompactProtobufWhenAccepted() throws Exception {
+        VehiclePosition snapped = new VehiclePosition("v1", "801", "trip1", 1, 34.0481234, -118.2584567, 90.4f, 1700000000L);
+        snapped.setShapeId("801NB_P2B_250722");
+        snapped.setDistanceAlongShape(0.0);
+        snapped.setSpeed(-1.25);
+        VehiclePosition unsnapped = new VehiclePosition("v2", "801", null, 0, 34.1, -118.3, 0f, 1699999990L);
+        when(gtfsRtService.getVehicleSnapshot())
+            .thenReturn(new VehicleSnapshot(List.of(snapped, unsnapped), 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act.
+        byte[] body = mockMvc.perform(get("/api/vehicles").header("Accept", "application/x-protobuf, application/json;q=0.5"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Content-Type", "application/x-protobuf"))
+            .andExpect(header().string("ETag", "\"abc-pb\""))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert.
+        Map<Integer, List<Object>> message = fields(body);
+        List<Object> strings = message.get(1);
+        assertEquals(List.of("", "v1", "801", "trip1", "801NB_P2B_250722", "v2"),
+            strings.stream().map(value -> new String((byte[]) value, StandardCharsets.UTF_8)).toList());
+        assertEquals(1700000000L, message.get(2).get(0));
+        Map<Integer, List<Object>> first = fields((byte[]) message.get(3).get(0));
+        assertEquals(1L, first.get(1).get(0));
+        assertEquals(2L, first.get(2).get(0));
+        assertEquals(1L, first.get(4).get(0));
+        assertEquals(34048123, CodedInputStream.decodeZigZag32((int) (long) (Long) first.get(5).get(0)));
+        assertEquals(-118258457, CodedInputStream.decodeZigZag32((int) (long) (Long) first.get(6).get(0)));
+        assertEquals(90L, first.get(7).get(0));
+        assertFalse(first.containsKey(8));
+        assertEquals(4L, first.get(9).get(0));
+        assertEquals(0L, first.get(10).get(0));
+        assertEquals(-125, CodedInputStream.decodeZigZag32((int) (long) (Long) first.get(11).get(0)));
+        Map<Integer, List<Object>> second = fields((byte[]) message.get(3).get(1));
+        assertEquals(5L, second.get(1).get(0));
+        assertFalse(second.containsKey(3));
+        assertEquals(-10L, CodedInputStream.decodeZigZag64((Long) second.get(8).get(0)));
+        assertFalse(second.containsKey(10));
+
+        // JSON stays the default, under its own tag.
+        mockMvc.perform(get("/api/vehicles").header("Accept", "application/x-protobuf;q=0, application/json"))
+            .andExpect(header().string("ETag", "\"abc\""))
+            .andExpect(jsonPath("$[0].vehicleId").value("v1"));
+    }
+
+    @Test
+    void getVehicles_picksTheFormatWithTheHigherQuality() throws Exception {
+        VehiclePosition vehicle = new VehiclePosition("v1", "801", "trip1", 1, 34.05, -118.25, 90f, 1700000000L);
+        when(gtfsRtService.getVehicleSnapshot())
+            .thenReturn(new VehicleSnapshot(List.of(vehicle), 0xabcL, 1700000000000L, 1700000005000L));
+
+        // Act & Assert.
+        mockMvc.perform(get("/api/vehicles").header("Accept", "application/json, application/x-protobuf;q=0.1"))
+            .andExpect(header().string("ETag", "\"abc\""));
+        mockMvc.perform(get("/api/vehicles").header("Accept", "application/json;q=0.9, application/x-protobuf"))
+            .andExpect(header().string("ETag", "\"abc-pb\""));
+        mockMvc.perform(get("/api/vehicles").header("Accept", "application/json, application/x-protobuf"))
+            .andExpect(header().string("ETag", "\"abc\""));
+        mockMvc.perform(get("/api/vehicles").header("Accept", "application/x-protobuf, */*"))
+            .andExpect(header().string("ETag", "\"abc-pb\""));
+        mockMvc.perform(get("/api/vehicles").header("Accept", "application/x-protobuf;q=0.5, */*"))
+            .andExpect(header().string("ETag", "\"abc\""));
+    }
+
+    @Test
+    void getTripUpdates_sendsCompactProtobufWhenAccepted() throws Exception {
+        List<StopTimeUpdate> updates = List.of(
+            new StopTimeUpdate("trip1", "801", 0, "stop1", 1000L),
+            new StopTimeUpdate("trip2", "801", 0, "stop1", 1300L, StopTimeUpdate.Source.VEHICLE, 900L)
+        );
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0x2L, 1000L, 1000L));
+
+        // Act.
+        byte[] body = mockMvc.perform(get("/api/trip-updates").header("Accept", "application/protobuf"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Content-Type", "application/x-protobuf"))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert.
+        Map<Integer, List<Object>> message = fields(body);
+        assertEquals(5, message.get(1).size());
+        assertEquals(1000L, message.get(2).get(0));
+        Map<Integer, List<Object>> first = fields((byte[]) message.get(3).get(0));
+        assertEquals(1L, first.get(1).get(0));
+        assertEquals(3L, first.get(4).get(0));
+        assertFalse(first.containsKey(5));
+        assertFalse(first.containsKey(6));
+        assertFalse(first.containsKey(7));
+        Map<Integer, List<Object>> second = fields((byte[]) message.get(3).get(1));
+        assertEquals(4L, second.get(1).get(0));
+        assertEquals(300L, CodedInputStream.decodeZigZag64((Long) second.get(5).get(0)));
+        assertEquals(2L, second.get(6).get(0));
+        assertEquals(-100L, CodedInputStream.decodeZigZag64((Long) second.get(7).get(0)));
+    }
+
+    @Test
+    void getTripUpdates_sendsSmallBodiesUncompressed() throws Exception {
+        List<StopTimeUpdate> updates = List.of(
+            new StopTimeUpdate("trip1", "801", 0, "stop1", 1000L)
+        );
+        when(gtfsRtService.getTripUpdateSnapshot()).thenReturn(new TripUpdateSnapshot(updates, 0));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/trip-updates").header("Accept-Encoding", "gzip, deflate"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("Content-Encoding"))
+            .andExpect(jsonPath("$[0].tripId").value("trip1"));
+    }
+
+    @Test
+    void getVehicleDelta_returnsOnlyMeaningfulChanges() throws Exception {
+        VehicleSnapshot base = new VehicleSnapshot(List.of(
+            new VehiclePosition("v1", "801", "trip1", 0, 34.00000, -118.00000, 90.0f, 100L),
+            new VehiclePosition("v2", "801", "trip2", 0, 34.10000, -118.10000, 90.0f, 100L),
+            new VehiclePosition("v4", "802", "trip4", 1, 34.20000, -118.20000, 90.0f, 100L)
+        ), 0x1L, 1000L, 1000L);
+        VehicleSnapshot current = new VehicleSnapshot(List.of(
+            new VehiclePosition("v1", "801", "trip1", 0, 34.00001, -118.00001, 90.5f, 115L),
+            new VehiclePosition("v2", "801", "trip2", 0, 34.10500, -118.10000, 90.0f, 115L),
+            new VehiclePosition("v3", "803", "trip3", 0, 33.90000, -118.30000, 0.0f, 115L)
+        ), 0x2L, 2000L, 2000L);
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(current);
+        when(gtfsRtService.getVehicleSnapshot(0x1L)).thenReturn(base);
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles/delta").param("since", "\"1-gzip\""))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.version").value("2"))
+            .andExpect(jsonPath("$.baseVersion").value("1"))
+            .andExpect(jsonPath("$.full").value(false))
+            .andExpect(jsonPath("$.upserted.length()").value(2))
+            .andExpect(jsonPath("$.upserted[0].vehicleId").value("v2"))
+            .andExpect(jsonPath("$.upserted[1].vehicleId").value("v3"))
+            .andExpect(jsonPath("$.removed[0]").value("v4"));
+    }
+
+    @Test
+    void getVehicleDelta_fallsBackToFullListForUnknownVersion() throws Exception {
+        VehicleSnapshot current = new VehicleSnapshot(List.of(
+            new VehiclePosition("v1", "801", "trip1", 0, 34.0, -118.0, 90.0f, 115L)
+        ), 0x2L, 2000L, 2000L);
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(current);
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles/delta").param("since", "\"ff\""))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.full").value(true))
+            .andExpect(jsonPath("$.upserted[0].vehicleId").value("v1"))
+            .andExpect(jsonPath("$.removed").isEmpty());
+    }
+
+    @Test
+    void getPredictedVehicles_movesSnappedVehiclesAlongTheirShape() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        VehiclePosition snapped = new VehiclePosition("v1", "801", "trip1", 0, 34.0, -118.0, 0f, now - 10);
+        snapped.setShapeId("801NB_P2B_250722");
+        snapped.setDistanceAlongShape(1000.0);
+        snapped.setSpeed(10.0);
+        VehiclePosition unsnapped = new VehiclePosition("v2", "801", "trip2", 0, 34.0, -118.0, 0f, now - 10);
+        when(gtfsRtService.getVehicleSnapshot()).thenReturn(new VehicleSnapshot(List.of(snapped, unsnapped), now * 1000));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/vehicles/predicted"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Cache-Control", "max-age=1"))
+            .andExpect(jsonPath("$[0].distanceAlongShape").value(closeTo(1100.0, 20.0)))
+            .andExpect(jsonPath("$[0].speed").value(10.0))
+            .andExpect(jsonPath("$[1].latitude").value(34.0))
+            .andExpect(jsonPath("$[1].distanceAlongShape").doesNotExist());
+    }
+
+    @Test
+    void agencyPaths_serveThatAgencysFeeds() throws Exception {
+        GtfsRtService bus = mock(GtfsRtService.class);
+        when(bus.getVehicleSnapshot()).thenReturn(new VehicleSnapshot(List.of(
+            new VehiclePosition("b1", "720", "bustrip1", 0, 34.05, -118.3, 270.0f, 1234567890L)), 0x7L, 1000L, 1000L));
+        when(agencies.get("lametro-bus")).thenReturn(new Agency("lametro-bus", staticGtfsService,
+            new VehicleTracker(staticGtfsService), bus));
+
+        // Act and assert.
+        mockMvc.perform(get("/api/agencies/lametro-bus/vehicles"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"7\""))
+            .andExpect(jsonPath("$[0].vehicleId").value("b1"));
+        mockMvc.perform(get("/api/agencies/nowhere/trip-updates"))
+            .andExpect(status().isNotFound());
+    }
+
+    // Raw fields of a protobuf message by number: varints as Long, length-delimited fields as byte[].
+    private static Map<Integer, List<Object>> fields(byte[] message) throws Exception {
+        Map<Integer, List<Object>> fields = new HashMap<>();
+        CodedInputStream in = CodedInputStream.newInstance(message);
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            Object value = WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_VARINT ? in.readRawVarint64() : in.readByteArray();
+            fields.computeIfAbsent(WireFormat.getTagFieldNumber(tag), field -> new ArrayList<>()).add(value);
+        }
+        return fields;
+    }
 }
@@ -0,0 +1,121 @@
+package com.lametro.lametro_tracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lametro.lametro_tracker.model.VehiclePosition;
+import com.lametro.lametro_tracker.service.FeedSnapshot;
+import com.lametro.lametro_tracker.service.StaticGtfsService;
+import com.lametro.lametro_tracker.service.VehicleTracker;
+
+class VehicleTrackerTest {
+
+    // Meters per degree of latitude.
+    private static final double DEGREE = 111_195;
+
+    @TempDir
+    Path dir;
+
+    private VehicleTracker tracker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // A straight northbound shape about 2.2 km long.
+        Files.writeString(dir.resolve("routes.txt"), """
+            route_id,route_short_name,route_long_name,route_type,route_color
+            901,,Test Line,0,FF0000
+            """);
+        Files.writeString(dir.resolve("stops.txt"), """
+            stop_id,stop_name,stop_lat,stop_lon,location_type,parent_station
+            """);
+        Files.writeString(dir.resolve("trips.txt"), """
+            route_id,service_id,trip_id,direction_id,shape_id
+            901,wk,t1,0,north
+            """);
+        Files.writeString(dir.resolve("shapes.txt"), """
+            shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence
+            north,34.00,-118.00,1
+            north,34.01,-118.00,2
+            north,34.02,-118.00,3
+            """);
+        tracker = new VehicleTracker(new StaticGtfsService(dir.toString(), ""));
+    }
+
+    @Test
+    void snapsNearbyPositionsOntoTheShape() {
+        // About 30 m east of the track, 1 km along it.
+        VehiclePosition vehicle = position("t1", 34.0 + 1000 / DEGREE, -118.0 + 0.0003, 100);
+
+        tracker.track(List.of(vehicle), FeedSnapshot.empty());
+
+        assertEquals("north", vehicle.getShapeId());
+        assertEquals(1000, vehicle.getDistanceAlongShape(), 1);
+        assertEquals(-118.0, vehicle.getLongitude(), 1e-9);
+        assertEquals(0, vehicle.getBearing(), 0.01);
+        assertEquals(0, vehicle.getSpeed());
+    }
+
+    @Test
+    void leavesPositionsFarFromTheShapeAlone() {
+        VehiclePosition vehicle = position("t1", 34.01, -118.01, 100);
+
+        tracker.track(List.of(vehicle), FeedSnapshot.empty());
+
+        assertNull(vehicle.getShapeId());
+        assertEquals(-118.01, vehicle.getLongitude(), 1e-9);
+    }
+
+    @Test
+    void fallsBackToTheRouteShapeForUnscheduledTrips() {
+        VehiclePosition vehicle = position("extra", 34.01, -118.0, 100);
+
+        tracker.track(List.of(vehicle), FeedSnapshot.empty());
+
+        assertEquals("north", vehicle.getShapeId());
+    }
+
+    @Test
+    void estimatesSpeedFromConsecutiveReports() {
+        VehiclePosition first = position("t1", 34.0 + 500 / DEGREE, -118.0, 100);
+        tracker.track(List.of(first), FeedSnapshot.empty());
+        FeedSnapshot<VehiclePosition> previous = new FeedSnapshot<>(List.of(first), 0);
+
+        VehiclePosition moved = position("t1", 34.0 + 650 / DEGREE, -118.0, 115);
+        tracker.track(List.of(moved), previous);
+        assertEquals(10, moved.getSpeed(), 0.1);
+
+        // A fix 2 km further after 15 s is a bad fix, so the last speed stands.
+        VehiclePosition jumped = position("t1", 34.0 + 2150 / DEGREE, -118.0, 130);
+        tracker.track(List.of(jumped), new FeedSnapshot<>(List.of(moved), 0));
+        assertEquals(10, jumped.getSpeed(), 0.1);
+    }
+
+    @Test
+    void predictsAlongTheShapeUpToTheHorizonAndTheEnd() {
+        VehiclePosition vehicle = position("t1", 34.0 + 500 / DEGREE, -118.0, 100);
+        tracker.track(List.of(vehicle), FeedSnapshot.empty());
+        vehicle.setSpeed(10.0);
+
+        assertEquals(700, tracker.predict(List.of(vehicle), 120).get(0).getDistanceAlongShape(), 1);
+        assertEquals(34.0 + 700 / DEGREE, tracker.predict(List.of(vehicle), 120).get(0).getLatitude(), 1e-5);
+        assertEquals(1100, tracker.predict(List.of(vehicle), 1000).get(0).getDistanceAlongShape(), 1);
+
+        vehicle.setSpeed(30.0);
+        List<VehiclePosition> atEnd = tracker.predict(List.of(vehicle), 160);
+        assertEquals(34.02, atEnd.get(0).getLatitude(), 1e-6);
+        // The snapshot's own positions are never moved.
+        assertEquals(500, vehicle.getDistanceAlongShape(), 1);
+    }
+
+    private static VehiclePosition position(String tripId, double lat, double lon, long timestamp) {
+        return new VehiclePosition("v1", "901", tripId, 0, lat, lon, 0f, timestamp);
+    }
+}